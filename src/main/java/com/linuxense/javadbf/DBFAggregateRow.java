@@ -0,0 +1,153 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A row of the result of a {@link DBFAggregation}: the values of the group keys,
+ * followed by the aggregated values.
+ *
+ * Group keys are returned as the types returned by DBFReader in default modes
+ * (String, BigDecimal, Integer, java.util.Date, Boolean) and month keys as java.time.YearMonth.
+ * COUNT is returned as Long and the other functions as Double, or null if the group has no values.
+ */
+public final class DBFAggregateRow {
+
+	private final Object[] values;
+	private final String[] columnNames;
+	private final Map<String, Integer> mapColumnNames;
+
+	DBFAggregateRow(Object[] values, String[] columnNames, Map<String, Integer> mapColumnNames) {
+		this.values = values;
+		this.columnNames = columnNames;
+		this.mapColumnNames = mapColumnNames;
+	}
+
+	/**
+	 * Returns the number of columns
+	 * @return the number of columns
+	 */
+	public int getColumnCount() {
+		return this.values.length;
+	}
+
+	/**
+	 * Returns the name of a column: the field name for group keys, and
+	 * COUNT, SUM(field), MIN(field), MAX(field) or AVG(field) for aggregated values
+	 * @param columnIndex index of the column
+	 * @return the name of the column
+	 */
+	public String getColumnName(int columnIndex) {
+		checkIndex(columnIndex);
+		return this.columnNames[columnIndex];
+	}
+
+	/**
+	 * Reads the value of a column
+	 * @param columnIndex index of the column
+	 * @return the value
+	 */
+	public Object getObject(int columnIndex) {
+		checkIndex(columnIndex);
+		return this.values[columnIndex];
+	}
+
+	/**
+	 * Reads the value of a column by name (case insensitive)
+	 * @param columnName name of the column
+	 * @return the value
+	 */
+	public Object getObject(String columnName) {
+		Objects.requireNonNull(columnName);
+		Integer index = this.mapColumnNames.get(columnName);
+		if (index == null) {
+			throw new DBFFieldNotFoundException("No column found for:" + columnName);
+		}
+		return this.values[index.intValue()];
+	}
+
+	/**
+	 * Reads the value of a column as String
+	 * @param columnName name of the column
+	 * @return the value as String
+	 */
+	public String getString(String columnName) {
+		Object value = getObject(columnName);
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * Reads the value of a column as long
+	 * @param columnName name of the column
+	 * @return the value as long, 0 if null
+	 */
+	public long getLong(String columnName) {
+		return toNumber(columnName).longValue();
+	}
+
+	/**
+	 * Reads the value of a column as int
+	 * @param columnName name of the column
+	 * @return the value as int, 0 if null
+	 */
+	public int getInt(String columnName) {
+		return toNumber(columnName).intValue();
+	}
+
+	/**
+	 * Reads the value of a column as double
+	 * @param columnName name of the column
+	 * @return the value as double, 0.0 if null
+	 */
+	public double getDouble(String columnName) {
+		return toNumber(columnName).doubleValue();
+	}
+
+	private Number toNumber(String columnName) {
+		Object value = getObject(columnName);
+		if (value == null) {
+			return 0;
+		}
+		if (value instanceof Number) {
+			return (Number) value;
+		}
+		throw new DBFException("Unsupported type for Number at column:" + columnName + " "
+				+ value.getClass().getCanonicalName());
+	}
+
+	private void checkIndex(int columnIndex) {
+		if (columnIndex < 0 || columnIndex >= this.values.length) {
+			throw new IllegalArgumentException("Invalid index column: (" + columnIndex + "). Valid range is 0 to " + (this.values.length - 1));
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.values.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(this.columnNames[i]).append('=').append(this.values[i]);
+		}
+		return sb.toString();
+	}
+}
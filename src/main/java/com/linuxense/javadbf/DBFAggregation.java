@@ -0,0 +1,179 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Definition of a group by aggregation over the records of a DBF file.
+ *
+ * Group keys, aggregated values and the filter are evaluated over the raw bytes
+ * of the records, and groups are kept in a hash table of primitive arrays, so
+ * records are never decoded.
+ * <pre>
+ * DBFAggregation aggregation = new DBFAggregation()
+ *     .groupBy("REGION")
+ *     .groupByMonth("SALE_DATE")
+ *     .sum("AMOUNT")
+ *     .count()
+ *     .filter(DBFFilter.greaterOrEqual("AMOUNT", 0));
+ * for (DBFAggregateRow row : aggregation.aggregate(reader)) {
+ *     System.out.println(row.getString("REGION") + " " + row.getObject("SALE_DATE") + " " + row.getDouble("SUM(AMOUNT)"));
+ * }
+ * </pre>
+ * The same aggregation can be computed in parallel with {@link DBFParallelScan#aggregate(DBFAggregation)}
+ * or over a {@link DBFRandomAccess}. Groups are returned in order of first appearance.
+ */
+public class DBFAggregation {
+
+	enum Function {
+		COUNT, SUM, MIN, MAX, AVG
+	}
+
+	private final List<String> keyFields = new ArrayList<String>();
+	private final List<Boolean> monthKeys = new ArrayList<Boolean>();
+	private final List<Function> functions = new ArrayList<Function>();
+	private final List<String> valueFields = new ArrayList<String>();
+	private DBFFilter filter = null;
+
+	/**
+	 * Groups by the value of a field. Supported types are CHARACTER, VARCHAR, NUMERIC,
+	 * FLOATING_POINT, LONG, AUTOINCREMENT, DATE and LOGICAL.
+	 * The result column has the name of the field.
+	 * @param fieldName name of the field (case insensitive)
+	 * @return this aggregation
+	 */
+	public DBFAggregation groupBy(String fieldName) {
+		this.keyFields.add(Objects.requireNonNull(fieldName, "fieldName"));
+		this.monthKeys.add(Boolean.FALSE);
+		return this;
+	}
+
+	/**
+	 * Groups by the year and month of a DATE field.
+	 * The result column has the name of the field and java.time.YearMonth values.
+	 * @param fieldName name of the field (case insensitive)
+	 * @return this aggregation
+	 */
+	public DBFAggregation groupByMonth(String fieldName) {
+		this.keyFields.add(Objects.requireNonNull(fieldName, "fieldName"));
+		this.monthKeys.add(Boolean.TRUE);
+		return this;
+	}
+
+	/**
+	 * Counts the records of every group, in a column named COUNT with Long values
+	 * @return this aggregation
+	 */
+	public DBFAggregation count() {
+		return add(Function.COUNT, null);
+	}
+
+	/**
+	 * Sums the values of a numeric field, in a column named SUM(field) with Double values
+	 * @param fieldName name of the field (case insensitive)
+	 * @return this aggregation
+	 */
+	public DBFAggregation sum(String fieldName) {
+		return add(Function.SUM, Objects.requireNonNull(fieldName, "fieldName"));
+	}
+
+	/**
+	 * Minimum value of a numeric field, in a column named MIN(field) with Double values
+	 * @param fieldName name of the field (case insensitive)
+	 * @return this aggregation
+	 */
+	public DBFAggregation min(String fieldName) {
+		return add(Function.MIN, Objects.requireNonNull(fieldName, "fieldName"));
+	}
+
+	/**
+	 * Maximum value of a numeric field, in a column named MAX(field) with Double values
+	 * @param fieldName name of the field (case insensitive)
+	 * @return this aggregation
+	 */
+	public DBFAggregation max(String fieldName) {
+		return add(Function.MAX, Objects.requireNonNull(fieldName, "fieldName"));
+	}
+
+	/**
+	 * Average of the values of a numeric field, in a column named AVG(field) with Double values
+	 * @param fieldName name of the field (case insensitive)
+	 * @return this aggregation
+	 */
+	public DBFAggregation avg(String fieldName) {
+		return add(Function.AVG, Objects.requireNonNull(fieldName, "fieldName"));
+	}
+
+	/**
+	 * Aggregates only the records that match a condition
+	 * @param condition the condition, null to aggregate all the records
+	 * @return this aggregation
+	 */
+	public DBFAggregation filter(DBFFilter condition) {
+		this.filter = condition;
+		return this;
+	}
+
+	private DBFAggregation add(Function function, String fieldName) {
+		this.functions.add(function);
+		this.valueFields.add(fieldName);
+		return this;
+	}
+
+	/**
+	 * Aggregates the remaining records of a reader. The filter of the reader, if any, is also applied.
+	 * @param reader the reader
+	 * @return a row for every group
+	 */
+	public List<DBFAggregateRow> aggregate(DBFReader reader) {
+		DBFAggregator aggregator = compile(reader.getFullLayout(), reader.getCharset());
+		while (reader.fetchRecord()) {
+			aggregator.add(reader.getRecordData(), reader.getRecordOffset());
+		}
+		return aggregator.getRows();
+	}
+
+	/**
+	 * Creates the aggregator for a layout
+	 * @param layout layout of the records
+	 * @param charset charset of the file
+	 * @return the aggregator, without groups
+	 * @throws DBFFieldNotFoundException if some field doesn't exists
+	 */
+	DBFAggregator compile(DBFRecordLayout layout, Charset charset) {
+		int[] keyColumns = new int[this.keyFields.size()];
+		boolean[] months = new boolean[keyColumns.length];
+		for (int i = 0; i < keyColumns.length; i++) {
+			keyColumns[i] = layout.findColumn(this.keyFields.get(i));
+			months[i] = this.monthKeys.get(i).booleanValue();
+		}
+		Function[] aggregateFunctions = this.functions.toArray(new Function[this.functions.size()]);
+		int[] valueColumns = new int[aggregateFunctions.length];
+		for (int i = 0; i < valueColumns.length; i++) {
+			String fieldName = this.valueFields.get(i);
+			valueColumns[i] = fieldName != null ? layout.findColumn(fieldName) : -1;
+		}
+		DBFRecordPredicate predicate = this.filter != null ? this.filter.compile(layout, charset) : null;
+		return new DBFAggregator(layout, charset, keyColumns, months, aggregateFunctions, valueColumns, predicate);
+	}
+}
@@ -0,0 +1,412 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.nio.charset.Charset;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes a {@link DBFAggregation} over raw records.
+ *
+ * The key of every record is written to a fixed width byte array (a null marker
+ * and the bytes of every key field) and looked up in an open addressing hash table.
+ * Keys and aggregated values of the groups are stored in primitive arrays indexed by group.
+ */
+final class DBFAggregator {
+
+	private static final int INITIAL_GROUPS = 64;
+
+	private final KeyPart[] keyParts;
+	private final DBFAggregation.Function[] functions;
+	private final DBFColumnAccess[] valueColumns;
+	private final DBFRecordPredicate predicate;
+	private final String[] columnNames;
+	private final int keyWidth;
+	private final byte[] keyBuffer;
+
+	private int[] slots = new int[INITIAL_GROUPS * 2];
+	private int[] slotHashes = new int[INITIAL_GROUPS * 2];
+	private byte[] keys;
+	private long[] rowCounts = new long[INITIAL_GROUPS];
+	private final double[][] values;
+	private final long[][] valueCounts;
+	private int groupCount = 0;
+
+	DBFAggregator(DBFRecordLayout layout, Charset charset, int[] keyColumns, boolean[] months,
+			DBFAggregation.Function[] functions, int[] valueColumns, DBFRecordPredicate predicate) {
+		this.keyParts = new KeyPart[keyColumns.length];
+		this.functions = functions;
+		this.valueColumns = new DBFColumnAccess[valueColumns.length];
+		this.predicate = predicate;
+		this.columnNames = new String[keyColumns.length + functions.length];
+		int width = 0;
+		for (int i = 0; i < keyColumns.length; i++) {
+			this.keyParts[i] = months[i] ? new MonthKey(layout, keyColumns[i], width) : new FieldKey(layout, keyColumns[i], width, charset);
+			width += this.keyParts[i].width;
+			this.columnNames[i] = layout.fields[keyColumns[i]].getName();
+		}
+		for (int i = 0; i < valueColumns.length; i++) {
+			if (valueColumns[i] >= 0) {
+				this.valueColumns[i] = DBFColumnAccess.create(layout, valueColumns[i], charset);
+				if (!this.valueColumns[i].isNumber()) {
+					throw new DBFException("Unsupported type for " + functions[i] + " at field "
+						+ layout.fields[valueColumns[i]].getName() + ": " + layout.fields[valueColumns[i]].getType());
+				}
+				this.columnNames[keyColumns.length + i] = functions[i] + "(" + layout.fields[valueColumns[i]].getName() + ")";
+			}
+			else {
+				this.columnNames[keyColumns.length + i] = functions[i].toString();
+			}
+		}
+		this.keyWidth = width;
+		this.keyBuffer = new byte[Math.max(1, width)];
+		this.keys = new byte[INITIAL_GROUPS * this.keyWidth];
+		this.values = new double[functions.length][INITIAL_GROUPS];
+		this.valueCounts = new long[functions.length][INITIAL_GROUPS];
+	}
+
+	/**
+	 * Adds a record to its group, if it matches the filter
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 */
+	void add(byte[] data, int recordOffset) {
+		if (this.predicate != null && !this.predicate.matches(data, recordOffset)) {
+			return;
+		}
+		for (KeyPart keyPart : this.keyParts) {
+			keyPart.write(data, recordOffset, this.keyBuffer);
+		}
+		int group = findOrAddGroup();
+		this.rowCounts[group]++;
+		for (int i = 0; i < this.valueColumns.length; i++) {
+			DBFColumnAccess column = this.valueColumns[i];
+			if (column != null && !column.isNull(data, recordOffset)) {
+				addValue(i, group, column.toDouble(data, recordOffset), 1);
+			}
+		}
+	}
+
+	private void addValue(int measure, int group, double value, long count) {
+		double[] groupValues = this.values[measure];
+		long previousCount = this.valueCounts[measure][group];
+		switch (this.functions[measure]) {
+		case MIN:
+			groupValues[group] = previousCount == 0 ? value : Math.min(groupValues[group], value);
+			break;
+		case MAX:
+			groupValues[group] = previousCount == 0 ? value : Math.max(groupValues[group], value);
+			break;
+		default:
+			groupValues[group] += value;
+			break;
+		}
+		this.valueCounts[measure][group] = previousCount + count;
+	}
+
+	/**
+	 * Adds the groups of other aggregator of the same aggregation
+	 * @param other the other aggregator
+	 */
+	void merge(DBFAggregator other) {
+		for (int otherGroup = 0; otherGroup < other.groupCount; otherGroup++) {
+			System.arraycopy(other.keys, otherGroup * this.keyWidth, this.keyBuffer, 0, this.keyWidth);
+			int group = findOrAddGroup();
+			this.rowCounts[group] += other.rowCounts[otherGroup];
+			for (int i = 0; i < this.functions.length; i++) {
+				long count = other.valueCounts[i][otherGroup];
+				if (count > 0) {
+					addValue(i, group, other.values[i][otherGroup], count);
+				}
+			}
+		}
+	}
+
+	private int findOrAddGroup() {
+		int hash = (int) DBFHyperLogLog.hash(this.keyBuffer, 0, this.keyWidth);
+		int mask = this.slots.length - 1;
+		int slot = hash & mask;
+		while (this.slots[slot] != 0) {
+			int group = this.slots[slot] - 1;
+			if (this.slotHashes[slot] == hash && sameKey(group)) {
+				return group;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int group = this.groupCount++;
+		if (group == this.rowCounts.length) {
+			grow();
+		}
+		System.arraycopy(this.keyBuffer, 0, this.keys, group * this.keyWidth, this.keyWidth);
+		if (this.groupCount * 2 > this.slots.length) {
+			rehash(this.slots.length * 2);
+		}
+		else {
+			this.slots[slot] = group + 1;
+			this.slotHashes[slot] = hash;
+		}
+		return group;
+	}
+
+	private boolean sameKey(int group) {
+		int offset = group * this.keyWidth;
+		for (int i = 0; i < this.keyWidth; i++) {
+			if (this.keys[offset + i] != this.keyBuffer[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void grow() {
+		int capacity = this.rowCounts.length * 2;
+		this.keys = Arrays.copyOf(this.keys, capacity * this.keyWidth);
+		this.rowCounts = Arrays.copyOf(this.rowCounts, capacity);
+		for (int i = 0; i < this.functions.length; i++) {
+			this.values[i] = Arrays.copyOf(this.values[i], capacity);
+			this.valueCounts[i] = Arrays.copyOf(this.valueCounts[i], capacity);
+		}
+	}
+
+	private void rehash(int size) {
+		this.slots = new int[size];
+		this.slotHashes = new int[size];
+		int mask = size - 1;
+		for (int group = 0; group < this.groupCount; group++) {
+			int hash = (int) DBFHyperLogLog.hash(this.keys, group * this.keyWidth, this.keyWidth);
+			int slot = hash & mask;
+			while (this.slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			this.slots[slot] = group + 1;
+			this.slotHashes[slot] = hash;
+		}
+	}
+
+	/**
+	 * Returns the result of the aggregation
+	 * @return a row for every group, in order of first appearance
+	 */
+	List<DBFAggregateRow> getRows() {
+		Map<String, Integer> mapColumnNames = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+		for (int i = 0; i < this.columnNames.length; i++) {
+			mapColumnNames.put(this.columnNames[i], i);
+		}
+		List<DBFAggregateRow> rows = new ArrayList<DBFAggregateRow>(this.groupCount);
+		for (int group = 0; group < this.groupCount; group++) {
+			Object[] row = new Object[this.columnNames.length];
+			for (int i = 0; i < this.keyParts.length; i++) {
+				row[i] = this.keyParts[i].read(this.keys, group * this.keyWidth);
+			}
+			for (int i = 0; i < this.functions.length; i++) {
+				row[this.keyParts.length + i] = getValue(i, group);
+			}
+			rows.add(new DBFAggregateRow(row, this.columnNames, mapColumnNames));
+		}
+		return rows;
+	}
+
+	private Object getValue(int measure, int group) {
+		long count = this.valueCounts[measure][group];
+		switch (this.functions[measure]) {
+		case COUNT:
+			return this.rowCounts[group];
+		case AVG:
+			return count > 0 ? this.values[measure][group] / count : null;
+		default:
+			return count > 0 ? this.values[measure][group] : null;
+		}
+	}
+
+	/**
+	 * Part of the key of a group
+	 */
+	private abstract static class KeyPart {
+		protected final int column;
+		protected final int fieldOffset;
+		protected final int position;
+		protected final int width;
+
+		KeyPart(DBFRecordLayout layout, int column, int position, int width) {
+			this.column = column;
+			this.fieldOffset = layout.offsets[column];
+			this.position = position;
+			this.width = width;
+		}
+
+		/**
+		 * Writes the part of the key of a record: a null marker and the value
+		 */
+		abstract void write(byte[] data, int recordOffset, byte[] key);
+
+		/**
+		 * Decodes the value of the part of a key
+		 */
+		abstract Object read(byte[] keys, int keyOffset);
+
+		protected void writeNull(byte[] key) {
+			key[this.position] = 1;
+			Arrays.fill(key, this.position + 1, this.position + this.width, (byte) 0);
+		}
+	}
+
+	private static final class FieldKey extends KeyPart {
+		private final DBFRecordLayout layout;
+		private final DBFColumnAccess access;
+		private final DBFField field;
+		private final boolean variable;
+		private final DBFDataType type;
+		private final boolean deleted;
+		private final Charset charset;
+
+		FieldKey(DBFRecordLayout layout, int column, int position, Charset charset) {
+			super(layout, column, position, 1 + layout.fields[column].getLength());
+			this.layout = layout;
+			this.field = layout.fields[column];
+			this.variable = layout.varLengthBits[column] >= 0 && layout.nullFlagsOffset >= 0;
+			this.type = this.field.getType();
+			this.deleted = layout.isDeletedColumn(column);
+			this.charset = charset;
+			switch (this.type) {
+			case CHARACTER:
+			case VARCHAR:
+			case NUMERIC:
+			case FLOATING_POINT:
+			case LONG:
+			case AUTOINCREMENT:
+			case DATE:
+			case LOGICAL:
+				break;
+			default:
+				throw new DBFException("Unsupported type for group keys at field " + this.field.getName() + ": " + this.type);
+			}
+			this.access = DBFColumnAccess.create(layout, column, charset);
+		}
+
+		@Override
+		void write(byte[] data, int recordOffset, byte[] key) {
+			if (this.deleted) {
+				key[this.position] = 0;
+				key[this.position + 1] = (byte) (data[recordOffset] == '*' ? 'T' : 'F');
+				return;
+			}
+			int offset = recordOffset + this.fieldOffset;
+			if (this.access.isNull(data, recordOffset)) {
+				writeNull(key);
+				return;
+			}
+			key[this.position] = 0;
+			switch (this.type) {
+			case LOGICAL:
+				Object value = DBFUtils.toBoolean(data[offset]);
+				if (value == null) {
+					writeNull(key);
+					return;
+				}
+				key[this.position + 1] = (byte) (((Boolean) value).booleanValue() ? 'T' : 'F');
+				break;
+			case DATE:
+				if (DBFUtils.toEpochDay(data, offset) == DBFUtils.NOT_A_DATE) {
+					writeNull(key);
+					return;
+				}
+				System.arraycopy(data, offset, key, this.position + 1, this.width - 1);
+				break;
+			case CHARACTER:
+			case VARCHAR:
+				int length = this.variable ? this.layout.getVarLength(data, recordOffset, this.column)
+					: DBFUtils.trimRightSpacesLength(data, offset, this.width - 1);
+				System.arraycopy(data, offset, key, this.position + 1, length);
+				Arrays.fill(key, this.position + 1 + length, this.position + this.width, (byte) ' ');
+				break;
+			default:
+				System.arraycopy(data, offset, key, this.position + 1, this.width - 1);
+				break;
+			}
+		}
+
+		@Override
+		Object read(byte[] keys, int keyOffset) {
+			int offset = keyOffset + this.position;
+			if (keys[offset] != 0) {
+				return null;
+			}
+			offset++;
+			int length = this.width - 1;
+			switch (this.type) {
+			case CHARACTER:
+			case VARCHAR:
+				return new String(keys, offset, DBFUtils.trimRightSpacesLength(keys, offset, length), this.charset);
+			case NUMERIC:
+			case FLOATING_POINT:
+				return DBFUtils.toNumeric(keys, offset, length, this.field.getDecimalCount(), DBFNumericMode.BIG_DECIMAL);
+			case LONG:
+			case AUTOINCREMENT:
+				return DBFUtils.toLittleEndianInt(keys, offset);
+			case DATE:
+				return DBFUtils.toDate(keys, offset, DBFDateMode.DATE);
+			default:
+				return keys[offset] == 'T';
+			}
+		}
+	}
+
+	private static final class MonthKey extends KeyPart {
+		MonthKey(DBFRecordLayout layout, int column, int position) {
+			super(layout, column, position, 5);
+			if (layout.isDeletedColumn(column) || layout.fields[column].getType() != DBFDataType.DATE) {
+				throw new DBFException("Month keys are only supported for DATE fields: " + layout.fields[column].getName());
+			}
+		}
+
+		@Override
+		void write(byte[] data, int recordOffset, byte[] key) {
+			int offset = recordOffset + this.fieldOffset;
+			if (DBFUtils.toEpochDay(data, offset) == DBFUtils.NOT_A_DATE) {
+				writeNull(key);
+				return;
+			}
+			int month = 0;
+			for (int i = 0; i < 6; i++) {
+				month = month * 10 + (data[offset + i] - '0');
+			}
+			key[this.position] = 0;
+			key[this.position + 1] = (byte) (month >>> 24);
+			key[this.position + 2] = (byte) (month >>> 16);
+			key[this.position + 3] = (byte) (month >>> 8);
+			key[this.position + 4] = (byte) month;
+		}
+
+		@Override
+		Object read(byte[] keys, int keyOffset) {
+			int offset = keyOffset + this.position;
+			if (keys[offset] != 0) {
+				return null;
+			}
+			int month = (keys[offset + 1] & 0xff) << 24 | (keys[offset + 2] & 0xff) << 16
+				| (keys[offset + 3] & 0xff) << 8 | (keys[offset + 4] & 0xff);
+			return YearMonth.of(month / 100, month % 100);
+		}
+	}
+}
@@ -0,0 +1,701 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Typed access to the raw bytes of a column, used to evaluate conditions
+ * without decoding the records.
+ *
+ * Values to compare with (bounds) are converted once with {@link #compileBound(Object)}
+ * to the representation used in the file.
+ */
+abstract class DBFColumnAccess {
+
+	protected final DBFRecordLayout layout;
+	protected final int column;
+	protected final DBFField field;
+	protected final int fieldOffset;
+
+	protected DBFColumnAccess(DBFRecordLayout layout, int column) {
+		this.layout = layout;
+		this.column = column;
+		this.field = layout.fields[column];
+		this.fieldOffset = layout.offsets[column];
+	}
+
+	/**
+	 * Creates the access for a column
+	 * @param layout layout of the record
+	 * @param column index of the column in the layout
+	 * @param charset charset of the file
+	 * @return the access for the column
+	 * @throws DBFException if the type of the column is not supported
+	 */
+	static DBFColumnAccess create(DBFRecordLayout layout, int column, Charset charset) {
+		if (layout.isDeletedColumn(column)) {
+			return new DeletedAccess(layout, column);
+		}
+		DBFDataType type = layout.fields[column].getType();
+		switch (type) {
+		case CHARACTER:
+		case VARCHAR:
+			return new TextAccess(layout, column, charset);
+		case NUMERIC:
+		case FLOATING_POINT:
+		case LONG:
+		case AUTOINCREMENT:
+		case CURRENCY:
+			return new NumberAccess(layout, column);
+		case DOUBLE:
+			return new DoubleAccess(layout, column);
+		case DATE:
+			return new DateAccess(layout, column);
+		case TIMESTAMP:
+		case TIMESTAMP_DBASE7:
+			return new TimestampAccess(layout, column);
+		case LOGICAL:
+			return new LogicalAccess(layout, column);
+		default:
+			throw new DBFException("Unsupported type for conditions at field " + layout.fields[column].getName() + ": " + type);
+		}
+	}
+
+	DBFField getField() {
+		return this.field;
+	}
+
+	/**
+	 * Checks if the value of the column is null
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @return true if the value is null
+	 */
+	boolean isNull(byte[] data, int recordOffset) {
+		return this.layout.isNullFlagSet(data, recordOffset, this.column);
+	}
+
+	/**
+	 * Converts a value to the representation used by compare
+	 * @param value the value
+	 * @return the compiled value
+	 * @throws DBFException if the value is not valid for this column
+	 */
+	abstract Object compileBound(Object value);
+
+	/**
+	 * Compares the value of the column with a compiled value.
+	 * The column value must not be null.
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @param bound compiled value
+	 * @return negative, zero or positive as the column value is less, equal or greater than bound
+	 */
+	abstract int compare(byte[] data, int recordOffset, Object bound);
+
+	/**
+	 * Checks if the value of the column is equal to a compiled value.
+	 * The column value must not be null.
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @param bound compiled value
+	 * @return true if the column value is equal to bound
+	 */
+	boolean isEqual(byte[] data, int recordOffset, Object bound) {
+		return compare(data, recordOffset, bound) == 0;
+	}
+
+	/**
+	 * Hashes the value of the column. Values that compare as equal have the same hash.
+	 * The column value must not be null.
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @return the hash of the value
+	 */
+	long hash(byte[] data, int recordOffset) {
+		throw new DBFException("Unsupported type for indexes at field " + this.field.getName() + ": " + this.field.getType());
+	}
+
+	/**
+	 * Hashes a compiled value, with the same hash of the column values equal to it
+	 * @param bound compiled value
+	 * @return the hash of the value
+	 */
+	long hashBound(Object bound) {
+		throw new DBFException("Unsupported type for indexes at field " + this.field.getName() + ": " + this.field.getType());
+	}
+
+	/**
+	 * Reads the value of a numeric column as double.
+	 * The column value must not be null.
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @return the value
+	 */
+	double toDouble(byte[] data, int recordOffset) {
+		throw new DBFException("Unsupported type for numbers at field " + this.field.getName() + ": " + this.field.getType());
+	}
+
+	/**
+	 * Checks if the column is a numeric column, supporting toDouble
+	 * @return true for numeric columns
+	 */
+	boolean isNumber() {
+		return false;
+	}
+
+	/**
+	 * Checks if the column is a text column, supporting startsWith
+	 * @return true for text columns
+	 */
+	boolean isText() {
+		return false;
+	}
+
+	/**
+	 * Checks if the value of the column starts with a compiled value.
+	 * The column value must not be null.
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @param prefix compiled value
+	 * @return true if the column value starts with prefix
+	 */
+	boolean startsWith(byte[] data, int recordOffset, Object prefix) {
+		throw new DBFException("Prefix conditions are only supported for text fields: " + this.field.getName());
+	}
+
+	protected DBFException invalidValue(Object value) {
+		return new DBFException("Invalid value for field " + this.field.getName() + ": " + value);
+	}
+
+	private static final class TextAccess extends DBFColumnAccess {
+		private final Charset charset;
+		private final boolean byteOrdered;
+		private final boolean variable;
+
+		TextAccess(DBFRecordLayout layout, int column, Charset charset) {
+			super(layout, column);
+			this.charset = charset;
+			this.byteOrdered = StandardCharsets.ISO_8859_1.equals(charset) || StandardCharsets.US_ASCII.equals(charset)
+					|| StandardCharsets.UTF_8.equals(charset);
+			this.variable = layout.varLengthBits[column] >= 0 && layout.nullFlagsOffset >= 0;
+		}
+
+		@Override
+		Object compileBound(Object value) {
+			String text = value.toString();
+			int end = text.length();
+			while (end > 0 && text.charAt(end - 1) == ' ') {
+				end--;
+			}
+			String trimmed = text.substring(0, end);
+			return new TextBound(trimmed, trimmed.getBytes(this.charset), this.charset.newEncoder().canEncode(trimmed));
+		}
+
+		private int valueLength(byte[] data, int recordOffset) {
+			if (this.variable) {
+				return this.layout.getVarLength(data, recordOffset, this.column);
+			}
+			return DBFUtils.trimRightSpacesLength(data, recordOffset + this.fieldOffset, this.field.getLength());
+		}
+
+		@Override
+		int compare(byte[] data, int recordOffset, Object bound) {
+			TextBound textBound = (TextBound) bound;
+			int offset = recordOffset + this.fieldOffset;
+			int length = valueLength(data, recordOffset);
+			if (!this.byteOrdered) {
+				return new String(data, offset, length, this.charset).compareTo(textBound.text);
+			}
+			byte[] bytes = textBound.bytes;
+			int common = Math.min(length, bytes.length);
+			for (int i = 0; i < common; i++) {
+				int diff = (data[offset + i] & 0xff) - (bytes[i] & 0xff);
+				if (diff != 0) {
+					return diff;
+				}
+			}
+			return length - bytes.length;
+		}
+
+		@Override
+		boolean isEqual(byte[] data, int recordOffset, Object bound) {
+			TextBound textBound = (TextBound) bound;
+			byte[] bytes = textBound.bytes;
+			// Values that can't be encoded would be compared with the replacement bytes
+			if (!textBound.encodable || valueLength(data, recordOffset) != bytes.length) {
+				return false;
+			}
+			int offset = recordOffset + this.fieldOffset;
+			for (int i = 0; i < bytes.length; i++) {
+				if (data[offset + i] != bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		long hash(byte[] data, int recordOffset) {
+			return DBFHyperLogLog.hash(data, recordOffset + this.fieldOffset, valueLength(data, recordOffset));
+		}
+
+		@Override
+		long hashBound(Object bound) {
+			byte[] bytes = ((TextBound) bound).bytes;
+			return DBFHyperLogLog.hash(bytes, 0, bytes.length);
+		}
+
+		@Override
+		boolean isText() {
+			return true;
+		}
+
+		@Override
+		boolean startsWith(byte[] data, int recordOffset, Object prefix) {
+			byte[] bytes = ((TextBound) prefix).bytes;
+			int offset = recordOffset + this.fieldOffset;
+			if (valueLength(data, recordOffset) < bytes.length) {
+				return false;
+			}
+			for (int i = 0; i < bytes.length; i++) {
+				if (data[offset + i] != bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static final class TextBound {
+		private final String text;
+		private final byte[] bytes;
+		private final boolean encodable;
+
+		TextBound(String text, byte[] bytes, boolean encodable) {
+			this.text = text;
+			this.bytes = bytes;
+			this.encodable = encodable;
+		}
+	}
+
+	private static final class NumberAccess extends DBFColumnAccess {
+		private final DBFDataType type;
+
+		NumberAccess(DBFRecordLayout layout, int column) {
+			super(layout, column);
+			this.type = this.field.getType();
+		}
+
+		@Override
+		boolean isNull(byte[] data, int recordOffset) {
+			if (super.isNull(data, recordOffset)) {
+				return true;
+			}
+			if (this.type == DBFDataType.NUMERIC || this.type == DBFDataType.FLOATING_POINT) {
+				return DBFUtils.isNumericNull(data, recordOffset + this.fieldOffset, this.field.getLength());
+			}
+			return false;
+		}
+
+		@Override
+		Object compileBound(Object value) {
+			return new DecimalBound(toBigDecimal(value));
+		}
+
+		private BigDecimal toBigDecimal(Object value) {
+			if (value instanceof BigDecimal) {
+				return (BigDecimal) value;
+			}
+			if (value instanceof BigInteger) {
+				return new BigDecimal((BigInteger) value);
+			}
+			if (value instanceof Double || value instanceof Float) {
+				return BigDecimal.valueOf(((Number) value).doubleValue());
+			}
+			if (value instanceof Number) {
+				return BigDecimal.valueOf(((Number) value).longValue());
+			}
+			throw invalidValue(value);
+		}
+
+		@Override
+		int compare(byte[] data, int recordOffset, Object bound) {
+			DecimalBound decimalBound = (DecimalBound) bound;
+			int offset = recordOffset + this.fieldOffset;
+			switch (this.type) {
+			case LONG:
+			case AUTOINCREMENT:
+				return decimalBound.compareTo(DBFUtils.toLittleEndianInt(data, offset), 0);
+			case CURRENCY:
+				return decimalBound.compareTo(DBFUtils.toLittleEndianInt(data, offset), 4);
+			default:
+				int length = this.field.getLength();
+				long unscaled = DBFUtils.parseUnscaled(data, offset, length);
+				if (unscaled != DBFUtils.NOT_PARSEABLE) {
+					return decimalBound.compareTo(unscaled, DBFUtils.parseScale(data, offset, length));
+				}
+				Number number = DBFUtils.toNumeric(Arrays.copyOfRange(data, offset, offset + length));
+				return ((BigDecimal) number).compareTo(decimalBound.value);
+			}
+		}
+
+		@Override
+		long hash(byte[] data, int recordOffset) {
+			int offset = recordOffset + this.fieldOffset;
+			switch (this.type) {
+			case LONG:
+			case AUTOINCREMENT:
+				return hashDecimal(DBFUtils.toLittleEndianInt(data, offset), 0);
+			case CURRENCY:
+				return hashDecimal(DBFUtils.toLittleEndianInt(data, offset), 4);
+			default:
+				int length = this.field.getLength();
+				long unscaled = DBFUtils.parseUnscaled(data, offset, length);
+				if (unscaled != DBFUtils.NOT_PARSEABLE) {
+					return hashDecimal(unscaled, DBFUtils.parseScale(data, offset, length));
+				}
+				return hashDecimal((BigDecimal) DBFUtils.toNumeric(Arrays.copyOfRange(data, offset, offset + length)));
+			}
+		}
+
+		@Override
+		long hashBound(Object bound) {
+			DecimalBound decimalBound = (DecimalBound) bound;
+			if (decimalBound.exact) {
+				return hashDecimal(decimalBound.unscaled, decimalBound.scale);
+			}
+			return hashDecimal(decimalBound.value);
+		}
+
+		/**
+		 * Hashes a decimal number without trailing zeros, so 1.50 and 1.5 have the same hash
+		 */
+		private static long hashDecimal(long unscaled, int scale) {
+			while (scale > 0 && unscaled % 10 == 0) {
+				unscaled /= 10;
+				scale--;
+			}
+			return DBFHyperLogLog.hash(unscaled * 31 + scale);
+		}
+
+		private static long hashDecimal(BigDecimal value) {
+			BigDecimal normalized = value.signum() == 0 ? BigDecimal.ZERO : value.stripTrailingZeros();
+			if (normalized.scale() < 0) {
+				normalized = normalized.setScale(0);
+			}
+			if (normalized.unscaledValue().bitLength() < 63) {
+				return hashDecimal(normalized.unscaledValue().longValue(), normalized.scale());
+			}
+			return DBFHyperLogLog.hash(normalized.hashCode());
+		}
+
+		@Override
+		boolean isNumber() {
+			return true;
+		}
+
+		@Override
+		double toDouble(byte[] data, int recordOffset) {
+			int offset = recordOffset + this.fieldOffset;
+			switch (this.type) {
+			case LONG:
+			case AUTOINCREMENT:
+				return DBFUtils.toLittleEndianInt(data, offset);
+			case CURRENCY:
+				return DBFUtils.toLittleEndianInt(data, offset) / 10000.0;
+			default:
+				return DBFUtils.parseDouble(data, offset, this.field.getLength());
+			}
+		}
+	}
+
+	/**
+	 * A decimal number, stored as unscaled long when it fits
+	 */
+	private static final class DecimalBound {
+		private final BigDecimal value;
+		private final long unscaled;
+		private final int scale;
+		private final boolean exact;
+
+		DecimalBound(BigDecimal value) {
+			this.value = value;
+			BigDecimal normalized = value.scale() < 0 ? value.setScale(0) : value;
+			this.exact = normalized.scale() < DBFUtils.POWERS_OF_TEN.length && normalized.unscaledValue().bitLength() < 63;
+			this.unscaled = this.exact ? normalized.unscaledValue().longValue() : 0;
+			this.scale = this.exact ? normalized.scale() : 0;
+		}
+
+		/**
+		 * Compares the decimal number unscaled/10^scale with this bound
+		 */
+		int compareTo(long otherUnscaled, int otherScale) {
+			if (this.exact) {
+				int commonScale = Math.max(this.scale, otherScale);
+				long factor = DBFUtils.POWERS_OF_TEN[commonScale - otherScale];
+				long boundFactor = DBFUtils.POWERS_OF_TEN[commonScale - this.scale];
+				if (Math.abs(otherUnscaled) <= Long.MAX_VALUE / factor && Math.abs(this.unscaled) <= Long.MAX_VALUE / boundFactor) {
+					long a = otherUnscaled * factor;
+					long b = this.unscaled * boundFactor;
+					return a < b ? -1 : (a == b ? 0 : 1);
+				}
+			}
+			return BigDecimal.valueOf(otherUnscaled, otherScale).compareTo(this.value);
+		}
+	}
+
+	private static final class DoubleAccess extends DBFColumnAccess {
+		DoubleAccess(DBFRecordLayout layout, int column) {
+			super(layout, column);
+		}
+
+		@Override
+		Object compileBound(Object value) {
+			if (!(value instanceof Number)) {
+				throw invalidValue(value);
+			}
+			return ((Number) value).doubleValue();
+		}
+
+		@Override
+		int compare(byte[] data, int recordOffset, Object bound) {
+			return Double.compare(DBFUtils.toDouble(data, recordOffset + this.fieldOffset), (Double) bound);
+		}
+
+		@Override
+		long hash(byte[] data, int recordOffset) {
+			return DBFHyperLogLog.hash(Double.doubleToLongBits(DBFUtils.toDouble(data, recordOffset + this.fieldOffset)));
+		}
+
+		@Override
+		long hashBound(Object bound) {
+			return DBFHyperLogLog.hash(Double.doubleToLongBits((Double) bound));
+		}
+
+		@Override
+		boolean isNumber() {
+			return true;
+		}
+
+		@Override
+		double toDouble(byte[] data, int recordOffset) {
+			return DBFUtils.toDouble(data, recordOffset + this.fieldOffset);
+		}
+	}
+
+	private static final class DateAccess extends DBFColumnAccess {
+		DateAccess(DBFRecordLayout layout, int column) {
+			super(layout, column);
+		}
+
+		@Override
+		boolean isNull(byte[] data, int recordOffset) {
+			if (super.isNull(data, recordOffset)) {
+				return true;
+			}
+			int offset = recordOffset + this.fieldOffset;
+			for (int i = offset; i < offset + 8; i++) {
+				if (data[i] < '0' || data[i] > '9') {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		Object compileBound(Object value) {
+			if (value instanceof LocalDate) {
+				LocalDate date = (LocalDate) value;
+				return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+			}
+			if (!(value instanceof Date)) {
+				throw invalidValue(value);
+			}
+			GregorianCalendar calendar = new GregorianCalendar();
+			calendar.setTime((Date) value);
+			int yyyymmdd = calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+					+ calendar.get(Calendar.DAY_OF_MONTH);
+			return yyyymmdd;
+		}
+
+		@Override
+		int compare(byte[] data, int recordOffset, Object bound) {
+			int offset = recordOffset + this.fieldOffset;
+			int yyyymmdd = 0;
+			for (int i = offset; i < offset + 8; i++) {
+				yyyymmdd = yyyymmdd * 10 + (data[i] - '0');
+			}
+			int other = (Integer) bound;
+			return yyyymmdd < other ? -1 : (yyyymmdd == other ? 0 : 1);
+		}
+
+		@Override
+		long hash(byte[] data, int recordOffset) {
+			int offset = recordOffset + this.fieldOffset;
+			int yyyymmdd = 0;
+			for (int i = offset; i < offset + 8; i++) {
+				yyyymmdd = yyyymmdd * 10 + (data[i] - '0');
+			}
+			return DBFHyperLogLog.hash(yyyymmdd);
+		}
+
+		@Override
+		long hashBound(Object bound) {
+			return DBFHyperLogLog.hash((Integer) bound);
+		}
+	}
+
+	private static final class TimestampAccess extends DBFColumnAccess {
+		TimestampAccess(DBFRecordLayout layout, int column) {
+			super(layout, column);
+		}
+
+		@Override
+		boolean isNull(byte[] data, int recordOffset) {
+			int offset = recordOffset + this.fieldOffset;
+			return super.isNull(data, recordOffset)
+				|| (DBFUtils.toLittleEndianInt(data, offset) == 0 && DBFUtils.toLittleEndianInt(data, offset + 4) == 0);
+		}
+
+		@Override
+		Object compileBound(Object value) {
+			// Bounds are converted to the local time stored in the file
+			if (value instanceof LocalDateTime) {
+				return ((LocalDateTime) value).toInstant(ZoneOffset.UTC).toEpochMilli();
+			}
+			if (!(value instanceof Date)) {
+				throw invalidValue(value);
+			}
+			long millis = ((Date) value).getTime();
+			TimeZone zone = TimeZone.getDefault();
+			long local = millis + zone.getOffset(millis);
+			// Values of the column are read as Date with the offset at their local time
+			if (local - zone.getOffset(local) != millis) {
+				long other = millis + zone.getOffset(local);
+				if (other - zone.getOffset(other) == millis) {
+					return other;
+				}
+			}
+			return local;
+		}
+
+		@Override
+		int compare(byte[] data, int recordOffset, Object bound) {
+			int offset = recordOffset + this.fieldOffset;
+			long millis = DBFUtils.toEpochMillis(DBFUtils.toLittleEndianInt(data, offset), DBFUtils.toLittleEndianInt(data, offset + 4));
+			long other = (Long) bound;
+			return millis < other ? -1 : (millis == other ? 0 : 1);
+		}
+
+		@Override
+		long hash(byte[] data, int recordOffset) {
+			int offset = recordOffset + this.fieldOffset;
+			return DBFHyperLogLog.hash(DBFUtils.toEpochMillis(DBFUtils.toLittleEndianInt(data, offset), DBFUtils.toLittleEndianInt(data, offset + 4)));
+		}
+
+		@Override
+		long hashBound(Object bound) {
+			return DBFHyperLogLog.hash((Long) bound);
+		}
+	}
+
+	private static final class LogicalAccess extends DBFColumnAccess {
+		LogicalAccess(DBFRecordLayout layout, int column) {
+			super(layout, column);
+		}
+
+		@Override
+		boolean isNull(byte[] data, int recordOffset) {
+			return super.isNull(data, recordOffset) || DBFUtils.toBoolean(data[recordOffset + this.fieldOffset]) == null;
+		}
+
+		@Override
+		Object compileBound(Object value) {
+			if (!(value instanceof Boolean)) {
+				throw invalidValue(value);
+			}
+			return value;
+		}
+
+		@Override
+		int compare(byte[] data, int recordOffset, Object bound) {
+			byte b = data[recordOffset + this.fieldOffset];
+			boolean value = b == 'Y' || b == 'y' || b == 'T' || b == 't';
+			return Boolean.compare(value, (Boolean) bound);
+		}
+
+		@Override
+		long hash(byte[] data, int recordOffset) {
+			byte b = data[recordOffset + this.fieldOffset];
+			return DBFHyperLogLog.hash(b == 'Y' || b == 'y' || b == 'T' || b == 't' ? 1 : 0);
+		}
+
+		@Override
+		long hashBound(Object bound) {
+			return DBFHyperLogLog.hash(((Boolean) bound).booleanValue() ? 1 : 0);
+		}
+	}
+
+	private static final class DeletedAccess extends DBFColumnAccess {
+		DeletedAccess(DBFRecordLayout layout, int column) {
+			super(layout, column);
+		}
+
+		@Override
+		boolean isNull(byte[] data, int recordOffset) {
+			return false;
+		}
+
+		@Override
+		Object compileBound(Object value) {
+			if (!(value instanceof Boolean)) {
+				throw invalidValue(value);
+			}
+			return value;
+		}
+
+		@Override
+		int compare(byte[] data, int recordOffset, Object bound) {
+			return Boolean.compare(data[recordOffset] == '*', (Boolean) bound);
+		}
+
+		@Override
+		long hash(byte[] data, int recordOffset) {
+			return DBFHyperLogLog.hash(data[recordOffset] == '*' ? 1 : 0);
+		}
+
+		@Override
+		long hashBound(Object bound) {
+			return DBFHyperLogLog.hash(((Boolean) bound).booleanValue() ? 1 : 0);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A group of records of a DBFReader stored by columns.
+ *
+ * Every column is stored in primitive arrays (see {@link DBFColumnVector}), so
+ * aggregations can loop over the values of a column without creating objects.
+ * The batch is created by {@link DBFReader#createBatch(int)} and it is reused by
+ * every call to {@link DBFReader#nextBatch(DBFColumnBatch)}:
+ * <pre>
+ * DBFColumnBatch batch = reader.createBatch(65536);
+ * while (reader.nextBatch(batch)) {
+ *     long[] values = batch.getColumn("AMOUNT").getLongs();
+ *     for (int i = 0; i &lt; batch.getRowCount(); i++) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public final class DBFColumnBatch {
+
+	private final DBFRecordLayout layout;
+	private final Map<String, Integer> mapFieldNames;
+	private final DBFColumnVector[] columns;
+	private final byte[] records;
+	private final int recordSize;
+	private int rowCount = 0;
+
+	DBFColumnBatch(DBFReader reader, int capacity) {
+		this.layout = reader.getLayout();
+		this.mapFieldNames = reader.getMapFieldNames();
+		this.recordSize = reader.getRecordSize();
+		this.records = new byte[capacity * this.recordSize];
+		this.columns = new DBFColumnVector[this.layout.fields.length];
+		for (int i = 0; i < this.columns.length; i++) {
+			this.columns[i] = new DBFColumnVector(this.layout.fields[i], this.layout.isDeletedColumn(i),
+				capacity, reader.getCharset());
+		}
+	}
+
+	/**
+	 * Returns the maximum number of rows of the batch
+	 * @return the maximum number of rows
+	 */
+	public int getCapacity() {
+		return this.records.length / this.recordSize;
+	}
+
+	/**
+	 * Returns the number of rows read in the last call to nextBatch
+	 * @return the number of rows
+	 */
+	public int getRowCount() {
+		return this.rowCount;
+	}
+
+	/**
+	 * Returns the number of columns
+	 * @return the number of columns
+	 */
+	public int getColumnCount() {
+		return this.columns.length;
+	}
+
+	/**
+	 * Returns the values of a column
+	 * @param columnIndex index of the column
+	 * @return the values of the column
+	 */
+	public DBFColumnVector getColumn(int columnIndex) {
+		if (columnIndex < 0 || columnIndex >= this.columns.length) {
+			throw new IllegalArgumentException("Invalid index field: (" + columnIndex+"). Valid range is 0 to " + (this.columns.length - 1));
+		}
+		return this.columns[columnIndex];
+	}
+
+	/**
+	 * Returns the values of a column
+	 * @param columnName name of the column (case insensitive)
+	 * @return the values of the column
+	 */
+	public DBFColumnVector getColumn(String columnName) {
+		Objects.requireNonNull(columnName);
+		Integer index = this.mapFieldNames.get(columnName);
+		if (index == null) {
+			throw new DBFFieldNotFoundException("No field found for:" + columnName);
+		}
+		return this.columns[index.intValue()];
+	}
+
+	DBFRecordLayout getLayout() {
+		return this.layout;
+	}
+
+	/**
+	 * Copies a record to the next row of the batch
+	 * @return true if the batch is full
+	 */
+	boolean addRecord(byte[] data, int offset) {
+		System.arraycopy(data, offset, this.records, this.rowCount * this.recordSize, this.recordSize);
+		this.rowCount++;
+		return this.rowCount * this.recordSize == this.records.length;
+	}
+
+	void clear() {
+		this.rowCount = 0;
+	}
+
+	/**
+	 * Decodes the columns of the rows copied to the batch
+	 */
+	void load(DBFReader reader) {
+		for (int i = 0; i < this.columns.length; i++) {
+			this.columns[i].load(reader, this.layout, i, this.records, this.recordSize, this.rowCount);
+		}
+	}
+}
@@ -0,0 +1,300 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Statistics of the values of a column, computed from the raw bytes of the records.
+ *
+ * Depending on the type of the field, they include the range and sum of numeric
+ * fields, the range of DATE and TIMESTAMP fields and the maximum length used by
+ * CHARACTER and VARCHAR fields. The number of distinct values is an estimation
+ * (HyperLogLog, about 2% of error).
+ *
+ * @see DBFParallelScan#getStatistics()
+ */
+public final class DBFColumnStatistics {
+
+	private final DBFField field;
+	private final boolean text;
+	private long count = 0;
+	private long nullCount = 0;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double sum = 0.0;
+	private long minTime = Long.MAX_VALUE;
+	private long maxTime = Long.MIN_VALUE;
+	private int maxLength = 0;
+	private final DBFHyperLogLog distinct = new DBFHyperLogLog();
+
+	DBFColumnStatistics(DBFField field) {
+		this.field = field;
+		this.text = field.getType() == DBFDataType.CHARACTER || field.getType() == DBFDataType.VARCHAR
+			|| field.getType() == DBFDataType.VARBINARY;
+	}
+
+	/**
+	 * Adds the value of a column of a record
+	 * @param layout layout of the record
+	 * @param column index of the column in the layout
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 */
+	void add(DBFRecordLayout layout, int column, byte[] data, int recordOffset) {
+		if (layout.isDeletedColumn(column)) {
+			addValue(data[recordOffset] == '*' ? 1 : 0);
+			return;
+		}
+		if (layout.isNullFlagSet(data, recordOffset, column)) {
+			this.nullCount++;
+			return;
+		}
+		int offset = recordOffset + layout.offsets[column];
+		int length = this.field.getLength();
+		switch (this.field.getType()) {
+		case NUMERIC:
+		case FLOATING_POINT:
+			if (DBFUtils.isNumericNull(data, offset, length)) {
+				this.nullCount++;
+			}
+			else {
+				addNumber(DBFUtils.parseDouble(data, offset, length));
+			}
+			break;
+		case LONG:
+		case AUTOINCREMENT:
+			addNumber(DBFUtils.toLittleEndianInt(data, offset));
+			break;
+		case DOUBLE:
+			addNumber(DBFUtils.toDouble(data, offset));
+			break;
+		case CURRENCY:
+			addNumber(DBFUtils.toLittleEndianInt(data, offset) / 10000.0);
+			break;
+		case DATE:
+			int epochDay = DBFUtils.toEpochDay(data, offset);
+			if (epochDay == DBFUtils.NOT_A_DATE) {
+				this.nullCount++;
+			}
+			else {
+				addTime(epochDay);
+			}
+			break;
+		case TIMESTAMP:
+		case TIMESTAMP_DBASE7:
+			int days = DBFUtils.toLittleEndianInt(data, offset);
+			int time = DBFUtils.toLittleEndianInt(data, offset + 4);
+			if (days == 0 && time == 0) {
+				this.nullCount++;
+			}
+			else {
+				addTime(DBFUtils.toEpochMillis(days, time));
+			}
+			break;
+		case LOGICAL:
+			Object value = DBFUtils.toBoolean(data[offset]);
+			if (value == null) {
+				this.nullCount++;
+			}
+			else {
+				addValue(((Boolean) value).booleanValue() ? 1 : 0);
+			}
+			break;
+		case VARCHAR:
+		case VARBINARY:
+			if (layout.varLengthBits[column] >= 0 && layout.nullFlagsOffset >= 0) {
+				addBytes(data, offset, layout.getVarLength(data, recordOffset, column));
+				break;
+			}
+			addBytes(data, offset, DBFUtils.trimRightSpacesLength(data, offset, length));
+			break;
+		default:
+			addBytes(data, offset, DBFUtils.trimRightSpacesLength(data, offset, length));
+			break;
+		}
+	}
+
+	private void addNumber(double value) {
+		if (value < this.min) {
+			this.min = value;
+		}
+		if (value > this.max) {
+			this.max = value;
+		}
+		this.sum += value;
+		addValue(Double.doubleToLongBits(value == 0.0 ? 0.0 : value));
+	}
+
+	private void addTime(long value) {
+		if (value < this.minTime) {
+			this.minTime = value;
+		}
+		if (value > this.maxTime) {
+			this.maxTime = value;
+		}
+		addValue(value);
+	}
+
+	private void addBytes(byte[] data, int offset, int length) {
+		if (length == 0) {
+			this.nullCount++;
+			return;
+		}
+		if (this.text && length > this.maxLength) {
+			this.maxLength = length;
+		}
+		this.count++;
+		this.distinct.add(DBFHyperLogLog.hash(data, offset, length));
+	}
+
+	private void addValue(long value) {
+		this.count++;
+		this.distinct.add(DBFHyperLogLog.hash(value));
+	}
+
+	/**
+	 * Adds the statistics of other records of the same column
+	 * @param other the statistics of the other records
+	 */
+	void merge(DBFColumnStatistics other) {
+		this.count += other.count;
+		this.nullCount += other.nullCount;
+		this.min = Math.min(this.min, other.min);
+		this.max = Math.max(this.max, other.max);
+		this.sum += other.sum;
+		this.minTime = Math.min(this.minTime, other.minTime);
+		this.maxTime = Math.max(this.maxTime, other.maxTime);
+		this.maxLength = Math.max(this.maxLength, other.maxLength);
+		this.distinct.merge(other.distinct);
+	}
+
+	/**
+	 * Returns the definition of the field
+	 * @return the field
+	 */
+	public DBFField getField() {
+		return new DBFField(this.field);
+	}
+
+	/**
+	 * Returns the number of values that are not null nor blank
+	 * @return the number of values
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the number of null or blank values
+	 * @return the number of null or blank values
+	 */
+	public long getNullCount() {
+		return this.nullCount;
+	}
+
+	/**
+	 * Returns an estimation of the number of distinct values, not counting null or blank values
+	 * @return the estimated number of distinct values
+	 */
+	public long getDistinctCount() {
+		return Math.min(this.count, this.distinct.estimate());
+	}
+
+	/**
+	 * Returns the minimum value of a numeric field
+	 * @return the minimum value, NaN if there are no values or the field is not numeric
+	 */
+	public double getMin() {
+		return this.min <= this.max ? this.min : Double.NaN;
+	}
+
+	/**
+	 * Returns the maximum value of a numeric field
+	 * @return the maximum value, NaN if there are no values or the field is not numeric
+	 */
+	public double getMax() {
+		return this.min <= this.max ? this.max : Double.NaN;
+	}
+
+	/**
+	 * Returns the sum of the values of a numeric field
+	 * @return the sum of the values, 0 if there are no values or the field is not numeric
+	 */
+	public double getSum() {
+		return this.sum;
+	}
+
+	/**
+	 * Returns the first date of a DATE or TIMESTAMP field
+	 * @return the first date, null if there are no values or the field is not a date
+	 */
+	public LocalDate getMinDate() {
+		LocalDateTime timestamp = getMinTimestamp();
+		return timestamp != null ? timestamp.toLocalDate() : null;
+	}
+
+	/**
+	 * Returns the last date of a DATE or TIMESTAMP field
+	 * @return the last date, null if there are no values or the field is not a date
+	 */
+	public LocalDate getMaxDate() {
+		LocalDateTime timestamp = getMaxTimestamp();
+		return timestamp != null ? timestamp.toLocalDate() : null;
+	}
+
+	/**
+	 * Returns the first timestamp of a DATE or TIMESTAMP field
+	 * @return the first timestamp, null if there are no values or the field is not a date
+	 */
+	public LocalDateTime getMinTimestamp() {
+		return this.minTime <= this.maxTime ? toLocalDateTime(this.minTime) : null;
+	}
+
+	/**
+	 * Returns the last timestamp of a DATE or TIMESTAMP field
+	 * @return the last timestamp, null if there are no values or the field is not a date
+	 */
+	public LocalDateTime getMaxTimestamp() {
+		return this.minTime <= this.maxTime ? toLocalDateTime(this.maxTime) : null;
+	}
+
+	/**
+	 * Returns the maximum number of bytes used by the values of a text field, without right spaces
+	 * @return the maximum length, 0 if there are no values or the field is not a text field
+	 */
+	public int getMaxLength() {
+		return this.maxLength;
+	}
+
+	private LocalDateTime toLocalDateTime(long value) {
+		if (this.field.getType() == DBFDataType.DATE) {
+			return LocalDate.ofEpochDay(value).atStartOfDay();
+		}
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(value, 1000L), (int) Math.floorMod(value, 1000L) * 1000000, ZoneOffset.UTC);
+	}
+
+	@Override
+	public String toString() {
+		return this.field.getName() + ": count=" + this.count + ", nulls=" + this.nullCount
+			+ ", distinct=" + getDistinctCount();
+	}
+}
@@ -0,0 +1,86 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+/**
+ * Storage used for the values of a column in a {@link DBFColumnBatch}.
+ */
+public enum DBFColumnType {
+	/**
+	 * int[], used for LONG and AUTOINCREMENT fields
+	 */
+	INT,
+	/**
+	 * long[], used for NUMERIC fields without decimals of up to 18 digits
+	 */
+	LONG,
+	/**
+	 * double[], used for NUMERIC fields with decimals, FLOATING_POINT, DOUBLE and CURRENCY fields
+	 */
+	DOUBLE,
+	/**
+	 * int[] with the number of days since 1970-01-01, used for DATE fields
+	 */
+	EPOCH_DAY,
+	/**
+	 * long[] with the milliseconds since 1970-01-01T00:00:00, without time zone conversion,
+	 * used for TIMESTAMP fields
+	 */
+	EPOCH_MILLIS,
+	/**
+	 * Bits packed in a byte[], used for LOGICAL fields and the pseudo column "deleted"
+	 */
+	BOOLEAN,
+	/**
+	 * The bytes of all the values in a byte[] and the offset of every value in an int[],
+	 * used for CHARACTER, VARCHAR and VARBINARY fields
+	 */
+	BYTES,
+	/**
+	 * Object[] with the values returned by {@link DBFReader#nextRecord()}, used for other fields
+	 */
+	OBJECT;
+
+	static DBFColumnType of(DBFField field) {
+		switch (field.getType()) {
+		case LONG:
+		case AUTOINCREMENT:
+			return INT;
+		case NUMERIC:
+			return field.getDecimalCount() == 0 && field.getLength() <= 18 ? LONG : DOUBLE;
+		case FLOATING_POINT:
+		case DOUBLE:
+		case CURRENCY:
+			return DOUBLE;
+		case DATE:
+			return EPOCH_DAY;
+		case TIMESTAMP:
+		case TIMESTAMP_DBASE7:
+			return EPOCH_MILLIS;
+		case LOGICAL:
+			return BOOLEAN;
+		case CHARACTER:
+		case VARCHAR:
+		case VARBINARY:
+			return BYTES;
+		default:
+			return OBJECT;
+		}
+	}
+}
@@ -0,0 +1,367 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Values of a column for all the rows of a {@link DBFColumnBatch}.
+ *
+ * Values are stored in primitive arrays, chosen by {@link #getType()}; only the
+ * first {@link DBFColumnBatch#getRowCount()} positions are valid. Null values are
+ * marked in a bitmap and have 0 (or an empty value) in the arrays.
+ * The arrays are reused by the next call to {@link DBFReader#nextBatch(DBFColumnBatch)}.
+ */
+public final class DBFColumnVector {
+
+	private final DBFField field;
+	private final DBFColumnType type;
+	private final Charset charset;
+	private final byte[] nulls;
+	private int[] ints;
+	private long[] longs;
+	private double[] doubles;
+	private byte[] booleans;
+	private byte[] bytes;
+	private int[] offsets;
+	private Object[] objects;
+
+	DBFColumnVector(DBFField field, boolean deletedColumn, int capacity, Charset charset) {
+		this.field = field;
+		this.type = deletedColumn ? DBFColumnType.BOOLEAN : DBFColumnType.of(field);
+		this.charset = charset;
+		this.nulls = new byte[(capacity + 7) >> 3];
+		switch (this.type) {
+		case INT:
+		case EPOCH_DAY:
+			this.ints = new int[capacity];
+			break;
+		case LONG:
+		case EPOCH_MILLIS:
+			this.longs = new long[capacity];
+			break;
+		case DOUBLE:
+			this.doubles = new double[capacity];
+			break;
+		case BOOLEAN:
+			this.booleans = new byte[(capacity + 7) >> 3];
+			break;
+		case BYTES:
+			this.bytes = new byte[Math.max(16, capacity * Math.min(field.getLength(), 16))];
+			this.offsets = new int[capacity + 1];
+			break;
+		default:
+			this.objects = new Object[capacity];
+			break;
+		}
+	}
+
+	/**
+	 * Returns the definition of the field
+	 * @return the field
+	 */
+	public DBFField getField() {
+		return new DBFField(this.field);
+	}
+
+	/**
+	 * Returns how the values are stored
+	 * @return the type of storage
+	 */
+	public DBFColumnType getType() {
+		return this.type;
+	}
+
+	/**
+	 * Checks if the value of a row is null
+	 * @param row the row
+	 * @return true if the value is null
+	 */
+	public boolean isNull(int row) {
+		return isBitSet(this.nulls, row);
+	}
+
+	/**
+	 * Returns the null bitmap: the value of row i is null if bit (i &amp; 7) of byte (i &gt;&gt; 3) is set
+	 * @return the null bitmap
+	 */
+	public byte[] getNulls() {
+		return this.nulls;
+	}
+
+	/**
+	 * Returns the values of INT and EPOCH_DAY columns
+	 * @return the values
+	 */
+	public int[] getInts() {
+		return check(this.ints, DBFColumnType.INT, DBFColumnType.EPOCH_DAY);
+	}
+
+	/**
+	 * Returns the values of LONG and EPOCH_MILLIS columns
+	 * @return the values
+	 */
+	public long[] getLongs() {
+		return check(this.longs, DBFColumnType.LONG, DBFColumnType.EPOCH_MILLIS);
+	}
+
+	/**
+	 * Returns the values of DOUBLE columns
+	 * @return the values
+	 */
+	public double[] getDoubles() {
+		return check(this.doubles, DBFColumnType.DOUBLE, DBFColumnType.DOUBLE);
+	}
+
+	/**
+	 * Returns the values of BOOLEAN columns: the value of row i is true if
+	 * bit (i &amp; 7) of byte (i &gt;&gt; 3) is set
+	 * @return the values
+	 */
+	public byte[] getBooleans() {
+		return check(this.booleans, DBFColumnType.BOOLEAN, DBFColumnType.BOOLEAN);
+	}
+
+	/**
+	 * Returns the bytes of the values of BYTES columns. The value of row i goes
+	 * from getOffsets()[i] to getOffsets()[i + 1]
+	 * @return the bytes of the values
+	 */
+	public byte[] getBytes() {
+		return check(this.bytes, DBFColumnType.BYTES, DBFColumnType.BYTES);
+	}
+
+	/**
+	 * Returns the offsets of the values of BYTES columns in {@link #getBytes()}
+	 * @return the offsets, one more than the number of rows
+	 */
+	public int[] getOffsets() {
+		return check(this.offsets, DBFColumnType.BYTES, DBFColumnType.BYTES);
+	}
+
+	/**
+	 * Returns the values of OBJECT columns
+	 * @return the values
+	 */
+	public Object[] getObjects() {
+		return check(this.objects, DBFColumnType.OBJECT, DBFColumnType.OBJECT);
+	}
+
+	/**
+	 * Reads the value of a BOOLEAN column
+	 * @param row the row
+	 * @return the value, false if null
+	 */
+	public boolean getBoolean(int row) {
+		return isBitSet(getBooleans(), row);
+	}
+
+	/**
+	 * Reads the value of a BYTES column as String, using the charset of the reader
+	 * @param row the row
+	 * @return the value, null if null
+	 */
+	public String getString(int row) {
+		if (isNull(row)) {
+			return null;
+		}
+		int start = getOffsets()[row];
+		return new String(this.bytes, start, this.offsets[row + 1] - start, this.charset);
+	}
+
+	private <T> T check(T values, DBFColumnType expected, DBFColumnType other) {
+		if (this.type != expected && this.type != other) {
+			throw new DBFException("Column " + this.field.getName() + " is stored as " + this.type);
+		}
+		return values;
+	}
+
+	/**
+	 * Decodes the column from the records of a batch
+	 * @param reader the reader, used to decode OBJECT columns and for its options
+	 * @param layout layout of the records
+	 * @param column index of the column in the layout
+	 * @param records the records
+	 * @param recordSize size of every record in records
+	 * @param rows number of records
+	 */
+	void load(DBFReader reader, DBFRecordLayout layout, int column, byte[] records, int recordSize, int rows) {
+		Arrays.fill(this.nulls, 0, (rows + 7) >> 3, (byte) 0);
+		int fieldOffset = layout.offsets[column];
+		int length = this.field.getLength();
+		switch (this.type) {
+		case INT:
+			for (int i = 0, record = 0; i < rows; i++, record += recordSize) {
+				this.ints[i] = isNullFlagSet(layout, column, records, record, i) ? 0
+					: DBFUtils.toLittleEndianInt(records, record + fieldOffset);
+			}
+			break;
+		case LONG:
+			for (int i = 0, record = 0; i < rows; i++, record += recordSize) {
+				int offset = record + fieldOffset;
+				if (isNullFlagSet(layout, column, records, record, i) || isNumericNull(records, offset, length, i)) {
+					this.longs[i] = 0;
+				}
+				else {
+					this.longs[i] = DBFUtils.parseLong(records, offset, length);
+				}
+			}
+			break;
+		case DOUBLE:
+			loadDoubles(layout, column, records, recordSize, rows);
+			break;
+		case EPOCH_DAY:
+			for (int i = 0, record = 0; i < rows; i++, record += recordSize) {
+				int epochDay = isNullFlagSet(layout, column, records, record, i) ? 0
+					: DBFUtils.toEpochDay(records, record + fieldOffset);
+				if (epochDay == DBFUtils.NOT_A_DATE) {
+					setBit(this.nulls, i);
+					epochDay = 0;
+				}
+				this.ints[i] = epochDay;
+			}
+			break;
+		case EPOCH_MILLIS:
+			for (int i = 0, record = 0; i < rows; i++, record += recordSize) {
+				int offset = record + fieldOffset;
+				int days = DBFUtils.toLittleEndianInt(records, offset);
+				int time = DBFUtils.toLittleEndianInt(records, offset + 4);
+				if (isNullFlagSet(layout, column, records, record, i) || (days == 0 && time == 0)) {
+					setBit(this.nulls, i);
+					this.longs[i] = 0;
+				}
+				else {
+					this.longs[i] = DBFUtils.toEpochMillis(days, time);
+				}
+			}
+			break;
+		case BOOLEAN:
+			loadBooleans(layout, column, records, recordSize, rows);
+			break;
+		case BYTES:
+			loadBytes(reader, layout, column, records, recordSize, rows);
+			break;
+		default:
+			for (int i = 0, record = 0; i < rows; i++, record += recordSize) {
+				this.objects[i] = reader.getColumnValue(layout, records, record, column);
+				if (this.objects[i] == null) {
+					setBit(this.nulls, i);
+				}
+			}
+			break;
+		}
+	}
+
+	private void loadDoubles(DBFRecordLayout layout, int column, byte[] records, int recordSize, int rows) {
+		int fieldOffset = layout.offsets[column];
+		int length = this.field.getLength();
+		DBFDataType dataType = this.field.getType();
+		for (int i = 0, record = 0; i < rows; i++, record += recordSize) {
+			int offset = record + fieldOffset;
+			double value = 0.0;
+			if (!isNullFlagSet(layout, column, records, record, i)) {
+				if (dataType == DBFDataType.DOUBLE) {
+					value = DBFUtils.toDouble(records, offset);
+				}
+				else if (dataType == DBFDataType.CURRENCY) {
+					value = DBFUtils.toLittleEndianInt(records, offset) / 10000.0;
+				}
+				else if (!isNumericNull(records, offset, length, i)) {
+					value = DBFUtils.parseDouble(records, offset, length);
+				}
+			}
+			this.doubles[i] = value;
+		}
+	}
+
+	private void loadBooleans(DBFRecordLayout layout, int column, byte[] records, int recordSize, int rows) {
+		Arrays.fill(this.booleans, 0, (rows + 7) >> 3, (byte) 0);
+		boolean deletedColumn = layout.isDeletedColumn(column);
+		int fieldOffset = layout.offsets[column];
+		for (int i = 0, record = 0; i < rows; i++, record += recordSize) {
+			if (deletedColumn) {
+				if (records[record] == '*') {
+					setBit(this.booleans, i);
+				}
+			}
+			else if (!isNullFlagSet(layout, column, records, record, i)) {
+				Object value = DBFUtils.toBoolean(records[record + fieldOffset]);
+				if (value == null) {
+					setBit(this.nulls, i);
+				}
+				else if (((Boolean) value).booleanValue()) {
+					setBit(this.booleans, i);
+				}
+			}
+		}
+	}
+
+	private void loadBytes(DBFReader reader, DBFRecordLayout layout, int column, byte[] records, int recordSize, int rows) {
+		int fieldOffset = layout.offsets[column];
+		int length = this.field.getLength();
+		boolean varLength = layout.varLengthBits[column] >= 0 && layout.nullFlagsOffset >= 0;
+		boolean trim = reader.isTrimRightSpaces() && this.field.getType() == DBFDataType.CHARACTER;
+		int position = 0;
+		for (int i = 0, record = 0; i < rows; i++, record += recordSize) {
+			this.offsets[i] = position;
+			if (isNullFlagSet(layout, column, records, record, i)) {
+				continue;
+			}
+			int offset = record + fieldOffset;
+			int size = length;
+			if (varLength) {
+				size = layout.getVarLength(records, record, column);
+			}
+			else if (trim) {
+				size = DBFUtils.trimRightSpacesLength(records, offset, length);
+			}
+			if (position + size > this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, Math.max(position + size, this.bytes.length * 2));
+			}
+			System.arraycopy(records, offset, this.bytes, position, size);
+			position += size;
+		}
+		this.offsets[rows] = position;
+	}
+
+	private boolean isNullFlagSet(DBFRecordLayout layout, int column, byte[] records, int record, int row) {
+		if (layout.isNullFlagSet(records, record, column)) {
+			setBit(this.nulls, row);
+			return true;
+		}
+		return false;
+	}
+
+	private boolean isNumericNull(byte[] records, int offset, int length, int row) {
+		if (DBFUtils.isNumericNull(records, offset, length)) {
+			setBit(this.nulls, row);
+			return true;
+		}
+		return false;
+	}
+
+	private static void setBit(byte[] bits, int index) {
+		bits[index >> 3] |= 1 << (index & 7);
+	}
+
+	private static boolean isBitSet(byte[] bits, int index) {
+		return (bits[index >> 3] & (1 << (index & 7))) != 0;
+	}
+}
@@ -0,0 +1,362 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tag of a FoxPro index: a tag of a compound index (.cdx) or a single index (.idx).
+ *
+ * Leaf pages of compact indexes store the keys compressed: every key stores the number of
+ * bytes shared with the previous key and the number of trailing blanks, and only the
+ * remaining bytes are stored at the end of the page.
+ * Numeric, date and timestamp keys are stored as doubles and integer keys as ints,
+ * big endian and with the sign bit flipped so they can be compared as bytes.
+ * Keys of nullable fields have a leading byte, 0x80 for not null values.
+ */
+final class DBFCompactIndexTag extends DBFIndexTag {
+
+	private static final int UNIQUE = 0x01;
+	private static final int COMPACT = 0x20;
+	private static final int LEAF = 0x02;
+	private static final int JULIAN_EPOCH_DAY = 2440588;
+	private static final double MILLISECS_PER_DAY = 24 * 60 * 60 * 1000;
+
+	private enum KeyType {
+		CHARACTER, INTEGER, DOUBLE, DATE, TIMESTAMP, LOGICAL, UNKNOWN
+	}
+
+	private final boolean compact;
+	private final KeyType keyType;
+	private final boolean upper;
+	private final int prefixLength;
+	private final byte trailByte;
+
+	private DBFCompactIndexTag(DBFIndexFile indexFile, String name, String keyExpression, String forExpression,
+			int keyLength, long rootOffset, int options, boolean descending, DBFField keyField) {
+		super(indexFile, name, keyExpression, forExpression, keyLength, rootOffset, (options & UNIQUE) != 0, descending);
+		this.compact = (options & COMPACT) != 0;
+		this.upper = DBFIndexFile.isUpper(keyExpression);
+		this.keyType = keyField != null ? keyType(keyField, keyLength) : KeyType.UNKNOWN;
+		int dataLength = keyLength;
+		switch (this.keyType) {
+		case CHARACTER:
+			dataLength = keyField.getLength();
+			break;
+		case INTEGER:
+			dataLength = 4;
+			break;
+		case DOUBLE:
+		case DATE:
+		case TIMESTAMP:
+			dataLength = 8;
+			break;
+		case LOGICAL:
+			dataLength = 1;
+			break;
+		default:
+			break;
+		}
+		this.prefixLength = keyLength > dataLength ? keyLength - dataLength : 0;
+		this.trailByte = this.keyType == KeyType.CHARACTER || this.keyType == KeyType.UNKNOWN ? (byte) ' ' : 0;
+	}
+
+	private static KeyType keyType(DBFField field, int keyLength) {
+		switch (field.getType()) {
+		case CHARACTER:
+		case VARCHAR:
+			return KeyType.CHARACTER;
+		case LONG:
+		case AUTOINCREMENT:
+			return keyLength < 8 ? KeyType.INTEGER : KeyType.DOUBLE;
+		case NUMERIC:
+		case FLOATING_POINT:
+		case DOUBLE:
+		case CURRENCY:
+			return KeyType.DOUBLE;
+		case DATE:
+			return KeyType.DATE;
+		case TIMESTAMP:
+		case TIMESTAMP_DBASE7:
+			return KeyType.TIMESTAMP;
+		case LOGICAL:
+			return KeyType.LOGICAL;
+		default:
+			return KeyType.UNKNOWN;
+		}
+	}
+
+	/**
+	 * Reads the tags of a compound index. The tag directory is an index whose keys
+	 * are the names of the tags and whose record numbers are the positions of the tag headers.
+	 * @param indexFile the index file
+	 * @return the tags
+	 * @throws IOException if the file can't be read
+	 */
+	static List<DBFIndexTag> readTags(DBFIndexFile indexFile) throws IOException {
+		DBFCompactIndexTag directory = read(indexFile, "", 0);
+		List<DBFIndexTag> tags = new ArrayList<DBFIndexTag>();
+		directory.readDirectory(directory.rootOffset, tags);
+		return tags;
+	}
+
+	private void readDirectory(long offset, List<DBFIndexTag> tags) throws IOException {
+		Node node = readNode(offset);
+		if (!node.leaf) {
+			for (long child : node.children) {
+				readDirectory(child, tags);
+			}
+			return;
+		}
+		for (int i = 0; i < node.count; i++) {
+			String name = DBFIndexFile.readString(node.keys, i * this.keyLength, this.keyLength);
+			// record numbers are stored starting from 1
+			tags.add(read(getIndexFile(), name, node.records[i] + 1L));
+		}
+	}
+
+	/**
+	 * Reads the header of a tag
+	 * @param indexFile the index file
+	 * @param name name of the tag
+	 * @param headerOffset position of the header in the file
+	 * @return the tag
+	 * @throws IOException if the file can't be read
+	 */
+	static DBFCompactIndexTag read(DBFIndexFile indexFile, String name, long headerOffset) throws IOException {
+		byte[] header = new byte[DBFIndexFile.PAGE_SIZE];
+		indexFile.read(headerOffset, header);
+		long rootOffset = DBFUtils.toLittleEndianInt(header, 0) & 0xFFFFFFFFL;
+		int keyLength = (header[12] & 0xff) | (header[13] & 0xff) << 8;
+		int options = header[14] & 0xff;
+		if (keyLength <= 0 || keyLength > 240) {
+			throw new DBFException("Invalid key length in index " + name + ": " + keyLength);
+		}
+		String keyExpression;
+		String forExpression;
+		boolean descending = false;
+		if ((options & COMPACT) != 0) {
+			descending = ((header[502] & 0xff) | (header[503] & 0xff) << 8) != 0;
+			int forLength = (header[506] & 0xff) | (header[507] & 0xff) << 8;
+			int keyExpressionLength = (header[510] & 0xff) | (header[511] & 0xff) << 8;
+			byte[] expressions = new byte[DBFIndexFile.PAGE_SIZE];
+			indexFile.read(headerOffset + DBFIndexFile.PAGE_SIZE, expressions);
+			keyExpression = DBFIndexFile.readString(expressions, 0, keyExpressionLength);
+			forExpression = DBFIndexFile.readString(expressions, keyExpressionLength, forLength);
+		}
+		else {
+			keyExpression = DBFIndexFile.readString(header, 16, 220);
+			forExpression = DBFIndexFile.readString(header, 236, 220);
+		}
+		return new DBFCompactIndexTag(indexFile, name, keyExpression, forExpression.isEmpty() ? null : forExpression,
+			keyLength, rootOffset, options, descending, indexFile.findKeyField(keyExpression));
+	}
+
+	@Override
+	Node readNode(long offset) throws IOException {
+		byte[] page = new byte[DBFIndexFile.PAGE_SIZE];
+		getIndexFile().read(offset, page);
+		int attributes = (page[0] & 0xff) | (page[1] & 0xff) << 8;
+		int count = (page[2] & 0xff) | (page[3] & 0xff) << 8;
+		int entryLength = this.keyLength + (this.compact ? 8 : 4);
+		if (count < 0 || (!this.compact || (attributes & LEAF) == 0) && 12 + count * entryLength > page.length) {
+			throw new DBFException("Invalid index page at " + offset);
+		}
+		byte[] keys = new byte[count * this.keyLength];
+		if ((attributes & LEAF) != 0) {
+			int[] records = new int[count];
+			if (this.compact) {
+				readCompactLeaf(page, count, keys, records);
+			}
+			else {
+				for (int i = 0; i < count; i++) {
+					System.arraycopy(page, 12 + i * entryLength, keys, i * this.keyLength, this.keyLength);
+					records[i] = readBigEndianInt(page, 12 + i * entryLength + this.keyLength) - 1;
+				}
+			}
+			return new Node(count, keys, records);
+		}
+		long[] children = new long[count];
+		for (int i = 0; i < count; i++) {
+			int entryOffset = 12 + i * entryLength;
+			System.arraycopy(page, entryOffset, keys, i * this.keyLength, this.keyLength);
+			// compact pages have the record number before the child
+			children[i] = readBigEndianInt(page, entryOffset + entryLength - 4) & 0xFFFFFFFFL;
+		}
+		return new Node(count, keys, children);
+	}
+
+	private void readCompactLeaf(byte[] page, int count, byte[] keys, int[] records) {
+		long recordMask = DBFUtils.toLittleEndianInt(page, 14) & 0xFFFFFFFFL;
+		int duplicateMask = page[18] & 0xff;
+		int trailMask = page[19] & 0xff;
+		int recordBits = page[20] & 0xff;
+		int duplicateBits = page[21] & 0xff;
+		int entryLength = page[23] & 0xff;
+		if (entryLength <= 0 || entryLength > 8 || 24 + count * entryLength > page.length) {
+			throw new DBFException("Invalid index leaf page");
+		}
+		// key bytes are stored from the end of the page backwards
+		int keyPosition = page.length;
+		for (int i = 0; i < count; i++) {
+			long value = 0;
+			for (int j = entryLength - 1; j >= 0; j--) {
+				value = value << 8 | (page[24 + i * entryLength + j] & 0xff);
+			}
+			int duplicates = (int) ((value >>> recordBits) & duplicateMask);
+			int trail = (int) ((value >>> (recordBits + duplicateBits)) & trailMask);
+			int stored = this.keyLength - duplicates - trail;
+			int keyOffset = i * this.keyLength;
+			keyPosition -= stored;
+			if (stored < 0 || keyPosition < 24 + count * entryLength || (i == 0 && duplicates > 0)) {
+				throw new DBFException("Invalid index leaf page");
+			}
+			if (duplicates > 0) {
+				System.arraycopy(keys, keyOffset - this.keyLength, keys, keyOffset, duplicates);
+			}
+			System.arraycopy(page, keyPosition, keys, keyOffset + duplicates, stored);
+			Arrays.fill(keys, keyOffset + duplicates + stored, keyOffset + this.keyLength, this.trailByte);
+			records[i] = (int) (value & recordMask) - 1;
+		}
+	}
+
+	private static int readBigEndianInt(byte[] data, int offset) {
+		return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+			| (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+	}
+
+	@Override
+	byte[] encodeKey(Object key) {
+		byte[] result = new byte[this.keyLength];
+		KeyType type = this.keyType != KeyType.UNKNOWN ? this.keyType : valueType(key);
+		int prefix = this.keyType != KeyType.UNKNOWN ? this.prefixLength : 0;
+		if (prefix > 0) {
+			result[0] = (byte) 0x80;
+		}
+		switch (type) {
+		case CHARACTER:
+			String text = key.toString();
+			if (this.upper) {
+				text = text.toUpperCase(Locale.ROOT);
+			}
+			byte[] bytes = text.getBytes(getIndexFile().getCharset());
+			Arrays.fill(result, prefix, result.length, (byte) ' ');
+			System.arraycopy(bytes, 0, result, prefix, Math.min(bytes.length, result.length - prefix));
+			break;
+		case INTEGER:
+			writeBigEndian(result, prefix, toNumber(key).intValue() ^ Integer.MIN_VALUE, 4);
+			break;
+		case DOUBLE:
+			writeDouble(result, prefix, toNumber(key).doubleValue());
+			break;
+		case DATE:
+			writeDouble(result, prefix, toEpochDay(key) + JULIAN_EPOCH_DAY);
+			break;
+		case TIMESTAMP:
+			writeDouble(result, prefix, toEpochMillis(key) / MILLISECS_PER_DAY + JULIAN_EPOCH_DAY);
+			break;
+		case LOGICAL:
+			if (!(key instanceof Boolean)) {
+				throw invalidKey(key);
+			}
+			result[prefix] = (byte) (((Boolean) key).booleanValue() ? 'T' : 'F');
+			break;
+		default:
+			throw invalidKey(key);
+		}
+		return result;
+	}
+
+	private KeyType valueType(Object key) {
+		if (key instanceof String) {
+			return KeyType.CHARACTER;
+		}
+		if (key instanceof Number) {
+			return this.keyLength == 4 ? KeyType.INTEGER : KeyType.DOUBLE;
+		}
+		if (key instanceof LocalDate || (key instanceof Date && this.keyLength == 8)) {
+			return KeyType.DATE;
+		}
+		if (key instanceof LocalDateTime) {
+			return KeyType.TIMESTAMP;
+		}
+		if (key instanceof Boolean) {
+			return KeyType.LOGICAL;
+		}
+		throw invalidKey(key);
+	}
+
+	private Number toNumber(Object key) {
+		if (!(key instanceof Number)) {
+			throw invalidKey(key);
+		}
+		return (Number) key;
+	}
+
+	private long toEpochDay(Object key) {
+		if (key instanceof LocalDate) {
+			return ((LocalDate) key).toEpochDay();
+		}
+		if (key instanceof Date) {
+			Calendar calendar = new GregorianCalendar();
+			calendar.setTime((Date) key);
+			return LocalDate.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+				calendar.get(Calendar.DAY_OF_MONTH)).toEpochDay();
+		}
+		throw invalidKey(key);
+	}
+
+	private long toEpochMillis(Object key) {
+		if (key instanceof LocalDateTime) {
+			LocalDateTime dateTime = (LocalDateTime) key;
+			return (long) (dateTime.toLocalDate().toEpochDay() * MILLISECS_PER_DAY) + dateTime.toLocalTime().toNanoOfDay() / 1000000;
+		}
+		if (key instanceof Date) {
+			Calendar calendar = new GregorianCalendar();
+			calendar.setTime((Date) key);
+			return ((Date) key).getTime() + calendar.get(Calendar.ZONE_OFFSET) + calendar.get(Calendar.DST_OFFSET);
+		}
+		throw invalidKey(key);
+	}
+
+	private static void writeDouble(byte[] data, int offset, double value) {
+		long bits = Double.doubleToLongBits(value == 0.0 ? 0.0 : value);
+		writeBigEndian(data, offset, bits >= 0 ? bits ^ Long.MIN_VALUE : ~bits, 8);
+	}
+
+	private static void writeBigEndian(byte[] data, int offset, long value, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			data[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	private DBFException invalidKey(Object key) {
+		return new DBFException("Invalid key for index " + getName() + ": " + key);
+	}
+}
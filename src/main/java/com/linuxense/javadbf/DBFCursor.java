@@ -0,0 +1,332 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Forward only cursor over the records of a DBFReader.
+ *
+ * The cursor keeps a single record buffer, that is reused for every record,
+ * and values are decoded from the raw record bytes only when a getter is called.
+ * Primitive getters (getInt, getLong, getDouble, getBoolean) and isNull don't
+ * allocate any object for the usual numeric, logical, date and character fields.
+ * <p>
+ * Column indexes are the same used in {@link DBFReader#nextRecord()}, so if a
+ * projection is set in the reader only the projected fields are available.
+ * </p>
+ * <pre>
+ * DBFCursor cursor = reader.createCursor();
+ * while (cursor.next()) {
+ *     long id = cursor.getLong(0);
+ *     ...
+ * }
+ * </pre>
+ */
+public class DBFCursor {
+
+	private static final long MILLISECS_PER_DAY = 24*60*60*1000;
+
+	private final DBFReader reader;
+	private final DBFRecordLayout layout;
+	private final Map<String, Integer> mapFieldNames;
+	private boolean hasRecord = false;
+
+	DBFCursor(DBFReader reader) {
+		this.reader = reader;
+		this.layout = reader.getLayout();
+		this.mapFieldNames = reader.getMapFieldNames();
+	}
+
+	/**
+	 * Moves the cursor to the next record
+	 * @return true if there is a record, false if there are no more records
+	 */
+	public boolean next() {
+		this.hasRecord = this.reader.fetchRecord();
+		return this.hasRecord;
+	}
+
+	/**
+	 * Returns the number of columns
+	 * @return the number of columns
+	 */
+	public int getFieldCount() {
+		return this.layout.fields.length;
+	}
+
+	/**
+	 * Returns the index of a column by name (case insensitive)
+	 * @param columnName the name of the column
+	 * @return the index of the column
+	 */
+	public int getColumnIndex(String columnName) {
+		Objects.requireNonNull(columnName);
+		Integer index = this.mapFieldNames.get(columnName);
+		if (index == null) {
+			throw new DBFFieldNotFoundException("No field found for:" + columnName);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * Check if the current record is deleted.
+	 * @return true if the record is deleted
+	 */
+	public boolean isDeleted() {
+		return data()[this.reader.getRecordOffset()] == '*';
+	}
+
+	/**
+	 * Checks if the value of a column is null
+	 * @param columnIndex index of the column
+	 * @return true if the value is null
+	 */
+	public boolean isNull(int columnIndex) {
+		byte[] data = data();
+		DBFField field = field(columnIndex);
+		if (isNullFlagSet(data, columnIndex)) {
+			return true;
+		}
+		int offset = this.reader.getRecordOffset() + this.layout.offsets[columnIndex];
+		switch (field.getType()) {
+		case CHARACTER:
+		case VARCHAR:
+		case VARBINARY:
+		case LONG:
+		case AUTOINCREMENT:
+		case CURRENCY:
+		case DOUBLE:
+		case NULL_FLAGS:
+			return false;
+		case LOGICAL:
+			return !this.layout.isDeletedColumn(columnIndex) && DBFUtils.toBoolean(data[offset]) == null;
+		case NUMERIC:
+		case FLOATING_POINT:
+			return DBFUtils.isNumericNull(data, offset, field.getLength());
+		case DATE:
+			return !isDigits(data, offset, field.getLength());
+		case TIMESTAMP:
+		case TIMESTAMP_DBASE7:
+			return DBFUtils.toLittleEndianInt(data, offset) == 0 && DBFUtils.toLittleEndianInt(data, offset + 4) == 0;
+		default:
+			return getObject(columnIndex) == null;
+		}
+	}
+
+	/**
+	 * Reads the value of a column as int
+	 * @param columnIndex index of the column
+	 * @return the value as int, 0 if null
+	 */
+	public int getInt(int columnIndex) {
+		return (int) getLong(columnIndex);
+	}
+
+	/**
+	 * Reads the value of a column as long
+	 * @param columnIndex index of the column
+	 * @return the value as long, 0 if null
+	 */
+	public long getLong(int columnIndex) {
+		byte[] data = data();
+		DBFField field = field(columnIndex);
+		if (isNullFlagSet(data, columnIndex)) {
+			return 0;
+		}
+		int offset = this.reader.getRecordOffset() + this.layout.offsets[columnIndex];
+		switch (field.getType()) {
+		case NUMERIC:
+		case FLOATING_POINT:
+			return DBFUtils.parseLong(data, offset, field.getLength());
+		case LONG:
+		case AUTOINCREMENT:
+			return DBFUtils.toLittleEndianInt(data, offset);
+		case DOUBLE:
+			return (long) DBFUtils.toDouble(data, offset);
+		default:
+			Object value = getObject(columnIndex);
+			if (value == null) {
+				return 0;
+			}
+			return toNumber(value, columnIndex).longValue();
+		}
+	}
+
+	/**
+	 * Reads the value of a column as double
+	 * @param columnIndex index of the column
+	 * @return the value as double, 0.0 if null
+	 */
+	public double getDouble(int columnIndex) {
+		byte[] data = data();
+		DBFField field = field(columnIndex);
+		if (isNullFlagSet(data, columnIndex)) {
+			return 0.0;
+		}
+		int offset = this.reader.getRecordOffset() + this.layout.offsets[columnIndex];
+		switch (field.getType()) {
+		case NUMERIC:
+		case FLOATING_POINT:
+			return DBFUtils.parseDouble(data, offset, field.getLength());
+		case LONG:
+		case AUTOINCREMENT:
+			return DBFUtils.toLittleEndianInt(data, offset);
+		case DOUBLE:
+			return DBFUtils.toDouble(data, offset);
+		default:
+			Object value = getObject(columnIndex);
+			if (value == null) {
+				return 0.0;
+			}
+			return toNumber(value, columnIndex).doubleValue();
+		}
+	}
+
+	/**
+	 * Reads the value of a column as boolean
+	 * @param columnIndex index of the column
+	 * @return the value as boolean, false if null
+	 */
+	public boolean getBoolean(int columnIndex) {
+		byte[] data = data();
+		DBFField field = field(columnIndex);
+		if (field.getType() != DBFDataType.LOGICAL) {
+			throw new DBFException("Unsupported type for Boolean at column:" + columnIndex + " " + field.getType());
+		}
+		if (isNullFlagSet(data, columnIndex)) {
+			return false;
+		}
+		int offset = this.reader.getRecordOffset() + this.layout.offsets[columnIndex];
+		if (this.layout.isDeletedColumn(columnIndex)) {
+			return isDeleted();
+		}
+		byte b = data[offset];
+		return b == 'Y' || b == 'y' || b == 'T' || b == 't';
+	}
+
+	/**
+	 * Reads the value of a DATE or TIMESTAMP column as the number of days since 1970-01-01
+	 * @param columnIndex index of the column
+	 * @return the number of days, 0 if null
+	 * @see DBFDateMode#EPOCH
+	 */
+	public int getEpochDay(int columnIndex) {
+		byte[] data = data();
+		DBFField field = field(columnIndex);
+		if (field.getType() == DBFDataType.DATE) {
+			if (isNullFlagSet(data, columnIndex)) {
+				return 0;
+			}
+			int epochDay = DBFUtils.toEpochDay(data, this.reader.getRecordOffset() + this.layout.offsets[columnIndex]);
+			return epochDay == DBFUtils.NOT_A_DATE ? 0 : epochDay;
+		}
+		return (int) Math.floorDiv(getEpochMillis(columnIndex), MILLISECS_PER_DAY);
+	}
+
+	/**
+	 * Reads the value of a DATE or TIMESTAMP column as the number of milliseconds since 1970-01-01T00:00:00,
+	 * without time zone conversion
+	 * @param columnIndex index of the column
+	 * @return the number of milliseconds, 0 if null
+	 * @see DBFDateMode#EPOCH
+	 */
+	public long getEpochMillis(int columnIndex) {
+		byte[] data = data();
+		DBFField field = field(columnIndex);
+		switch (field.getType()) {
+		case DATE:
+			return getEpochDay(columnIndex) * MILLISECS_PER_DAY;
+		case TIMESTAMP:
+		case TIMESTAMP_DBASE7:
+			if (isNullFlagSet(data, columnIndex)) {
+				return 0;
+			}
+			int offset = this.reader.getRecordOffset() + this.layout.offsets[columnIndex];
+			int days = DBFUtils.toLittleEndianInt(data, offset);
+			int time = DBFUtils.toLittleEndianInt(data, offset + 4);
+			return days == 0 && time == 0 ? 0 : DBFUtils.toEpochMillis(days, time);
+		default:
+			throw new DBFException("Unsupported type for date at column:" + columnIndex + " " + field.getType());
+		}
+	}
+
+	/**
+	 * Reads the value of a column as String
+	 * @param columnIndex index of the column
+	 * @return the value as String
+	 */
+	public String getString(int columnIndex) {
+		Object value = getObject(columnIndex);
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof String) {
+			return (String) value;
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Reads the value of a column as the type returned by {@link DBFReader#nextRecord()}
+	 * @param columnIndex index of the column
+	 * @return the value
+	 */
+	public Object getObject(int columnIndex) {
+		byte[] data = data();
+		field(columnIndex);
+		return this.reader.getColumnValue(this.layout, data, this.reader.getRecordOffset(), columnIndex);
+	}
+
+	private byte[] data() {
+		if (!this.hasRecord) {
+			throw new IllegalStateException("No current record, call next() first");
+		}
+		return this.reader.getRecordData();
+	}
+
+	private DBFField field(int columnIndex) {
+		if (columnIndex < 0 || columnIndex >= this.layout.fields.length) {
+			throw new IllegalArgumentException("Invalid index field: (" + columnIndex+"). Valid range is 0 to " + (this.layout.fields.length - 1));
+		}
+		return this.layout.fields[columnIndex];
+	}
+
+	private boolean isNullFlagSet(byte[] data, int columnIndex) {
+		return this.layout.isNullFlagSet(data, this.reader.getRecordOffset(), columnIndex);
+	}
+
+	private static boolean isDigits(byte[] data, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (data[i] < '0' || data[i] > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Number toNumber(Object value, int columnIndex) {
+		if (value instanceof Number) {
+			return (Number) value;
+		}
+		throw new DBFException("Unsupported type for Number at column:" + columnIndex + " "
+				+ value.getClass().getCanonicalName());
+	}
+}
@@ -0,0 +1,42 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+/**
+ * Java type used for the values of DATE and TIMESTAMP fields.
+ *
+ * EPOCH and JAVA_TIME use the ISO (proleptic gregorian) calendar, so dates before
+ * 1582-10-15 are different than the ones returned as java.util.Date.
+ */
+public enum DBFDateMode {
+	/**
+	 * Values are returned as java.util.Date, in the default time zone (default)
+	 */
+	DATE,
+	/**
+	 * DATE values are returned as Integer, the number of days since 1970-01-01, and
+	 * TIMESTAMP values as Long, the milliseconds since 1970-01-01T00:00:00 as if the
+	 * stored date and time were UTC. No time zone conversion is done.
+	 */
+	EPOCH,
+	/**
+	 * DATE values are returned as java.time.LocalDate and TIMESTAMP values as java.time.LocalDateTime
+	 */
+	JAVA_TIME;
+}
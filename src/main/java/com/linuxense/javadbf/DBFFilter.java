@@ -0,0 +1,317 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.nio.charset.Charset;
+import java.util.Objects;
+
+/**
+ * Condition over the fields of a record, evaluated directly over the raw bytes
+ * of the record so records that doesn't match are skipped without decoding them.
+ * <p>
+ * Comparisons never match null values. Text values are compared ignoring
+ * trailing spaces, numbers by its decimal value, DATE fields by day and
+ * TIMESTAMP fields by instant.
+ * </p>
+ * <pre>
+ * reader.setFilter(DBFFilter.and(
+ *     DBFFilter.between("PRICE", 10, 20),
+ *     DBFFilter.startsWith("NAME", "A")));
+ * </pre>
+ * Supported field types are CHARACTER, VARCHAR, NUMERIC, FLOATING_POINT, LONG,
+ * AUTOINCREMENT, CURRENCY, DOUBLE, DATE, TIMESTAMP and LOGICAL.
+ */
+public abstract class DBFFilter {
+
+	DBFFilter() {
+		super();
+	}
+
+	/**
+	 * Builds the predicate for a concrete record layout
+	 * @param layout layout of the record
+	 * @param charset charset used to encode text values
+	 * @return the predicate
+	 */
+	abstract DBFRecordPredicate compile(DBFRecordLayout layout, Charset charset);
+
+	/**
+	 * Field equals to value
+	 * @param fieldName name of the field (case insensitive)
+	 * @param value value to compare with
+	 * @return the filter
+	 */
+	public static DBFFilter equalTo(String fieldName, Object value) {
+		Objects.requireNonNull(value, "value");
+		return new InFilter(fieldName, new Object[] {value});
+	}
+
+	/**
+	 * Field equals to any of the values
+	 * @param fieldName name of the field (case insensitive)
+	 * @param values values to compare with
+	 * @return the filter
+	 */
+	public static DBFFilter in(String fieldName, Object... values) {
+		for (Object value : values) {
+			Objects.requireNonNull(value, "value");
+		}
+		return new InFilter(fieldName, values.clone());
+	}
+
+	/**
+	 * Field between min and max, both inclusive
+	 * @param fieldName name of the field (case insensitive)
+	 * @param min minimum value, null for no minimum
+	 * @param max maximum value, null for no maximum
+	 * @return the filter
+	 */
+	public static DBFFilter between(String fieldName, Object min, Object max) {
+		return new RangeFilter(fieldName, min, max);
+	}
+
+	/**
+	 * Field greater or equal than min
+	 * @param fieldName name of the field (case insensitive)
+	 * @param min minimum value
+	 * @return the filter
+	 */
+	public static DBFFilter greaterOrEqual(String fieldName, Object min) {
+		Objects.requireNonNull(min, "min");
+		return new RangeFilter(fieldName, min, null);
+	}
+
+	/**
+	 * Field less or equal than max
+	 * @param fieldName name of the field (case insensitive)
+	 * @param max maximum value
+	 * @return the filter
+	 */
+	public static DBFFilter lessOrEqual(String fieldName, Object max) {
+		Objects.requireNonNull(max, "max");
+		return new RangeFilter(fieldName, null, max);
+	}
+
+	/**
+	 * Text field starts with prefix
+	 * @param fieldName name of the field (case insensitive)
+	 * @param prefix the prefix
+	 * @return the filter
+	 */
+	public static DBFFilter startsWith(String fieldName, String prefix) {
+		Objects.requireNonNull(prefix, "prefix");
+		return new PrefixFilter(fieldName, prefix);
+	}
+
+	/**
+	 * Field is null
+	 * @param fieldName name of the field (case insensitive)
+	 * @return the filter
+	 */
+	public static DBFFilter isNull(String fieldName) {
+		return new NullFilter(fieldName);
+	}
+
+	/**
+	 * All the filters match
+	 * @param filters the filters
+	 * @return the filter
+	 */
+	public static DBFFilter and(DBFFilter... filters) {
+		return new CompositeFilter(filters.clone(), true);
+	}
+
+	/**
+	 * Any of the filters match
+	 * @param filters the filters
+	 * @return the filter
+	 */
+	public static DBFFilter or(DBFFilter... filters) {
+		return new CompositeFilter(filters.clone(), false);
+	}
+
+	/**
+	 * The filter doesn't match
+	 * @param filter the filter
+	 * @return the filter
+	 */
+	public static DBFFilter not(final DBFFilter filter) {
+		Objects.requireNonNull(filter, "filter");
+		return new DBFFilter() {
+			@Override
+			DBFRecordPredicate compile(DBFRecordLayout layout, Charset charset) {
+				final DBFRecordPredicate predicate = filter.compile(layout, charset);
+				return new DBFRecordPredicate() {
+					@Override
+					public boolean matches(byte[] data, int recordOffset) {
+						return !predicate.matches(data, recordOffset);
+					}
+				};
+			}
+		};
+	}
+
+	private abstract static class FieldFilter extends DBFFilter {
+		private final String fieldName;
+
+		FieldFilter(String fieldName) {
+			this.fieldName = Objects.requireNonNull(fieldName, "fieldName");
+		}
+
+		DBFColumnAccess access(DBFRecordLayout layout, Charset charset) {
+			return DBFColumnAccess.create(layout, layout.findColumn(this.fieldName), charset);
+		}
+	}
+
+	private static final class InFilter extends FieldFilter {
+		private final Object[] values;
+
+		InFilter(String fieldName, Object[] values) {
+			super(fieldName);
+			this.values = values;
+		}
+
+		@Override
+		DBFRecordPredicate compile(DBFRecordLayout layout, Charset charset) {
+			final DBFColumnAccess access = access(layout, charset);
+			final Object[] bounds = new Object[this.values.length];
+			for (int i = 0; i < bounds.length; i++) {
+				bounds[i] = access.compileBound(this.values[i]);
+			}
+			return new DBFRecordPredicate() {
+				@Override
+				public boolean matches(byte[] data, int recordOffset) {
+					if (access.isNull(data, recordOffset)) {
+						return false;
+					}
+					for (Object bound : bounds) {
+						if (access.isEqual(data, recordOffset, bound)) {
+							return true;
+						}
+					}
+					return false;
+				}
+			};
+		}
+	}
+
+	private static final class RangeFilter extends FieldFilter {
+		private final Object min;
+		private final Object max;
+
+		RangeFilter(String fieldName, Object min, Object max) {
+			super(fieldName);
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		DBFRecordPredicate compile(DBFRecordLayout layout, Charset charset) {
+			final DBFColumnAccess access = access(layout, charset);
+			final Object minBound = this.min != null ? access.compileBound(this.min) : null;
+			final Object maxBound = this.max != null ? access.compileBound(this.max) : null;
+			return new DBFRecordPredicate() {
+				@Override
+				public boolean matches(byte[] data, int recordOffset) {
+					if (access.isNull(data, recordOffset)) {
+						return false;
+					}
+					if (minBound != null && access.compare(data, recordOffset, minBound) < 0) {
+						return false;
+					}
+					return maxBound == null || access.compare(data, recordOffset, maxBound) <= 0;
+				}
+			};
+		}
+	}
+
+	private static final class PrefixFilter extends FieldFilter {
+		private final String prefix;
+
+		PrefixFilter(String fieldName, String prefix) {
+			super(fieldName);
+			this.prefix = prefix;
+		}
+
+		@Override
+		DBFRecordPredicate compile(DBFRecordLayout layout, Charset charset) {
+			final DBFColumnAccess access = access(layout, charset);
+			final Object prefixBound = access.compileBound(this.prefix);
+			if (!access.isText()) {
+				throw new DBFException("Prefix conditions are only supported for text fields: " + access.getField().getName());
+			}
+			return new DBFRecordPredicate() {
+				@Override
+				public boolean matches(byte[] data, int recordOffset) {
+					return !access.isNull(data, recordOffset) && access.startsWith(data, recordOffset, prefixBound);
+				}
+			};
+		}
+	}
+
+	private static final class NullFilter extends FieldFilter {
+		NullFilter(String fieldName) {
+			super(fieldName);
+		}
+
+		@Override
+		DBFRecordPredicate compile(DBFRecordLayout layout, Charset charset) {
+			final DBFColumnAccess access = access(layout, charset);
+			return new DBFRecordPredicate() {
+				@Override
+				public boolean matches(byte[] data, int recordOffset) {
+					return access.isNull(data, recordOffset);
+				}
+			};
+		}
+	}
+
+	private static final class CompositeFilter extends DBFFilter {
+		private final DBFFilter[] filters;
+		private final boolean all;
+
+		CompositeFilter(DBFFilter[] filters, boolean all) {
+			for (DBFFilter filter : filters) {
+				Objects.requireNonNull(filter, "filter");
+			}
+			this.filters = filters;
+			this.all = all;
+		}
+
+		@Override
+		DBFRecordPredicate compile(DBFRecordLayout layout, Charset charset) {
+			final DBFRecordPredicate[] predicates = new DBFRecordPredicate[this.filters.length];
+			for (int i = 0; i < predicates.length; i++) {
+				predicates[i] = this.filters[i].compile(layout, charset);
+			}
+			final boolean matchAll = this.all;
+			return new DBFRecordPredicate() {
+				@Override
+				public boolean matches(byte[] data, int recordOffset) {
+					for (DBFRecordPredicate predicate : predicates) {
+						if (predicate.matches(data, recordOffset) != matchAll) {
+							return !matchAll;
+						}
+					}
+					return matchAll;
+				}
+			};
+		}
+	}
+}
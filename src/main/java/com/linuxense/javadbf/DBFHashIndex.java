@@ -0,0 +1,263 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * In memory hash index over one or more fields of a DBF file.
+ *
+ * Keys are hashed from the raw bytes of the records, and every distinct hash has a
+ * list of record numbers (postings) stored in primitive int arrays. As different keys
+ * can have the same hash, the records found must be checked with {@link #matches(byte[], int, Object[])}.
+ * Records with some null field in the key are not indexed.
+ */
+final class DBFHashIndex {
+
+	private static final int FREE = -2;
+	private static final int NONE = -1;
+	private static final int NOT_INDEXED = -1;
+
+	private final String[] fieldNames;
+	private final DBFColumnAccess[] columns;
+
+	private long[] slotHashes = new long[64];
+	private int[] slotHeads = newSlots(64);
+	private int usedSlots = 0;
+
+	private int[] postingRecords = new int[64];
+	private int[] postingNext = new int[64];
+	private int postingCount = 0;
+	private int freePosting = NONE;
+
+	private int[] recordSlots = new int[64];
+
+	DBFHashIndex(DBFRecordLayout layout, String[] fieldNames, Charset charset) {
+		if (fieldNames.length == 0) {
+			throw new DBFException("Should have at least one field");
+		}
+		this.fieldNames = new String[fieldNames.length];
+		this.columns = new DBFColumnAccess[fieldNames.length];
+		for (int i = 0; i < fieldNames.length; i++) {
+			int column = layout.findColumn(fieldNames[i]);
+			this.fieldNames[i] = layout.fields[column].getName();
+			this.columns[i] = DBFColumnAccess.create(layout, column, charset);
+		}
+		Arrays.fill(this.recordSlots, NOT_INDEXED);
+	}
+
+	/**
+	 * Checks if a field is part of the key
+	 * @param fieldName name of the field
+	 * @return true if the field is in the key
+	 */
+	boolean containsField(String fieldName) {
+		for (String name : this.fieldNames) {
+			if (name.equalsIgnoreCase(fieldName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a record to the index
+	 * @param recordIndex number of the record
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 */
+	void add(int recordIndex, byte[] data, int recordOffset) {
+		long hash = 0;
+		for (DBFColumnAccess column : this.columns) {
+			if (column.isNull(data, recordOffset)) {
+				return;
+			}
+			hash = combine(hash, column.hash(data, recordOffset));
+		}
+		if (recordIndex >= this.recordSlots.length) {
+			int length = this.recordSlots.length;
+			this.recordSlots = Arrays.copyOf(this.recordSlots, Math.max(length * 2, recordIndex + 1));
+			Arrays.fill(this.recordSlots, length, this.recordSlots.length, NOT_INDEXED);
+		}
+		int slot = findSlot(hash, true);
+		int posting = newPosting();
+		this.postingRecords[posting] = recordIndex;
+		this.postingNext[posting] = this.slotHeads[slot];
+		this.slotHeads[slot] = posting;
+		this.recordSlots[recordIndex] = slot;
+	}
+
+	/**
+	 * Removes a record from the index, if it was indexed
+	 * @param recordIndex number of the record
+	 */
+	void remove(int recordIndex) {
+		if (recordIndex >= this.recordSlots.length || this.recordSlots[recordIndex] == NOT_INDEXED) {
+			return;
+		}
+		int slot = this.recordSlots[recordIndex];
+		int previous = NONE;
+		int posting = this.slotHeads[slot];
+		while (this.postingRecords[posting] != recordIndex) {
+			previous = posting;
+			posting = this.postingNext[posting];
+		}
+		if (previous == NONE) {
+			this.slotHeads[slot] = this.postingNext[posting];
+		}
+		else {
+			this.postingNext[previous] = this.postingNext[posting];
+		}
+		this.postingNext[posting] = this.freePosting;
+		this.freePosting = posting;
+		this.recordSlots[recordIndex] = NOT_INDEXED;
+	}
+
+	/**
+	 * Converts the values of a key to the representation used to compare them with the records
+	 * @param values values of the key fields, in the order of the index fields
+	 * @return the compiled key, or null if some value is null (null values are not indexed)
+	 */
+	Object[] compileKey(Object[] values) {
+		if (values == null || values.length != this.columns.length) {
+			throw new DBFException("Invalid key. The index has " + this.columns.length + " fields");
+		}
+		Object[] key = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == null) {
+				return null;
+			}
+			key[i] = this.columns[i].compileBound(values[i]);
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the records that can have a key, in ascending order
+	 * @param key compiled key
+	 * @return numbers of the records with the same hash of the key
+	 */
+	int[] getCandidates(Object[] key) {
+		long hash = 0;
+		for (int i = 0; i < key.length; i++) {
+			hash = combine(hash, this.columns[i].hashBound(key[i]));
+		}
+		int slot = findSlot(hash, false);
+		if (slot < 0) {
+			return new int[0];
+		}
+		int count = 0;
+		for (int posting = this.slotHeads[slot]; posting != NONE; posting = this.postingNext[posting]) {
+			count++;
+		}
+		int[] records = new int[count];
+		for (int posting = this.slotHeads[slot]; posting != NONE; posting = this.postingNext[posting]) {
+			records[--count] = this.postingRecords[posting];
+		}
+		Arrays.sort(records);
+		return records;
+	}
+
+	/**
+	 * Checks if a record has a key
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @param key compiled key
+	 * @return true if the fields of the record are equal to the key
+	 */
+	boolean matches(byte[] data, int recordOffset, Object[] key) {
+		for (int i = 0; i < key.length; i++) {
+			if (this.columns[i].isNull(data, recordOffset) || !this.columns[i].isEqual(data, recordOffset, key[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long combine(long hash, long value) {
+		return hash * 0x9E3779B97F4A7C15L + value;
+	}
+
+	private int findSlot(long hash, boolean create) {
+		int mask = this.slotHeads.length - 1;
+		int slot = (int) hash & mask;
+		while (this.slotHeads[slot] != FREE) {
+			if (this.slotHashes[slot] == hash) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (!create) {
+			return -1;
+		}
+		if ((this.usedSlots + 1) * 4 > this.slotHeads.length * 3) {
+			rehash(this.slotHeads.length * 2);
+			return findSlot(hash, true);
+		}
+		this.usedSlots++;
+		this.slotHashes[slot] = hash;
+		this.slotHeads[slot] = NONE;
+		return slot;
+	}
+
+	private void rehash(int size) {
+		long[] oldHashes = this.slotHashes;
+		int[] oldHeads = this.slotHeads;
+		this.slotHashes = new long[size];
+		this.slotHeads = newSlots(size);
+		this.usedSlots = 0;
+		int mask = size - 1;
+		for (int i = 0; i < oldHeads.length; i++) {
+			// slots without postings are discarded
+			if (oldHeads[i] < 0) {
+				continue;
+			}
+			int slot = (int) oldHashes[i] & mask;
+			while (this.slotHeads[slot] != FREE) {
+				slot = (slot + 1) & mask;
+			}
+			this.slotHashes[slot] = oldHashes[i];
+			this.slotHeads[slot] = oldHeads[i];
+			this.usedSlots++;
+			for (int posting = oldHeads[i]; posting != NONE; posting = this.postingNext[posting]) {
+				this.recordSlots[this.postingRecords[posting]] = slot;
+			}
+		}
+	}
+
+	private int newPosting() {
+		if (this.freePosting != NONE) {
+			int posting = this.freePosting;
+			this.freePosting = this.postingNext[posting];
+			return posting;
+		}
+		if (this.postingCount == this.postingRecords.length) {
+			this.postingRecords = Arrays.copyOf(this.postingRecords, this.postingCount * 2);
+			this.postingNext = Arrays.copyOf(this.postingNext, this.postingCount * 2);
+		}
+		return this.postingCount++;
+	}
+
+	private static int[] newSlots(int size) {
+		int[] slots = new int[size];
+		Arrays.fill(slots, FREE);
+		return slots;
+	}
+}
@@ -0,0 +1,213 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Read only access to the index files created by FoxPro and dBase.
+ *
+ * Supported formats are FoxPro compound indexes (.cdx), FoxPro single indexes (.idx,
+ * compact and not compact) and dBase III indexes (.ndx). FoxPro keys are compared
+ * byte by byte, so only indexes with machine collation return the expected results.
+ * <pre>
+ * DBFRandomAccess dbf = new DBFRandomAccess(new File("customers.dbf"));
+ * DBFIndexFile index = dbf.openIndex(new File("customers.cdx"));
+ * for (int recordIndex : index.getTag("CODE").find("C001")) {
+ *     DBFRow row = dbf.getRecord(recordIndex);
+ *     ...
+ * }
+ * </pre>
+ */
+public final class DBFIndexFile implements Closeable {
+
+	static final int PAGE_SIZE = 512;
+
+	private final RandomAccessFile file;
+	private final Charset charset;
+	private final DBFRecordLayout layout;
+	private final List<DBFIndexTag> tags;
+	private boolean closed = false;
+
+	/**
+	 * Opens an index file, with ISO-8859-1 keys and types of the keys taken from the values
+	 * @param indexFile the index file
+	 */
+	public DBFIndexFile(File indexFile) {
+		this(indexFile, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Opens an index file, with types of the keys taken from the values
+	 * @param indexFile the index file
+	 * @param charset the charset of character keys
+	 */
+	public DBFIndexFile(File indexFile, Charset charset) {
+		this(indexFile, charset, null);
+	}
+
+	/**
+	 * Opens an index file of a DBF file
+	 * @param indexFile the index file
+	 * @param charset the charset of character keys
+	 * @param fields the fields of the DBF file, to get the types of the keys, or null
+	 */
+	DBFIndexFile(File indexFile, Charset charset, DBFField[] fields) {
+		this.charset = charset;
+		this.layout = fields != null ? new DBFRecordLayout(fields) : null;
+		try {
+			this.file = new RandomAccessFile(indexFile, "r");
+		}
+		catch (FileNotFoundException e) {
+			throw new DBFException("Specified file is not found. " + e.getMessage(), e);
+		}
+		try {
+			String fileName = indexFile.getName();
+			String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+			String baseName = fileName.indexOf('.') > 0 ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+			if ("cdx".equals(extension)) {
+				this.tags = Collections.unmodifiableList(DBFCompactIndexTag.readTags(this));
+			}
+			else if ("idx".equals(extension)) {
+				this.tags = Collections.singletonList((DBFIndexTag) DBFCompactIndexTag.read(this, baseName, 0));
+			}
+			else if ("ndx".equals(extension)) {
+				this.tags = Collections.singletonList((DBFIndexTag) DBFNdxIndexTag.read(this, baseName));
+			}
+			else {
+				throw new DBFException("Unsupported index file format: " + fileName);
+			}
+		}
+		catch (IOException e) {
+			DBFUtils.close(this.file);
+			throw new DBFException("Error reading index file " + indexFile + ": " + e.getMessage(), e);
+		}
+		catch (RuntimeException e) {
+			DBFUtils.close(this.file);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the tags of the index file. Single index files have a tag with the name of the file.
+	 * @return the tags
+	 */
+	public List<DBFIndexTag> getTags() {
+		return this.tags;
+	}
+
+	/**
+	 * Returns a tag by name (case insensitive)
+	 * @param tagName the name of the tag
+	 * @return the tag
+	 * @throws DBFException if the tag doesn't exists
+	 */
+	public DBFIndexTag getTag(String tagName) {
+		for (DBFIndexTag tag : this.tags) {
+			if (tag.getName().equalsIgnoreCase(tagName)) {
+				return tag;
+			}
+		}
+		throw new DBFException("No tag found for:" + tagName);
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		this.file.close();
+	}
+
+	Charset getCharset() {
+		return this.charset;
+	}
+
+	/**
+	 * Reads bytes of the file
+	 * @param offset position in the file
+	 * @param buffer where bytes are stored, the full buffer is read
+	 * @throws IOException if the bytes can't be read
+	 */
+	void read(long offset, byte[] buffer) throws IOException {
+		if (this.closed) {
+			throw new DBFException("Index file is closed");
+		}
+		this.file.seek(offset);
+		this.file.readFully(buffer);
+	}
+
+	/**
+	 * Finds the field of a key expression, that can be a field name or UPPER(field name)
+	 * @param expression the key expression
+	 * @return the field, or null if the expression is not a field or there are no fields
+	 */
+	DBFField findKeyField(String expression) {
+		if (this.layout == null) {
+			return null;
+		}
+		String fieldName = expression.trim();
+		if (isUpper(fieldName)) {
+			fieldName = fieldName.substring(fieldName.indexOf('(') + 1, fieldName.length() - 1).trim();
+		}
+		List<String> candidates = new ArrayList<String>();
+		candidates.add(fieldName);
+		if (fieldName.length() > 10) {
+			// names are truncated in the DBF file
+			candidates.add(fieldName.substring(0, 10));
+		}
+		for (String candidate : candidates) {
+			for (DBFField field : this.layout.fields) {
+				if (field.getName().equalsIgnoreCase(candidate)) {
+					return field;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if a key expression is UPPER(...)
+	 * @param expression the key expression
+	 * @return true if the expression converts the value to upper case
+	 */
+	static boolean isUpper(String expression) {
+		String normalized = expression.trim().toUpperCase(Locale.ROOT);
+		return normalized.startsWith("UPPER(") && normalized.endsWith(")");
+	}
+
+	/**
+	 * Reads a null terminated string
+	 */
+	static String readString(byte[] data, int offset, int maxLength) {
+		int end = offset;
+		while (end < offset + maxLength && end < data.length && data[end] != 0) {
+			end++;
+		}
+		return new String(data, offset, end - offset, StandardCharsets.ISO_8859_1).trim();
+	}
+}
@@ -0,0 +1,274 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A tag (a single index) of an index file, see {@link DBFIndexFile}.
+ *
+ * Keys are searched walking the B-tree from the root, so only the pages in the
+ * path to the keys are read. Record numbers are returned starting from 0, as used
+ * in {@link DBFRandomAccess#getRecord(int)}, in the order of the index. Deleted records
+ * are included, as index files don't store the deleted flag.
+ * <p>
+ * Keys are converted to the format of the index from the type of the field when the key
+ * expression is a field name or UPPER(field name), otherwise from the type of the
+ * Java value: String for character keys, Number for numeric keys, java.util.Date or
+ * java.time.LocalDate for date keys and Boolean for logical keys.
+ * </p>
+ */
+public abstract class DBFIndexTag {
+
+	private final DBFIndexFile indexFile;
+	private final String name;
+	private final String keyExpression;
+	private final String forExpression;
+	protected final int keyLength;
+	protected final long rootOffset;
+	private final boolean unique;
+	private final boolean descending;
+
+	DBFIndexTag(DBFIndexFile indexFile, String name, String keyExpression, String forExpression, int keyLength,
+			long rootOffset, boolean unique, boolean descending) {
+		this.indexFile = indexFile;
+		this.name = name;
+		this.keyExpression = keyExpression;
+		this.forExpression = forExpression;
+		this.keyLength = keyLength;
+		this.rootOffset = rootOffset;
+		this.unique = unique;
+		this.descending = descending;
+	}
+
+	/**
+	 * Returns the name of the tag
+	 * @return the name of the tag
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the key expression, as written by the application that created the index
+	 * @return the key expression
+	 */
+	public String getKeyExpression() {
+		return this.keyExpression;
+	}
+
+	/**
+	 * Returns the FOR expression, that filters the records included in the index
+	 * @return the FOR expression, or null if all the records are indexed
+	 */
+	public String getForExpression() {
+		return this.forExpression;
+	}
+
+	/**
+	 * Returns the length in bytes of the keys
+	 * @return the length of the keys
+	 */
+	public int getKeyLength() {
+		return this.keyLength;
+	}
+
+	/**
+	 * Checks if the index only stores a record for every key
+	 * @return true for unique indexes
+	 */
+	public boolean isUnique() {
+		return this.unique;
+	}
+
+	/**
+	 * Checks if the keys are sorted in descending order
+	 * @return true for descending indexes
+	 */
+	public boolean isDescending() {
+		return this.descending;
+	}
+
+	/**
+	 * Finds the records with a key
+	 * @param key the value of the key
+	 * @return the numbers of the records, starting from 0
+	 */
+	public int[] find(Object key) {
+		byte[] encodedKey = encodeKey(key);
+		return scan(encodedKey, encodedKey);
+	}
+
+	/**
+	 * Finds the records with keys between two values, both included, in the order of the index.
+	 * In descending indexes from must be greater than to.
+	 * @param from the first key, null to start at the first key of the index
+	 * @param to the last key, null to end at the last key of the index
+	 * @return the numbers of the records, starting from 0
+	 */
+	public int[] findRange(Object from, Object to) {
+		return scan(from != null ? encodeKey(from) : null, to != null ? encodeKey(to) : null);
+	}
+
+	/**
+	 * Returns the records in the order of the index
+	 * @return the numbers of all the records in the index, starting from 0
+	 */
+	public int[] getRecordOrder() {
+		return scan(null, null);
+	}
+
+	@Override
+	public String toString() {
+		return this.name + ": " + this.keyExpression;
+	}
+
+	private int[] scan(byte[] from, byte[] to) {
+		int[] result = new int[16];
+		int found = 0;
+		try {
+			// path from the root to the current leaf
+			Node[] path = new Node[8];
+			int[] positions = new int[8];
+			int depth = 0;
+			Node node = readNode(this.rootOffset);
+			while (!node.leaf) {
+				int position = from == null ? 0 : node.search(from, this);
+				if (position >= node.children.length) {
+					return new int[0];
+				}
+				if (depth == path.length) {
+					path = Arrays.copyOf(path, depth * 2);
+					positions = Arrays.copyOf(positions, depth * 2);
+				}
+				path[depth] = node;
+				positions[depth++] = position;
+				node = readNode(node.children[position]);
+			}
+			int position = from == null ? 0 : node.search(from, this);
+			while (true) {
+				for (; position < node.count; position++) {
+					if (to != null && compare(node.keys, position * this.keyLength, to, 0) > 0) {
+						return Arrays.copyOf(result, found);
+					}
+					if (found == result.length) {
+						result = Arrays.copyOf(result, found * 2);
+					}
+					result[found++] = node.records[position];
+				}
+				// next leaf: up to the first node with more children, then down to the leftmost leaf
+				while (depth > 0 && positions[depth - 1] + 1 >= path[depth - 1].children.length) {
+					depth--;
+				}
+				if (depth == 0) {
+					return Arrays.copyOf(result, found);
+				}
+				positions[depth - 1]++;
+				node = readNode(path[depth - 1].children[positions[depth - 1]]);
+				while (!node.leaf) {
+					path[depth] = node;
+					positions[depth++] = 0;
+					node = readNode(node.children[0]);
+				}
+				position = 0;
+			}
+		} catch (IOException e) {
+			throw new DBFException("Error reading index " + this.name + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads a page of the index
+	 * @param offset position of the page in the file
+	 * @return the page
+	 * @throws IOException if the page can't be read
+	 */
+	abstract Node readNode(long offset) throws IOException;
+
+	/**
+	 * Converts a key value to the bytes stored in the index
+	 * @param key the value
+	 * @return the key, of keyLength bytes
+	 */
+	abstract byte[] encodeKey(Object key);
+
+	/**
+	 * Compares two keys in the order of the index
+	 */
+	int compare(byte[] a, int aOffset, byte[] b, int bOffset) {
+		int result = 0;
+		for (int i = 0; i < this.keyLength && result == 0; i++) {
+			result = (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+		}
+		return this.descending ? -result : result;
+	}
+
+	DBFIndexFile getIndexFile() {
+		return this.indexFile;
+	}
+
+	/**
+	 * A page of the B-tree. Keys are stored one after the other in a byte array.
+	 * Interior pages have the offsets of the children, where the child i has the keys
+	 * less than or equal to the key i. Leaf pages have the record numbers of the keys.
+	 */
+	static final class Node {
+		final boolean leaf;
+		final int count;
+		final byte[] keys;
+		final int[] records;
+		final long[] children;
+
+		Node(int count, byte[] keys, int[] records) {
+			this.leaf = true;
+			this.count = count;
+			this.keys = keys;
+			this.records = records;
+			this.children = null;
+		}
+
+		Node(int count, byte[] keys, long[] children) {
+			this.leaf = false;
+			this.count = count;
+			this.keys = keys;
+			this.records = null;
+			this.children = children;
+		}
+
+		/**
+		 * Returns the position of the first key greater than or equal to a key,
+		 * or count if all the keys are lower
+		 */
+		int search(byte[] key, DBFIndexTag tag) {
+			int low = 0;
+			int high = this.count;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (tag.compare(this.keys, middle * tag.keyLength, key, 0) < 0) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+}
@@ -0,0 +1,291 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads many DBF files at the same time.
+ *
+ * Every file is read with its own {@link DBFReader} in a different task, and
+ * its rows are delivered to a {@link DBFRowSink} together with the file they
+ * come from. By default tasks run in virtual threads when the Java runtime
+ * supports them (Java 21 or later), or in a thread pool otherwise. The number of
+ * files open at the same time is limited, whatever the number of threads.
+ * <pre>
+ * DBFIngestion ingestion = new DBFIngestion(new File("/data/stores"));
+ * final ConcurrentMap&lt;File, LongAdder&gt; counts = new ConcurrentHashMap&lt;&gt;();
+ * ingestion.ingest(new DBFRowSink() {
+ *     public void accept(File source, DBFRow row) {
+ *         counts.computeIfAbsent(source, f -&gt; new LongAdder()).increment();
+ *     }
+ * });
+ * </pre>
+ */
+public class DBFIngestion {
+
+	private static final int DEFAULT_MAX_OPEN_FILES = 64;
+
+	private final List<File> files;
+	private final Charset charset;
+	private final boolean showDeletedRows;
+
+	private ExecutorService executor = null;
+	private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+	private String[] projection = null;
+	private DBFFilter filter = null;
+	private boolean trimRightSpaces = true;
+	private DBFNumericMode numericMode = DBFNumericMode.BIG_DECIMAL;
+	private DBFDateMode dateMode = DBFDateMode.DATE;
+
+	/**
+	 * Creates an ingestion of the DBF files of a directory (files with extension .dbf, in any case).
+	 * @param directory the directory
+	 */
+	public DBFIngestion(File directory) {
+		this(listFiles(directory), null, false);
+	}
+
+	/**
+	 * Creates an ingestion of some DBF files.
+	 * @param files the DBF files
+	 */
+	public DBFIngestion(List<File> files) {
+		this(files, null, false);
+	}
+
+	/**
+	 * Creates an ingestion of some DBF files.
+	 * @param files the DBF files
+	 * @param charset charset used to decode field names and field contents. If null, then is autedetected from every dbf file
+	 * @param showDeletedRows can be used to identify records that have been deleted.
+	 */
+	public DBFIngestion(List<File> files, Charset charset, boolean showDeletedRows) {
+		this.files = Collections.unmodifiableList(new ArrayList<File>(files));
+		this.charset = charset;
+		this.showDeletedRows = showDeletedRows;
+	}
+
+	private static List<File> listFiles(File directory) {
+		File[] dbfFiles = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().toLowerCase().endsWith(".dbf");
+			}
+		});
+		if (dbfFiles == null) {
+			throw new DBFException("Can not list directory " + directory);
+		}
+		Arrays.sort(dbfFiles);
+		return Arrays.asList(dbfFiles);
+	}
+
+	/**
+	 * Sets the ExecutorService used to read the files. It is not shutdown after the ingestion.
+	 * If not set, a virtual thread per file executor, or a fixed thread pool with
+	 * maxOpenFiles threads if virtual threads are not available, is created for every ingestion.
+	 * @param executor the executor, or null to use an internal one
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the maximum number of files open at the same time (default 64)
+	 * @param maxOpenFiles maximum number of open files
+	 */
+	public void setMaxOpenFiles(int maxOpenFiles) {
+		if (maxOpenFiles <= 0) {
+			throw new IllegalArgumentException("Maximum open files must be greater than 0: " + maxOpenFiles);
+		}
+		this.maxOpenFiles = maxOpenFiles;
+	}
+
+	/**
+	 * Sets the fields returned by the readers of the files
+	 * @param fieldNames names of the fields to read, null to read all of them
+	 * @see DBFReader#setProjection(String...)
+	 */
+	public void setProjection(String... fieldNames) {
+		this.projection = fieldNames != null ? fieldNames.clone() : null;
+	}
+
+	/**
+	 * Sets the condition of the rows delivered to the sink
+	 * @param filter the condition, null for no condition
+	 * @see DBFReader#setFilter(DBFFilter)
+	 */
+	public void setFilter(DBFFilter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Determine if character fields should be right trimmed (default true)
+	 * @param trimRightSpaces if reading fields should trim right spaces
+	 */
+	public void setTrimRightSpaces(boolean trimRightSpaces) {
+		this.trimRightSpaces = trimRightSpaces;
+	}
+
+	/**
+	 * Sets the Java type used for NUMERIC and FLOATING_POINT fields (default BIG_DECIMAL).
+	 * @param numericMode the numeric mode
+	 * @see DBFReader#setNumericMode(DBFNumericMode)
+	 */
+	public void setNumericMode(DBFNumericMode numericMode) {
+		this.numericMode = Objects.requireNonNull(numericMode, "numericMode");
+	}
+
+	/**
+	 * Sets the Java type used for DATE and TIMESTAMP fields (default DATE).
+	 * @param dateMode the date mode
+	 * @see DBFReader#setDateMode(DBFDateMode)
+	 */
+	public void setDateMode(DBFDateMode dateMode) {
+		this.dateMode = Objects.requireNonNull(dateMode, "dateMode");
+	}
+
+	/**
+	 * Returns the files to read
+	 * @return the files
+	 */
+	public List<File> getFiles() {
+		return this.files;
+	}
+
+	/**
+	 * Reads all the files, delivering their rows to a sink.
+	 *
+	 * If a file can not be read the remaining ones are cancelled and a DBFException
+	 * with the name of the file is thrown.
+	 *
+	 * @param sink receives the rows, from several threads at the same time
+	 * @return the number of rows delivered
+	 */
+	public long ingest(final DBFRowSink sink) {
+		Objects.requireNonNull(sink, "sink");
+		if (this.files.isEmpty()) {
+			return 0;
+		}
+		ExecutorService service = this.executor;
+		if (service == null) {
+			service = newVirtualThreadExecutor();
+			if (service == null) {
+				service = Executors.newFixedThreadPool(Math.min(this.maxOpenFiles, this.files.size()));
+			}
+		}
+		final Semaphore openFiles = new Semaphore(this.maxOpenFiles);
+		List<Future<Long>> futures = new ArrayList<Future<Long>>(this.files.size());
+		try {
+			for (final File file : this.files) {
+				futures.add(service.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws InterruptedException {
+						openFiles.acquire();
+						try {
+							return ingestFile(file, sink);
+						}
+						finally {
+							openFiles.release();
+						}
+					}
+				}));
+			}
+			long rows = 0;
+			for (Future<Long> future : futures) {
+				rows += future.get();
+			}
+			return rows;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBFException("Interrupted while reading files", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new DBFException(cause.getMessage(), cause);
+		} finally {
+			for (Future<Long> future : futures) {
+				future.cancel(true);
+			}
+			if (service != this.executor) {
+				service.shutdownNow();
+			}
+		}
+	}
+
+	private long ingestFile(File file, DBFRowSink sink) {
+		DBFReader reader = null;
+		try {
+			reader = new DBFReader(file, this.charset, this.showDeletedRows);
+			reader.setTrimRightSpaces(this.trimRightSpaces);
+			reader.setNumericMode(this.numericMode);
+			reader.setDateMode(this.dateMode);
+			if (this.filter != null) {
+				reader.setFilter(this.filter);
+			}
+			if (this.projection != null) {
+				reader.setProjection(this.projection);
+			}
+			long rows = 0;
+			DBFRow row = null;
+			while ((row = reader.nextRow()) != null) {
+				sink.accept(file, row);
+				rows++;
+			}
+			return rows;
+		}
+		catch (DBFException e) {
+			throw new DBFException("Error reading " + file + ": " + e.getMessage(), e);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	/**
+	 * Creates an executor that starts a virtual thread per task, if the Java runtime supports them
+	 * @return the executor, or null if virtual threads are not available
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.util.Map;
+
+/**
+ * Row that keeps the raw data of the record and decodes every column
+ * the first time it is read.
+ */
+final class DBFLazyRow extends DBFRow {
+
+	private final DBFReader reader;
+	private final DBFRecordLayout layout;
+	private final byte[] recordData;
+	private final Object[] values;
+	private final boolean[] decoded;
+
+	DBFLazyRow(DBFReader reader, DBFRecordLayout layout, byte[] recordData, Map<String, Integer> mapcolumnNames) {
+		this(reader, layout, recordData, new Object[layout.fields.length], mapcolumnNames);
+	}
+
+	private DBFLazyRow(DBFReader reader, DBFRecordLayout layout, byte[] recordData, Object[] values,
+			Map<String, Integer> mapcolumnNames) {
+		super(values, mapcolumnNames, layout.fields);
+		this.reader = reader;
+		this.layout = layout;
+		this.recordData = recordData;
+		this.values = values;
+		this.decoded = new boolean[values.length];
+	}
+
+	@Override
+	Object getValue(int columnIndex) {
+		if (!this.decoded[columnIndex]) {
+			this.values[columnIndex] = this.reader.getColumnValue(this.layout, this.recordData, 0, columnIndex);
+			this.decoded[columnIndex] = true;
+		}
+		return this.values[columnIndex];
+	}
+}
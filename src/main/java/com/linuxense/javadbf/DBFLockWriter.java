@@ -48,6 +48,8 @@ public class DBFLockWriter extends DBFWriter {
 		try {
 			FileLock lock = this.getRamdonAccessFile().getChannel().lock();
 			super.addRecord(values);
+			// the record must be written while the file is locked
+			flush();
 			if (lock.isValid()) {
 				lock.release();
 			}
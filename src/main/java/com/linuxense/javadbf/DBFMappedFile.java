@@ -0,0 +1,134 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory mapped view of the records region of a DBF file.
+ *
+ * The file is mapped in windows of whole records, so a record never spans two
+ * windows and files bigger than 2GB can be read.
+ */
+final class DBFMappedFile {
+
+	/**
+	 * Maximum size of a single mapping
+	 */
+	static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	private final FileChannel channel;
+	private final long dataStart;
+	private final int recordLength;
+	private final int recordsPerWindow;
+	private int recordCount;
+	private int firstRecord = 0;
+
+	private MappedByteBuffer window = null;
+	private int windowFirstRecord = -1;
+	private int windowRecordCount = 0;
+
+	DBFMappedFile(FileChannel channel, long dataStart, int recordLength) throws IOException {
+		this(channel, dataStart, recordLength, MAX_WINDOW_SIZE);
+	}
+
+	DBFMappedFile(FileChannel channel, long dataStart, int recordLength, long windowSize) throws IOException {
+		if (recordLength <= 0) {
+			throw new DBFException("Invalid record length: " + recordLength);
+		}
+		this.channel = channel;
+		this.dataStart = dataStart;
+		this.recordLength = recordLength;
+		long available = (channel.size() - dataStart) / recordLength;
+		this.recordCount = (int) Math.max(0, Math.min(available, Integer.MAX_VALUE));
+		this.recordsPerWindow = (int) Math.max(1, Math.min(windowSize, MAX_WINDOW_SIZE) / recordLength);
+	}
+
+	/**
+	 * Number of complete records physically present in the file, or the end of the range if restricted
+	 * @return number of records in the file
+	 */
+	int getRecordCount() {
+		return this.recordCount;
+	}
+
+	/**
+	 * First readable record
+	 * @return the first record of the range, 0 if not restricted
+	 */
+	int getFirstRecord() {
+		return this.firstRecord;
+	}
+
+	/**
+	 * Restricts the readable records to a range, so windows are mapped
+	 * starting at the first record of the range
+	 * @param from first record, inclusive
+	 * @param to last record, exclusive
+	 */
+	void restrict(int from, int to) {
+		this.firstRecord = from;
+		this.recordCount = Math.max(from, Math.min(this.recordCount, to));
+		this.window = null;
+		this.windowFirstRecord = -1;
+		this.windowRecordCount = 0;
+	}
+
+	/**
+	 * Copies a record to the given array
+	 * @param recordIndex index of the record, starting at 0
+	 * @param dest array to copy the record to
+	 * @param offset position in dest where record will be copied
+	 * @throws IOException if the file cannot be mapped
+	 */
+	void readRecord(int recordIndex, byte[] dest, int offset) throws IOException {
+		MappedByteBuffer buffer = getWindow(recordIndex);
+		buffer.position((recordIndex - this.windowFirstRecord) * this.recordLength);
+		buffer.get(dest, offset, this.recordLength);
+	}
+
+	/**
+	 * Reads the first byte of a record, the deleted flag or the end of data mark
+	 * @param recordIndex index of the record, starting at 0
+	 * @return the first byte of the record
+	 * @throws IOException if the file cannot be mapped
+	 */
+	byte readFlag(int recordIndex) throws IOException {
+		MappedByteBuffer buffer = getWindow(recordIndex);
+		return buffer.get((recordIndex - this.windowFirstRecord) * this.recordLength);
+	}
+
+	private MappedByteBuffer getWindow(int recordIndex) throws IOException {
+		if (recordIndex < this.firstRecord || recordIndex >= this.recordCount) {
+			throw new DBFException("Invalid record position " + recordIndex);
+		}
+		if (this.window == null || recordIndex < this.windowFirstRecord
+				|| recordIndex >= this.windowFirstRecord + this.windowRecordCount) {
+			int first = recordIndex - ((recordIndex - this.firstRecord) % this.recordsPerWindow);
+			int count = Math.min(this.recordsPerWindow, this.recordCount - first);
+			long position = this.dataStart + (long) first * this.recordLength;
+			this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * this.recordLength);
+			this.windowFirstRecord = first;
+			this.windowRecordCount = count;
+		}
+		return this.window;
+	}
+}
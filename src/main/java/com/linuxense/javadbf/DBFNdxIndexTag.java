@@ -0,0 +1,152 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+
+/**
+ * Tag of a dBase III index (.ndx).
+ *
+ * The file is made of 512 bytes pages, and every page has the number of keys followed by
+ * the entries: the page number of the child (0 in leaf pages), the record number and the key.
+ * Interior pages have an extra entry with only the child, for the keys greater than the last key.
+ * Character keys are padded with blanks, and numeric and date keys (julian day numbers)
+ * are little endian doubles.
+ */
+final class DBFNdxIndexTag extends DBFIndexTag {
+
+	private static final int JULIAN_EPOCH_DAY = 2440588;
+
+	private final boolean numeric;
+	private final boolean upper;
+	private final int entryLength;
+
+	private DBFNdxIndexTag(DBFIndexFile indexFile, String name, String keyExpression, int keyLength, long rootOffset,
+			boolean unique, boolean numeric, int entryLength) {
+		super(indexFile, name, keyExpression, null, keyLength, rootOffset, unique, false);
+		this.numeric = numeric;
+		this.upper = DBFIndexFile.isUpper(keyExpression);
+		this.entryLength = entryLength;
+	}
+
+	/**
+	 * Reads the header of the index
+	 * @param indexFile the index file
+	 * @param name name of the tag
+	 * @return the tag
+	 * @throws IOException if the file can't be read
+	 */
+	static DBFNdxIndexTag read(DBFIndexFile indexFile, String name) throws IOException {
+		byte[] header = new byte[DBFIndexFile.PAGE_SIZE];
+		indexFile.read(0, header);
+		long rootOffset = (DBFUtils.toLittleEndianInt(header, 0) & 0xFFFFFFFFL) * DBFIndexFile.PAGE_SIZE;
+		int keyLength = (header[12] & 0xff) | (header[13] & 0xff) << 8;
+		boolean numeric = ((header[16] & 0xff) | (header[17] & 0xff) << 8) != 0;
+		int entryLength = (header[18] & 0xff) | (header[19] & 0xff) << 8;
+		if (keyLength <= 0 || entryLength < keyLength + 8 || entryLength > DBFIndexFile.PAGE_SIZE - 4 || (numeric && keyLength != 8)) {
+			throw new DBFException("Invalid index header in " + name);
+		}
+		String keyExpression = DBFIndexFile.readString(header, 24, DBFIndexFile.PAGE_SIZE - 24);
+		return new DBFNdxIndexTag(indexFile, name, keyExpression, keyLength, rootOffset, header[23] != 0, numeric, entryLength);
+	}
+
+	@Override
+	Node readNode(long offset) throws IOException {
+		byte[] page = new byte[DBFIndexFile.PAGE_SIZE];
+		getIndexFile().read(offset, page);
+		int count = DBFUtils.toLittleEndianInt(page, 0);
+		boolean leaf = DBFUtils.toLittleEndianInt(page, 4) == 0;
+		if (count < 0 || 4 + count * this.entryLength + (leaf ? 0 : 4) > page.length) {
+			throw new DBFException("Invalid index page at " + offset);
+		}
+		byte[] keys = new byte[count * this.keyLength];
+		for (int i = 0; i < count; i++) {
+			System.arraycopy(page, 4 + i * this.entryLength + 8, keys, i * this.keyLength, this.keyLength);
+		}
+		if (leaf) {
+			int[] records = new int[count];
+			for (int i = 0; i < count; i++) {
+				records[i] = DBFUtils.toLittleEndianInt(page, 4 + i * this.entryLength + 4) - 1;
+			}
+			return new Node(count, keys, records);
+		}
+		long[] children = new long[count + 1];
+		for (int i = 0; i <= count; i++) {
+			children[i] = (DBFUtils.toLittleEndianInt(page, 4 + i * this.entryLength) & 0xFFFFFFFFL) * DBFIndexFile.PAGE_SIZE;
+		}
+		return new Node(count, keys, children);
+	}
+
+	@Override
+	int compare(byte[] a, int aOffset, byte[] b, int bOffset) {
+		if (this.numeric) {
+			return Double.compare(DBFUtils.toDouble(a, aOffset), DBFUtils.toDouble(b, bOffset));
+		}
+		return super.compare(a, aOffset, b, bOffset);
+	}
+
+	@Override
+	byte[] encodeKey(Object key) {
+		byte[] result = new byte[this.keyLength];
+		if (!this.numeric) {
+			if (!(key instanceof String)) {
+				throw invalidKey(key);
+			}
+			String text = (String) key;
+			if (this.upper) {
+				text = text.toUpperCase(Locale.ROOT);
+			}
+			byte[] bytes = text.getBytes(getIndexFile().getCharset());
+			Arrays.fill(result, (byte) ' ');
+			System.arraycopy(bytes, 0, result, 0, Math.min(bytes.length, result.length));
+			return result;
+		}
+		double value;
+		if (key instanceof Number) {
+			value = ((Number) key).doubleValue();
+		}
+		else if (key instanceof LocalDate) {
+			value = ((LocalDate) key).toEpochDay() + JULIAN_EPOCH_DAY;
+		}
+		else if (key instanceof Date) {
+			Calendar calendar = new GregorianCalendar();
+			calendar.setTime((Date) key);
+			value = LocalDate.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+				calendar.get(Calendar.DAY_OF_MONTH)).toEpochDay() + JULIAN_EPOCH_DAY;
+		}
+		else {
+			throw invalidKey(key);
+		}
+		long bits = Double.doubleToLongBits(value);
+		for (int i = 0; i < 8; i++) {
+			result[i] = (byte) (bits >>> (8 * i));
+		}
+		return result;
+	}
+
+	private DBFException invalidKey(Object key) {
+		return new DBFException("Invalid key for index " + getName() + ": " + key);
+	}
+}
@@ -0,0 +1,207 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Formats the values of a NUMERIC or FLOATING_POINT field, with the same result as
+ * {@link DBFUtils#doubleFormating(Number, Charset, int, int)} but writing the digits
+ * directly in the record.
+ *
+ * Values are rounded half even to the decimal count, as DecimalFormat does. Doubles are
+ * rounded from their exact binary value, that gives the same digits as DecimalFormat while
+ * the number has less than 16 significant digits. The scaled value is computed with double
+ * arithmetic, and only values too close to a tie are rounded with BigDecimal. Values out of
+ * that range, values below 1 too close to a tie, and charsets where digits are not ASCII,
+ * are formatted with a DecimalFormat created once for the field.
+ */
+final class DBFNumericFormatter {
+
+	private static final int MAX_DIGITS = 18;
+	private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+	private static final long DOUBLE_EXACT_LIMIT = 1L << 52;
+	private static final byte[] ASCII_SYMBOLS = "0123456789-. ".getBytes(StandardCharsets.US_ASCII);
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final int length;
+	private final int decimalCount;
+	private final boolean leadingZero;
+	private final boolean asciiDigits;
+	private final Charset charset;
+	private final byte[] digits;
+	private DecimalFormat decimalFormat = null;
+
+	DBFNumericFormatter(int length, int decimalCount, Charset charset) {
+		this.length = length;
+		this.decimalCount = decimalCount;
+		// The pattern has a 0 before the decimal point only if there is room for the whole part
+		this.leadingZero = length - (decimalCount > 0 ? decimalCount + 1 : 0) > 0;
+		this.charset = charset;
+		this.asciiDigits = Arrays.equals(new String(ASCII_SYMBOLS, StandardCharsets.US_ASCII).getBytes(charset), ASCII_SYMBOLS);
+		// sign, 19 digits of a long, decimal point and decimal digits
+		this.digits = new byte[21 + decimalCount];
+	}
+
+	/**
+	 * Writes a value, right aligned and padded with blanks
+	 * @param value the value
+	 * @param target where the value is written
+	 * @param offset position of the field in target
+	 */
+	void format(Number value, byte[] target, int offset) {
+		if (this.asciiDigits && formatDirect(value, target, offset)) {
+			return;
+		}
+		byte[] bytes = DBFUtils.textPadding(getDecimalFormat().format(value), this.charset, this.length,
+				DBFAlignment.RIGHT, (byte) ' ');
+		System.arraycopy(bytes, 0, target, offset, this.length);
+	}
+
+	private boolean formatDirect(Number value, byte[] target, int offset) {
+		if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+				|| value instanceof AtomicInteger || value instanceof AtomicLong
+				|| (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64)) {
+			long longValue = value.longValue();
+			if (longValue == Long.MIN_VALUE) {
+				return false;
+			}
+			write(longValue < 0, Math.abs(longValue), 0, target, offset);
+			return true;
+		}
+		if (value instanceof BigInteger || this.decimalCount > MAX_DIGITS) {
+			return false;
+		}
+		if (value instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) value;
+			BigInteger unscaled = decimal.setScale(this.decimalCount, RoundingMode.HALF_EVEN).unscaledValue();
+			if (unscaled.bitLength() >= 63) {
+				return false;
+			}
+			write(decimal.signum() < 0, Math.abs(unscaled.longValue()), this.decimalCount, target, offset);
+			return true;
+		}
+		if (this.decimalCount > 15) {
+			return false;
+		}
+		double doubleValue = value.doubleValue();
+		double magnitude = Math.abs(doubleValue);
+		if (Double.isNaN(doubleValue) || magnitude >= (double) (DOUBLE_EXACT_LIMIT / POWERS_OF_TEN[this.decimalCount])) {
+			return false;
+		}
+		// The error of the product is at most half ulp, so it can only change the rounding near a tie
+		double scaled = magnitude * POWERS_OF_TEN[this.decimalCount];
+		double whole = Math.floor(scaled);
+		double fraction = scaled - whole;
+		long unscaled;
+		if (Math.abs(fraction - 0.5) > Math.ulp(scaled)) {
+			unscaled = (long) whole + (fraction > 0.5 ? 1 : 0);
+		}
+		else if (magnitude < 1) {
+			// DecimalFormat rounds 0.0005 to 0.000, not from the exact binary value
+			return false;
+		}
+		else {
+			unscaled = new BigDecimal(magnitude).setScale(this.decimalCount, RoundingMode.HALF_EVEN).unscaledValue().longValue();
+		}
+		// -0.0 is negative for DecimalFormat
+		write(Double.doubleToRawLongBits(doubleValue) < 0, unscaled, this.decimalCount, target, offset);
+		return true;
+	}
+
+	/**
+	 * Writes a positive number with some decimal digits, followed by zeros up to the decimal count
+	 */
+	private void write(boolean negative, long unscaled, int scale, byte[] target, int offset) {
+		byte[] buffer = this.digits;
+		int end = buffer.length;
+		int position = end;
+		for (int i = scale; i < this.decimalCount; i++) {
+			buffer[--position] = '0';
+		}
+		long whole = unscaled;
+		if (scale > 0) {
+			whole = unscaled / POWERS_OF_TEN[scale];
+			long fraction = unscaled % POWERS_OF_TEN[scale];
+			for (int i = 0; i < scale; i++) {
+				buffer[--position] = (byte) ('0' + fraction % 10);
+				fraction /= 10;
+			}
+		}
+		if (this.decimalCount > 0) {
+			buffer[--position] = '.';
+		}
+		if (whole > 0 || this.leadingZero) {
+			do {
+				buffer[--position] = (byte) ('0' + whole % 10);
+				whole /= 10;
+			} while (whole > 0);
+		}
+		if (negative) {
+			buffer[--position] = '-';
+		}
+		int size = end - position;
+		if (size >= this.length) {
+			// Too long, the last digits are lost
+			System.arraycopy(buffer, position, target, offset, this.length);
+		}
+		else {
+			Arrays.fill(target, offset, offset + this.length - size, (byte) ' ');
+			System.arraycopy(buffer, position, target, offset + this.length - size, size);
+		}
+	}
+
+	private DecimalFormat getDecimalFormat() {
+		if (this.decimalFormat == null) {
+			int sizeWholePart = this.length - (this.decimalCount > 0 ? (this.decimalCount + 1) : 0);
+			StringBuilder format = new StringBuilder(this.length);
+			for (int i = 0; i < sizeWholePart - 1; i++) {
+				format.append('#');
+			}
+			if (format.length() < sizeWholePart) {
+				format.append('0');
+			}
+			if (this.decimalCount > 0) {
+				format.append('.');
+				for (int i = 0; i < this.decimalCount; i++) {
+					format.append('0');
+				}
+			}
+			this.decimalFormat = (DecimalFormat) NumberFormat.getInstance(Locale.ENGLISH);
+			this.decimalFormat.applyPattern(format.toString());
+		}
+		return this.decimalFormat;
+	}
+}
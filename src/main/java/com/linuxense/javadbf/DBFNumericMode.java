@@ -0,0 +1,40 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+/**
+ * Java type used for the values of NUMERIC and FLOATING_POINT fields.
+ */
+public enum DBFNumericMode {
+	/**
+	 * Values are returned as BigDecimal, keeping the exact decimal value (default)
+	 */
+	BIG_DECIMAL,
+	/**
+	 * Values of fields without decimals are returned as Long, truncating any decimal part,
+	 * and values of fields with decimals as Double.
+	 * Values that doesn't fit in a long are returned as BigDecimal.
+	 */
+	PRIMITIVE,
+	/**
+	 * Values are returned as Long, multiplied by 10 to the number of decimals of the field
+	 * (12.5 in a field with 2 decimals is 1250). Extra decimals are rounded half up.
+	 */
+	SCALED_LONG;
+}
@@ -0,0 +1,454 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads a DBF file using several threads.
+ *
+ * Records have a fixed length, so the file is split in partitions of consecutive
+ * records, and every partition is read with its own {@link DBFReader} in a
+ * thread of an ExecutorService (a thread pool or a ForkJoinPool).
+ * <pre>
+ * DBFParallelScan scan = new DBFParallelScan(file);
+ * List&lt;Long&gt; counts = scan.scan(new DBFPartitionTask&lt;Long&gt;() {
+ *     public Long process(DBFPartition partition, DBFReader reader) {
+ *         long count = 0;
+ *         while (reader.nextRecord() != null) {
+ *             count++;
+ *         }
+ *         return count;
+ *     }
+ * });
+ * </pre>
+ * Results are returned in partition order, so they can be merged in file order.
+ * <p>
+ * The rows can also be read as a Stream with {@link #stream()}.
+ * </p>
+ */
+public class DBFParallelScan {
+
+	private static final int PARTITIONS_PER_THREAD = 4;
+	private static final int DEFAULT_MIN_SPLIT_SIZE = 1024;
+
+	private final File file;
+	private final Charset charset;
+	private final boolean showDeletedRows;
+	private final int recordCount;
+
+	private ExecutorService executor = null;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int partitionSize = 0;
+	private String[] projection = null;
+	private DBFFilter filter = null;
+	private boolean trimRightSpaces = true;
+	private DBFNumericMode numericMode = DBFNumericMode.BIG_DECIMAL;
+	private DBFDateMode dateMode = DBFDateMode.DATE;
+	private boolean lazyDecoding = false;
+	private final Map<String, Integer> dictionaries = new LinkedHashMap<String, Integer>();
+	private File memoFile = null;
+
+	/**
+	 * Creates a parallel scan of a DBF file.
+	 * @param file the DBF file
+	 */
+	public DBFParallelScan(File file) {
+		this(file, null, false);
+	}
+
+	/**
+	 * Creates a parallel scan of a DBF file.
+	 * @param file the DBF file
+	 * @param charset charset used to decode field names and field contents. If null, then is autedetected from dbf file
+	 * @param showDeletedRows can be used to identify records that have been deleted.
+	 */
+	public DBFParallelScan(File file, Charset charset, boolean showDeletedRows) {
+		this.file = file;
+		this.charset = charset;
+		this.showDeletedRows = showDeletedRows;
+		DBFReader reader = new DBFReader(file, charset, showDeletedRows);
+		try {
+			this.recordCount = reader.getStoredRecordCount();
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	/**
+	 * Sets the ExecutorService used to read the partitions. It is not shutdown after the scan.
+	 * If not set, a fixed thread pool with parallelism threads is created for every scan.
+	 * @param executor the executor, or null to use an internal thread pool
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the number of threads used when no executor is set.
+	 * Defaults to the number of available processors.
+	 * @param parallelism number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism <= 0) {
+			throw new IllegalArgumentException("Parallelism must be greater than 0: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the number of records of every partition.
+	 * By default the records are split in four partitions per thread.
+	 * For streams, it is the minimum number of records of a split (default 1024).
+	 * @param partitionSize number of records per partition, 0 to use the default
+	 */
+	public void setPartitionSize(int partitionSize) {
+		if (partitionSize < 0) {
+			throw new IllegalArgumentException("Partition size can not be negative: " + partitionSize);
+		}
+		this.partitionSize = partitionSize;
+	}
+
+	/**
+	 * Sets the fields returned by the readers of the partitions
+	 * @param fieldNames names of the fields to read, null to read all of them
+	 * @see DBFReader#setProjection(String...)
+	 */
+	public void setProjection(String... fieldNames) {
+		this.projection = fieldNames != null ? fieldNames.clone() : null;
+	}
+
+	/**
+	 * Sets the condition of the records returned by the readers of the partitions
+	 * @param filter the condition, null for no condition
+	 * @see DBFReader#setFilter(DBFFilter)
+	 */
+	public void setFilter(DBFFilter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Determine if character fields should be right trimmed (default true)
+	 * @param trimRightSpaces if reading fields should trim right spaces
+	 */
+	public void setTrimRightSpaces(boolean trimRightSpaces) {
+		this.trimRightSpaces = trimRightSpaces;
+	}
+
+	/**
+	 * Sets the Java type used for NUMERIC and FLOATING_POINT fields (default BIG_DECIMAL).
+	 * @param numericMode the numeric mode
+	 * @see DBFReader#setNumericMode(DBFNumericMode)
+	 */
+	public void setNumericMode(DBFNumericMode numericMode) {
+		this.numericMode = Objects.requireNonNull(numericMode, "numericMode");
+	}
+
+	/**
+	 * Sets the Java type used for DATE and TIMESTAMP fields (default DATE).
+	 * @param dateMode the date mode
+	 * @see DBFReader#setDateMode(DBFDateMode)
+	 */
+	public void setDateMode(DBFDateMode dateMode) {
+		this.dateMode = Objects.requireNonNull(dateMode, "dateMode");
+	}
+
+	/**
+	 * Sets if rows are decoded on demand (default false)
+	 * @param lazyDecoding if rows should be decoded on demand
+	 * @see DBFReader#setLazyDecoding(boolean)
+	 */
+	public void setLazyDecoding(boolean lazyDecoding) {
+		this.lazyDecoding = lazyDecoding;
+	}
+
+	/**
+	 * Keeps a dictionary of the values of a CHARACTER field in the readers of the partitions
+	 * @param fieldName name of the field (case insensitive)
+	 * @param maxEntries maximum number of values to keep, 0 to remove the dictionary
+	 * @see DBFReader#setStringDictionary(String, int)
+	 */
+	public void setStringDictionary(String fieldName, int maxEntries) {
+		this.dictionaries.put(fieldName, maxEntries);
+	}
+
+	/**
+	 * Sets the memo file (DBT or FPT) where memo fields data is stored.
+	 * @param memoFile the memo file
+	 */
+	public void setMemoFile(File memoFile) {
+		this.memoFile = memoFile;
+	}
+
+	/**
+	 * Number of records stored in the file, including deleted records
+	 * @return the number of records
+	 */
+	public int getRecordCount() {
+		return this.recordCount;
+	}
+
+	/**
+	 * Splits the records of the file in partitions
+	 * @return the partitions, in file order
+	 */
+	public List<DBFPartition> getPartitions() {
+		int size = this.partitionSize;
+		if (size == 0) {
+			int partitions = this.parallelism * PARTITIONS_PER_THREAD;
+			size = Math.max(1, (int) (((long) this.recordCount + partitions - 1) / partitions));
+		}
+		List<DBFPartition> partitions = new ArrayList<DBFPartition>();
+		for (long first = 0; first < this.recordCount; first += size) {
+			int end = (int) Math.min(this.recordCount, first + size);
+			partitions.add(new DBFPartition(partitions.size(), (int) first, end));
+		}
+		return Collections.unmodifiableList(partitions);
+	}
+
+	/**
+	 * Executes a task for every partition, in parallel.
+	 *
+	 * If a task fails the remaining ones are cancelled and the exception is thrown.
+	 *
+	 * @param <T> type of the result of a partition
+	 * @param task the task to execute
+	 * @return the results of the partitions, in partition order
+	 */
+	public <T> List<T> scan(final DBFPartitionTask<T> task) {
+		List<DBFPartition> partitions = getPartitions();
+		if (partitions.isEmpty()) {
+			return new ArrayList<T>();
+		}
+		ExecutorService service = this.executor;
+		if (service == null) {
+			service = Executors.newFixedThreadPool(Math.min(this.parallelism, partitions.size()));
+		}
+		List<Future<T>> futures = new ArrayList<Future<T>>(partitions.size());
+		try {
+			for (final DBFPartition partition : partitions) {
+				futures.add(service.submit(new Callable<T>() {
+					@Override
+					public T call() {
+						return scanPartition(partition, task);
+					}
+				}));
+			}
+			List<T> results = new ArrayList<T>(partitions.size());
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBFException("Interrupted while reading " + this.file, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new DBFException(cause.getMessage(), cause);
+		} finally {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+			if (service != this.executor) {
+				service.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Computes the statistics of every column in a single pass over the records.
+	 *
+	 * Values are read from the raw bytes of the records, without decoding them, and
+	 * every partition is processed in parallel. The projection and the filter of the
+	 * scan are applied.
+	 *
+	 * @return the statistics of every column, in the order of the fields
+	 */
+	public List<DBFColumnStatistics> getStatistics() {
+		List<DBFColumnStatistics[]> partitions = scan(new DBFPartitionTask<DBFColumnStatistics[]>() {
+			@Override
+			public DBFColumnStatistics[] process(DBFPartition partition, DBFReader reader) {
+				DBFRecordLayout layout = reader.getLayout();
+				DBFColumnStatistics[] statistics = createStatistics(layout);
+				while (reader.fetchRecord()) {
+					byte[] data = reader.getRecordData();
+					int recordOffset = reader.getRecordOffset();
+					for (int i = 0; i < statistics.length; i++) {
+						statistics[i].add(layout, i, data, recordOffset);
+					}
+				}
+				return statistics;
+			}
+		});
+		DBFColumnStatistics[] statistics = null;
+		if (partitions.isEmpty()) {
+			DBFReader reader = openReader(0, 0);
+			try {
+				statistics = createStatistics(reader.getLayout());
+			}
+			finally {
+				DBFUtils.close(reader);
+			}
+		}
+		else {
+			statistics = partitions.get(0);
+			for (int i = 1; i < partitions.size(); i++) {
+				for (int column = 0; column < statistics.length; column++) {
+					statistics[column].merge(partitions.get(i)[column]);
+				}
+			}
+		}
+		return Arrays.asList(statistics);
+	}
+
+	/**
+	 * Computes a group by aggregation, processing every partition in parallel.
+	 *
+	 * Every partition is aggregated in its own hash table, and partial results are
+	 * merged in partition order, so groups are returned in order of first appearance.
+	 * The filter of the scan is also applied.
+	 *
+	 * @param aggregation the aggregation
+	 * @return a row for every group
+	 */
+	public List<DBFAggregateRow> aggregate(final DBFAggregation aggregation) {
+		List<DBFAggregator> partitions = scan(new DBFPartitionTask<DBFAggregator>() {
+			@Override
+			public DBFAggregator process(DBFPartition partition, DBFReader reader) {
+				DBFAggregator aggregator = aggregation.compile(reader.getFullLayout(), reader.getCharset());
+				while (reader.fetchRecord()) {
+					aggregator.add(reader.getRecordData(), reader.getRecordOffset());
+				}
+				return aggregator;
+			}
+		});
+		if (partitions.isEmpty()) {
+			DBFReader reader = openReader(0, 0);
+			try {
+				return aggregation.compile(reader.getFullLayout(), reader.getCharset()).getRows();
+			}
+			finally {
+				DBFUtils.close(reader);
+			}
+		}
+		DBFAggregator aggregator = partitions.get(0);
+		for (int i = 1; i < partitions.size(); i++) {
+			aggregator.merge(partitions.get(i));
+		}
+		return aggregator.getRows();
+	}
+
+	private static DBFColumnStatistics[] createStatistics(DBFRecordLayout layout) {
+		DBFColumnStatistics[] statistics = new DBFColumnStatistics[layout.fields.length];
+		for (int i = 0; i < statistics.length; i++) {
+			statistics[i] = new DBFColumnStatistics(layout.fields[i]);
+		}
+		return statistics;
+	}
+
+	/**
+	 * Returns a stream with the rows of the file.
+	 *
+	 * The stream is backed by a Spliterator that splits the records in halves, so
+	 * a parallel stream reads the file with several threads. Every split opens
+	 * its own reader, and readers are closed when its records are consumed or
+	 * when the stream is closed, so the stream should be closed if it is not
+	 * fully consumed.
+	 * The stream is SIZED only if deleted rows are shown and there is no filter,
+	 * otherwise the number of records is just an estimation.
+	 * <pre>
+	 * try (Stream&lt;DBFRow&gt; rows = scan.stream().parallel()) {
+	 *     double total = rows.mapToDouble(row -&gt; row.getDouble("PRICE")).sum();
+	 * }
+	 * </pre>
+	 * @return the stream of rows
+	 */
+	public Stream<DBFRow> stream() {
+		DBFRowSpliterator spliterator = new DBFRowSpliterator(this, 0, this.recordCount,
+				this.partitionSize > 0 ? this.partitionSize : DEFAULT_MIN_SPLIT_SIZE,
+				this.showDeletedRows && this.filter == null);
+		return StreamSupport.stream(spliterator, false).onClose(spliterator);
+	}
+
+	/**
+	 * Opens a reader restricted to a range of records, with the settings of this scan
+	 * @param from first record, inclusive
+	 * @param to last record, exclusive
+	 * @return the reader
+	 */
+	DBFReader openReader(int from, int to) {
+		DBFReader reader = new DBFReader(this.file, this.charset, this.showDeletedRows);
+		try {
+			reader.setRecordRange(from, to);
+			reader.setTrimRightSpaces(this.trimRightSpaces);
+			reader.setNumericMode(this.numericMode);
+			reader.setDateMode(this.dateMode);
+			reader.setLazyDecoding(this.lazyDecoding);
+			for (Map.Entry<String, Integer> dictionary : this.dictionaries.entrySet()) {
+				reader.setStringDictionary(dictionary.getKey(), dictionary.getValue());
+			}
+			if (this.memoFile != null) {
+				reader.setMemoFile(this.memoFile);
+			}
+			if (this.filter != null) {
+				reader.setFilter(this.filter);
+			}
+			if (this.projection != null) {
+				reader.setProjection(this.projection);
+			}
+			return reader;
+		}
+		catch (RuntimeException e) {
+			DBFUtils.close(reader);
+			throw e;
+		}
+	}
+
+	private <T> T scanPartition(DBFPartition partition, DBFPartitionTask<T> task) {
+		DBFReader reader = openReader(partition.getFirstRecord(), partition.getEndRecord());
+		try {
+			return task.process(partition, reader);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+}
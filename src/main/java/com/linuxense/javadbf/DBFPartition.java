@@ -0,0 +1,72 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+/**
+ * A range of consecutive records of a DBF file, processed by a {@link DBFParallelScan}.
+ */
+public final class DBFPartition {
+
+	private final int index;
+	private final int firstRecord;
+	private final int endRecord;
+
+	DBFPartition(int index, int firstRecord, int endRecord) {
+		this.index = index;
+		this.firstRecord = firstRecord;
+		this.endRecord = endRecord;
+	}
+
+	/**
+	 * Position of this partition, starting at 0
+	 * @return the position of this partition
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Index of the first record of this partition
+	 * @return the first record, inclusive
+	 */
+	public int getFirstRecord() {
+		return this.firstRecord;
+	}
+
+	/**
+	 * Index of the record after the last record of this partition
+	 * @return the last record, exclusive
+	 */
+	public int getEndRecord() {
+		return this.endRecord;
+	}
+
+	/**
+	 * Number of records of this partition, including deleted records
+	 * @return the number of records
+	 */
+	public int getRecordCount() {
+		return this.endRecord - this.firstRecord;
+	}
+
+	@Override
+	public String toString() {
+		return "DBFPartition[" + this.index + ": " + this.firstRecord + "-" + this.endRecord + "]";
+	}
+}
@@ -0,0 +1,39 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+/**
+ * Processes the records of a partition in a {@link DBFParallelScan}.
+ *
+ * Tasks of different partitions are executed at the same time in different
+ * threads, so the task must be thread safe.
+ *
+ * @param <T> type of the result of a partition
+ */
+public interface DBFPartitionTask<T> {
+
+	/**
+	 * Processes the records of a partition
+	 * @param partition the partition
+	 * @param reader a reader that returns only the records of the partition.
+	 *        It is closed when this method returns
+	 * @return the result of the partition
+	 */
+	T process(DBFPartition partition, DBFReader reader);
+}
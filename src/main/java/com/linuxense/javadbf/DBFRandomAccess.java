@@ -8,18 +8,22 @@ import java.util.*;
 
 public final class DBFRandomAccess extends DBFBase implements Closeable {
 
-    private static final long MILLISECS_PER_DAY = 24*60*60*1000;
-    private static final long TIME_MILLIS_1_1_4713_BC = -210866803200000L;
+    private static final int SCAN_BLOCK_SIZE = 64 * 1024;
 
     private DBFHeader header;
     private int recordCount = 0;
     private boolean closed = false;
     private boolean showDeletedRows;
     private boolean trimRightSpaces = true;
+    private DBFDateMode dateMode = DBFDateMode.DATE;
     private Map<String, Integer> mapFieldNames = new HashMap<String, Integer>();
 
     private RandomAccessFile raf;
     private DBFMemoFile memoFile = null;
+    private DBFRecordDecoder decoder = null;
+    private DBFRecordEncoder encoder = null;
+    private final Map<String, DBFHashIndex> indexes = new TreeMap<String, DBFHashIndex>(String.CASE_INSENSITIVE_ORDER);
+    private final List<DBFTreeIndex> treeIndexes = new ArrayList<DBFTreeIndex>();
 
 
 
@@ -201,56 +205,30 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
      * @return object array for selected record
      */
     public Object[] getRecordOjects(int recordIndex) {
-        List<Object> recordObjects = new ArrayList<>(this.getFieldCount());
         byte[] byteRecord = this.readRecord(recordIndex);
         boolean isDeleted = byteRecord[0] == '*';
         if (isDeleted && !showDeletedRows) {
             return null;
         }
-        //skip heading byte
-        int fieldOffset = 1;
-
-        for (int i = 0; i < this.header.fieldArray.length; i++) {
-            DBFField field = this.header.fieldArray[i];
-            Object o = getFieldValue(field, byteRecord, fieldOffset);
-            fieldOffset += field.getLength();
-            if (field.isSystem()) {
-                if (field.getType() == DBFDataType.NULL_FLAGS && o instanceof BitSet) {
-                    BitSet nullFlags = (BitSet) o;
-                    int currentIndex = -1;
-                    for (int j = 0; j < this.header.fieldArray.length; j++) {
-                        DBFField field1 = this.header.fieldArray[j];
-                        if (field1.isNullable()) {
-                            currentIndex++;
-                            if (nullFlags.get(currentIndex)) {
-                                recordObjects.set(j, null);
-                            }
-                        }
-                        if (field1.getType() == DBFDataType.VARBINARY || field1.getType() == DBFDataType.VARCHAR) {
-                            currentIndex++;
-                            if (recordObjects.get(i) instanceof byte[]) {
-                                byte[] data = (byte[]) recordObjects.get(j);
-                                int size = field1.getLength();
-                                if (!nullFlags.get(currentIndex)) {
-                                    // Data is not full
-                                    size = data[data.length - 1];
-                                }
-                                byte[] newData = new byte[size];
-                                System.arraycopy(data, 0, newData, 0, size);
-                                Object o1 = newData;
-                                if (field1.getType() == DBFDataType.VARCHAR) {
-                                    o1 = new String(newData, getCharset());
-                                }
-                                recordObjects.set(j, o1);
-                            }
-                        }
+        return getDecoder().decode(byteRecord, 0);
+    }
+
+    /**
+     * Returns the decoders of the records, compiling them the first time
+     * @return the decoders
+     */
+    private DBFRecordDecoder getDecoder() {
+        if (this.decoder == null || this.decoder.charset != getCharset()) {
+            DBFRecordLayout layout = new DBFRecordLayout(this.header.fieldArray);
+            this.decoder = new DBFRecordDecoder(layout, getCharset(), this.trimRightSpaces,
+                DBFNumericMode.BIG_DECIMAL, this.dateMode, null, new DBFRecordDecoder.FieldReader() {
+                    @Override
+                    public Object getFieldValue(DBFField field, byte[] data, int offset) {
+                        return DBFRandomAccess.this.getFieldValue(field, data, offset);
                     }
-                }
-            } else {
-                recordObjects.add(o);
-            }
+                });
         }
-        return recordObjects.toArray();
+        return this.decoder;
     }
 
     /**
@@ -293,11 +271,19 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
      * @throws IOException write DBF exception
      */
     public void updateRecord(int recordIndex, Object[] objectArray) throws IOException {
-
-        for (int i = 0; i < this.header.fieldArray.length; i++) {
-            /* iterate through all fields */
-            this.updateRecord(recordIndex,i, objectArray[i]);
+        checkWritable(recordIndex);
+        if (objectArray == null || objectArray.length != this.header.fieldArray.length) {
+            throw new DBFException("Invalid record. Invalid number of fields in row");
         }
+        for (Object value : objectArray) {
+            if (value == null) {
+                throw new DBFException("Null field");
+            }
+        }
+        // The whole record is encoded before writing, so an invalid value doesn't leave it half updated
+        byte[] record = this.getEncoder().encode(objectArray);
+        // The deleted flag is kept
+        this.writeRecord(recordIndex, null, record, 1, this.header.recordLength - 1);
     }
 
     /**
@@ -326,35 +312,66 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
      * @throws IOException write DBF exception
      */
     public void updateRecord(int recordIndex, int fieldIndex, Object obj) throws IOException {
-        if (this.closed) {
-            throw new IllegalStateException("DBFRandomAccess has been closed");
-        }
-        if (this.header.fieldArray == null) {
-            throw new DBFException("Invalid dbf header");
-        }
+        String fieldName = fieldIndex >= 0 && fieldIndex < this.getFieldCount() ? this.header.fieldArray[fieldIndex].getName() : null;
+        checkWritable(recordIndex);
         if (obj == null) {
             throw new DBFException("Null field");
         }
-
-        if (!(recordIndex >= 0 && recordIndex < this.recordCount)) {
-            throw new DBFException("Invalid record position " + String.valueOf(recordIndex));
-        }
-        if (!(fieldIndex >= 0 && fieldIndex < this.getFieldCount())) {
+        if (fieldName == null) {
             throw new DBFException("Invalid field position " + String.valueOf(fieldIndex));
         }
+        DBFRecordEncoder recordEncoder = this.getEncoder();
+        byte[] data = recordEncoder.encodeField(fieldIndex, obj);
+        this.writeRecord(recordIndex, fieldName, data, recordEncoder.getOffset(fieldIndex),
+                this.header.fieldArray[fieldIndex].getLength());
+    }
 
-        int nOffset = this.header.headerLength + this.header.recordLength * recordIndex + 1;
-        for (int j = 0; j < this.header.fieldArray.length; j++) {
-            if (fieldIndex == j) {
-                break;
+    /**
+     * Writes part of a record and updates the indexes. The tree indexes that contain the
+     * updated fields are locked before writing, so they are built again if the process
+     * stops before they are updated.
+     * @param recordIndex the record
+     * @param fieldName the updated field, null if all the fields are updated
+     * @param data the encoded record
+     * @param offset position in the record of the bytes to write
+     * @param length number of bytes to write
+     * @throws IOException if the record can't be written
+     */
+    private void writeRecord(int recordIndex, String fieldName, byte[] data, int offset, int length) throws IOException {
+        byte[] oldRecord = this.readIndexedRecord(recordIndex, fieldName);
+        List<DBFTreeIndex> updated = new ArrayList<DBFTreeIndex>();
+        try {
+            if (oldRecord != null) {
+                for (DBFTreeIndex index : this.treeIndexes) {
+                    if (fieldName == null || index.containsField(fieldName)) {
+                        index.beginUpdate();
+                        updated.add(index);
+                    }
+                }
             }
-            else {
-                nOffset += this.header.fieldArray[j].getLength();
+            this.raf.seek(this.header.headerLength + (long) this.header.recordLength * recordIndex + offset);
+            this.raf.write(data, offset, length);
+        } catch (IOException | RuntimeException e) {
+            for (DBFTreeIndex index : updated) {
+                index.abortUpdate();
             }
+            throw e;
         }
-        writeToDBF(nOffset, this.header.fieldArray[fieldIndex], obj);
+        this.updateIndexes(recordIndex, fieldName, oldRecord);
+    }
 
+    private void checkWritable(int recordIndex) {
+        if (this.closed) {
+            throw new IllegalStateException("DBFRandomAccess has been closed");
+        }
+        if (this.header.fieldArray == null) {
+            throw new DBFException("Invalid dbf header");
+        }
+        if (!(recordIndex >= 0 && recordIndex < this.recordCount)) {
+            throw new DBFException("Invalid record position " + String.valueOf(recordIndex));
+        }
     }
+
     /**
      * Add a record.
      * @param values fields of the record
@@ -377,17 +394,12 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
             throw new DBFException("Invalid record. Invalid number of fields in row");
         }
 
-        int nOffset = this.header.headerLength + this.header.recordLength * this.recordCount;
-        this.raf.seek(nOffset);
-        this.raf.write((byte) ' ');
-        nOffset ++;
-        for (int i = 0; i < this.header.fieldArray.length; i++) {
-            try {
-                writeToDBF(nOffset, this.header.fieldArray[i], values[i]);
-                nOffset += this.header.fieldArray[i].getLength();
-            } catch (IOException e) {
-                throw new DBFException("Error occured while writing record. " + e.getMessage(), e);
-            }
+        byte[] record = this.getEncoder().encode(values);
+        try {
+            this.raf.seek(this.header.headerLength + (long) this.header.recordLength * this.recordCount);
+            this.raf.write(record);
+        } catch (IOException e) {
+            throw new DBFException("Error occured while writing record. " + e.getMessage(), e);
         }
         this.recordCount++;
         //add END_OF_DATA mark
@@ -397,6 +409,230 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
         this.header.numberOfRecords = this.recordCount;
         this.raf.seek(0);
         this.header.write(this.raf);
+
+        this.removeClosedTreeIndexes();
+        if (!this.indexes.isEmpty() || !this.treeIndexes.isEmpty()) {
+            for (DBFHashIndex index : this.indexes.values()) {
+                index.add(this.recordCount - 1, record, 0);
+            }
+            for (DBFTreeIndex index : this.treeIndexes) {
+                index.add(this.recordCount - 1, record, 0);
+                index.commit();
+            }
+        }
+    }
+
+    /**
+     * Reads a record before updating it, if some tree index contains the updated field
+     * @param recordIndex the record
+     * @param fieldName the updated field, null if all the fields are updated
+     * @return the record, or null if no tree index must be updated
+     */
+    private byte[] readIndexedRecord(int recordIndex, String fieldName) {
+        this.removeClosedTreeIndexes();
+        if (recordIndex < 0 || recordIndex >= this.recordCount) {
+            return null;
+        }
+        for (DBFTreeIndex index : this.treeIndexes) {
+            if (fieldName == null || index.containsField(fieldName)) {
+                return this.readRecord(recordIndex);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Updates the key of a record in the indexes that contain a field
+     * @param recordIndex the record
+     * @param fieldName the updated field, null if all the fields have been updated
+     * @param oldRecord the record before the update, if some tree index contains the field
+     */
+    private void updateIndexes(int recordIndex, String fieldName, byte[] oldRecord) {
+        byte[] record = null;
+        for (DBFHashIndex index : this.indexes.values()) {
+            if (fieldName == null || index.containsField(fieldName)) {
+                if (record == null) {
+                    record = this.readRecord(recordIndex);
+                }
+                index.remove(recordIndex);
+                index.add(recordIndex, record, 0);
+            }
+        }
+        if (oldRecord != null) {
+            if (record == null) {
+                record = this.readRecord(recordIndex);
+            }
+            for (DBFTreeIndex index : this.treeIndexes) {
+                if (fieldName == null || index.containsField(fieldName)) {
+                    index.update(recordIndex, oldRecord, record);
+                    index.commit();
+                }
+            }
+        }
+    }
+
+    private void removeClosedTreeIndexes() {
+        Iterator<DBFTreeIndex> iterator = this.treeIndexes.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isClosed()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Creates an in memory hash index over one or more fields.
+     *
+     * The index maps the values of the fields to the record numbers, so records can be
+     * found by key with {@link #getRecord(String, Object...)} without reading the whole file.
+     * It is kept up to date by addRecord and updateRecord. Records with some null value in
+     * the indexed fields are not indexed.
+     *
+     * @param indexName name of the index (case insensitive)
+     * @param fieldNames the fields of the key
+     * @throws DBFException if an index with the same name exists or a field type is not supported
+     */
+    public void createIndex(String indexName, String... fieldNames) {
+        if (this.closed) {
+            throw new DBFException("DBFRandomAccess is closed");
+        }
+        if (this.header.fieldArray == null) {
+            throw new DBFException("Fields should be set before creating indexes");
+        }
+        if (this.indexes.containsKey(indexName)) {
+            throw new DBFException("Index already exists: " + indexName);
+        }
+        DBFHashIndex index = new DBFHashIndex(new DBFRecordLayout(this.header.fieldArray), fieldNames, getCharset());
+        int recordLength = this.header.recordLength;
+        int recordsPerBlock = Math.max(1, SCAN_BLOCK_SIZE / recordLength);
+        byte[] block = new byte[recordsPerBlock * recordLength];
+        try {
+            this.raf.seek(this.header.headerLength);
+            for (int first = 0; first < this.recordCount; first += recordsPerBlock) {
+                int count = Math.min(recordsPerBlock, this.recordCount - first);
+                this.raf.readFully(block, 0, count * recordLength);
+                for (int i = 0; i < count; i++) {
+                    index.add(first + i, block, i * recordLength);
+                }
+            }
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        }
+        this.indexes.put(indexName, index);
+    }
+
+    /**
+     * Opens an index file (.cdx, .idx or .ndx) of this DBF file, read only.
+     *
+     * The types of the keys are taken from the fields of this file. The records found
+     * with the index can be read with {@link #getRecord(int)}.
+     *
+     * @param indexFile the index file
+     * @return the index file, that must be closed after use
+     */
+    public DBFIndexFile openIndex(File indexFile) {
+        if (this.closed) {
+            throw new DBFException("DBFRandomAccess is closed");
+        }
+        return new DBFIndexFile(indexFile, getCharset(), this.header.fieldArray);
+    }
+
+    /**
+     * Creates a B+tree index file over one or more fields, with all the records of this file.
+     *
+     * The index is kept up to date by addRecord and updateRecord while it is open, and can
+     * be opened read only by other processes with {@link DBFTreeIndex#DBFTreeIndex(File)}.
+     * Supported field types are character, numeric, date, timestamp and logical.
+     *
+     * @param indexFile the index file, overwritten if it exists
+     * @param fieldNames the fields of the key
+     * @return the index, closed when this file is closed
+     */
+    public DBFTreeIndex createTreeIndex(File indexFile, String... fieldNames) {
+        if (this.closed) {
+            throw new DBFException("DBFRandomAccess is closed");
+        }
+        if (this.header.fieldArray == null) {
+            throw new DBFException("Fields should be set before creating indexes");
+        }
+        DBFTreeIndexKey key = DBFTreeIndexKey.create(new DBFRecordLayout(this.header.fieldArray), fieldNames, getCharset());
+        DBFTreeIndex index = DBFTreeIndex.create(indexFile, key, this.raf, this.header.headerLength,
+                this.header.recordLength, this.recordCount);
+        this.treeIndexes.add(index);
+        return index;
+    }
+
+    /**
+     * Opens a B+tree index file created with {@link #createTreeIndex(File, String...)}.
+     *
+     * The index is kept up to date by addRecord and updateRecord while it is open. If it does not
+     * contain all the records of this file it is built again.
+     *
+     * @param indexFile the index file
+     * @return the index, closed when this file is closed
+     */
+    public DBFTreeIndex openTreeIndex(File indexFile) {
+        if (this.closed) {
+            throw new DBFException("DBFRandomAccess is closed");
+        }
+        if (this.header.fieldArray == null) {
+            throw new DBFException("Fields should be set before opening indexes");
+        }
+        DBFTreeIndex index = DBFTreeIndex.open(indexFile, new DBFRecordLayout(this.header.fieldArray), this.raf,
+                this.header.headerLength, this.header.recordLength, this.recordCount);
+        this.treeIndexes.add(index);
+        return index;
+    }
+
+    /**
+     * Removes an index
+     * @param indexName name of the index
+     */
+    public void dropIndex(String indexName) {
+        this.indexes.remove(indexName);
+    }
+
+    /**
+     * Finds the records with a key using an index. Deleted records are only
+     * returned if showDeletedRows is set.
+     *
+     * @param indexName name of the index
+     * @param key values of the key fields, in the order used to create the index
+     * @return indexes of the matching records, in ascending order
+     */
+    public int[] findRecords(String indexName, Object... key) {
+        DBFHashIndex index = this.indexes.get(indexName);
+        if (index == null) {
+            throw new DBFException("No index found for:" + indexName);
+        }
+        Object[] compiledKey = index.compileKey(key);
+        if (compiledKey == null) {
+            return new int[0];
+        }
+        int[] candidates = index.getCandidates(compiledKey);
+        int found = 0;
+        for (int recordIndex : candidates) {
+            byte[] record = this.readRecord(recordIndex);
+            if ((record[0] != '*' || this.showDeletedRows) && index.matches(record, 0, compiledKey)) {
+                candidates[found++] = recordIndex;
+            }
+        }
+        return Arrays.copyOf(candidates, found);
+    }
+
+    /**
+     * Returns the first record with a key using an index
+     *
+     * @param indexName name of the index
+     * @param key values of the key fields, in the order used to create the index
+     * @return the record, or null if no record has the key
+     */
+    public DBFRow getRecord(String indexName, Object... key) {
+        int[] records = findRecords(indexName, key);
+        if (records.length == 0) {
+            return null;
+        }
+        return getRecord(records[0]);
     }
 
     private Object getFieldValue(DBFField field, byte[] byteRecords, int offset) {
@@ -415,22 +651,7 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
                 byte b_array_var[] = subBytes(byteRecords, offset, field.getLength());
                 return b_array_var;
             case DATE:
-
-                byte t_byte_year[] = subBytes(byteRecords, offset, 4);
-                byte t_byte_month[] = subBytes(byteRecords, offset + 4 , 2);
-                byte t_byte_day[] = subBytes(byteRecords, offset + 6, 2);
-
-                try {
-                    GregorianCalendar calendar = new GregorianCalendar(Integer.parseInt(new String(t_byte_year,
-                            StandardCharsets.US_ASCII)),
-                            Integer.parseInt(new String(t_byte_month, StandardCharsets.US_ASCII)) - 1,
-                            Integer.parseInt(new String(t_byte_day, StandardCharsets.US_ASCII)));
-                    return calendar.getTime();
-                } catch (NumberFormatException e) {
-                    // this field may be empty or may have improper value set
-                    return null;
-                }
-
+                return DBFUtils.toDate(byteRecords, offset, this.dateMode);
 
             case FLOATING_POINT:
             case NUMERIC:
@@ -454,18 +675,7 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
                 return new BigDecimal(x1 + "." + x2);
             case TIMESTAMP:
             case TIMESTAMP_DBASE7:
-                int days = DBFUtils.toLittleEndianInt(subBytes(byteRecords, offset, 4));
-                int time = DBFUtils.toLittleEndianInt(subBytes(byteRecords, offset + 4, 4));
-
-                if(days == 0 && time == 0) {
-                    return null;
-                }
-                else {
-                    Calendar calendar = new GregorianCalendar();
-                    calendar.setTimeInMillis(days * MILLISECS_PER_DAY + TIME_MILLIS_1_1_4713_BC + time);
-                    calendar.add(Calendar.MILLISECOND, -TimeZone.getDefault().getOffset(calendar.getTimeInMillis()));
-                    return calendar.getTime();
-                }
+                return DBFUtils.toTimestamp(byteRecords, offset, this.dateMode);
             case MEMO:
             case GENERAL_OLE:
             case PICTURE:
@@ -535,11 +745,119 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
     }
 
 
+    /**
+     * Counts the live and deleted records, reading only the deleted flag of every record.
+     *
+     * @param collectDeleted if the numbers of the deleted records should be returned
+     * @return the number of live and deleted records
+     */
+    public DBFRecordCensus getRecordCensus(boolean collectDeleted) {
+        if (this.closed) {
+            throw new DBFException("DBFRandomAccess is closed");
+        }
+        try {
+            if (this.header.fieldArray == null || this.recordCount == 0) {
+                return DBFRecordCensus.count(null, 0, 0, collectDeleted);
+            }
+            DBFMappedFile mappedFile = new DBFMappedFile(this.raf.getChannel(), this.header.headerLength, this.header.recordLength);
+            return DBFRecordCensus.count(mappedFile, 0, Math.min(this.recordCount, mappedFile.getRecordCount()), collectDeleted);
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finds the records that match a condition.
+     *
+     * The file is read sequentially in blocks and the condition is evaluated over the
+     * raw bytes of every record, without decoding them. Deleted records are only
+     * considered if showDeletedRows is set.
+     *
+     * @param filter the condition
+     * @return indexes of the matching records, in ascending order
+     */
+    public int[] findRecords(DBFFilter filter) {
+        if (this.closed) {
+            throw new DBFException("DBFRandomAccess is closed");
+        }
+        if (this.header.fieldArray == null || this.recordCount == 0) {
+            return new int[0];
+        }
+        DBFRecordPredicate predicate = filter.compile(new DBFRecordLayout(this.header), getCharset());
+        int recordLength = this.header.recordLength;
+        int recordsPerBlock = Math.max(1, SCAN_BLOCK_SIZE / recordLength);
+        byte[] block = new byte[recordsPerBlock * recordLength];
+        int[] result = new int[16];
+        int found = 0;
+        try {
+            this.raf.seek(this.header.headerLength);
+            for (int first = 0; first < this.recordCount; first += recordsPerBlock) {
+                int count = Math.min(recordsPerBlock, this.recordCount - first);
+                this.raf.readFully(block, 0, count * recordLength);
+                for (int i = 0; i < count; i++) {
+                    int recordOffset = i * recordLength;
+                    if (block[recordOffset] == '*' && !this.showDeletedRows) {
+                        continue;
+                    }
+                    if (predicate.matches(block, recordOffset)) {
+                        if (found == result.length) {
+                            result = Arrays.copyOf(result, found * 2);
+                        }
+                        result[found++] = first + i;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    /**
+     * Computes a group by aggregation over all the records.
+     *
+     * The file is read sequentially in blocks, as in {@link #findRecords(DBFFilter)}, and
+     * records are aggregated without decoding them. Deleted records are only
+     * considered if showDeletedRows is set.
+     *
+     * @param aggregation the aggregation
+     * @return a row for every group, in order of first appearance
+     */
+    public List<DBFAggregateRow> aggregate(DBFAggregation aggregation) {
+        if (this.closed) {
+            throw new DBFException("DBFRandomAccess is closed");
+        }
+        if (this.header.fieldArray == null) {
+            return new ArrayList<DBFAggregateRow>();
+        }
+        DBFAggregator aggregator = aggregation.compile(new DBFRecordLayout(this.header), getCharset());
+        int recordLength = this.header.recordLength;
+        int recordsPerBlock = Math.max(1, SCAN_BLOCK_SIZE / recordLength);
+        byte[] block = new byte[recordsPerBlock * recordLength];
+        try {
+            this.raf.seek(this.header.headerLength);
+            for (int first = 0; first < this.recordCount; first += recordsPerBlock) {
+                int count = Math.min(recordsPerBlock, this.recordCount - first);
+                this.raf.readFully(block, 0, count * recordLength);
+                for (int i = 0; i < count; i++) {
+                    int recordOffset = i * recordLength;
+                    if (block[recordOffset] != '*' || this.showDeletedRows) {
+                        aggregator.add(block, recordOffset);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new DBFException(e.getMessage(), e);
+        }
+        return aggregator.getRows();
+    }
+
     private Map<String, Integer> createMapFieldNames(DBFField[] fieldArray) {
-        Map<String, Integer> fieldNames = new HashMap<String, Integer>();
+        // case insensitive, so names are found without converting them to lower case
+        Map<String, Integer> fieldNames = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
         for (int i = 0; i < fieldArray.length; i++) {
             String name = fieldArray[i].getName();
-            fieldNames.put(name.toLowerCase(), i);
+            fieldNames.put(name, i);
         }
         return Collections.unmodifiableMap(fieldNames);
     }
@@ -553,63 +871,11 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
         return bs;
     }
 
-    private void writeToDBF(int nOffset,DBFField field, Object obj) throws IOException{
-        this.raf.seek(nOffset);
-        switch (field.getType()) {
-            case CHARACTER:
-                String strValue = "";
-                if (obj != null) {
-                    strValue = obj.toString();
-                }
-                this.raf.write(DBFUtils.textPadding(strValue, getCharset(),
-                        field.getLength(), DBFAlignment.LEFT, (byte) ' '));
-
-                break;
-
-            case DATE:
-                if (obj != null) {
-                    GregorianCalendar calendar = new GregorianCalendar();
-                    calendar.setTime((Date) obj);
-                    this.raf.write(String.valueOf(calendar.get(Calendar.YEAR)).getBytes(StandardCharsets.US_ASCII));
-                    this.raf.write(DBFUtils.textPadding(String.valueOf(calendar.get(Calendar.MONTH) + 1),
-                            StandardCharsets.US_ASCII, 2, DBFAlignment.RIGHT, (byte) '0'));
-                    this.raf.write(DBFUtils.textPadding(String.valueOf(calendar.get(Calendar.DAY_OF_MONTH)),
-                            StandardCharsets.US_ASCII, 2, DBFAlignment.RIGHT, (byte) '0'));
-                } else {
-                    this.raf.write("        ".getBytes(StandardCharsets.US_ASCII));
-                }
-
-                break;
-            case NUMERIC:
-            case FLOATING_POINT:
-
-                if (obj != null) {
-                    this.raf.write(DBFUtils.doubleFormating((Number) obj, getCharset(),
-                            field.getLength(), field.getDecimalCount()));
-                } else {
-                    this.raf.write(DBFUtils.textPadding(" ", getCharset(),
-                            field.getLength(), DBFAlignment.RIGHT, (byte) ' '));
-                }
-
-                break;
-
-            case LOGICAL:
-
-                if (obj instanceof Boolean) {
-                    if ((Boolean) obj) {
-                        this.raf.write((byte) 'T');
-                    } else {
-                        this.raf.write((byte) 'F');
-                    }
-                } else {
-                    this.raf.write((byte) '?');
-                }
-
-                break;
-
-            default:
-                throw new DBFException("Unknown field type " + field.getType());
+    private DBFRecordEncoder getEncoder() {
+        if (this.encoder == null) {
+            this.encoder = new DBFRecordEncoder(this.header.fieldArray, getCharset());
         }
+        return this.encoder;
     }
 
     /**
@@ -630,6 +896,24 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
         this.memoFile = new DBFMemoFile(memoFile, this.getCharset());
     }
 
+    /**
+     * Gets the Java type used for DATE and TIMESTAMP fields
+     * @return the date mode
+     */
+    public DBFDateMode getDateMode() {
+        return this.dateMode;
+    }
+
+    /**
+     * Sets the Java type used for DATE and TIMESTAMP fields (default DATE).
+     * @param dateMode the date mode
+     * @see DBFReader#setDateMode(DBFDateMode)
+     */
+    public void setDateMode(DBFDateMode dateMode) {
+        this.dateMode = Objects.requireNonNull(dateMode, "dateMode");
+        this.decoder = null;
+    }
+
     @Override
     public Charset getCharset() {
         return this.header.getUsedCharset();
@@ -641,6 +925,10 @@ public final class DBFRandomAccess extends DBFBase implements Closeable {
             return;
         }
         this.closed = true;
+        for (DBFTreeIndex index : this.treeIndexes) {
+            DBFUtils.close(index);
+        }
+        this.treeIndexes.clear();
         if (this.raf != null) {
             DBFUtils.close(this.raf);
             this.raf = null;
@@ -0,0 +1,223 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * InputStream that reads the data of another InputStream in a background thread.
+ *
+ * The background thread fills a ring of buffers (the free buffers are taken from one
+ * queue and, once filled, put in another), so reading from the underlying stream
+ * overlaps with the processing done by the consumer. The thread blocks when all the
+ * buffers are full, and it is stopped when the end of the stream is reached, on error
+ * or when this stream is closed. Any error of the underlying stream, including unchecked
+ * exceptions, is thrown to the consumer as IOException.
+ */
+final class DBFReadAheadInputStream extends InputStream {
+
+	private static final class Buffer {
+		private final byte[] data;
+		private int length;
+		private IOException error;
+
+		Buffer(int size) {
+			this.data = new byte[size];
+		}
+	}
+
+	private final InputStream in;
+	private final BlockingQueue<Buffer> freeBuffers;
+	private final BlockingQueue<Buffer> filledBuffers;
+	private final Thread thread;
+	private volatile boolean closed = false;
+	private IOException pendingError = null;
+	private Buffer current = null;
+	private int position = 0;
+
+	/**
+	 * Creates the stream and starts the background thread
+	 * @param in the stream to read
+	 * @param bufferSize size of every buffer
+	 * @param depth number of buffers that can be read ahead of the consumer
+	 */
+	DBFReadAheadInputStream(InputStream in, int bufferSize, int depth) {
+		super();
+		this.in = in;
+		this.freeBuffers = new ArrayBlockingQueue<Buffer>(depth + 1);
+		this.filledBuffers = new ArrayBlockingQueue<Buffer>(depth + 1);
+		for (int i = 0; i <= depth; i++) {
+			this.freeBuffers.add(new Buffer(bufferSize));
+		}
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readAhead();
+			}
+		}, "javadbf-read-ahead");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	private void readAhead() {
+		try {
+			boolean end = false;
+			while (!end && !this.closed) {
+				Buffer buffer = this.freeBuffers.take();
+				fill(buffer);
+				end = buffer.length < 0 || buffer.error != null;
+				this.filledBuffers.put(buffer);
+			}
+		}
+		catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	private void fill(Buffer buffer) {
+		buffer.length = 0;
+		if (this.pendingError != null) {
+			buffer.length = -1;
+			buffer.error = this.pendingError;
+			return;
+		}
+		try {
+			while (buffer.length < buffer.data.length && !this.closed) {
+				int read = this.in.read(buffer.data, buffer.length, buffer.data.length - buffer.length);
+				if (read < 0) {
+					break;
+				}
+				buffer.length += read;
+			}
+			if (buffer.length == 0) {
+				buffer.length = -1;
+			}
+		}
+		catch (Throwable e) { //NOPMD
+			// Unchecked errors must reach the consumer too, or it would wait forever
+			IOException error = e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+			if (buffer.length > 0) {
+				// Deliver the data already read, the error goes in the next buffer
+				this.pendingError = error;
+			}
+			else {
+				buffer.length = -1;
+				buffer.error = error;
+			}
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextBuffer()) {
+			return -1;
+		}
+		return this.current.data[this.position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextBuffer()) {
+			return -1;
+		}
+		int count = Math.min(len, this.current.length - this.position);
+		System.arraycopy(this.current.data, this.position, b, off, count);
+		this.position += count;
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (this.current == null || this.current.length < 0) {
+			return 0;
+		}
+		return this.current.length - this.position;
+	}
+
+	/**
+	 * Makes sure the current buffer has data, waiting for the background thread if needed
+	 * @return false at the end of the stream
+	 * @throws IOException if the stream is closed or the background thread got an error
+	 */
+	private boolean nextBuffer() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed");
+		}
+		while (this.current == null || this.position == this.current.length) {
+			if (this.current != null) {
+				this.freeBuffers.add(this.current);
+				this.current = null;
+			}
+			try {
+				this.current = this.filledBuffers.take();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for data");
+			}
+			this.position = 0;
+		}
+		if (this.current.error != null) {
+			throw this.current.error;
+		}
+		return this.current.length >= 0;
+	}
+
+	/**
+	 * Closes the underlying stream, so a blocked read of the background thread fails,
+	 * and waits until the thread stops
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		IOException closeError = null;
+		try {
+			this.in.close();
+		}
+		catch (IOException e) {
+			closeError = e;
+		}
+		this.thread.interrupt();
+		boolean interrupted = false;
+		while (this.thread.isAlive()) {
+			try {
+				this.thread.join();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (closeError != null) {
+			throw closeError;
+		}
+	}
+}
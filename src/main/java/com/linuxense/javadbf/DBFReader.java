@@ -26,22 +26,20 @@ import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.math.BigDecimal;
-import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
+import java.util.Objects;
+import java.util.TreeMap;
 
 /**
  * DBFReader class can creates objects to represent DBF data.
@@ -58,6 +56,11 @@ import java.util.TimeZone;
  * object.
  * </p>
  * <p>
+ * When created from a File, the records region of the file is memory mapped
+ * and records are decoded directly from the mapped data, instead of reading
+ * them field by field from a stream.
+ * </p>
+ * <p>
  * The nextRecord() method returns an array of Objects and the types of these
  * Object are as follows:
  * </p>
@@ -75,11 +78,11 @@ import java.util.TimeZone;
  * </tr>
  * <tr>
  * <td>N</td>
- * <td>java.math.BigDecimal</td>
+ * <td>java.math.BigDecimal (or Long/Double, see {@link #setNumericMode(DBFNumericMode)})</td>
  * </tr>
  * <tr>
  * <td>F</td>
- * <td>java.math.BigDecimal</td>
+ * <td>java.math.BigDecimal (or Long/Double, see {@link #setNumericMode(DBFNumericMode)})</td>
  * </tr>
  * <tr>
  * <td>L</td>
@@ -142,13 +145,31 @@ import java.util.TimeZone;
  */
 public class DBFReader extends DBFBase implements Closeable {
 
-	private static final long MILLISECS_PER_DAY = 24*60*60*1000;
-	private static final long TIME_MILLIS_1_1_4713_BC = -210866803200000L;
+	private static final int DEFAULT_BLOCK_BYTES = 64 * 1024;
 
 	protected InputStream inputStream;
 	protected DataInputStream dataInputStream;
+	private RandomAccessFile raf = null;
+	private DBFMappedFile mappedFile = null;
+	private int nextRecordIndex = 0;
+	private byte[] recordData;
+	private int recordOffset = 0;
+	private int recordSize;
+	private int blockSize = 0;
+	private byte[] blockData = null;
+	private int blockPosition = 0;
+	private int blockLimit = 0;
 	private DBFHeader header;
+	private DBFRecordLayout fullLayout;
+	private DBFRecordPredicate filter;
+	private DBFRecordLayout layout;
 	private boolean trimRightSpaces = true;
+	private DBFNumericMode numericMode = DBFNumericMode.BIG_DECIMAL;
+	private DBFDateMode dateMode = DBFDateMode.DATE;
+	private DBFStringDictionary[] dictionaries = null;
+	private DBFRecordDecoder decoder = null;
+	private int readAheadDepth = 0;
+	private boolean lazyDecoding = false;
 
 	private DBFMemoFile memoFile = null;
 
@@ -227,7 +248,11 @@ public class DBFReader extends DBFBase implements Closeable {
 			int t_dataStartIndex = this.header.headerLength - (tableSize + (fieldSize * this.header.fieldArray.length)) - 1;			
 			skip(t_dataStartIndex);
 			
+			this.fullLayout = new DBFRecordLayout(this.header);
+			this.layout = this.fullLayout;
 			this.mapFieldNames = createMapFieldNames(this.header.userFieldArray);
+			this.recordSize = Math.max(1, this.header.recordLength);
+			this.recordData = new byte[this.recordSize];
 		} catch (IOException e) {
 			DBFUtils.close(dataInputStream);
 			DBFUtils.close(in);
@@ -235,12 +260,77 @@ public class DBFReader extends DBFBase implements Closeable {
 		}
 	}
 
+	/**
+	 * Initializes a DBFReader object which reads records from a memory mapped file.
+	 *
+	 * Tries to detect charset from file, if failed uses default charset ISO-8859-1
+	 * When this constructor returns the object will have completed reading the
+	 * header (meta date) and header information can be queried there on. And it
+	 * will be ready to return the first row.
+	 *
+	 * @param file the file where the data is read from.
+	 */
+	public DBFReader(File file) {
+		this(file, null, false);
+	}
+
+	/**
+	 * Initializes a DBFReader object which reads records from a memory mapped file.
+	 *
+	 * When this constructor returns the object will have completed reading the
+	 * header (meta date) and header information can be queried there on. And it
+	 * will be ready to return the first row.
+	 *
+	 * @param file the file where the data is read from.
+	 * @param charset charset used to decode field names and field contents. If null, then is autedetected from dbf file
+	 */
+	public DBFReader(File file, Charset charset) {
+		this(file, charset, false);
+	}
+
+	/**
+	 * Initializes a DBFReader object which reads records from a memory mapped file.
+	 *
+	 * When this constructor returns the object will have completed reading the
+	 * header (meta date) and header information can be queried there on. And it
+	 * will be ready to return the first row.
+	 *
+	 * @param file the file where the data is read from.
+	 * @param charset charset used to decode field names and field contents. If null, then is autedetected from dbf file
+	 * @param showDeletedRows can be used to identify records that have been deleted.
+	 */
+	public DBFReader(File file, Charset charset, boolean showDeletedRows) {
+		try {
+			this.showDeletedRows = showDeletedRows;
+			this.raf = new RandomAccessFile(file, "r");
+			this.header = new DBFHeader();
+			this.header.read(this.raf, charset, showDeletedRows);
+			setCharset(this.header.getUsedCharset());
+			this.mappedFile = new DBFMappedFile(this.raf.getChannel(), this.header.headerLength, this.header.recordLength);
+			this.fullLayout = new DBFRecordLayout(this.header);
+			this.layout = this.fullLayout;
+			this.mapFieldNames = createMapFieldNames(this.header.userFieldArray);
+			this.recordSize = Math.max(1, this.header.recordLength);
+			this.recordData = new byte[this.recordSize];
+		} catch (FileNotFoundException e) {
+			DBFUtils.close(this.raf);
+			throw new DBFException("Specified file is not found. " + e.getMessage(), e);
+		} catch (IOException e) {
+			DBFUtils.close(this.raf);
+			throw new DBFException(e.getMessage(), e);
+		} catch (DBFException e) {
+			DBFUtils.close(this.raf);
+			throw e;
+		}
+	}
+
 
 	private Map<String, Integer> createMapFieldNames(DBFField[] fieldArray) {
-		Map<String, Integer> fieldNames = new HashMap<String, Integer>();
+		// case insensitive, so names are found without converting them to lower case
+		Map<String, Integer> fieldNames = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
 		for (int i = 0; i < fieldArray.length; i++) {
 			String name = fieldArray[i].getName();
-			fieldNames.put(name.toLowerCase(), i);
+			fieldNames.put(name, i);
 		}		
 		return Collections.unmodifiableMap(fieldNames);
 	}
@@ -273,18 +363,109 @@ public class DBFReader extends DBFBase implements Closeable {
 	 * @return Field definition for selected field
 	 */
 	public DBFField getField(int index) {
-		if (index < 0 || index >= this.header.userFieldArray.length) {
-			throw new IllegalArgumentException("Invalid index field: (" + index+"). Valid range is 0 to " + (this.header.userFieldArray.length - 1));
+		if (index < 0 || index >= this.layout.fields.length) {
+			throw new IllegalArgumentException("Invalid index field: (" + index+"). Valid range is 0 to " + (this.layout.fields.length - 1));
 		}
-		return new DBFField(this.header.userFieldArray[index]);
+		return new DBFField(this.layout.fields[index]);
 	}
 
 	/**
 	 * Returns the number of field in the DBF.
+	 * If a projection is set, only the projected fields are counted.
 	 * @return number of fields in the DBF file 
 	 */
 	public int getFieldCount() {
-		return this.header.userFieldArray.length;
+		return this.layout.fields.length;
+	}
+
+	/**
+	 * Restricts the fields returned by nextRecord and nextRow to the given ones, in the given order.
+	 *
+	 * Fields not selected are skipped without decoding them. After this call
+	 * getFieldCount, getField and the field names used by DBFRow refer only to the
+	 * projected fields. It should be called before reading records.
+	 *
+	 * @param fieldNames names of the fields to read (case insensitive)
+	 * @throws DBFFieldNotFoundException if some field doesn't exists
+	 */
+	public void setProjection(String... fieldNames) {
+		int[] columns = new int[fieldNames.length];
+		for (int i = 0; i < fieldNames.length; i++) {
+			columns[i] = this.fullLayout.findColumn(fieldNames[i]);
+		}
+		setProjection(columns);
+	}
+
+	/**
+	 * Restricts the fields returned by nextRecord and nextRow to the given ones, in the given order.
+	 *
+	 * Fields not selected are skipped without decoding them. After this call
+	 * getFieldCount, getField and the field names used by DBFRow refer only to the
+	 * projected fields. It should be called before reading records.
+	 *
+	 * @param fieldIndexes indexes of the fields to read, as if there was no projection
+	 */
+	public void setProjection(int... fieldIndexes) {
+		for (int index : fieldIndexes) {
+			if (index < 0 || index >= this.fullLayout.fields.length) {
+				throw new IllegalArgumentException("Invalid index field: (" + index+"). Valid range is 0 to " + (this.fullLayout.fields.length - 1));
+			}
+		}
+		this.layout = this.fullLayout.project(fieldIndexes);
+		this.mapFieldNames = createMapFieldNames(this.layout.fields);
+	}
+
+	/**
+	 * Removes the projection, so all fields are returned again
+	 */
+	public void clearProjection() {
+		this.layout = this.fullLayout;
+		this.mapFieldNames = createMapFieldNames(this.layout.fields);
+	}
+
+	/**
+	 * Sets a condition that the records must match to be returned by
+	 * nextRecord, nextRow and the cursors of this reader.
+	 *
+	 * The condition is evaluated over the raw bytes of the record, so records that
+	 * doesn't match are skipped without decoding them. Fields used in the condition
+	 * don't need to be in the projection. It should be called before reading records.
+	 *
+	 * @param filter the condition, null to remove it
+	 * @throws DBFFieldNotFoundException if some field doesn't exists
+	 */
+	public void setFilter(DBFFilter filter) {
+		this.filter = filter != null ? filter.compile(this.fullLayout, getCharset()) : null;
+	}
+
+	/**
+	 * Keeps a dictionary of the values of a CHARACTER field, so repeated values are
+	 * decoded only once and return the same String instance.
+	 *
+	 * Useful for fields with few distinct values, like codes or categories. The
+	 * dictionary keeps at most maxEntries values; when it is full, old values are replaced.
+	 *
+	 * @param fieldName name of the field (case insensitive)
+	 * @param maxEntries maximum number of values to keep, 0 to remove the dictionary
+	 * @throws DBFFieldNotFoundException if the field doesn't exists
+	 */
+	public void setStringDictionary(String fieldName, int maxEntries) {
+		if (maxEntries < 0) {
+			throw new IllegalArgumentException("Number of entries can not be negative: " + maxEntries);
+		}
+		int column = this.fullLayout.findColumn(fieldName);
+		DBFField field = this.fullLayout.fields[column];
+		if (field.getType() != DBFDataType.CHARACTER) {
+			throw new DBFException("String dictionaries are only supported for CHARACTER fields: " + field.getName());
+		}
+		if (this.dictionaries == null) {
+			if (maxEntries == 0) {
+				return;
+			}
+			this.dictionaries = new DBFStringDictionary[this.fullLayout.fields.length];
+		}
+		this.dictionaries[column] = maxEntries > 0 ? new DBFStringDictionary(maxEntries, getCharset()) : null;
+		this.decoder = null;
 	}
 
 	/**
@@ -294,228 +475,417 @@ public class DBFReader extends DBFBase implements Closeable {
 	 *          arrays follow the convention mentioned in the class description.
 	 */
 	public Object[] nextRecord() {
+		if (!fetchRecord()) {
+			return null;
+		}
+		return decodeRecord(this.recordData, this.recordOffset);
+	}
+
+	/**
+	 * Returns a cursor to iterate over the remaining records of this reader.
+	 *
+	 * The cursor reuses the same buffer for every record and decodes values only
+	 * when they are requested, so primitive values can be read without any allocation.
+	 *
+	 * @return a cursor over the remaining records
+	 */
+	public DBFCursor createCursor() {
+		return new DBFCursor(this);
+	}
+
+	/**
+	 * Advances to the next visible record, leaving its data in recordData
+	 * @return false if there are no more records
+	 */
+	boolean fetchRecord() {
 		if (this.closed) {
 			throw new IllegalArgumentException("this DBFReader is closed");
 		}
-		List<Object> recordObjects = new ArrayList<>(this.getFieldCount());
 		try {
-			boolean isDeleted = false;
+			while (readNextRecordData()) {
+				if (this.filter == null || this.filter.matches(this.recordData, this.recordOffset)) {
+					return true;
+				}
+			}
+			return false;
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+	}
 
-			do {
-				try {
-					if (isDeleted && !showDeletedRows) {
-						skip(this.header.recordLength - 1);
-					}
-					int t_byte = this.dataInputStream.readByte();
-					if (t_byte == END_OF_DATA || t_byte == -1) {
-						return null;
-					}
-					isDeleted = t_byte == '*';
+	/**
+	 * Restricts the records read to a range of record indexes
+	 * @param from first record, inclusive
+	 * @param to last record, exclusive
+	 */
+	void setRecordRange(int from, int to) {
+		if (this.mappedFile == null) {
+			throw new DBFException("Record ranges are only supported when reading from a File");
+		}
+		if (from < 0 || from > to) {
+			throw new IllegalArgumentException("Invalid record range: " + from + " to " + to);
+		}
+		this.mappedFile.restrict(from, to);
+		this.nextRecordIndex = from;
+	}
+
+	/**
+	 * Counts the live and deleted records of the file, reading only the deleted flag of every record.
+	 *
+	 * All the records of the file are counted, whatever the records already read,
+	 * the filter or the showDeletedRows setting.
+	 *
+	 * @param collectDeleted if the numbers of the deleted records should be returned
+	 * @return the number of live and deleted records
+	 * @throws DBFException if the reader was not created from a File
+	 */
+	public DBFRecordCensus getRecordCensus(boolean collectDeleted) {
+		if (this.mappedFile == null) {
+			throw new DBFException("Record census is only supported when reading from a File");
+		}
+		try {
+			return DBFRecordCensus.count(this.mappedFile, this.mappedFile.getFirstRecord(),
+				this.mappedFile.getRecordCount(), collectDeleted);
+		}
+		catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Number of complete records stored in the file, that may differ from the header
+	 * @return number of records, or the header number of records if reading from a stream
+	 */
+	int getStoredRecordCount() {
+		if (this.mappedFile == null) {
+			return this.header.numberOfRecords;
+		}
+		return this.mappedFile.getRecordCount();
+	}
+
+	/**
+	 * Sets the number of records read at once from the InputStream.
+	 *
+	 * Records are read in blocks into a reusable buffer and decoded from there, so
+	 * the number of reads doesn't depend on the InputStream being buffered.
+	 * A read never waits for more than one record if the stream has less data available.
+	 * Defaults to the number of records that fit in 64KB. It has no effect when reading from a File.
+	 *
+	 * @param blockSize number of records, 0 to use the default
+	 */
+	public void setBlockSize(int blockSize) {
+		if (blockSize < 0) {
+			throw new IllegalArgumentException("Block size can not be negative: " + blockSize);
+		}
+		this.blockSize = blockSize;
+	}
+
+	/**
+	 * Reads the InputStream in a background thread, so waiting for the data overlaps with
+	 * decoding the records already read.
+	 *
+	 * The background thread reads blocks of {@link #getBlockSize()} records into a ring of
+	 * buffers, up to depth blocks ahead of the records returned. It is stopped by close().
+	 * Useful for slow streams, like files in network shares. It has no effect when reading
+	 * from a File, as the operating system already reads ahead the mapped file.
+	 *
+	 * @param depth number of blocks to read ahead
+	 */
+	public void setReadAhead(int depth) {
+		if (depth <= 0) {
+			throw new IllegalArgumentException("Read ahead depth should be positive: " + depth);
+		}
+		if (this.readAheadDepth > 0) {
+			throw new IllegalStateException("Read ahead is already enabled");
+		}
+		this.readAheadDepth = depth;
+		if (this.mappedFile == null && this.dataInputStream != null) {
+			this.dataInputStream = new DataInputStream(
+				new DBFReadAheadInputStream(this.dataInputStream, getBlockSize() * this.recordSize, depth));
+		}
+	}
+
+	/**
+	 * Gets the number of blocks read ahead in a background thread
+	 * @return the number of blocks, 0 if read ahead is not enabled
+	 */
+	public int getReadAhead() {
+		return this.readAheadDepth;
+	}
+
+	/**
+	 * Gets the number of records read at once from the InputStream.
+	 * @return the number of records
+	 */
+	public int getBlockSize() {
+		if (this.blockSize > 0) {
+			return this.blockSize;
+		}
+		return Math.max(1, DEFAULT_BLOCK_BYTES / this.recordSize);
+	}
+
+	byte[] getRecordData() {
+		return this.recordData;
+	}
+
+	/**
+	 * Creates a batch to read the records of this reader by columns, using the current projection.
+	 *
+	 * @param capacity maximum number of rows of the batch
+	 * @return an empty batch
+	 * @see #nextBatch(DBFColumnBatch)
+	 */
+	public DBFColumnBatch createBatch(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity should be positive: " + capacity);
+		}
+		return new DBFColumnBatch(this, capacity);
+	}
+
+	/**
+	 * Reads the next records into a batch, replacing its previous contents.
+	 *
+	 * The batch is filled up to its capacity, so only the last batch has less rows.
+	 * Filters are applied as in nextRecord.
+	 *
+	 * @param batch a batch created by createBatch of this reader
+	 * @return false if there were no more records
+	 */
+	public boolean nextBatch(DBFColumnBatch batch) {
+		if (batch.getLayout() != this.layout) {
+			throw new IllegalArgumentException("The batch was not created with the current projection of this reader");
+		}
+		batch.clear();
+		boolean full = false;
+		while (!full && fetchRecord()) {
+			full = batch.addRecord(this.recordData, this.recordOffset);
+		}
+		batch.load(this);
+		return batch.getRowCount() > 0;
+	}
+
+	int getRecordSize() {
+		return this.recordSize;
+	}
+
+	int getRecordOffset() {
+		return this.recordOffset;
+	}
+
+	Map<String, Integer> getMapFieldNames() {
+		return this.mapFieldNames;
+	}
+
+	DBFRecordLayout getLayout() {
+		return this.layout;
+	}
+
+	DBFRecordLayout getFullLayout() {
+		return this.fullLayout;
+	}
+
+	/**
+	 * Reads the raw data of the next visible record into recordData.
+	 * @return false if there are no more records
+	 * @throws IOException if some IO error happens
+	 */
+	private boolean readNextRecordData() throws IOException {
+		if (this.mappedFile != null) {
+			while (this.nextRecordIndex < this.mappedFile.getRecordCount()) {
+				this.mappedFile.readRecord(this.nextRecordIndex, this.recordData, 0);
+				this.nextRecordIndex++;
+				if (this.recordData[0] == END_OF_DATA) {
+					this.nextRecordIndex = this.mappedFile.getRecordCount();
+					return false;
 				}
-				catch (EOFException e) {
-					return null;
+				if (this.recordData[0] != '*' || this.showDeletedRows) {
+					return true;
 				}
-			} while (isDeleted && !showDeletedRows);
-
-			if(showDeletedRows) {
-				recordObjects.add(isDeleted);
 			}
+			return false;
+		}
+		boolean isDeleted = false;
+		do {
+			if (this.blockLimit - this.blockPosition < this.recordSize && !fillBlock()) {
+				return false;
+			}
+			byte t_byte = this.blockData[this.blockPosition];
+			if (t_byte == END_OF_DATA || t_byte == -1) {
+				return false;
+			}
+			this.recordData = this.blockData;
+			this.recordOffset = this.blockPosition;
+			this.blockPosition += this.recordSize;
+			isDeleted = t_byte == '*';
+		} while (isDeleted && !this.showDeletedRows);
+		return true;
+	}
 
-			for (int i = 0; i < this.header.fieldArray.length; i++) {
-				DBFField field = this.header.fieldArray[i];
-				Object o = getFieldValue(field);
-				if (field.isSystem()) {
-					if (field.getType() == DBFDataType.NULL_FLAGS && o instanceof BitSet) {
-						BitSet nullFlags = (BitSet) o;
-						int currentIndex = -1;
-						for (int j = 0; j < this.header.fieldArray.length; j++) {
-							DBFField field1 = this.header.fieldArray[j];
-							if (field1.isNullable()) {
-								currentIndex++;
-								if (nullFlags.get(currentIndex)) {
-									recordObjects.set(j, null);
-								}
-							}
-							if (field1.getType() == DBFDataType.VARBINARY || field1.getType() == DBFDataType.VARCHAR){
-								currentIndex++;
-								if (recordObjects.get(i) instanceof byte[]) {
-									byte[] data = (byte[]) recordObjects.get(j);
-									int size = field1.getLength();
-									if (!nullFlags.get(currentIndex)) {
-										// Data is not full
-										size = data[data.length-1];
-									}
-									byte[] newData = new byte[size];
-									System.arraycopy(data, 0, newData, 0, size);
-									Object o1 = newData;
-									if (field1.getType() == DBFDataType.VARCHAR) {
-										o1 = new String(newData, getCharset());
-									}
-									recordObjects.set(j, o1);
-								}
-							}
-						}
-					}
-				}
-				else {
-					recordObjects.add(o);
+	/**
+	 * Reads the next block of records from the stream, keeping the bytes of an incomplete record.
+	 * Reads until there is at least one complete record, the end of data mark or the end of the stream.
+	 * @return false if the stream has no more records
+	 * @throws IOException if some IO error happens or the last record is incomplete
+	 */
+	private boolean fillBlock() throws IOException {
+		int remaining = this.blockLimit - this.blockPosition;
+		int size = getBlockSize() * this.recordSize;
+		if (this.blockData == null || this.blockData.length != size) {
+			byte[] newBlock = new byte[size];
+			if (this.blockData != null) {
+				System.arraycopy(this.blockData, this.blockPosition, newBlock, 0, remaining);
+			}
+			this.blockData = newBlock;
+		}
+		else if (remaining > 0) {
+			System.arraycopy(this.blockData, this.blockPosition, this.blockData, 0, remaining);
+		}
+		this.blockPosition = 0;
+		this.blockLimit = remaining;
+		while (this.blockLimit < this.recordSize) {
+			int read = this.dataInputStream.read(this.blockData, this.blockLimit, this.blockData.length - this.blockLimit);
+			if (read < 0) {
+				if (this.blockLimit == 0 || this.blockData[0] == END_OF_DATA || this.blockData[0] == -1) {
+					return false;
 				}
+				throw new EOFException("Unexpected end of file reading record");
 			}
-		} catch (EOFException e) {
-			throw new DBFException(e.getMessage(), e);
-		} catch (IOException e) {
-			throw new DBFException(e.getMessage(), e);
+			this.blockLimit += read;
 		}
-		return recordObjects.toArray();
+		return true;
 	}
+
+	private Object[] decodeRecord(byte[] data, int recordOffset) {
+		return getDecoder(this.layout).decode(data, recordOffset);
+	}
+
+	/**
+	 * Decodes the value of a column, taking care of the deleted flag and the null flags
+	 * @param recordLayout layout of the record
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @param column index of the column in the layout
+	 * @return the value of the column
+	 */
+	Object getColumnValue(DBFRecordLayout recordLayout, byte[] data, int recordOffset, int column) {
+		return getDecoder(recordLayout).decode(data, recordOffset, column);
+	}
+
+	/**
+	 * Returns the decoders of a layout, compiling them if the layout or the options of the reader have changed
+	 * @param recordLayout layout of the records
+	 * @return the decoders
+	 */
+	private DBFRecordDecoder getDecoder(DBFRecordLayout recordLayout) {
+		DBFRecordDecoder recordDecoder = this.decoder;
+		if (recordDecoder == null || recordDecoder.layout != recordLayout || recordDecoder.charset != getCharset()) {
+			recordDecoder = new DBFRecordDecoder(recordLayout, getCharset(), this.trimRightSpaces,
+				this.numericMode, this.dateMode, this.dictionaries, new DBFRecordDecoder.FieldReader() {
+					@Override
+					public Object getFieldValue(DBFField field, byte[] data, int offset) {
+						return DBFReader.this.getFieldValue(field, data, offset);
+					}
+				});
+			this.decoder = recordDecoder;
+		}
+		return recordDecoder;
+	}
+
 	/**
 	 * Reads the returns the next row in the DBF stream.
 	 *
 	 * @return The next row as an DBFRow
 	 */
 	public DBFRow nextRow() {
+		if (this.lazyDecoding) {
+			if (!fetchRecord()) {
+				return null;
+			}
+			byte[] data = Arrays.copyOfRange(this.recordData, this.recordOffset, this.recordOffset + this.recordSize);
+			return new DBFLazyRow(this, this.layout, data, this.mapFieldNames);
+		}
 		Object[] record = nextRecord();
 		if (record == null) {
 			return null;
 		}
-		return new DBFRow(record, mapFieldNames, this.header.fieldArray);
+		return new DBFRow(record, this.mapFieldNames, this.layout.fields);
 	}
 
 	protected Object getFieldValue(DBFField field) throws IOException {
-		int bytesReaded = 0;
+		byte[] fieldData = new byte[field.getLength()];
+		this.dataInputStream.readFully(fieldData);
+		return getFieldValue(field, fieldData, 0);
+	}
+
+	/**
+	 * Decodes the value of a field
+	 * @param field the field to decode
+	 * @param data the data where the field is stored
+	 * @param offset position of the first byte of the field in data
+	 * @return the value of the field
+	 */
+	protected Object getFieldValue(DBFField field, byte[] data, int offset) {
 		switch (field.getType()) {
 		case CHARACTER:
-			byte b_array[] = new byte[field.getLength()];
-			bytesReaded = this.dataInputStream.read(b_array);
-			if (bytesReaded < field.getLength()) {
-				throw new EOFException("Unexpected end of file");
-			}
+			int length = field.getLength();
 			if (this.trimRightSpaces) {
-				return new String(DBFUtils.trimRightSpaces(b_array), getCharset());
-			}
-			else {
-				return new String(b_array, getCharset());
+				length = DBFUtils.trimRightSpacesLength(data, offset, length);
 			}
+			return new String(data, offset, length, getCharset());
 
 		case VARCHAR:
 		case VARBINARY:
-			byte b_array_var[] = new byte[field.getLength()];
-			bytesReaded = this.dataInputStream.read(b_array_var);
-			if (bytesReaded < field.getLength()) {
-				throw new EOFException("Unexpected end of file");
-			}
-			return b_array_var;
+			return Arrays.copyOfRange(data, offset, offset + field.getLength());
 		case DATE:
-
-			byte t_byte_year[] = new byte[4];
-			bytesReaded = this.dataInputStream.read(t_byte_year);
-			if (bytesReaded < 4) {
-				throw new EOFException("Unexpected end of file");
-			}
-
-			byte t_byte_month[] = new byte[2];
-			bytesReaded = this.dataInputStream.read(t_byte_month);
-			if (bytesReaded < 2) {
-				throw new EOFException("Unexpected end of file");
-			}
-
-			byte t_byte_day[] = new byte[2];
-			bytesReaded = this.dataInputStream.read(t_byte_day);
-			if (bytesReaded < 2) {
-				throw new EOFException("Unexpected end of file");
-			}
-
-			try {
-				GregorianCalendar calendar = new GregorianCalendar(Integer.parseInt(new String(t_byte_year, StandardCharsets.US_ASCII)),
-						Integer.parseInt(new String(t_byte_month, StandardCharsets.US_ASCII)) - 1,
-						Integer.parseInt(new String(t_byte_day, StandardCharsets.US_ASCII)));
-				return calendar.getTime();
-			} catch (NumberFormatException e) {
-				// this field may be empty or may have improper value set
-				return null;
-			}
-
+			return DBFUtils.toDate(data, offset, this.dateMode);
 
 		case FLOATING_POINT:
 		case NUMERIC:
-			return DBFUtils.readNumericStoredAsText(this.dataInputStream, field.getLength());
+			return DBFUtils.toNumeric(data, offset, field.getLength(), field.getDecimalCount(), this.numericMode);
 
 		case LOGICAL:
-			byte t_logical = this.dataInputStream.readByte();
-			return DBFUtils.toBoolean(t_logical);
+			return DBFUtils.toBoolean(data[offset]);
 		case LONG:
 		case AUTOINCREMENT:
-			int data = DBFUtils.readLittleEndianInt(this.dataInputStream);
-			return data;
+			return DBFUtils.toLittleEndianInt(data, offset);
 		case CURRENCY:
-			int c_data = DBFUtils.readLittleEndianInt(this.dataInputStream);
+			int c_data = DBFUtils.toLittleEndianInt(data, offset);
 			String s_data = String.format("%05d", c_data);
 			String x1 = s_data.substring(0, s_data.length() - 4);
 			String x2 = s_data.substring(s_data.length() - 4);
 
-			skip(field.getLength() - 4);
 			return new BigDecimal(x1 + "." + x2);
 		case TIMESTAMP:
 		case TIMESTAMP_DBASE7:
-			int days = DBFUtils.readLittleEndianInt(this.dataInputStream);
-			int time = DBFUtils.readLittleEndianInt(this.dataInputStream);
-
-			if(days == 0 && time == 0) {
-				return null;
-			}
-			else {
-				Calendar calendar = new GregorianCalendar();
-				calendar.setTimeInMillis(days * MILLISECS_PER_DAY + TIME_MILLIS_1_1_4713_BC + time);
-				calendar.add(Calendar.MILLISECOND, -TimeZone.getDefault().getOffset(calendar.getTimeInMillis()));
-				return calendar.getTime();
-			}
+			return DBFUtils.toTimestamp(data, offset, this.dateMode);
 		case MEMO:
 		case GENERAL_OLE:
 		case PICTURE:
 		case BLOB:
-			return readMemoField(field);
+			return readMemoField(field, data, offset);
 		case BINARY:
 			if (field.getLength() == 8) {
-				return  readDoubleField(field);
+				return DBFUtils.toDouble(data, offset);
 			}
 			else {
-				return readMemoField(field);
+				return readMemoField(field, data, offset);
 			}
 		case DOUBLE:
-			return readDoubleField(field);
+			return DBFUtils.toDouble(data, offset);
 		case NULL_FLAGS:
-			byte [] data1 = new byte[field.getLength()];
-			int readed = dataInputStream.read(data1);
-			if (readed != field.getLength()){
-				throw new EOFException("Unexpected end of file");
-			}
-			return BitSet.valueOf(data1);
+			return BitSet.valueOf(Arrays.copyOfRange(data, offset, offset + field.getLength()));
 		default:
-			skip(field.getLength());
 			return null;
 		}
 	}
 
-	private Object readDoubleField(DBFField field) throws IOException {
-		byte[] data = new byte[field.getLength()];
-		int bytesReaded = this.dataInputStream.read(data);
-		if (bytesReaded < field.getLength()) {
-			throw new EOFException("Unexpected end of file");
-		}
-		return ByteBuffer.wrap(
-				new byte[]{
-						data[7], data[6], data[5], data[4],
-						data[3], data[2], data[1], data[0]
-				}).getDouble();
-	}
-
-	private Object readMemoField(DBFField field) throws IOException {
+	private Object readMemoField(DBFField field, byte[] data, int offset) {
 		Number nBlock =  null;
 		if (field.getLength() == 10) {
-			nBlock = DBFUtils.readNumericStoredAsText(this.dataInputStream, field.getLength());
+			nBlock = DBFUtils.toNumeric(Arrays.copyOfRange(data, offset, offset + field.getLength()));
 		}
 		else {
-			nBlock = DBFUtils.readLittleEndianInt(this.dataInputStream);
+			nBlock = DBFUtils.toLittleEndianInt(data, offset);
 		}
 		if (this.memoFile != null && nBlock != null) {
 			return memoFile.readData(nBlock.intValue(), field.getType());
@@ -552,6 +922,70 @@ public class DBFReader extends DBFBase implements Closeable {
 	 */
 	public void setTrimRightSpaces(boolean trimRightSpaces) {
 		this.trimRightSpaces = trimRightSpaces;
+		this.decoder = null;
+	}
+
+	/**
+	 * Determine if rows returned by nextRow are decoded on demand (default false)
+	 * @return true if rows are decoded on demand
+	 */
+	public boolean isLazyDecoding() {
+		return this.lazyDecoding;
+	}
+
+	/**
+	 * Sets if rows returned by nextRow are decoded on demand (default false).
+	 *
+	 * Lazy rows keep a copy of the raw record and decode every column the first time it is
+	 * read, so columns never read are never decoded. Columns are decoded with the settings
+	 * of this reader, and memo fields need the reader to be open.
+	 *
+	 * @param lazyDecoding if rows should be decoded on demand
+	 */
+	public void setLazyDecoding(boolean lazyDecoding) {
+		this.lazyDecoding = lazyDecoding;
+	}
+
+	/**
+	 * Gets the Java type used for NUMERIC and FLOATING_POINT fields
+	 * @return the numeric mode
+	 */
+	public DBFNumericMode getNumericMode() {
+		return this.numericMode;
+	}
+
+	/**
+	 * Sets the Java type used for NUMERIC and FLOATING_POINT fields (default BIG_DECIMAL).
+	 *
+	 * With PRIMITIVE or SCALED_LONG the digits are parsed directly from the record
+	 * data to a long, avoiding the creation of BigDecimal objects.
+	 *
+	 * @param numericMode the numeric mode
+	 */
+	public void setNumericMode(DBFNumericMode numericMode) {
+		this.numericMode = Objects.requireNonNull(numericMode, "numericMode");
+		this.decoder = null;
+	}
+
+	/**
+	 * Gets the Java type used for DATE and TIMESTAMP fields
+	 * @return the date mode
+	 */
+	public DBFDateMode getDateMode() {
+		return this.dateMode;
+	}
+
+	/**
+	 * Sets the Java type used for DATE and TIMESTAMP fields (default DATE).
+	 *
+	 * With EPOCH or JAVA_TIME the values are computed arithmetically from the
+	 * record data, without using Calendar or TimeZone.
+	 *
+	 * @param dateMode the date mode
+	 */
+	public void setDateMode(DBFDateMode dateMode) {
+		this.dateMode = Objects.requireNonNull(dateMode, "dateMode");
+		this.decoder = null;
 	}
 
 	/**
@@ -576,6 +1010,8 @@ public class DBFReader extends DBFBase implements Closeable {
 	public void close() {
 		this.closed = true;
 		DBFUtils.close(this.dataInputStream);
+		DBFUtils.close(this.raf);
+		this.mappedFile = null;
 	}
 	
 	@Override
@@ -0,0 +1,112 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Number of live and deleted records of a DBF file.
+ *
+ * It is computed reading only the first byte of every record (the deleted flag),
+ * without reading or decoding the rest of the record.
+ *
+ * @see DBFReader#getRecordCensus(boolean)
+ * @see DBFRandomAccess#getRecordCensus(boolean)
+ */
+public final class DBFRecordCensus {
+
+	private final int liveCount;
+	private final int deletedCount;
+	private final BitSet deletedRecords;
+
+	private DBFRecordCensus(int liveCount, int deletedCount, BitSet deletedRecords) {
+		this.liveCount = liveCount;
+		this.deletedCount = deletedCount;
+		this.deletedRecords = deletedRecords;
+	}
+
+	/**
+	 * Counts the records of a range of a mapped file, stopping at the end of data mark
+	 * @param mappedFile the file
+	 * @param from first record, inclusive
+	 * @param to last record, exclusive
+	 * @param collectDeleted if the numbers of the deleted records should be kept
+	 * @return the census
+	 * @throws IOException if the file cannot be mapped
+	 */
+	static DBFRecordCensus count(DBFMappedFile mappedFile, int from, int to, boolean collectDeleted) throws IOException {
+		BitSet deletedRecords = collectDeleted ? new BitSet() : null;
+		int live = 0;
+		int deleted = 0;
+		for (int i = from; i < to; i++) {
+			byte flag = mappedFile.readFlag(i);
+			if (flag == DBFBase.END_OF_DATA) {
+				break;
+			}
+			if (flag == '*') {
+				deleted++;
+				if (deletedRecords != null) {
+					deletedRecords.set(i);
+				}
+			}
+			else {
+				live++;
+			}
+		}
+		return new DBFRecordCensus(live, deleted, deletedRecords);
+	}
+
+	/**
+	 * Returns the number of records not deleted
+	 * @return the number of live records
+	 */
+	public int getLiveCount() {
+		return this.liveCount;
+	}
+
+	/**
+	 * Returns the number of records marked as deleted
+	 * @return the number of deleted records
+	 */
+	public int getDeletedCount() {
+		return this.deletedCount;
+	}
+
+	/**
+	 * Returns the number of records, live or deleted
+	 * @return the number of records
+	 */
+	public int getRecordCount() {
+		return this.liveCount + this.deletedCount;
+	}
+
+	/**
+	 * Returns the numbers of the deleted records, starting at 0
+	 * @return the deleted records, or null if they were not requested
+	 */
+	public BitSet getDeletedRecords() {
+		return this.deletedRecords != null ? (BitSet) this.deletedRecords.clone() : null;
+	}
+
+	@Override
+	public String toString() {
+		return "live=" + this.liveCount + ", deleted=" + this.deletedCount;
+	}
+}
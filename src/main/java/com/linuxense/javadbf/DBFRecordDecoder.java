@@ -0,0 +1,313 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Decoding plan of the records of a layout.
+ *
+ * The layout is compiled once into an array of decoders, one for every column,
+ * specialized for the type of the field and with the offset, null flag bit and
+ * decoding options already resolved, so decoding a record is a loop over the
+ * decoders without any switch on the type of the fields.
+ * Types without a specialized decoder (memo fields, currency, ...) are decoded by
+ * a {@link FieldReader}, usually the getFieldValue method of the reader.
+ */
+final class DBFRecordDecoder {
+
+	/**
+	 * Decodes the value of a field without specialized decoder
+	 */
+	interface FieldReader {
+		Object getFieldValue(DBFField field, byte[] data, int offset);
+	}
+
+	final DBFRecordLayout layout;
+	final Charset charset;
+	private final FieldDecoder[] decoders;
+
+	/**
+	 * Compiles the decoders of a layout
+	 * @param layout layout of the records
+	 * @param charset charset of the text fields
+	 * @param trimRightSpaces if CHARACTER values should be trimmed
+	 * @param numericMode type of the values of NUMERIC and FLOATING_POINT fields
+	 * @param dateMode type of the values of DATE and TIMESTAMP fields
+	 * @param dictionaries dictionaries of the CHARACTER fields, by column of the full layout, or null
+	 * @param fieldReader decodes the fields of other types
+	 */
+	DBFRecordDecoder(DBFRecordLayout layout, Charset charset, boolean trimRightSpaces,
+			DBFNumericMode numericMode, DBFDateMode dateMode, DBFStringDictionary[] dictionaries,
+			FieldReader fieldReader) {
+		this.layout = layout;
+		this.charset = charset;
+		this.decoders = new FieldDecoder[layout.fields.length];
+		for (int i = 0; i < this.decoders.length; i++) {
+			DBFStringDictionary dictionary = dictionaries != null ? dictionaries[layout.columns[i]] : null;
+			this.decoders[i] = compile(layout, i, charset, trimRightSpaces, numericMode, dateMode, dictionary, fieldReader);
+		}
+	}
+
+	private static FieldDecoder compile(DBFRecordLayout layout, int column, Charset charset, boolean trimRightSpaces,
+			DBFNumericMode numericMode, DBFDateMode dateMode, DBFStringDictionary dictionary, FieldReader fieldReader) {
+		if (layout.isDeletedColumn(column)) {
+			return new DeletedDecoder();
+		}
+		DBFField field = layout.fields[column];
+		int offset = layout.offsets[column];
+		int nullFlagsOffset = layout.nullBits[column] >= 0 ? layout.nullFlagsOffset : -1;
+		int nullBit = layout.nullBits[column];
+		if (layout.varLengthBits[column] >= 0 && layout.nullFlagsOffset >= 0) {
+			return new VarLengthDecoder(offset, nullFlagsOffset, nullBit, field,
+				layout.nullFlagsOffset, layout.varLengthBits[column], charset);
+		}
+		switch (field.getType()) {
+		case CHARACTER:
+			return new CharacterDecoder(offset, nullFlagsOffset, nullBit, field.getLength(), trimRightSpaces, charset, dictionary);
+		case NUMERIC:
+		case FLOATING_POINT:
+			return new NumericDecoder(offset, nullFlagsOffset, nullBit, field.getLength(), field.getDecimalCount(), numericMode);
+		case DATE:
+			return new DateDecoder(offset, nullFlagsOffset, nullBit, dateMode);
+		case TIMESTAMP:
+		case TIMESTAMP_DBASE7:
+			return new TimestampDecoder(offset, nullFlagsOffset, nullBit, dateMode);
+		case LOGICAL:
+			return new LogicalDecoder(offset, nullFlagsOffset, nullBit);
+		case LONG:
+		case AUTOINCREMENT:
+			return new IntegerDecoder(offset, nullFlagsOffset, nullBit);
+		case DOUBLE:
+			return new DoubleDecoder(offset, nullFlagsOffset, nullBit);
+		default:
+			return new GenericDecoder(offset, nullFlagsOffset, nullBit, field, fieldReader);
+		}
+	}
+
+	/**
+	 * Decodes all the columns of a record
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @return the values of the columns
+	 */
+	Object[] decode(byte[] data, int recordOffset) {
+		FieldDecoder[] fieldDecoders = this.decoders;
+		Object[] values = new Object[fieldDecoders.length];
+		for (int i = 0; i < fieldDecoders.length; i++) {
+			values[i] = fieldDecoders[i].decode(data, recordOffset);
+		}
+		return values;
+	}
+
+	/**
+	 * Decodes a column of a record
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @param column index of the column in the layout
+	 * @return the value of the column
+	 */
+	Object decode(byte[] data, int recordOffset, int column) {
+		return this.decoders[column].decode(data, recordOffset);
+	}
+
+	private abstract static class FieldDecoder {
+		private final int offset;
+		private final int nullFlagsOffset;
+		private final int nullMask;
+
+		FieldDecoder(int offset, int nullFlagsOffset, int nullBit) {
+			this.offset = offset;
+			this.nullFlagsOffset = nullFlagsOffset < 0 ? -1 : nullFlagsOffset + (nullBit >> 3);
+			this.nullMask = nullFlagsOffset < 0 ? 0 : 1 << (nullBit & 7);
+		}
+
+		Object decode(byte[] data, int recordOffset) {
+			if (this.nullFlagsOffset >= 0 && (data[recordOffset + this.nullFlagsOffset] & this.nullMask) != 0) {
+				return null;
+			}
+			return decodeValue(data, recordOffset, recordOffset + this.offset);
+		}
+
+		abstract Object decodeValue(byte[] data, int recordOffset, int offset);
+	}
+
+	private static final class DeletedDecoder extends FieldDecoder {
+		DeletedDecoder() {
+			super(DBFRecordLayout.DELETED_FLAG_OFFSET, -1, -1);
+		}
+
+		@Override
+		Object decodeValue(byte[] data, int recordOffset, int offset) {
+			return data[recordOffset] == '*';
+		}
+	}
+
+	private static final class CharacterDecoder extends FieldDecoder {
+		private final int length;
+		private final boolean trimRightSpaces;
+		private final Charset charset;
+		private final DBFStringDictionary dictionary;
+
+		CharacterDecoder(int offset, int nullFlagsOffset, int nullBit, int length, boolean trimRightSpaces,
+				Charset charset, DBFStringDictionary dictionary) {
+			super(offset, nullFlagsOffset, nullBit);
+			this.length = length;
+			this.trimRightSpaces = trimRightSpaces;
+			this.charset = charset;
+			this.dictionary = dictionary;
+		}
+
+		@Override
+		Object decodeValue(byte[] data, int recordOffset, int offset) {
+			int size = this.trimRightSpaces ? DBFUtils.trimRightSpacesLength(data, offset, this.length) : this.length;
+			if (this.dictionary != null) {
+				return this.dictionary.get(data, offset, size);
+			}
+			return new String(data, offset, size, this.charset);
+		}
+	}
+
+	private static final class VarLengthDecoder extends FieldDecoder {
+		private final int length;
+		private final boolean text;
+		private final int varLengthOffset;
+		private final int varLengthMask;
+		private final Charset charset;
+
+		VarLengthDecoder(int offset, int nullFlagsOffset, int nullBit, DBFField field,
+				int flagsOffset, int varLengthBit, Charset charset) {
+			super(offset, nullFlagsOffset, nullBit);
+			this.length = field.getLength();
+			this.text = field.getType() == DBFDataType.VARCHAR;
+			this.varLengthOffset = flagsOffset + (varLengthBit >> 3);
+			this.varLengthMask = 1 << (varLengthBit & 7);
+			this.charset = charset;
+		}
+
+		@Override
+		Object decodeValue(byte[] data, int recordOffset, int offset) {
+			int size = this.length;
+			if ((data[recordOffset + this.varLengthOffset] & this.varLengthMask) == 0) {
+				// Data is not full
+				size = data[offset + this.length - 1];
+			}
+			if (this.text) {
+				return new String(data, offset, size, this.charset);
+			}
+			return Arrays.copyOfRange(data, offset, offset + size);
+		}
+	}
+
+	private static final class NumericDecoder extends FieldDecoder {
+		private final int length;
+		private final int decimalCount;
+		private final DBFNumericMode mode;
+
+		NumericDecoder(int offset, int nullFlagsOffset, int nullBit, int length, int decimalCount, DBFNumericMode mode) {
+			super(offset, nullFlagsOffset, nullBit);
+			this.length = length;
+			this.decimalCount = decimalCount;
+			this.mode = mode;
+		}
+
+		@Override
+		Object decodeValue(byte[] data, int recordOffset, int offset) {
+			return DBFUtils.toNumeric(data, offset, this.length, this.decimalCount, this.mode);
+		}
+	}
+
+	private static final class DateDecoder extends FieldDecoder {
+		private final DBFDateMode mode;
+
+		DateDecoder(int offset, int nullFlagsOffset, int nullBit, DBFDateMode mode) {
+			super(offset, nullFlagsOffset, nullBit);
+			this.mode = mode;
+		}
+
+		@Override
+		Object decodeValue(byte[] data, int recordOffset, int offset) {
+			return DBFUtils.toDate(data, offset, this.mode);
+		}
+	}
+
+	private static final class TimestampDecoder extends FieldDecoder {
+		private final DBFDateMode mode;
+
+		TimestampDecoder(int offset, int nullFlagsOffset, int nullBit, DBFDateMode mode) {
+			super(offset, nullFlagsOffset, nullBit);
+			this.mode = mode;
+		}
+
+		@Override
+		Object decodeValue(byte[] data, int recordOffset, int offset) {
+			return DBFUtils.toTimestamp(data, offset, this.mode);
+		}
+	}
+
+	private static final class LogicalDecoder extends FieldDecoder {
+		LogicalDecoder(int offset, int nullFlagsOffset, int nullBit) {
+			super(offset, nullFlagsOffset, nullBit);
+		}
+
+		@Override
+		Object decodeValue(byte[] data, int recordOffset, int offset) {
+			return DBFUtils.toBoolean(data[offset]);
+		}
+	}
+
+	private static final class IntegerDecoder extends FieldDecoder {
+		IntegerDecoder(int offset, int nullFlagsOffset, int nullBit) {
+			super(offset, nullFlagsOffset, nullBit);
+		}
+
+		@Override
+		Object decodeValue(byte[] data, int recordOffset, int offset) {
+			return DBFUtils.toLittleEndianInt(data, offset);
+		}
+	}
+
+	private static final class DoubleDecoder extends FieldDecoder {
+		DoubleDecoder(int offset, int nullFlagsOffset, int nullBit) {
+			super(offset, nullFlagsOffset, nullBit);
+		}
+
+		@Override
+		Object decodeValue(byte[] data, int recordOffset, int offset) {
+			return DBFUtils.toDouble(data, offset);
+		}
+	}
+
+	private static final class GenericDecoder extends FieldDecoder {
+		private final DBFField field;
+		private final FieldReader fieldReader;
+
+		GenericDecoder(int offset, int nullFlagsOffset, int nullBit, DBFField field, FieldReader fieldReader) {
+			super(offset, nullFlagsOffset, nullBit);
+			this.field = field;
+			this.fieldReader = fieldReader;
+		}
+
+		@Override
+		Object decodeValue(byte[] data, int recordOffset, int offset) {
+			return this.fieldReader.getFieldValue(this.field, data, offset);
+		}
+	}
+}
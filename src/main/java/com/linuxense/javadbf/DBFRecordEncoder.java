@@ -0,0 +1,275 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+/**
+ * Encoding plan of the records of a DBF file.
+ *
+ * The fields are compiled once into an array of encoders, one for every field, with
+ * the offset and length already resolved. Records are encoded over a copy of a template
+ * where every field has its blank value, so null values don't need to be written.
+ * The record array, the charset encoder and the calendar are reused, so the array returned
+ * by encode is only valid until the next call.
+ */
+final class DBFRecordEncoder {
+
+	private final byte[] template;
+	private final byte[] record;
+	private final int[] offsets;
+	private final FieldEncoder[] encoders;
+	private final Buffers buffers;
+
+	/**
+	 * Compiles the encoders of the fields
+	 * @param fields all the fields of the record
+	 * @param charset charset of the text fields
+	 */
+	DBFRecordEncoder(DBFField[] fields, Charset charset) {
+		this.offsets = new int[fields.length];
+		this.encoders = new FieldEncoder[fields.length];
+		int offset = 1;
+		for (int i = 0; i < fields.length; i++) {
+			this.offsets[i] = offset;
+			offset += fields[i].getLength();
+		}
+		this.template = new byte[offset];
+		this.record = new byte[offset];
+		this.buffers = new Buffers(this.record, charset);
+		// deleted flag
+		this.template[0] = ' ';
+		for (int i = 0; i < fields.length; i++) {
+			this.encoders[i] = compile(fields[i], this.offsets[i], this.buffers);
+			Arrays.fill(this.template, this.offsets[i], this.offsets[i] + fields[i].getLength(),
+				fields[i].getType() == DBFDataType.LOGICAL ? (byte) '?' : (byte) ' ');
+		}
+	}
+
+	private static FieldEncoder compile(DBFField field, int offset, Buffers buffers) {
+		switch (field.getType()) {
+		case CHARACTER:
+			return new CharacterEncoder(offset, field.getLength(), buffers);
+		case DATE:
+			return new DateEncoder(offset, buffers);
+		case NUMERIC:
+		case FLOATING_POINT:
+			return new NumericEncoder(offset, field.getLength(), field.getDecimalCount(), buffers.charset);
+		case LOGICAL:
+			return new LogicalEncoder(offset);
+		default:
+			return new UnsupportedEncoder(field.getType());
+		}
+	}
+
+	int getRecordLength() {
+		return this.record.length;
+	}
+
+	/**
+	 * Gets the position of a field in the record
+	 * @param field index of the field
+	 * @return the offset from the start of the record
+	 */
+	int getOffset(int field) {
+		return this.offsets[field];
+	}
+
+	/**
+	 * Encodes a record, not deleted
+	 * @param values the values of the fields
+	 * @return the record, valid until the next call
+	 */
+	byte[] encode(Object[] values) {
+		System.arraycopy(this.template, 0, this.record, 0, this.record.length);
+		for (int i = 0; i < this.encoders.length; i++) {
+			this.encoders[i].encode(values[i], this.record);
+		}
+		return this.record;
+	}
+
+	/**
+	 * Encodes the value of one field. The other fields of the returned record are not valid.
+	 * @param field index of the field
+	 * @param value the value
+	 * @return the record, with the field at {@link #getOffset(int)}, valid until the next call
+	 */
+	byte[] encodeField(int field, Object value) {
+		int offset = this.offsets[field];
+		int end = field + 1 < this.offsets.length ? this.offsets[field + 1] : this.record.length;
+		System.arraycopy(this.template, offset, this.record, offset, end - offset);
+		this.encoders[field].encode(value, this.record);
+		return this.record;
+	}
+
+	/**
+	 * Objects shared by the encoders of a record
+	 */
+	private static final class Buffers {
+		private final ByteBuffer recordBuffer;
+		private final CharsetEncoder charsetEncoder;
+		private final Charset charset;
+		private final Calendar calendar = new GregorianCalendar();
+		private char[] chars = new char[64];
+		private CharBuffer charBuffer = CharBuffer.wrap(this.chars);
+
+		Buffers(byte[] record, Charset charset) {
+			this.recordBuffer = ByteBuffer.wrap(record);
+			this.charset = charset;
+			this.charsetEncoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+
+		/**
+		 * Encodes a text in the record, truncated to the last character that fits
+		 */
+		void encodeText(String text, int offset, int length) {
+			int size = text.length();
+			if (size > this.chars.length) {
+				this.chars = new char[Math.max(size, this.chars.length * 2)];
+				this.charBuffer = CharBuffer.wrap(this.chars);
+			}
+			text.getChars(0, size, this.chars, 0);
+			this.charBuffer.clear();
+			this.charBuffer.limit(size);
+			this.recordBuffer.clear();
+			this.recordBuffer.position(offset);
+			this.recordBuffer.limit(offset + length);
+			this.charsetEncoder.reset();
+			CoderResult result = this.charsetEncoder.encode(this.charBuffer, this.recordBuffer, true);
+			if (!result.isOverflow()) {
+				this.charsetEncoder.flush(this.recordBuffer);
+			}
+		}
+	}
+
+	private abstract static class FieldEncoder {
+		/**
+		 * Writes a value in the record. Null values are already in the template
+		 */
+		abstract void encode(Object value, byte[] record);
+	}
+
+	private static final class CharacterEncoder extends FieldEncoder {
+		private final int offset;
+		private final int length;
+		private final Buffers buffers;
+
+		CharacterEncoder(int offset, int length, Buffers buffers) {
+			this.offset = offset;
+			this.length = length;
+			this.buffers = buffers;
+		}
+
+		@Override
+		void encode(Object value, byte[] record) {
+			if (value != null) {
+				this.buffers.encodeText(value.toString(), this.offset, this.length);
+			}
+		}
+	}
+
+	private static final class DateEncoder extends FieldEncoder {
+		private final int offset;
+		private final Buffers buffers;
+
+		DateEncoder(int offset, Buffers buffers) {
+			this.offset = offset;
+			this.buffers = buffers;
+		}
+
+		@Override
+		void encode(Object value, byte[] record) {
+			if (value == null) {
+				return;
+			}
+			Calendar calendar = this.buffers.calendar;
+			calendar.setTime((Date) value);
+			int year = calendar.get(Calendar.YEAR);
+			if (year > 9999) {
+				throw new DBFException("Invalid date, year should have 4 digits: " + value);
+			}
+			writeDigits(record, this.offset, 4, year);
+			writeDigits(record, this.offset + 4, 2, calendar.get(Calendar.MONTH) + 1);
+			writeDigits(record, this.offset + 6, 2, calendar.get(Calendar.DAY_OF_MONTH));
+		}
+
+		private static void writeDigits(byte[] record, int offset, int digits, int value) {
+			for (int i = offset + digits - 1; i >= offset; i--) {
+				record[i] = (byte) ('0' + value % 10);
+				value /= 10;
+			}
+		}
+	}
+
+	private static final class NumericEncoder extends FieldEncoder {
+		private final int offset;
+		private final DBFNumericFormatter formatter;
+
+		NumericEncoder(int offset, int length, int decimalCount, Charset charset) {
+			this.offset = offset;
+			this.formatter = new DBFNumericFormatter(length, decimalCount, charset);
+		}
+
+		@Override
+		void encode(Object value, byte[] record) {
+			if (value != null) {
+				this.formatter.format((Number) value, record, this.offset);
+			}
+		}
+	}
+
+	private static final class LogicalEncoder extends FieldEncoder {
+		private final int offset;
+
+		LogicalEncoder(int offset) {
+			this.offset = offset;
+		}
+
+		@Override
+		void encode(Object value, byte[] record) {
+			if (value instanceof Boolean) {
+				record[this.offset] = ((Boolean) value).booleanValue() ? (byte) 'T' : (byte) 'F';
+			}
+		}
+	}
+
+	private static final class UnsupportedEncoder extends FieldEncoder {
+		private final DBFDataType type;
+
+		UnsupportedEncoder(DBFDataType type) {
+			this.type = type;
+		}
+
+		@Override
+		void encode(Object value, byte[] record) {
+			throw new DBFException("Unknown field type " + this.type);
+		}
+	}
+}
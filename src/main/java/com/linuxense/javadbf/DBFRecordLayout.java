@@ -0,0 +1,193 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.util.Arrays;
+
+/**
+ * Position of the user visible columns inside a record.
+ *
+ * For every column stores its offset from the start of the record and, for
+ * Visual FoxPro tables, the bits of the null flags field used by the column.
+ * For projected layouts, columns stores the index of every column in the full layout.
+ * The pseudo column "deleted" (when deleted rows are shown) is stored at offset 0.
+ */
+final class DBFRecordLayout {
+
+	static final int DELETED_FLAG_OFFSET = 0;
+
+	final DBFField[] fields;
+	final int[] columns;
+	final int[] offsets;
+	final int[] nullBits;
+	final int[] varLengthBits;
+	final int nullFlagsOffset;
+
+	DBFRecordLayout(DBFHeader header) {
+		this(header.userFieldArray, header.fieldArray);
+	}
+
+	/**
+	 * Creates the layout of the fields that are not system fields, without the pseudo column "deleted"
+	 * @param fieldArray all the fields of the record
+	 */
+	DBFRecordLayout(DBFField[] fieldArray) {
+		this(userFields(fieldArray), fieldArray);
+	}
+
+	private DBFRecordLayout(DBFField[] userFieldArray, DBFField[] fieldArray) {
+		this.fields = userFieldArray;
+		this.columns = new int[this.fields.length];
+		this.offsets = new int[this.fields.length];
+		this.nullBits = new int[this.fields.length];
+		this.varLengthBits = new int[this.fields.length];
+		Arrays.fill(this.nullBits, -1);
+		Arrays.fill(this.varLengthBits, -1);
+		for (int i = 0; i < this.columns.length; i++) {
+			this.columns[i] = i;
+		}
+
+		int column = 0;
+		if (this.fields.length > countUserFields(fieldArray)) {
+			this.offsets[0] = DELETED_FLAG_OFFSET;
+			column = 1;
+		}
+		int fieldOffset = 1;
+		int flagsOffset = -1;
+		int currentBit = -1;
+		for (DBFField field : fieldArray) {
+			if (field.isSystem()) {
+				if (field.getType() == DBFDataType.NULL_FLAGS) {
+					flagsOffset = fieldOffset;
+				}
+			}
+			else {
+				this.offsets[column] = fieldOffset;
+				if (field.isNullable()) {
+					currentBit++;
+					this.nullBits[column] = currentBit;
+				}
+				if (field.getType() == DBFDataType.VARBINARY || field.getType() == DBFDataType.VARCHAR) {
+					currentBit++;
+					this.varLengthBits[column] = currentBit;
+				}
+				column++;
+			}
+			fieldOffset += field.getLength();
+		}
+		this.nullFlagsOffset = flagsOffset;
+	}
+
+	private DBFRecordLayout(DBFRecordLayout origin, int[] columns) {
+		this.fields = new DBFField[columns.length];
+		this.columns = new int[columns.length];
+		this.offsets = new int[columns.length];
+		this.nullBits = new int[columns.length];
+		this.varLengthBits = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			this.fields[i] = origin.fields[columns[i]];
+			this.columns[i] = origin.columns[columns[i]];
+			this.offsets[i] = origin.offsets[columns[i]];
+			this.nullBits[i] = origin.nullBits[columns[i]];
+			this.varLengthBits[i] = origin.varLengthBits[columns[i]];
+		}
+		this.nullFlagsOffset = origin.nullFlagsOffset;
+	}
+
+	private static DBFField[] userFields(DBFField[] fieldArray) {
+		DBFField[] userFields = new DBFField[countUserFields(fieldArray)];
+		int column = 0;
+		for (DBFField field : fieldArray) {
+			if (!field.isSystem()) {
+				userFields[column++] = field;
+			}
+		}
+		return userFields;
+	}
+
+	private static int countUserFields(DBFField[] fieldArray) {
+		int count = 0;
+		for (DBFField field : fieldArray) {
+			if (!field.isSystem()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Creates a layout with only some of the columns of this layout
+	 * @param columns indexes of the columns to keep
+	 * @return the new layout
+	 */
+	DBFRecordLayout project(int[] columns) {
+		return new DBFRecordLayout(this, columns);
+	}
+
+	/**
+	 * Finds a column by name
+	 * @param fieldName name of the field (case insensitive)
+	 * @return index of the column
+	 * @throws DBFFieldNotFoundException if there is no column with that name
+	 */
+	int findColumn(String fieldName) {
+		for (int i = 0; i < this.fields.length; i++) {
+			if (this.fields[i].getName().equalsIgnoreCase(fieldName)) {
+				return i;
+			}
+		}
+		throw new DBFFieldNotFoundException("No field found for:" + fieldName);
+	}
+
+	boolean isDeletedColumn(int column) {
+		return this.offsets[column] == DELETED_FLAG_OFFSET;
+	}
+
+	/**
+	 * Checks if the null flag of a column is set
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @param column the column
+	 * @return true if the column is null
+	 */
+	boolean isNullFlagSet(byte[] data, int recordOffset, int column) {
+		return this.nullFlagsOffset >= 0 && this.nullBits[column] >= 0
+			&& isBitSet(data, recordOffset, this.nullBits[column]);
+	}
+
+	/**
+	 * Gets the size of a VARCHAR or VARBINARY column
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @param column the column
+	 * @return number of bytes used by the value
+	 */
+	int getVarLength(byte[] data, int recordOffset, int column) {
+		int length = this.fields[column].getLength();
+		if (this.nullFlagsOffset >= 0 && !isBitSet(data, recordOffset, this.varLengthBits[column])) {
+			// Data is not full
+			return data[recordOffset + this.offsets[column] + length - 1];
+		}
+		return length;
+	}
+
+	private boolean isBitSet(byte[] data, int recordOffset, int bit) {
+		return (data[recordOffset + this.nullFlagsOffset + (bit >> 3)] & (1 << (bit & 7))) != 0;
+	}
+}
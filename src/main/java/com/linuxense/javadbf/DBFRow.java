@@ -44,14 +44,25 @@ public class DBFRow {
 
 	private int getColumnIndex(String columnName) {
 		Objects.requireNonNull(columnName);
-		String key = columnName.toLowerCase();
-		Integer index = mapcolumnNames.get(key);
+		Integer index = mapcolumnNames.get(columnName);
+		if (index == null) {
+			index = mapcolumnNames.get(columnName.toLowerCase());
+		}
 		if (index == null) {
 			throw new DBFFieldNotFoundException("No field found for:" + columnName);
 		}
 		return index.intValue();
 	}
 
+	/**
+	 * Gets the value of a column
+	 * @param columnIndex index of the column
+	 * @return the value
+	 */
+	Object getValue(int columnIndex) {
+		return this.data[columnIndex];
+	}
+
 	/**
 	 * Check if the record is deleted. if you pass true on showDeletedRows to
 	 * DBFReader constructor, deleted records are retrieved and this method allows
@@ -82,7 +93,7 @@ public class DBFRow {
 	 * @return the original value unconverted
 	 */
 	public Object getObject(int columnIndex) {
-		return data[columnIndex];
+		return getValue(columnIndex);
 	}
 
 	/**
@@ -107,7 +118,7 @@ public class DBFRow {
 		if (columnIndex < 0 || columnIndex >= data.length) {
 			throw new IllegalArgumentException("Invalid index field: (" + columnIndex+"). Valid range is 0 to " + (data.length - 1));			
 		}
-		Object fieldValue = data[columnIndex];
+		Object fieldValue = getValue(columnIndex);
 		if (fieldValue == null) {
 			return null;
 		}
@@ -136,7 +147,7 @@ public class DBFRow {
 	 * @return the data as BigDecimal
 	 */
 	public BigDecimal getBigDecimal(int columnIndex) {
-		Object fieldValue = data[columnIndex];
+		Object fieldValue = getValue(columnIndex);
 		if (fieldValue == null) {
 			return null;
 		}
@@ -166,7 +177,7 @@ public class DBFRow {
 	 * @return the data as Boolean
 	 */
 	public boolean getBoolean(int columnIndex) {
-		Object fieldValue = data[columnIndex];
+		Object fieldValue = getValue(columnIndex);
 		if (fieldValue == null) {
 			return Boolean.FALSE;
 		}
@@ -197,7 +208,7 @@ public class DBFRow {
 	 * @return the data as Boolean
 	 */
 	public byte[] getBytes(int columnIndex) {
-		Object fieldValue = data[columnIndex];
+		Object fieldValue = getValue(columnIndex);
 		if (fieldValue == null) {
 			return null;
 		}
@@ -228,7 +239,7 @@ public class DBFRow {
 	 * @return the data as Date
 	 */
 	public Date getDate(int columnIndex) {
-		Object fieldValue = data[columnIndex];
+		Object fieldValue = getValue(columnIndex);
 		if (fieldValue == null) {
 			return null;
 		}
@@ -259,7 +270,7 @@ public class DBFRow {
 	 * @return the data as Double
 	 */
 	public double getDouble(int columnIndex) {
-		Object fieldValue = data[columnIndex];
+		Object fieldValue = getValue(columnIndex);
 		if (fieldValue == null) {
 			return 0.0;
 		}
@@ -289,7 +300,7 @@ public class DBFRow {
 	 * @return the data as Float
 	 */
 	public float getFloat(int columnIndex) {
-		Object fieldValue = data[columnIndex];
+		Object fieldValue = getValue(columnIndex);
 		if (fieldValue == null) {
 			return 0.0f;
 		}
@@ -319,7 +330,7 @@ public class DBFRow {
 	 * @return the data as int
 	 */
 	public int getInt(int columnIndex) {
-		Object fieldValue = data[columnIndex];
+		Object fieldValue = getValue(columnIndex);
 		if (fieldValue == null) {
 			return 0;
 		}
@@ -349,7 +360,7 @@ public class DBFRow {
 	 * @return the data as long
 	 */
 	public long getLong(int columnIndex) {
-		Object fieldValue = data[columnIndex];
+		Object fieldValue = getValue(columnIndex);
 		if (fieldValue == null) {
 			return 0;
 		}
@@ -0,0 +1,38 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.File;
+
+/**
+ * Receives the rows read by a {@link DBFIngestion}.
+ *
+ * Files are read at the same time in different threads, and every thread
+ * delivers the rows of its file, so the sink must be thread safe.
+ * Rows of the same file are delivered in order, by the same thread.
+ */
+public interface DBFRowSink {
+
+	/**
+	 * Receives a row
+	 * @param source the file the row was read from
+	 * @param row the row
+	 */
+	void accept(File source, DBFRow row);
+}
@@ -0,0 +1,135 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a range of records of a DBF file.
+ *
+ * Splits halve the range of records not yet read. The reader of the range is opened
+ * on the first read and closed when the range is exhausted; readers still open
+ * are closed by {@link #run()}, used as the close handler of the stream.
+ */
+final class DBFRowSpliterator implements Spliterator<DBFRow>, Runnable {
+
+	private final DBFParallelScan scan;
+	private final int minSplitSize;
+	private final boolean sized;
+	private final Set<DBFReader> openReaders;
+
+	private int from;
+	private final int to;
+	private DBFReader reader = null;
+	private boolean finished = false;
+
+	DBFRowSpliterator(DBFParallelScan scan, int from, int to, int minSplitSize, boolean sized) {
+		this(scan, from, to, minSplitSize, sized, Collections.newSetFromMap(new ConcurrentHashMap<DBFReader, Boolean>()));
+	}
+
+	private DBFRowSpliterator(DBFParallelScan scan, int from, int to, int minSplitSize, boolean sized,
+			Set<DBFReader> openReaders) {
+		this.scan = scan;
+		this.from = from;
+		this.to = to;
+		this.minSplitSize = minSplitSize;
+		this.sized = sized;
+		this.openReaders = openReaders;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super DBFRow> action) {
+		DBFRow row = nextRow();
+		if (row == null) {
+			return false;
+		}
+		action.accept(row);
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super DBFRow> action) {
+		DBFRow row = null;
+		while ((row = nextRow()) != null) {
+			action.accept(row);
+		}
+	}
+
+	private DBFRow nextRow() {
+		if (this.finished) {
+			return null;
+		}
+		if (this.reader == null) {
+			this.reader = this.scan.openReader(this.from, this.to);
+			this.openReaders.add(this.reader);
+		}
+		DBFRow row = this.reader.nextRow();
+		if (row == null) {
+			this.finished = true;
+			this.openReaders.remove(this.reader);
+			DBFUtils.close(this.reader);
+			this.from = this.to;
+		}
+		else {
+			this.from++;
+		}
+		return row;
+	}
+
+	@Override
+	public Spliterator<DBFRow> trySplit() {
+		if (this.reader != null || this.finished || this.to - this.from < 2L * this.minSplitSize) {
+			return null;
+		}
+		int mid = this.from + (this.to - this.from) / 2;
+		DBFRowSpliterator prefix = new DBFRowSpliterator(this.scan, this.from, mid, this.minSplitSize, this.sized,
+				this.openReaders);
+		this.from = mid;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return Math.max(0, this.to - this.from);
+	}
+
+	@Override
+	public int characteristics() {
+		int characteristics = ORDERED | NONNULL;
+		if (this.sized) {
+			characteristics |= SIZED | SUBSIZED;
+		}
+		return characteristics;
+	}
+
+	/**
+	 * Closes the readers that are still open
+	 */
+	@Override
+	public void run() {
+		for (DBFReader openReader : this.openReaders) {
+			this.openReaders.remove(openReader);
+			DBFUtils.close(openReader);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Bounded cache of the String values of a column, keyed on the raw bytes of the value.
+ *
+ * Repeated values return the same String instance without decoding them again.
+ * Entries are stored in an open addressing hash table with at least twice the slots of the
+ * maximum number of entries. When the dictionary is full, a new value replaces the value
+ * stored first in the first slots it can use; if none of them is taken the value is
+ * decoded without storing it.
+ */
+final class DBFStringDictionary {
+
+	private static final int PROBES = 4;
+	private static final int MAX_ENTRIES = 1 << 29;
+
+	private final Charset charset;
+	private final byte[][] keys;
+	private final String[] values;
+	private final long[] stored;
+	private final int mask;
+	private final int maxEntries;
+	private int size = 0;
+	private long clock = 0;
+
+	/**
+	 * Creates a dictionary
+	 * @param maxEntries maximum number of values to keep
+	 * @param charset charset used to decode values
+	 */
+	DBFStringDictionary(int maxEntries, Charset charset) {
+		this.maxEntries = Math.min(maxEntries, MAX_ENTRIES);
+		int slots = Math.max(PROBES, Integer.highestOneBit(this.maxEntries * 2 - 1) << 1);
+		this.charset = charset;
+		this.keys = new byte[slots][];
+		this.values = new String[slots];
+		this.stored = new long[slots];
+		this.mask = slots - 1;
+	}
+
+	/**
+	 * Gets the number of values stored
+	 * @return the number of values, never more than the maximum number of entries
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets the String for a value
+	 * @param data the data where the value is stored
+	 * @param offset position of the value
+	 * @param length number of bytes of the value
+	 * @return the decoded String
+	 */
+	String get(byte[] data, int offset, int length) {
+		int hash = hash(data, offset, length);
+		int oldest = -1;
+		// There is always an empty slot, and slots are never emptied, so the value is not after it
+		for (int i = 0; ; i++) {
+			int slot = (hash + i) & this.mask;
+			byte[] key = this.keys[slot];
+			if (key == null) {
+				if (this.size < this.maxEntries) {
+					this.size++;
+					return put(slot, data, offset, length);
+				}
+				break;
+			}
+			if (equals(key, data, offset, length)) {
+				return this.values[slot];
+			}
+			if (i < PROBES && (oldest < 0 || this.stored[slot] < this.stored[oldest])) {
+				oldest = slot;
+			}
+		}
+		if (oldest < 0) {
+			return new String(data, offset, length, this.charset);
+		}
+		return put(oldest, data, offset, length);
+	}
+
+	private String put(int slot, byte[] data, int offset, int length) {
+		String value = new String(data, offset, length, this.charset);
+		this.keys[slot] = Arrays.copyOfRange(data, offset, offset + length);
+		this.values[slot] = value;
+		this.stored[slot] = this.clock++;
+		return value;
+	}
+
+	private static int hash(byte[] data, int offset, int length) {
+		int hash = 1;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + data[i];
+		}
+		// Spread the bits, so similar values don't take consecutive slots
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean equals(byte[] key, byte[] data, int offset, int length) {
+		if (key.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (key[i] != data[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
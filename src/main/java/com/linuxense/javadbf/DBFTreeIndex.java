@@ -0,0 +1,1113 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * B+tree index over one or more fields of a DBF file, stored in its own file.
+ *
+ * The index is created and kept up to date by {@link DBFRandomAccess} and by {@link DBFWriter}
+ * (when writing to a file), and can be opened read only from other processes with
+ * {@link #DBFTreeIndex(File)}, without reading the DBF file.
+ *
+ * The file is made of pages of 4096 bytes. The first page is the header, the others are the nodes
+ * of the tree. Leaves store the keys (see {@link DBFTreeIndexKey}) with the record numbers, ordered,
+ * and are linked to the next leaf. Interior nodes store the first entry of every child but the first one.
+ * Every change is a transaction: the original content of the modified pages is saved in a
+ * journal file (the index file name followed by "-journal") before writing them, and restored
+ * when the index is opened for writing if the writer process stopped in the middle of a change.
+ * When a record is updated, the journal is started before writing the DBF file, so if the
+ * writer process stops before the index is committed the index is built again when it is
+ * opened for writing, and readers fail until then.
+ *
+ * Only one process can write an index at the same time. Deleted records are not removed
+ * from the index.
+ */
+public final class DBFTreeIndex implements Closeable {
+
+	static final int PAGE_SIZE = 4096;
+
+	private static final byte[] MAGIC = "JDBFTREE".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] JOURNAL_MAGIC = "JDBFJRNL".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] UPDATE_MAGIC = "JDBFUPDT".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	private static final int HEADER_FIXED_LENGTH = 48;
+	private static final byte LEAF = 1;
+	private static final byte INTERIOR = 2;
+	private static final int PAGE_HEADER_LENGTH = 8;
+	private static final int MAX_CACHED_PAGES = 1024;
+	private static final int MAX_DEPTH = 64;
+	private static final int SORT_BUFFER_SIZE = 16 * 1024 * 1024;
+	private static final int SCAN_BLOCK_SIZE = 64 * 1024;
+	private static final int FILL_PERCENT = 90;
+
+	private final File file;
+	private final File journalFile;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private RandomAccessFile journal = null;
+	private FileLock updateLock = null;
+	private final boolean readOnly;
+	private final DBFTreeIndexKey key;
+	private final int keyLength;
+	private final int entryLength;
+	private final int leafCapacity;
+	private final int interiorCapacity;
+
+	private int rootPage;
+	private int pageCount;
+	private int recordCount;
+	private long entryCount;
+	private long generation = -1;
+	private int committedPageCount;
+
+	private final Map<Integer, byte[]> pages = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true);
+	private final SortedSet<Integer> dirtyPages = new TreeSet<Integer>();
+	private boolean durable = false;
+	private boolean closed = false;
+
+	/**
+	 * Opens an index file, read only.
+	 *
+	 * The file can be updated at the same time by other process; every query sees the
+	 * last committed state of the index.
+	 *
+	 * @param indexFile the index file
+	 * @throws DBFException if the file is not a valid index or an IO error occurs
+	 */
+	public DBFTreeIndex(File indexFile) {
+		this(indexFile, null, true);
+	}
+
+	private DBFTreeIndex(File indexFile, DBFTreeIndexKey newKey, boolean readOnly) {
+		this.file = indexFile;
+		this.journalFile = new File(indexFile.getPath() + "-journal");
+		this.readOnly = readOnly;
+		RandomAccessFile randomAccessFile = null;
+		try {
+			randomAccessFile = new RandomAccessFile(indexFile, readOnly ? "r" : "rw");
+			this.raf = randomAccessFile;
+			this.channel = randomAccessFile.getChannel();
+			if (newKey != null) {
+				this.key = newKey;
+				this.journalFile.delete();
+			}
+			else {
+				FileLock lock = this.channel.lock(0, Long.MAX_VALUE, readOnly);
+				try {
+					if (!readOnly) {
+						recover();
+					}
+					this.key = readKey();
+				}
+				finally {
+					lock.release();
+				}
+			}
+			this.keyLength = this.key.getKeyLength();
+			this.entryLength = this.keyLength + 4;
+			this.leafCapacity = (PAGE_SIZE - PAGE_HEADER_LENGTH) / this.entryLength;
+			this.interiorCapacity = (PAGE_SIZE - PAGE_HEADER_LENGTH) / (this.entryLength + 4);
+			if (this.interiorCapacity < 3) {
+				throw new DBFException("Key too long for an index: " + this.keyLength + " bytes");
+			}
+		} catch (IOException e) {
+			DBFUtils.close(randomAccessFile);
+			throw new DBFException(e.getMessage(), e);
+		} catch (RuntimeException e) {
+			DBFUtils.close(randomAccessFile);
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates an index file and builds it with the records of a DBF file
+	 * @param indexFile the index file, overwritten if it exists
+	 * @param key the key of the index, bound to the layout of the records
+	 * @param dbf the DBF file
+	 * @param headerLength length of the header of the DBF file
+	 * @param recordLength length of the records
+	 * @param recordCount number of records
+	 * @return the index, opened for writing
+	 */
+	static DBFTreeIndex create(File indexFile, DBFTreeIndexKey key, RandomAccessFile dbf, int headerLength, int recordLength, int recordCount) {
+		DBFTreeIndex index = new DBFTreeIndex(indexFile, key, false);
+		try {
+			index.build(dbf, headerLength, recordLength, recordCount);
+		} catch (RuntimeException e) {
+			DBFUtils.close(index);
+			throw e;
+		}
+		return index;
+	}
+
+	/**
+	 * Opens an index file for writing. If the index was not updated with the
+	 * last records of the DBF file it is built again.
+	 * @param indexFile the index file
+	 * @param layout the layout of the records
+	 * @param dbf the DBF file
+	 * @param headerLength length of the header of the DBF file
+	 * @param recordLength length of the records
+	 * @param recordCount number of records
+	 * @return the index, opened for writing
+	 */
+	static DBFTreeIndex open(File indexFile, DBFRecordLayout layout, RandomAccessFile dbf, int headerLength, int recordLength, int recordCount) {
+		DBFTreeIndex index = new DBFTreeIndex(indexFile, null, false);
+		try {
+			index.key.bind(layout);
+			if (index.recordCount != recordCount) {
+				index.build(dbf, headerLength, recordLength, recordCount);
+			}
+		} catch (RuntimeException e) {
+			DBFUtils.close(index);
+			throw e;
+		}
+		return index;
+	}
+
+	/**
+	 * Sets if every change must be forced to the storage device before returning.
+	 *
+	 * Changes are always protected from the end of the writer process. If durable is set, they are
+	 * also protected from a crash of the operating system, at the cost of slower writes.
+	 *
+	 * @param durable true to force changes to the storage device
+	 */
+	public void setDurable(boolean durable) {
+		this.durable = durable;
+	}
+
+	/**
+	 * Gets the names of the fields of the key
+	 * @return the names of the fields, in order
+	 */
+	public String[] getFieldNames() {
+		return this.key.getFieldNames();
+	}
+
+	/**
+	 * Finds the records with a key. Deleted records are included.
+	 *
+	 * @param key values of the fields of the key, in order. If there are less values
+	 * than fields, the records that start with the given values are returned
+	 * @return numbers of the records, ordered by key and record number
+	 */
+	public int[] find(Object... key) {
+		return scan(this.key.encode(key, false), this.key.encode(key, true));
+	}
+
+	/**
+	 * Finds the records with a key between two values, both included. Deleted records are included.
+	 *
+	 * @param from the lowest key, or null to start at the first key
+	 * @param to the highest key, or null to end at the last key
+	 * @return numbers of the records, ordered by key and record number
+	 */
+	public int[] findRange(Object[] from, Object[] to) {
+		return scan(this.key.encode(from == null ? new Object[0] : from, false),
+				to == null ? this.key.encode(new Object[0], true) : this.key.encode(to, true));
+	}
+
+	private int[] scan(byte[] fromKey, byte[] toKey) {
+		if (this.closed) {
+			throw new DBFException("Index is closed");
+		}
+		byte[] from = Arrays.copyOf(fromKey, this.entryLength);
+		writeInt(from, this.keyLength, -1);
+		byte[] to = Arrays.copyOf(toKey, this.entryLength);
+		writeInt(to, this.keyLength, Integer.MAX_VALUE);
+		try {
+			FileLock lock = this.readOnly ? this.channel.lock(0, Long.MAX_VALUE, true) : null;
+			try {
+				if (this.readOnly) {
+					refresh();
+				}
+				int[] records = new int[16];
+				int found = 0;
+				int pageNumber = this.rootPage;
+				byte[] page = page(pageNumber);
+				while (page[0] == INTERIOR) {
+					pageNumber = childAt(page, childIndex(page, from));
+					page = page(pageNumber);
+				}
+				int position = leafLowerBound(page, from);
+				while (true) {
+					int count = getCount(page);
+					for (; position < count; position++) {
+						int offset = PAGE_HEADER_LENGTH + position * this.entryLength;
+						if (compare(page, offset, to, 0) > 0) {
+							return Arrays.copyOf(records, found);
+						}
+						if (found == records.length) {
+							records = Arrays.copyOf(records, found * 2);
+						}
+						records[found++] = readInt(page, offset + this.keyLength);
+					}
+					int next = readInt(page, 4);
+					if (next == 0) {
+						return Arrays.copyOf(records, found);
+					}
+					page = page(next);
+					position = 0;
+				}
+			}
+			finally {
+				if (lock != null) {
+					lock.release();
+				}
+			}
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+	}
+
+	boolean containsField(String fieldName) {
+		return this.key.containsField(fieldName);
+	}
+
+	boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Adds a record to the index. The change is written by {@link #commit()}
+	 * @param record number of the record
+	 * @param data the data where the record is stored
+	 * @param offset position of the record in data
+	 */
+	void add(int record, byte[] data, int offset) {
+		byte[] entry = new byte[this.entryLength];
+		this.key.encode(data, offset, entry, 0);
+		writeInt(entry, this.keyLength, record);
+		if (insert(entry)) {
+			this.entryCount++;
+		}
+		if (record >= this.recordCount) {
+			this.recordCount = record + 1;
+		}
+	}
+
+	/**
+	 * Changes the key of a record, if the fields of the key have changed.
+	 * The change is written by {@link #commit()}
+	 * @param record number of the record
+	 * @param oldData the record before the change
+	 * @param newData the record after the change
+	 */
+	void update(int record, byte[] oldData, byte[] newData) {
+		byte[] oldEntry = new byte[this.entryLength];
+		this.key.encode(oldData, 0, oldEntry, 0);
+		writeInt(oldEntry, this.keyLength, record);
+		byte[] newEntry = new byte[this.entryLength];
+		this.key.encode(newData, 0, newEntry, 0);
+		writeInt(newEntry, this.keyLength, record);
+		if (Arrays.equals(oldEntry, newEntry)) {
+			return;
+		}
+		if (delete(oldEntry)) {
+			this.entryCount--;
+		}
+		if (insert(newEntry)) {
+			this.entryCount++;
+		}
+	}
+
+	/**
+	 * Starts the update of a record: locks the index and marks it as outdated until the
+	 * next commit, before the record is written in the DBF file
+	 */
+	void beginUpdate() {
+		try {
+			this.updateLock = this.channel.lock();
+			openJournal();
+			this.journal.seek(0);
+			this.journal.write(UPDATE_MAGIC);
+			this.journal.setLength(UPDATE_MAGIC.length);
+			if (this.durable) {
+				this.journal.getChannel().force(false);
+			}
+		} catch (IOException e) {
+			abortUpdate();
+			throw new DBFException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Closes the index after the record could not be written. The journal is kept, so the
+	 * index is built again the next time it is opened for writing.
+	 */
+	void abortUpdate() {
+		this.closed = true;
+		try {
+			if (this.updateLock != null) {
+				this.updateLock.release();
+			}
+		} catch (IOException e) { //NOPMD
+			// closed below
+		}
+		this.updateLock = null;
+		DBFUtils.close(this.raf);
+		DBFUtils.close(this.journal);
+	}
+
+	/**
+	 * Writes the pending changes, as a transaction, and ends the update of a record
+	 */
+	void commit() {
+		if (this.dirtyPages.isEmpty() && this.updateLock == null) {
+			return;
+		}
+		try {
+			boolean update = this.updateLock != null;
+			FileLock lock = update ? this.updateLock : this.channel.lock();
+			this.updateLock = null;
+			try {
+				if (this.dirtyPages.isEmpty()) {
+					clearJournal();
+					return;
+				}
+				this.generation++;
+				writeJournal(update);
+				for (int pageNumber : this.dirtyPages) {
+					writePage(pageNumber, this.pages.get(pageNumber));
+				}
+				writeHeader();
+				if (this.durable) {
+					this.channel.force(false);
+				}
+				this.dirtyPages.clear();
+				this.committedPageCount = this.pageCount;
+				clearJournal();
+			}
+			finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+	}
+
+	private void writeJournal(boolean update) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		// The DBF file is already modified in a record update, restoring the pages is not enough
+		out.write(update ? UPDATE_MAGIC : JOURNAL_MAGIC);
+		out.writeInt(this.committedPageCount);
+		byte[] page = new byte[PAGE_SIZE];
+		readPage(0, page);
+		out.writeInt(0);
+		out.write(page);
+		int saved = 1;
+		for (int pageNumber : this.dirtyPages) {
+			if (pageNumber < this.committedPageCount) {
+				readPage(pageNumber, page);
+				out.writeInt(pageNumber);
+				out.write(page);
+				saved++;
+			}
+		}
+		out.writeInt(-1);
+		out.writeInt(saved);
+		out.write(JOURNAL_MAGIC);
+		out.flush();
+		openJournal();
+		this.journal.seek(0);
+		this.journal.write(bytes.toByteArray());
+		this.journal.setLength(bytes.size());
+		if (this.durable) {
+			this.journal.getChannel().force(false);
+		}
+	}
+
+	private void openJournal() throws IOException {
+		if (this.journal == null) {
+			this.journal = new RandomAccessFile(this.journalFile, "rw");
+		}
+	}
+
+	private void clearJournal() throws IOException {
+		this.journal.setLength(0);
+		if (this.durable) {
+			this.journal.getChannel().force(false);
+		}
+	}
+
+	/**
+	 * Restores the pages saved in the journal, if the last transaction was not completed.
+	 * If a record update was not completed the index is marked as incomplete, to build it again.
+	 */
+	private void recover() throws IOException {
+		if (!this.journalFile.exists()) {
+			return;
+		}
+		if (this.journalFile.length() > 0) {
+			byte[] journal = new byte[(int) this.journalFile.length()];
+			try (DataInputStream in = new DataInputStream(new FileInputStream(this.journalFile))) {
+				in.readFully(journal);
+			}
+			// A journal without the end mark was not finished, so the index was not modified
+			int pageEntryLength = 4 + PAGE_SIZE;
+			int saved = (journal.length - 12 - 16) / pageEntryLength;
+			int end = 12 + saved * pageEntryLength;
+			boolean update = Arrays.equals(Arrays.copyOf(journal, 8), UPDATE_MAGIC);
+			if (journal.length == end + 16
+					&& (update || Arrays.equals(Arrays.copyOfRange(journal, 0, 8), JOURNAL_MAGIC))
+					&& Arrays.equals(Arrays.copyOfRange(journal, end + 8, end + 16), JOURNAL_MAGIC)
+					&& readInt(journal, end) == -1 && readInt(journal, end + 4) == saved) {
+				for (int i = 0; i < saved; i++) {
+					int offset = 12 + i * pageEntryLength;
+					writePage(readInt(journal, offset), Arrays.copyOfRange(journal, offset + 4, offset + pageEntryLength));
+				}
+				this.channel.truncate((long) readInt(journal, 8) * PAGE_SIZE);
+				this.channel.force(false);
+			}
+			if (update) {
+				byte[] header = new byte[PAGE_SIZE];
+				readPage(0, header);
+				writeInt(header, 28, -1);
+				writePage(0, header);
+				this.channel.force(false);
+			}
+		}
+		this.journalFile.delete();
+	}
+
+	private DBFTreeIndexKey readKey() throws IOException {
+		byte[] header = new byte[PAGE_SIZE];
+		readPage(0, header);
+		if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+			throw new DBFException("Not an index file: " + this.file);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(header);
+		if (buffer.getInt(8) != VERSION || buffer.getInt(12) != PAGE_SIZE) {
+			throw new DBFException("Unsupported index file version: " + this.file);
+		}
+		DBFTreeIndexKey indexKey = DBFTreeIndexKey.read(new DataInputStream(
+				new ByteArrayInputStream(header, HEADER_FIXED_LENGTH, PAGE_SIZE - HEADER_FIXED_LENGTH)));
+		if (indexKey.getKeyLength() != buffer.getInt(16)) {
+			throw new DBFException("Corrupted index file: " + this.file);
+		}
+		readState(header);
+		return indexKey;
+	}
+
+	private void readState(byte[] header) {
+		ByteBuffer buffer = ByteBuffer.wrap(header);
+		this.rootPage = buffer.getInt(20);
+		this.pageCount = buffer.getInt(24);
+		this.recordCount = buffer.getInt(28);
+		this.entryCount = buffer.getLong(32);
+		this.generation = buffer.getLong(40);
+		this.committedPageCount = this.pageCount;
+	}
+
+	/**
+	 * Reads the header again if the index has been changed by other process
+	 */
+	private void refresh() throws IOException {
+		if (this.journalFile.length() > 0) {
+			throw new DBFException("Index file has an interrupted transaction, it must be opened for writing: " + this.file);
+		}
+		byte[] header = new byte[PAGE_SIZE];
+		readPage(0, header);
+		if (ByteBuffer.wrap(header).getLong(40) != this.generation) {
+			readState(header);
+			this.pages.clear();
+		}
+		if (this.recordCount < 0) {
+			throw new DBFException("Index file is not complete, it must be opened for writing: " + this.file);
+		}
+	}
+
+	private void writeHeader() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(PAGE_SIZE);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(PAGE_SIZE);
+		out.writeInt(this.keyLength);
+		out.writeInt(this.rootPage);
+		out.writeInt(this.pageCount);
+		out.writeInt(this.recordCount);
+		out.writeLong(this.entryCount);
+		out.writeLong(this.generation);
+		this.key.write(out);
+		out.flush();
+		if (bytes.size() > PAGE_SIZE) {
+			throw new DBFException("Too many fields for an index");
+		}
+		writePage(0, Arrays.copyOf(bytes.toByteArray(), PAGE_SIZE));
+	}
+
+	/**
+	 * Builds the index with all the records of the DBF file, sorting the keys
+	 * in runs that are merged when they don't fit in memory
+	 */
+	private void build(RandomAccessFile dbf, int headerLength, int recordLength, int count) {
+		List<File> runs = new ArrayList<File>();
+		try {
+			FileLock lock = this.channel.lock();
+			try {
+				// Mark the index as incomplete until it is built
+				this.generation++;
+				this.recordCount = -1;
+				this.pageCount = 1;
+				this.rootPage = 0;
+				this.entryCount = 0;
+				this.pages.clear();
+				this.dirtyPages.clear();
+				writeHeader();
+				this.channel.truncate(PAGE_SIZE);
+
+				int runCapacity = Math.max(1024, SORT_BUFFER_SIZE / this.entryLength);
+				byte[] entries = new byte[Math.max(1, Math.min(runCapacity, count)) * this.entryLength];
+				int entryCapacity = entries.length / this.entryLength;
+				int buffered = 0;
+				int recordsPerBlock = Math.max(1, SCAN_BLOCK_SIZE / recordLength);
+				byte[] block = new byte[recordsPerBlock * recordLength];
+				long position = dbf.getFilePointer();
+				dbf.seek(headerLength);
+				for (int first = 0; first < count; first += recordsPerBlock) {
+					int blockCount = Math.min(recordsPerBlock, count - first);
+					dbf.readFully(block, 0, blockCount * recordLength);
+					for (int i = 0; i < blockCount; i++) {
+						if (buffered == entryCapacity) {
+							runs.add(writeRun(entries, sort(entries, buffered)));
+							buffered = 0;
+						}
+						int offset = buffered * this.entryLength;
+						this.key.encode(block, i * recordLength, entries, offset);
+						writeInt(entries, offset + this.keyLength, first + i);
+						buffered++;
+					}
+				}
+				dbf.seek(position);
+
+				if (runs.isEmpty()) {
+					load(new ArrayEntries(entries, sort(entries, buffered)));
+				}
+				else {
+					runs.add(writeRun(entries, sort(entries, buffered)));
+					load(new MergedEntries(runs));
+				}
+				this.recordCount = count;
+				this.generation++;
+				writeHeader();
+				this.committedPageCount = this.pageCount;
+				if (this.durable) {
+					this.channel.force(false);
+				}
+			}
+			finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+		finally {
+			for (File run : runs) {
+				run.delete();
+			}
+		}
+	}
+
+	/**
+	 * Writes the tree, bottom up, with the entries in order
+	 */
+	private void load(EntrySource source) throws IOException {
+		int entriesPerLeaf = Math.max(1, this.leafCapacity * FILL_PERCENT / 100);
+		byte[] separators = new byte[16 * this.entryLength];
+		int[] children = new int[16];
+		int childCount = 0;
+
+		byte[] entry = new byte[this.entryLength];
+		byte[] leaf = new byte[PAGE_SIZE];
+		int leafNumber = this.pageCount++;
+		int count = 0;
+		while (source.next(entry)) {
+			if (count == entriesPerLeaf) {
+				int next = this.pageCount++;
+				writeLeaf(leafNumber, leaf, count, next);
+				leafNumber = next;
+				count = 0;
+			}
+			if (count == 0) {
+				if (childCount == children.length) {
+					children = Arrays.copyOf(children, childCount * 2);
+					separators = Arrays.copyOf(separators, childCount * 2 * this.entryLength);
+				}
+				System.arraycopy(entry, 0, separators, childCount * this.entryLength, this.entryLength);
+				children[childCount++] = leafNumber;
+			}
+			System.arraycopy(entry, 0, leaf, PAGE_HEADER_LENGTH + count * this.entryLength, this.entryLength);
+			count++;
+			this.entryCount++;
+		}
+		writeLeaf(leafNumber, leaf, count, 0);
+		if (childCount == 0) {
+			children[childCount++] = leafNumber;
+		}
+
+		int childrenPerNode = Math.max(2, this.interiorCapacity * FILL_PERCENT / 100 + 1);
+		int slotLength = this.entryLength + 4;
+		while (childCount > 1) {
+			int nodeCount = 0;
+			for (int first = 0; first < childCount; first += childrenPerNode) {
+				int last = Math.min(first + childrenPerNode, childCount);
+				byte[] node = new byte[PAGE_SIZE];
+				node[0] = INTERIOR;
+				setCount(node, last - first - 1);
+				writeInt(node, 4, children[first]);
+				for (int i = first + 1; i < last; i++) {
+					int offset = PAGE_HEADER_LENGTH + (i - first - 1) * slotLength;
+					System.arraycopy(separators, i * this.entryLength, node, offset, this.entryLength);
+					writeInt(node, offset + this.entryLength, children[i]);
+				}
+				int nodeNumber = this.pageCount++;
+				writePage(nodeNumber, node);
+				// The first entry of a node is the first entry of its first child
+				System.arraycopy(separators, first * this.entryLength, separators, nodeCount * this.entryLength, this.entryLength);
+				children[nodeCount++] = nodeNumber;
+			}
+			childCount = nodeCount;
+		}
+		this.rootPage = children[0];
+	}
+
+	private void writeLeaf(int pageNumber, byte[] leaf, int count, int next) throws IOException {
+		leaf[0] = LEAF;
+		setCount(leaf, count);
+		writeInt(leaf, 4, next);
+		writePage(pageNumber, leaf);
+	}
+
+	/**
+	 * Sorts the entries of a buffer
+	 * @return positions of the entries, in order
+	 */
+	private int[] sort(final byte[] entries, int count) {
+		int[] order = new int[count];
+		int[] work = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		// Bottom up merge sort
+		for (int width = 1; width < count; width *= 2) {
+			for (int low = 0; low < count; low += 2 * width) {
+				int middle = Math.min(low + width, count);
+				int high = Math.min(low + 2 * width, count);
+				int left = low;
+				int right = middle;
+				for (int i = low; i < high; i++) {
+					if (left < middle && (right >= high
+							|| compare(entries, order[left] * this.entryLength, entries, order[right] * this.entryLength) <= 0)) {
+						work[i] = order[left++];
+					}
+					else {
+						work[i] = order[right++];
+					}
+				}
+			}
+			int[] swap = order;
+			order = work;
+			work = swap;
+		}
+		return order;
+	}
+
+	private File writeRun(byte[] entries, int[] order) throws IOException {
+		File run = File.createTempFile("javadbf", ".run");
+		try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(run))) {
+			for (int position : order) {
+				out.write(entries, position * this.entryLength, this.entryLength);
+			}
+		}
+		return run;
+	}
+
+	private boolean insert(byte[] entry) {
+		int[] path = new int[MAX_DEPTH];
+		int depth = 0;
+		int pageNumber = this.rootPage;
+		byte[] page = page(pageNumber);
+		while (page[0] == INTERIOR) {
+			path[depth++] = pageNumber;
+			pageNumber = childAt(page, childIndex(page, entry));
+			page = page(pageNumber);
+		}
+		int count = getCount(page);
+		int position = leafLowerBound(page, entry);
+		if (position < count && compare(page, PAGE_HEADER_LENGTH + position * this.entryLength, entry, 0) == 0) {
+			return false;
+		}
+		this.dirtyPages.add(pageNumber);
+		if (count < this.leafCapacity) {
+			insertAt(page, position, count, this.entryLength, entry);
+			return true;
+		}
+
+		byte[] all = merge(page, position, count, this.entryLength, entry);
+		int leftCount = (count + 1) / 2;
+		int rightNumber = allocatePage(LEAF);
+		byte[] right = page(rightNumber);
+		System.arraycopy(all, leftCount * this.entryLength, right, PAGE_HEADER_LENGTH, (count + 1 - leftCount) * this.entryLength);
+		setCount(right, count + 1 - leftCount);
+		writeInt(right, 4, readInt(page, 4));
+		System.arraycopy(all, 0, page, PAGE_HEADER_LENGTH, leftCount * this.entryLength);
+		setCount(page, leftCount);
+		writeInt(page, 4, rightNumber);
+
+		byte[] separator = Arrays.copyOfRange(right, PAGE_HEADER_LENGTH, PAGE_HEADER_LENGTH + this.entryLength);
+		int leftNumber = pageNumber;
+		while (depth > 0) {
+			int parentNumber = path[--depth];
+			byte[] parent = page(parentNumber);
+			this.dirtyPages.add(parentNumber);
+			int parentCount = getCount(parent);
+			int slotLength = this.entryLength + 4;
+			byte[] slot = Arrays.copyOf(separator, slotLength);
+			writeInt(slot, this.entryLength, rightNumber);
+			int slotPosition = childIndex(parent, separator);
+			if (parentCount < this.interiorCapacity) {
+				insertAt(parent, slotPosition, parentCount, slotLength, slot);
+				return true;
+			}
+
+			// The middle entry goes up, its child is the first child of the new node
+			byte[] slots = merge(parent, slotPosition, parentCount, slotLength, slot);
+			int middle = (parentCount + 1) / 2;
+			int newNumber = allocatePage(INTERIOR);
+			byte[] node = page(newNumber);
+			writeInt(node, 4, readInt(slots, middle * slotLength + this.entryLength));
+			System.arraycopy(slots, (middle + 1) * slotLength, node, PAGE_HEADER_LENGTH, (parentCount - middle) * slotLength);
+			setCount(node, parentCount - middle);
+			System.arraycopy(slots, 0, parent, PAGE_HEADER_LENGTH, middle * slotLength);
+			setCount(parent, middle);
+
+			separator = Arrays.copyOfRange(slots, middle * slotLength, middle * slotLength + this.entryLength);
+			leftNumber = parentNumber;
+			rightNumber = newNumber;
+		}
+
+		int newRoot = allocatePage(INTERIOR);
+		byte[] root = page(newRoot);
+		writeInt(root, 4, leftNumber);
+		System.arraycopy(separator, 0, root, PAGE_HEADER_LENGTH, this.entryLength);
+		writeInt(root, PAGE_HEADER_LENGTH + this.entryLength, rightNumber);
+		setCount(root, 1);
+		this.rootPage = newRoot;
+		return true;
+	}
+
+	private boolean delete(byte[] entry) {
+		int pageNumber = this.rootPage;
+		byte[] page = page(pageNumber);
+		while (page[0] == INTERIOR) {
+			pageNumber = childAt(page, childIndex(page, entry));
+			page = page(pageNumber);
+		}
+		int count = getCount(page);
+		int position = leafLowerBound(page, entry);
+		if (position == count || compare(page, PAGE_HEADER_LENGTH + position * this.entryLength, entry, 0) != 0) {
+			return false;
+		}
+		// Pages are not merged, an empty leaf stays in the list of leaves
+		this.dirtyPages.add(pageNumber);
+		int offset = PAGE_HEADER_LENGTH + position * this.entryLength;
+		System.arraycopy(page, offset + this.entryLength, page, offset, (count - position - 1) * this.entryLength);
+		setCount(page, count - 1);
+		return true;
+	}
+
+	private static void insertAt(byte[] page, int position, int count, int slotLength, byte[] slot) {
+		int offset = PAGE_HEADER_LENGTH + position * slotLength;
+		System.arraycopy(page, offset, page, offset + slotLength, (count - position) * slotLength);
+		System.arraycopy(slot, 0, page, offset, slotLength);
+		setCount(page, count + 1);
+	}
+
+	private static byte[] merge(byte[] page, int position, int count, int slotLength, byte[] slot) {
+		byte[] all = new byte[(count + 1) * slotLength];
+		System.arraycopy(page, PAGE_HEADER_LENGTH, all, 0, position * slotLength);
+		System.arraycopy(slot, 0, all, position * slotLength, slotLength);
+		System.arraycopy(page, PAGE_HEADER_LENGTH + position * slotLength, all, (position + 1) * slotLength, (count - position) * slotLength);
+		return all;
+	}
+
+	/**
+	 * Position of the first entry of a leaf that is not lower than an entry
+	 */
+	private int leafLowerBound(byte[] page, byte[] entry) {
+		int low = 0;
+		int high = getCount(page);
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(page, PAGE_HEADER_LENGTH + middle * this.entryLength, entry, 0) < 0) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Position of the child of an interior node that can contain an entry
+	 */
+	private int childIndex(byte[] page, byte[] entry) {
+		int slotLength = this.entryLength + 4;
+		int low = 0;
+		int high = getCount(page);
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(page, PAGE_HEADER_LENGTH + middle * slotLength, entry, 0) <= 0) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private int childAt(byte[] page, int index) {
+		if (index == 0) {
+			return readInt(page, 4);
+		}
+		return readInt(page, PAGE_HEADER_LENGTH + (index - 1) * (this.entryLength + 4) + this.entryLength);
+	}
+
+	/**
+	 * Compares two entries: the keys as unsigned bytes and then the record numbers
+	 */
+	private int compare(byte[] a, int aOffset, byte[] b, int bOffset) {
+		for (int i = 0; i < this.keyLength; i++) {
+			int difference = (a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return Integer.compare(readInt(a, aOffset + this.keyLength), readInt(b, bOffset + this.keyLength));
+	}
+
+	private int allocatePage(byte type) {
+		int pageNumber = this.pageCount++;
+		byte[] page = new byte[PAGE_SIZE];
+		page[0] = type;
+		this.pages.put(pageNumber, page);
+		this.dirtyPages.add(pageNumber);
+		return pageNumber;
+	}
+
+	private byte[] page(int pageNumber) {
+		byte[] page = this.pages.get(pageNumber);
+		if (page != null) {
+			return page;
+		}
+		if (pageNumber <= 0 || pageNumber >= this.pageCount) {
+			throw new DBFException("Corrupted index file: " + this.file);
+		}
+		page = new byte[PAGE_SIZE];
+		try {
+			readPage(pageNumber, page);
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+		this.pages.put(pageNumber, page);
+		// Modified pages are kept until they are written
+		Iterator<Integer> eldest = this.pages.keySet().iterator();
+		while (this.pages.size() > MAX_CACHED_PAGES && eldest.hasNext()) {
+			Integer cached = eldest.next();
+			if (cached.intValue() != pageNumber && !this.dirtyPages.contains(cached)) {
+				eldest.remove();
+			}
+		}
+		return page;
+	}
+
+	private void readPage(int pageNumber, byte[] page) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(page);
+		long position = (long) pageNumber * PAGE_SIZE;
+		while (buffer.hasRemaining()) {
+			int read = this.channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new EOFException("Unexpected end of index file: " + this.file);
+			}
+		}
+	}
+
+	private void writePage(int pageNumber, byte[] page) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(page);
+		long position = (long) pageNumber * PAGE_SIZE;
+		while (buffer.hasRemaining()) {
+			this.channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	private static int getCount(byte[] page) {
+		return ((page[2] & 0xFF) << 8) | (page[3] & 0xFF);
+	}
+
+	private static void setCount(byte[] page, int count) {
+		page[2] = (byte) (count >>> 8);
+		page[3] = (byte) count;
+	}
+
+	private static int readInt(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+			| ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+	}
+
+	private static void writeInt(byte[] data, int offset, int value) {
+		data[offset] = (byte) (value >>> 24);
+		data[offset + 1] = (byte) (value >>> 16);
+		data[offset + 2] = (byte) (value >>> 8);
+		data[offset + 3] = (byte) value;
+	}
+
+	@Override
+	public void close() {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			if (!this.readOnly && (!this.dirtyPages.isEmpty() || this.updateLock != null)) {
+				commit();
+			}
+		}
+		finally {
+			DBFUtils.close(this.raf);
+			DBFUtils.close(this.journal);
+			if (!this.readOnly) {
+				this.journalFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Entries in order, to build the tree
+	 */
+	private abstract static class EntrySource {
+		abstract boolean next(byte[] entry) throws IOException;
+	}
+
+	private final class ArrayEntries extends EntrySource {
+		private final byte[] entries;
+		private final int[] order;
+		private int position = 0;
+
+		ArrayEntries(byte[] entries, int[] order) {
+			this.entries = entries;
+			this.order = order;
+		}
+
+		@Override
+		boolean next(byte[] entry) {
+			if (this.position == this.order.length) {
+				return false;
+			}
+			System.arraycopy(this.entries, this.order[this.position++] * DBFTreeIndex.this.entryLength, entry, 0, DBFTreeIndex.this.entryLength);
+			return true;
+		}
+	}
+
+	/**
+	 * Merges sorted runs stored in files
+	 */
+	private final class MergedEntries extends EntrySource {
+		private final PriorityQueue<Run> queue;
+
+		MergedEntries(List<File> files) throws IOException {
+			this.queue = new PriorityQueue<Run>(files.size(), new Comparator<Run>() {
+				@Override
+				public int compare(Run a, Run b) {
+					return DBFTreeIndex.this.compare(a.entry, 0, b.entry, 0);
+				}
+			});
+			for (File file : files) {
+				Run run = new Run(file);
+				if (run.next()) {
+					this.queue.add(run);
+				}
+			}
+		}
+
+		@Override
+		boolean next(byte[] entry) throws IOException {
+			Run run = this.queue.poll();
+			if (run == null) {
+				return false;
+			}
+			System.arraycopy(run.entry, 0, entry, 0, DBFTreeIndex.this.entryLength);
+			if (run.next()) {
+				this.queue.add(run);
+			}
+			return true;
+		}
+	}
+
+	private final class Run {
+		private final DataInputStream in;
+		private final byte[] entry = new byte[DBFTreeIndex.this.entryLength];
+
+		Run(File file) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		}
+
+		boolean next() throws IOException {
+			try {
+				this.in.readFully(this.entry);
+				return true;
+			} catch (EOFException e) {
+				DBFUtils.close(this.in);
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,524 @@
+/*
+
+(C) Copyright 2017 Alberto Fernández <infjaf@gmail.com>
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 3.0 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.linuxense.javadbf;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Key of a {@link DBFTreeIndex}: the values of one or more fields, encoded so keys
+ * can be compared byte by byte.
+ *
+ * Every field has a byte that is 0 for null values and 2 otherwise, followed by the value:
+ * <ul>
+ * <li>character fields padded with blanks</li>
+ * <li>numeric and floating point fields as a sign byte (0 negative, 1 positive) and the digits of
+ * the value at the decimal count of the field, padded with zeros to the length of the field plus
+ * the decimal count (the nines' complement of the digits for negative numbers)</li>
+ * <li>long, autoincrement and currency fields as the int stored in the file, and doubles and
+ * timestamps (as milliseconds) as long, big endian with the sign bit flipped</li>
+ * <li>dates as yyyyMMdd digits and logical values as 'F' or 'T'</li>
+ * </ul>
+ * Numbers are encoded exactly, so different values never have the same key.
+ *
+ * Keys to search for use 1 and 3 in the first byte for numbers that are lower or
+ * greater than any value the field can store.
+ */
+final class DBFTreeIndexKey {
+
+	private static final byte NULL = 0;
+	private static final byte BELOW_VALUES = 1;
+	private static final byte VALUE = 2;
+	private static final byte ABOVE_VALUES = 3;
+
+	private final String[] fieldNames;
+	private final DBFDataType[] types;
+	private final int[] lengths;
+	private final int[] decimalCounts;
+	private final int[] offsets;
+	private final int keyLength;
+	private final Charset charset;
+
+	private DBFColumnAccess[] columns = null;
+	private DBFRecordLayout layout = null;
+	private int[] layoutColumns = null;
+
+	DBFTreeIndexKey(String[] fieldNames, DBFDataType[] types, int[] lengths, int[] decimalCounts, Charset charset) {
+		this.fieldNames = fieldNames;
+		this.types = types;
+		this.lengths = lengths;
+		this.decimalCounts = decimalCounts;
+		this.charset = charset;
+		this.offsets = new int[fieldNames.length];
+		int length = 0;
+		for (int i = 0; i < fieldNames.length; i++) {
+			this.offsets[i] = length;
+			length += 1 + valueLength(i);
+		}
+		this.keyLength = length;
+	}
+
+	/**
+	 * Creates the key of some fields of a layout
+	 * @param layout the layout of the records
+	 * @param fieldNames names of the fields of the key
+	 * @param charset charset of character fields
+	 * @return the key, bound to the layout
+	 */
+	static DBFTreeIndexKey create(DBFRecordLayout layout, String[] fieldNames, Charset charset) {
+		if (fieldNames == null || fieldNames.length == 0) {
+			throw new DBFException("Should have at least one field");
+		}
+		String[] names = new String[fieldNames.length];
+		DBFDataType[] types = new DBFDataType[fieldNames.length];
+		int[] lengths = new int[fieldNames.length];
+		int[] decimalCounts = new int[fieldNames.length];
+		for (int i = 0; i < fieldNames.length; i++) {
+			DBFField field = layout.fields[layout.findColumn(fieldNames[i])];
+			names[i] = field.getName();
+			types[i] = field.getType();
+			lengths[i] = field.getLength();
+			decimalCounts[i] = field.getDecimalCount();
+		}
+		DBFTreeIndexKey key = new DBFTreeIndexKey(names, types, lengths, decimalCounts, charset);
+		key.bind(layout);
+		return key;
+	}
+
+	/**
+	 * Number of decimals of the integers used as key of a numeric field
+	 */
+	private int scale(int part) {
+		switch (this.types[part]) {
+		case NUMERIC:
+		case FLOATING_POINT:
+			return this.decimalCounts[part];
+		case CURRENCY:
+			return 4;
+		default:
+			return 0;
+		}
+	}
+
+	private int valueLength(int part) {
+		switch (this.types[part]) {
+		case CHARACTER:
+		case VARCHAR:
+			return this.lengths[part];
+		case NUMERIC:
+		case FLOATING_POINT:
+			// A value written without decimal point can have as many digits as the field length
+			return 1 + this.lengths[part] + this.decimalCounts[part];
+		case LONG:
+		case AUTOINCREMENT:
+		case CURRENCY:
+			return 4;
+		case DOUBLE:
+		case DATE:
+		case TIMESTAMP:
+		case TIMESTAMP_DBASE7:
+			return 8;
+		case LOGICAL:
+			return 1;
+		default:
+			throw new DBFException("Unsupported type for indexes at field " + this.fieldNames[part] + ": " + this.types[part]);
+		}
+	}
+
+	/**
+	 * Binds the key to the layout of the records, so keys can be read from records
+	 * @param recordLayout the layout
+	 * @throws DBFException if the fields of the key are not in the layout
+	 */
+	void bind(DBFRecordLayout recordLayout) {
+		DBFColumnAccess[] accesses = new DBFColumnAccess[this.fieldNames.length];
+		int[] columnIndexes = new int[this.fieldNames.length];
+		for (int i = 0; i < this.fieldNames.length; i++) {
+			int column = recordLayout.findColumn(this.fieldNames[i]);
+			DBFField field = recordLayout.fields[column];
+			if (field.getType() != this.types[i] || field.getLength() != this.lengths[i]
+					|| field.getDecimalCount() != this.decimalCounts[i]) {
+				throw new DBFException("Field " + this.fieldNames[i] + " has changed, index must be recreated");
+			}
+			accesses[i] = DBFColumnAccess.create(recordLayout, column, this.charset);
+			columnIndexes[i] = column;
+		}
+		this.layout = recordLayout;
+		this.columns = accesses;
+		this.layoutColumns = columnIndexes;
+	}
+
+	int getKeyLength() {
+		return this.keyLength;
+	}
+
+	String[] getFieldNames() {
+		return this.fieldNames.clone();
+	}
+
+	/**
+	 * Checks if a field is part of the key
+	 * @param fieldName name of the field
+	 * @return true if the field is in the key
+	 */
+	boolean containsField(String fieldName) {
+		for (String name : this.fieldNames) {
+			if (name.equalsIgnoreCase(fieldName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the key of a record
+	 * @param data the data where the record is stored
+	 * @param recordOffset position of the record in data
+	 * @param key where the key is written
+	 * @param keyOffset position of the key
+	 */
+	void encode(byte[] data, int recordOffset, byte[] key, int keyOffset) {
+		for (int i = 0; i < this.columns.length; i++) {
+			int position = keyOffset + this.offsets[i];
+			int length = valueLength(i);
+			DBFColumnAccess column = this.columns[i];
+			if (column.isNull(data, recordOffset)) {
+				Arrays.fill(key, position, position + 1 + length, NULL);
+				continue;
+			}
+			key[position++] = VALUE;
+			int fieldOffset = recordOffset + this.layout.offsets[this.layoutColumns[i]];
+			switch (this.types[i]) {
+			case CHARACTER:
+			case VARCHAR:
+				int valueLength = length;
+				if (this.layout.varLengthBits[this.layoutColumns[i]] >= 0) {
+					valueLength = this.layout.getVarLength(data, recordOffset, this.layoutColumns[i]);
+				}
+				System.arraycopy(data, fieldOffset, key, position, valueLength);
+				Arrays.fill(key, position + valueLength, position + length, (byte) ' ');
+				break;
+			case DATE:
+				System.arraycopy(data, fieldOffset, key, position, 8);
+				break;
+			case TIMESTAMP:
+			case TIMESTAMP_DBASE7:
+				writeLong(key, position, DBFUtils.toEpochMillis(DBFUtils.toLittleEndianInt(data, fieldOffset),
+						DBFUtils.toLittleEndianInt(data, fieldOffset + 4)));
+				break;
+			case LOGICAL:
+				byte b = data[fieldOffset];
+				key[position] = (byte) (b == 'Y' || b == 'y' || b == 'T' || b == 't' ? 'T' : 'F');
+				break;
+			case NUMERIC:
+			case FLOATING_POINT:
+				writeNumeric(data, fieldOffset, i, key, position);
+				break;
+			case LONG:
+			case AUTOINCREMENT:
+			case CURRENCY:
+				writeInt(key, position, DBFUtils.toLittleEndianInt(data, fieldOffset));
+				break;
+			default:
+				writeDouble(key, position, column.toDouble(data, recordOffset));
+				break;
+			}
+		}
+	}
+
+	private void writeNumeric(byte[] data, int fieldOffset, int part, byte[] key, int position) {
+		int length = this.lengths[part];
+		int decimals = this.decimalCounts[part];
+		long unscaled = DBFUtils.parseUnscaled(data, fieldOffset, length);
+		if (unscaled != DBFUtils.NOT_PARSEABLE) {
+			int missing = decimals - DBFUtils.parseScale(data, fieldOffset, length);
+			if (missing >= 0 && missing < DBFUtils.POWERS_OF_TEN.length
+					&& Math.abs(unscaled) <= Long.MAX_VALUE / DBFUtils.POWERS_OF_TEN[missing]) {
+				writeDecimal(key, position, part, unscaled * DBFUtils.POWERS_OF_TEN[missing]);
+				return;
+			}
+		}
+		// More decimals than the field has, or too many digits for a long
+		BigDecimal value = (BigDecimal) DBFUtils.toNumeric(Arrays.copyOfRange(data, fieldOffset, fieldOffset + length));
+		writeDecimal(key, position, part, value.setScale(decimals, RoundingMode.HALF_UP).unscaledValue());
+	}
+
+	/**
+	 * Encodes the values of the first fields of the key
+	 * @param values values of the fields, in order. Can be less than the fields of the key
+	 * @param high if the bytes of the missing fields are 0xFF, instead of 0
+	 * @return the key
+	 */
+	byte[] encode(Object[] values, boolean high) {
+		if (values.length > this.fieldNames.length) {
+			throw new DBFException("Invalid key. The index has " + this.fieldNames.length + " fields");
+		}
+		byte[] key = new byte[this.keyLength];
+		for (int i = 0; i < values.length; i++) {
+			int position = this.offsets[i];
+			Object value = values[i];
+			if (value == null) {
+				continue;
+			}
+			key[position++] = VALUE;
+			switch (this.types[i]) {
+			case CHARACTER:
+			case VARCHAR:
+				byte[] bytes = value.toString().getBytes(this.charset);
+				int length = this.lengths[i];
+				System.arraycopy(bytes, 0, key, position, Math.min(bytes.length, length));
+				Arrays.fill(key, position + Math.min(bytes.length, length), position + length, (byte) ' ');
+				break;
+			case DATE:
+				System.arraycopy(toDigits(value, i), 0, key, position, 8);
+				break;
+			case TIMESTAMP:
+			case TIMESTAMP_DBASE7:
+				writeLong(key, position, toMillis(value, i));
+				break;
+			case LOGICAL:
+				if (!(value instanceof Boolean)) {
+					throw invalidValue(value, i);
+				}
+				key[position] = (byte) (((Boolean) value).booleanValue() ? 'T' : 'F');
+				break;
+			case DOUBLE:
+				if (!(value instanceof Number)) {
+					throw invalidValue(value, i);
+				}
+				writeDouble(key, position, ((Number) value).doubleValue());
+				break;
+			default:
+				if (!writeNumber(key, i, toBigDecimal(value, i), high)) {
+					// The value can't be stored in the field, so the next fields don't matter
+					Arrays.fill(key, this.offsets[i] + 1 + valueLength(i), this.keyLength, high ? (byte) 0xFF : 0);
+					return key;
+				}
+				break;
+			}
+		}
+		if (high && values.length < this.fieldNames.length) {
+			Arrays.fill(key, this.offsets[values.length], this.keyLength, (byte) 0xFF);
+		}
+		return key;
+	}
+
+	/**
+	 * Writes the key of a number, rounded down for high keys and up for low keys
+	 * @return true if the field can store exactly the value
+	 */
+	private boolean writeNumber(byte[] key, int part, BigDecimal value, boolean high) {
+		int position = this.offsets[part];
+		BigDecimal scaled = value.setScale(scale(part), high ? RoundingMode.FLOOR : RoundingMode.CEILING);
+		BigInteger unscaled = scaled.unscaledValue();
+		boolean fits;
+		if (this.types[part] == DBFDataType.NUMERIC || this.types[part] == DBFDataType.FLOATING_POINT) {
+			fits = writeDecimal(key, position + 1, part, unscaled);
+		}
+		else {
+			fits = unscaled.bitLength() < 32;
+			if (fits) {
+				writeInt(key, position + 1, unscaled.intValue());
+			}
+		}
+		if (!fits) {
+			key[position] = unscaled.signum() < 0 ? BELOW_VALUES : ABOVE_VALUES;
+			return false;
+		}
+		return scaled.compareTo(value) == 0;
+	}
+
+	private BigDecimal toBigDecimal(Object value, int part) {
+		if (value instanceof BigDecimal) {
+			return (BigDecimal) value;
+		}
+		if (value instanceof BigInteger) {
+			return new BigDecimal((BigInteger) value);
+		}
+		if (value instanceof Double || value instanceof Float) {
+			double doubleValue = ((Number) value).doubleValue();
+			if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+				throw invalidValue(value, part);
+			}
+			return BigDecimal.valueOf(doubleValue);
+		}
+		if (value instanceof Number) {
+			return BigDecimal.valueOf(((Number) value).longValue());
+		}
+		throw invalidValue(value, part);
+	}
+
+	/**
+	 * Writes the sign and digits of a numeric field value, as integer at the decimal count of the field.
+	 * Values with too many digits are written as the greatest or lowest value.
+	 * @return true if the value has not too many digits
+	 */
+	private boolean writeDecimal(byte[] key, int position, int part, BigInteger unscaled) {
+		if (unscaled.bitLength() < 64) {
+			return writeDecimal(key, position, part, unscaled.longValue());
+		}
+		String digits = unscaled.abs().toString();
+		int width = valueLength(part) - 1;
+		boolean negative = unscaled.signum() < 0;
+		key[position] = (byte) (negative ? 0 : 1);
+		if (digits.length() > width) {
+			Arrays.fill(key, position + 1, position + 1 + width, (byte) (negative ? '0' : '9'));
+			return false;
+		}
+		int start = position + 1 + width - digits.length();
+		Arrays.fill(key, position + 1, start, (byte) (negative ? '9' : '0'));
+		for (int i = 0; i < digits.length(); i++) {
+			int digit = digits.charAt(i) - '0';
+			key[start + i] = (byte) (negative ? '9' - digit : '0' + digit);
+		}
+		return true;
+	}
+
+	private boolean writeDecimal(byte[] key, int position, int part, long unscaled) {
+		int width = valueLength(part) - 1;
+		boolean negative = unscaled < 0;
+		key[position] = (byte) (negative ? 0 : 1);
+		for (int i = position + width; i > position; i--) {
+			// Digits of negative numbers are negative
+			int digit = (int) Math.abs(unscaled % 10);
+			key[i] = (byte) (negative ? '9' - digit : '0' + digit);
+			unscaled /= 10;
+		}
+		if (unscaled != 0) {
+			Arrays.fill(key, position + 1, position + 1 + width, (byte) (negative ? '0' : '9'));
+			return false;
+		}
+		return true;
+	}
+
+	private byte[] toDigits(Object value, int part) {
+		int yyyymmdd;
+		if (value instanceof LocalDate) {
+			LocalDate date = (LocalDate) value;
+			yyyymmdd = date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+		}
+		else if (value instanceof Date) {
+			Calendar calendar = new GregorianCalendar();
+			calendar.setTime((Date) value);
+			yyyymmdd = calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100 + calendar.get(Calendar.DAY_OF_MONTH);
+		}
+		else {
+			throw invalidValue(value, part);
+		}
+		byte[] digits = new byte[8];
+		for (int i = 7; i >= 0; i--) {
+			digits[i] = (byte) ('0' + yyyymmdd % 10);
+			yyyymmdd /= 10;
+		}
+		return digits;
+	}
+
+	private long toMillis(Object value, int part) {
+		// Timestamps are stored without time zone
+		if (value instanceof Date) {
+			long millis = ((Date) value).getTime();
+			return millis + TimeZone.getDefault().getOffset(millis);
+		}
+		if (value instanceof LocalDateTime) {
+			return ((LocalDateTime) value).toInstant(ZoneOffset.UTC).toEpochMilli();
+		}
+		throw invalidValue(value, part);
+	}
+
+	private DBFException invalidValue(Object value, int part) {
+		return new DBFException("Invalid value for field " + this.fieldNames[part] + ": " + value);
+	}
+
+	private static void writeDouble(byte[] data, int offset, double value) {
+		long bits = Double.doubleToLongBits(value == 0.0 ? 0.0 : value);
+		writeBigEndian(data, offset, bits >= 0 ? bits ^ Long.MIN_VALUE : ~bits);
+	}
+
+	private static void writeInt(byte[] data, int offset, int value) {
+		int flipped = value ^ Integer.MIN_VALUE;
+		for (int i = 3; i >= 0; i--) {
+			data[offset + i] = (byte) flipped;
+			flipped >>>= 8;
+		}
+	}
+
+	private static void writeLong(byte[] data, int offset, long value) {
+		writeBigEndian(data, offset, value ^ Long.MIN_VALUE);
+	}
+
+	private static void writeBigEndian(byte[] data, int offset, long value) {
+		for (int i = 7; i >= 0; i--) {
+			data[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	/**
+	 * Writes the definition of the key
+	 * @param out where the definition is written
+	 * @throws IOException if it can't be written
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeUTF(this.charset.name());
+		out.writeShort(this.fieldNames.length);
+		for (int i = 0; i < this.fieldNames.length; i++) {
+			out.writeUTF(this.fieldNames[i]);
+			out.writeByte(this.types[i].getCode());
+			out.writeInt(this.lengths[i]);
+			out.writeByte(this.decimalCounts[i]);
+		}
+	}
+
+	/**
+	 * Reads the definition of a key
+	 * @param in where the definition is read
+	 * @return the key, not bound to a layout
+	 * @throws IOException if it can't be read
+	 */
+	static DBFTreeIndexKey read(DataInput in) throws IOException {
+		String charsetName = in.readUTF();
+		Charset charset = Charset.isSupported(charsetName) ? Charset.forName(charsetName) : StandardCharsets.ISO_8859_1;
+		int count = in.readShort();
+		String[] names = new String[count];
+		DBFDataType[] types = new DBFDataType[count];
+		int[] lengths = new int[count];
+		int[] decimalCounts = new int[count];
+		for (int i = 0; i < count; i++) {
+			names[i] = in.readUTF();
+			types[i] = DBFDataType.fromCode(in.readByte());
+			lengths[i] = in.readInt();
+			decimalCounts[i] = in.readUnsignedByte();
+		}
+		return new DBFTreeIndexKey(names, types, lengths, decimalCounts, charset);
+	}
+}
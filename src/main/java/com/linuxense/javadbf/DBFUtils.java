@@ -28,14 +28,23 @@ import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.Locale;
+import java.util.TimeZone;
 
 
 /**
@@ -48,6 +57,25 @@ public final class DBFUtils {
 
 	private static final CharsetEncoder ASCII_ENCODER = Charset.forName("US-ASCII").newEncoder();
 
+	static final long NOT_PARSEABLE = Long.MIN_VALUE;
+	private static final int MAX_LONG_DIGITS = 18;
+	private static final long MAX_EXACT_DOUBLE = 1L << 53;
+	static final int NOT_A_DATE = Integer.MIN_VALUE;
+	private static final long MILLISECS_PER_DAY = 24*60*60*1000;
+	private static final long TIME_MILLIS_1_1_4713_BC = -210866803200000L;
+	static final long[] POWERS_OF_TEN = new long[MAX_LONG_DIGITS + 1];
+	private static final double[] EXACT_POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+		EXACT_POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < EXACT_POWERS_OF_TEN.length; i++) {
+			EXACT_POWERS_OF_TEN[i] = EXACT_POWERS_OF_TEN[i - 1] * 10.0;
+		}
+	}
+
 	private DBFUtils() {
 		throw new AssertionError("No instances of this class are allowed");
 	}
@@ -193,7 +221,7 @@ public final class DBFUtils {
 		byte[] stringBytes = text.getBytes(charset);
 
 		if (stringBytes.length > length) {
-			return textPadding(text.substring(0, text.length() - 1), charset, length, alignment, paddingByte);
+			stringBytes = truncate(text, charset, length);
 		}
 
 		int t_offset = 0;
@@ -212,6 +240,20 @@ public final class DBFUtils {
 		return response;
 	}
 
+	/**
+	 * Encodes the longest prefix of a text that fits in some bytes, without splitting characters
+	 */
+	private static byte[] truncate(String text, Charset charset, int length) {
+		CharsetEncoder encoder = charset.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		if (!encoder.encode(CharBuffer.wrap(text), buffer, true).isOverflow()) {
+			encoder.flush(buffer);
+		}
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
 	/**
 	 * Format a double number to write to a dbf file
 	 * @param num number to format
@@ -322,6 +364,21 @@ public final class DBFUtils {
 		return newBytes;
 	}
 
+	/**
+	 * Gets the length of some data once right spaces are trimmed
+	 * @param data the data
+	 * @param offset position of the first byte
+	 * @param length number of bytes
+	 * @return the length of the data without right spaces
+	 */
+	public static int trimRightSpacesLength(byte[] data, int offset, int length) {
+		int pos = offset + length - 1;
+		while (pos >= offset && data[pos] == (byte) ' ') {
+			pos--;
+		}
+		return pos - offset + 1;
+	}
+
 	private static int getRightPos(byte[] b_array) {
 
 		int pos = b_array.length - 1;
@@ -370,6 +427,320 @@ public final class DBFUtils {
 		}
 	}
 
+	/**
+	 * Convert a number stored as text, parsing the digits directly from the data.
+	 * @param data byte array
+	 * @param offset position of the first byte
+	 * @param length number of bytes
+	 * @param decimalCount number of decimals of the field
+	 * @param mode type of the result
+	 * @return the number, of the type given by mode, or null if empty or not valid
+	 */
+	public static Number toNumeric(byte[] data, int offset, int length, int decimalCount, DBFNumericMode mode) {
+		long unscaled = parseUnscaled(data, offset, length);
+		if (unscaled != NOT_PARSEABLE) {
+			int scale = parseScale(data, offset, length);
+			switch (mode) {
+			case PRIMITIVE:
+				if (decimalCount == 0) {
+					return scale == 0 ? unscaled : unscaled / POWERS_OF_TEN[scale];
+				}
+				if (Math.abs(unscaled) < MAX_EXACT_DOUBLE && scale < EXACT_POWERS_OF_TEN.length) {
+					return unscaled / EXACT_POWERS_OF_TEN[scale];
+				}
+				break;
+			case SCALED_LONG:
+				long scaled = rescale(unscaled, scale, decimalCount);
+				if (scaled != NOT_PARSEABLE) {
+					return scaled;
+				}
+				break;
+			default:
+				return BigDecimal.valueOf(unscaled, scale);
+			}
+		}
+		BigDecimal number = (BigDecimal) toNumeric(Arrays.copyOfRange(data, offset, offset + length));
+		if (number == null) {
+			return null;
+		}
+		switch (mode) {
+		case PRIMITIVE:
+			if (decimalCount != 0) {
+				return number.doubleValue();
+			}
+			BigDecimal integer = number.setScale(0, RoundingMode.DOWN);
+			return integer.unscaledValue().bitLength() < 64 ? (Number) integer.longValue() : number;
+		case SCALED_LONG:
+			BigDecimal scaledValue = number.setScale(decimalCount, RoundingMode.HALF_UP);
+			if (scaledValue.unscaledValue().bitLength() >= 64) {
+				throw new DBFException("Value out of range for scaled long: " + number);
+			}
+			return scaledValue.unscaledValue().longValue();
+		default:
+			return number;
+		}
+	}
+
+	/**
+	 * Changes the scale of a decimal number stored as unscaled long, rounding half up
+	 * @return the unscaled value at the new scale, or NOT_PARSEABLE if it overflows
+	 */
+	private static long rescale(long unscaled, int scale, int newScale) {
+		if (scale == newScale) {
+			return unscaled;
+		}
+		if (scale < newScale) {
+			if (newScale - scale >= POWERS_OF_TEN.length) {
+				return NOT_PARSEABLE;
+			}
+			long factor = POWERS_OF_TEN[newScale - scale];
+			if (Math.abs(unscaled) > Long.MAX_VALUE / factor) {
+				return NOT_PARSEABLE;
+			}
+			return unscaled * factor;
+		}
+		long divisor = POWERS_OF_TEN[scale - newScale];
+		long result = unscaled / divisor;
+		if (Math.abs(unscaled % divisor) * 2 >= divisor) {
+			result += unscaled < 0 ? -1 : 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Convert a DATE field value (8 ASCII digits, yyyyMMdd)
+	 * @param data byte array
+	 * @param offset position of the first byte
+	 * @param mode type of the result
+	 * @return the date, of the type given by mode, or null if empty or not valid
+	 */
+	static Object toDate(byte[] data, int offset, DBFDateMode mode) {
+		if (mode == DBFDateMode.DATE) {
+			try {
+				GregorianCalendar calendar = new GregorianCalendar(
+						Integer.parseInt(new String(data, offset, 4, StandardCharsets.US_ASCII)),
+						Integer.parseInt(new String(data, offset + 4, 2, StandardCharsets.US_ASCII)) - 1,
+						Integer.parseInt(new String(data, offset + 6, 2, StandardCharsets.US_ASCII)));
+				return calendar.getTime();
+			} catch (NumberFormatException e) {
+				// this field may be empty or may have improper value set
+				return null;
+			}
+		}
+		int epochDay = toEpochDay(data, offset);
+		if (epochDay == NOT_A_DATE) {
+			return null;
+		}
+		if (mode == DBFDateMode.EPOCH) {
+			return epochDay;
+		}
+		return LocalDate.ofEpochDay(epochDay);
+	}
+
+	/**
+	 * Convert a TIMESTAMP field value (julian day and milliseconds of the day, little endian)
+	 * @param data byte array
+	 * @param offset position of the first byte
+	 * @param mode type of the result
+	 * @return the timestamp, of the type given by mode, or null if empty
+	 */
+	static Object toTimestamp(byte[] data, int offset, DBFDateMode mode) {
+		int days = toLittleEndianInt(data, offset);
+		int time = toLittleEndianInt(data, offset + 4);
+		if (days == 0 && time == 0) {
+			return null;
+		}
+		long millis = toEpochMillis(days, time);
+		switch (mode) {
+		case EPOCH:
+			return millis;
+		case JAVA_TIME:
+			return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L), (int) Math.floorMod(millis, 1000L) * 1000000,
+					ZoneOffset.UTC);
+		default:
+			Calendar calendar = new GregorianCalendar();
+			calendar.setTimeInMillis(millis);
+			calendar.add(Calendar.MILLISECOND, -TimeZone.getDefault().getOffset(calendar.getTimeInMillis()));
+			return calendar.getTime();
+		}
+	}
+
+	/**
+	 * Convert a date stored as 8 ASCII digits (yyyyMMdd) to the number of days since 1970-01-01.
+	 * Months and days out of range are added to the date, as GregorianCalendar does.
+	 * @return the epoch day, or NOT_A_DATE if the data is not a date
+	 */
+	static int toEpochDay(byte[] data, int offset) {
+		int value = 0;
+		for (int i = offset; i < offset + 8; i++) {
+			byte b = data[i];
+			if (b < '0' || b > '9') {
+				return NOT_A_DATE;
+			}
+			value = value * 10 + (b - '0');
+		}
+		int year = value / 10000;
+		int month = (value / 100) % 100 - 1;
+		int day = value % 100;
+		year += Math.floorDiv(month, 12);
+		month = Math.floorMod(month, 12) + 1;
+		return daysFromCivil(year, month) + day - 1;
+	}
+
+	/**
+	 * Number of days from 1970-01-01 to the first day of a month, in the proleptic gregorian calendar
+	 */
+	private static int daysFromCivil(int year, int month) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(y, 400);
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * Convert a timestamp stored as julian day and milliseconds of the day to
+	 * milliseconds since 1970-01-01T00:00:00, without time zone conversion.
+	 */
+	static long toEpochMillis(int julianDay, int millisOfDay) {
+		return julianDay * MILLISECS_PER_DAY + TIME_MILLIS_1_1_4713_BC + millisOfDay;
+	}
+
+	/**
+	 * Checks if the data contains only spaces or null bytes
+	 * @param data byte array
+	 * @param offset position of the first byte
+	 * @param length number of bytes to check
+	 * @return true if there is no data
+	 */
+	public static boolean isBlank(byte[] data, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (data[i] != ' ' && data[i] != 0x00) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Convert a number stored as text to long, without creating intermediate objects
+	 * in the common case. The decimal part is truncated.
+	 * @param data byte array
+	 * @param offset position of the first byte
+	 * @param length number of bytes
+	 * @return the value of the number, or 0 if empty
+	 */
+	public static long parseLong(byte[] data, int offset, int length) {
+		long unscaled = parseUnscaled(data, offset, length);
+		if (unscaled != NOT_PARSEABLE) {
+			int scale = parseScale(data, offset, length);
+			return scale == 0 ? unscaled : unscaled / POWERS_OF_TEN[scale];
+		}
+		if (isBlank(data, offset, length)) {
+			return 0;
+		}
+		Number number = toNumeric(Arrays.copyOfRange(data, offset, offset + length));
+		return number == null ? 0 : number.longValue();
+	}
+
+	/**
+	 * Convert a number stored as text to double, without creating intermediate objects
+	 * in the common case.
+	 * @param data byte array
+	 * @param offset position of the first byte
+	 * @param length number of bytes
+	 * @return the value of the number, or 0 if empty
+	 */
+	public static double parseDouble(byte[] data, int offset, int length) {
+		long unscaled = parseUnscaled(data, offset, length);
+		if (unscaled != NOT_PARSEABLE && Math.abs(unscaled) < MAX_EXACT_DOUBLE) {
+			int scale = parseScale(data, offset, length);
+			if (scale < EXACT_POWERS_OF_TEN.length) {
+				// both values are exact, so the division is correctly rounded
+				return unscaled / EXACT_POWERS_OF_TEN[scale];
+			}
+		}
+		if (isBlank(data, offset, length)) {
+			return 0.0;
+		}
+		Number number = toNumeric(Arrays.copyOfRange(data, offset, offset + length));
+		return number == null ? 0.0 : number.doubleValue();
+	}
+
+	/**
+	 * Checks if a number stored as text is null (empty or filled with invalid characters)
+	 * @param data byte array
+	 * @param offset position of the first byte
+	 * @param length number of bytes
+	 * @return true if the number is null
+	 */
+	public static boolean isNumericNull(byte[] data, int offset, int length) {
+		if (parseUnscaled(data, offset, length) != NOT_PARSEABLE) {
+			return false;
+		}
+		if (isBlank(data, offset, length)) {
+			return true;
+		}
+		return toNumeric(Arrays.copyOfRange(data, offset, offset + length)) == null;
+	}
+
+	/**
+	 * Parse the digits of a number stored as text, ignoring the decimal point.
+	 * @return the digits as long or NOT_PARSEABLE if the text is not a simple number
+	 */
+	static long parseUnscaled(byte[] data, int offset, int length) {
+		long value = 0;
+		int digits = 0;
+		boolean negative = false;
+		boolean sign = false;
+		boolean point = false;
+		for (int i = offset; i < offset + length; i++) {
+			byte b = data[i];
+			if (b >= '0' && b <= '9') {
+				if (++digits > MAX_LONG_DIGITS) {
+					return NOT_PARSEABLE;
+				}
+				value = value * 10 + (b - '0');
+			}
+			else if (b == ' ' || b == 0x00) {
+				continue;
+			}
+			else if ((b == '-' || b == '+') && digits == 0 && !sign && !point) {
+				sign = true;
+				negative = b == '-';
+			}
+			else if ((b == '.' || b == ',') && !point) {
+				point = true;
+			}
+			else {
+				return NOT_PARSEABLE;
+			}
+		}
+		if (digits == 0) {
+			return NOT_PARSEABLE;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Count the digits after the decimal point of a number stored as text.
+	 */
+	static int parseScale(byte[] data, int offset, int length) {
+		int scale = 0;
+		boolean point = false;
+		for (int i = offset; i < offset + length; i++) {
+			byte b = data[i];
+			if (point && b >= '0' && b <= '9') {
+				scale++;
+			}
+			else if (b == '.' || b == ',') {
+				point = true;
+			}
+		}
+		return scale;
+	}
+
 	/**
 	 * Convert to int from byte array
 	 * @param t_littleEndianInt byte array
@@ -387,6 +758,33 @@ public final class DBFUtils {
 		return bigEndian;
 	}
 
+	/**
+	 * Read a littleEndian integer(32 bits) from a byte array
+	 * @param data byte array
+	 * @param offset position of the first byte of the integer
+	 * @return integer value
+	 */
+	public static int toLittleEndianInt(byte[] data, int offset) {
+		return (data[offset] & 0xff)
+			| (data[offset + 1] & 0xff) << 8
+			| (data[offset + 2] & 0xff) << 16
+			| (data[offset + 3] & 0xff) << 24;
+	}
+
+	/**
+	 * Read a littleEndian double(64 bits) from a byte array
+	 * @param data byte array
+	 * @param offset position of the first byte of the double
+	 * @return double value
+	 */
+	public static double toDouble(byte[] data, int offset) {
+		long bits = 0;
+		for (int i = 7; i >= 0; i--) {
+			bits = bits << 8 | (data[offset + i] & 0xff);
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
 	/**
 	 * Convert to Double object from byte array
 	 * @param t_double byte array
@@ -22,19 +22,25 @@ License along with this library.  If not, see <http://www.gnu.org/licenses/>.
 package com.linuxense.javadbf;
 
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.Iterator;
 import java.util.List;
 
 /*
@@ -54,12 +60,27 @@ import java.util.List;
  */
 public class DBFWriter extends DBFBase implements java.io.Closeable {
 
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+	private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+	private static final int SPOOL_MEMORY_SIZE = 1024 * 1024;
+
 	private DBFHeader header;
 	private List<Object[]> v_records = new ArrayList<>();
 	private int recordCount = 0;
 	//Open and append records to an existing DBF
 	private RandomAccessFile raf = null;
+	// Records not yet written to raf
+	private ByteBuffer writeBuffer = null;
+	private DBFRecordEncoder encoder = null;
 	private OutputStream outputStream = null;
+	private final List<DBFTreeIndex> treeIndexes = new ArrayList<>();
+
+	// Stream mode: records are encoded as they are added
+	private int declaredRecordCount = -1;
+	private DataOutputStream streamOutput = null;
+	private FileChannel headerChannel = null;
+	private long headerPosition = 0;
+	private RecordSpool spool = null;
 
 	private boolean closed = false;
 
@@ -87,6 +108,12 @@ public class DBFWriter extends DBFBase implements java.io.Closeable {
 	/**
 	 * Creates a DBFWriter wich write data to the given OutputStream.
 	 * Uses default charset iso-8859-1
+	 *
+	 * Records are encoded as they are added. The header, that contains the number
+	 * of records, is written before the first record if the number of records is declared
+	 * with {@link #setRecordCount(int)} or the stream is a FileOutputStream not opened in append mode
+	 * (it is updated at close).
+	 * Otherwise records are kept in a temporary file until close.
 	 * @param out stream to write the data to.
 	 */
 
@@ -209,6 +236,29 @@ public class DBFWriter extends DBFBase implements java.io.Closeable {
 		}
 	}
 
+	/**
+	 * Declares the number of records that will be added, so the header can be written
+	 * to the OutputStream before the records and they are not kept until close.
+	 * Must be called before adding records.
+	 * @param recordCount number of records
+	 * @throws DBFException if a different number of records is added and the header can't be updated
+	 */
+	public void setRecordCount(int recordCount) {
+		if (this.closed) {
+			throw new IllegalStateException("You can not set the record count of a closed DBFWriter");
+		}
+		if (this.outputStream == null) {
+			throw new DBFException("Record count can only be declared when writing to an OutputStream");
+		}
+		if (this.streamOutput != null) {
+			throw new DBFException("Record count should be declared before adding records");
+		}
+		if (recordCount < 0) {
+			throw new DBFException("Invalid record count: " + recordCount);
+		}
+		this.declaredRecordCount = recordCount;
+	}
+
 	/**
 	 * Add a record.
 	 * @param values fields of the record
@@ -267,11 +317,35 @@ public class DBFWriter extends DBFBase implements java.io.Closeable {
 
 		}
 
-		if (this.raf == null) {
+		if (this.raf == null && this.outputStream == null) {
 			this.v_records.add(values);
+		} else if (this.raf == null) {
+			try {
+				writeRecord(getStreamOutput(), values);
+				this.recordCount++;
+			} catch (IOException e) {
+				throw new DBFException("Error occured while writing record. " + e.getMessage(), e);
+			}
 		} else {
 			try {
-				writeRecord(this.raf, values);
+				byte[] record = getEncoder().encode(values);
+				if (this.writeBuffer == null) {
+					this.writeBuffer = ByteBuffer.allocateDirect(Math.max(WRITE_BUFFER_SIZE, record.length));
+				}
+				if (this.writeBuffer.remaining() < record.length) {
+					flushWriteBuffer();
+				}
+				this.writeBuffer.put(record);
+
+				removeClosedTreeIndexes();
+				if (!this.treeIndexes.isEmpty()) {
+					// The record must be in the file before it is in the indexes
+					flushWriteBuffer();
+					for (DBFTreeIndex index : this.treeIndexes) {
+						index.add(this.recordCount, record, 0);
+						index.commit();
+					}
+				}
 				this.recordCount++;
 			} catch (IOException e) {
 				throw new DBFException("Error occured while writing record. " + e.getMessage(), e);
@@ -279,7 +353,181 @@ public class DBFWriter extends DBFBase implements java.io.Closeable {
 		}
 	}
 
+	/**
+	 * Writes the records added so far. When writing to a file records are buffered
+	 * and written in blocks; the header is only updated by close.
+	 */
+	public void flush() {
+		if (this.closed) {
+			throw new IllegalStateException("You can not flush a closed DBFWriter");
+		}
+		try {
+			if (this.raf != null) {
+				flushWriteBuffer();
+			}
+			else if (this.streamOutput != null) {
+				this.streamOutput.flush();
+			}
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+	}
 
+	private void flushWriteBuffer() throws IOException {
+		if (this.writeBuffer == null || this.writeBuffer.position() == 0) {
+			return;
+		}
+		this.writeBuffer.flip();
+		FileChannel channel = this.raf.getChannel();
+		while (this.writeBuffer.hasRemaining()) {
+			channel.write(this.writeBuffer);
+		}
+		this.writeBuffer.clear();
+	}
+
+	/**
+	 * Creates a B+tree index file over one or more fields, with all the records of the file.
+	 * Only available when writing to a file.
+	 *
+	 * The index is kept up to date by addRecord while it is open.
+	 *
+	 * @param indexFile the index file, overwritten if it exists
+	 * @param fieldNames the fields of the key
+	 * @return the index, closed when this writer is closed
+	 * @see DBFRandomAccess#createTreeIndex(File, String...)
+	 */
+	public DBFTreeIndex createTreeIndex(File indexFile, String... fieldNames) {
+		checkTreeIndexSupport();
+		flush();
+		DBFTreeIndexKey key = DBFTreeIndexKey.create(new DBFRecordLayout(this.header.fieldArray), fieldNames, getCharset());
+		DBFTreeIndex index = DBFTreeIndex.create(indexFile, key, this.raf, this.header.headerLength,
+				this.header.recordLength, this.recordCount);
+		this.treeIndexes.add(index);
+		return index;
+	}
+
+	/**
+	 * Opens a B+tree index file of this file. Only available when writing to a file.
+	 *
+	 * The index is kept up to date by addRecord while it is open. If it does not
+	 * contain all the records of the file it is built again.
+	 *
+	 * @param indexFile the index file
+	 * @return the index, closed when this writer is closed
+	 * @see DBFRandomAccess#openTreeIndex(File)
+	 */
+	public DBFTreeIndex openTreeIndex(File indexFile) {
+		checkTreeIndexSupport();
+		flush();
+		DBFTreeIndex index = DBFTreeIndex.open(indexFile, new DBFRecordLayout(this.header.fieldArray), this.raf,
+				this.header.headerLength, this.header.recordLength, this.recordCount);
+		this.treeIndexes.add(index);
+		return index;
+	}
+
+	private void checkTreeIndexSupport() {
+		if (this.closed) {
+			throw new IllegalStateException("You can not create indexes in a closed DBFWriter");
+		}
+		if (this.raf == null) {
+			throw new DBFException("Indexes are only supported when writing to a file");
+		}
+		if (this.header.fieldArray == null) {
+			throw new DBFException("Fields should be set before creating indexes");
+		}
+	}
+
+	private void removeClosedTreeIndexes() {
+		Iterator<DBFTreeIndex> iterator = this.treeIndexes.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().isClosed()) {
+				iterator.remove();
+			}
+		}
+	}
+
+
+
+	/**
+	 * Gets where records are written in stream mode, writing the header if the
+	 * number of records is known or can be updated later
+	 */
+	private DataOutputStream getStreamOutput() throws IOException {
+		if (this.streamOutput != null) {
+			return this.streamOutput;
+		}
+		if (this.outputStream instanceof FileOutputStream) {
+			FileChannel channel = ((FileOutputStream) this.outputStream).getChannel();
+			long position = positionedWritePosition(channel);
+			if (position >= 0) {
+				this.headerChannel = channel;
+				this.headerPosition = position;
+			}
+		}
+		if (this.declaredRecordCount >= 0 || this.headerChannel != null) {
+			this.streamOutput = new DataOutputStream(new BufferedOutputStream(this.outputStream, STREAM_BUFFER_SIZE));
+			this.header.numberOfRecords = Math.max(this.declaredRecordCount, 0);
+			this.header.write(this.streamOutput);
+		}
+		else {
+			this.spool = new RecordSpool();
+			this.streamOutput = new DataOutputStream(new BufferedOutputStream(this.spool, STREAM_BUFFER_SIZE));
+		}
+		return this.streamOutput;
+	}
+
+	/**
+	 * Checks if the header can be updated later with positioned writes. In append mode
+	 * these writes go to the end of the file, and position is always the size of the file.
+	 * @return the position where the header will be written, or -1 if it can't be updated
+	 */
+	private static long positionedWritePosition(FileChannel channel) {
+		try {
+			long position = channel.position();
+			if (channel.size() != position) {
+				return position;
+			}
+			channel.write(ByteBuffer.allocate(1), position);
+			boolean positioned = channel.position() == position;
+			channel.truncate(position);
+			return positioned ? position : -1;
+		} catch (IOException e) {
+			// Not a regular file
+			return -1;
+		}
+	}
+
+	private void finishStream() {
+		try {
+			DataOutputStream out = getStreamOutput();
+			if (this.spool != null) {
+				out.flush();
+				DataOutputStream target = new DataOutputStream(new BufferedOutputStream(this.outputStream, STREAM_BUFFER_SIZE));
+				this.header.numberOfRecords = this.recordCount;
+				this.header.write(target);
+				this.spool.copyTo(target);
+				target.write(END_OF_DATA);
+				target.flush();
+				return;
+			}
+			out.write(END_OF_DATA);
+			out.flush();
+			if (this.recordCount != this.header.numberOfRecords) {
+				if (this.headerChannel == null) {
+					throw new DBFException("Declared " + this.declaredRecordCount + " records, but "
+							+ this.recordCount + " have been added");
+				}
+				this.header.numberOfRecords = this.recordCount;
+				ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+				count.putInt(0, this.recordCount);
+				while (count.hasRemaining()) {
+					this.headerChannel.write(count, this.headerPosition + 4 + count.position());
+				}
+			}
+		} catch (IOException e) {
+			throw new DBFException(e.getMessage(), e);
+		}
+	}
 
 	private void writeToStream(OutputStream out) {
 		try {
@@ -309,12 +557,17 @@ public class DBFWriter extends DBFBase implements java.io.Closeable {
 			return;
 		}
 		this.closed = true;
+		for (DBFTreeIndex index : this.treeIndexes) {
+			DBFUtils.close(index);
+		}
+		this.treeIndexes.clear();
 		if (this.raf != null) {
 			/*
 			 * everything is written already. just update the header for
 			 * record count and the END_OF_DATA mark
 			 */
 			try {
+				flushWriteBuffer();
 				this.header.numberOfRecords = this.recordCount;
 				this.raf.seek(0);
 				this.header.write(this.raf);
@@ -330,9 +583,10 @@ public class DBFWriter extends DBFBase implements java.io.Closeable {
 		}
 		else if (this.outputStream != null) {
 			try {
-				writeToStream(this.outputStream);
+				finishStream();
 			}
 			finally {
+				DBFUtils.close(this.spool);
 				DBFUtils.close(this.outputStream);
 			}
 		}
@@ -341,64 +595,14 @@ public class DBFWriter extends DBFBase implements java.io.Closeable {
 
 
 	private void writeRecord(DataOutput dataOutput, Object[] objectArray) throws IOException {
-		dataOutput.write((byte) ' ');
-		for (int j = 0; j < this.header.fieldArray.length; j++) {
-			/* iterate throught fields */
-			switch (this.header.fieldArray[j].getType()) {
-
-			case CHARACTER:
-				String strValue = "";
-				if (objectArray[j] != null) {
-					strValue = objectArray[j].toString();
-				}
-				dataOutput.write(DBFUtils.textPadding(strValue, getCharset(), this.header.fieldArray[j].getLength(), DBFAlignment.LEFT, (byte) ' '));
-
-				break;
-
-			case DATE:
-				if (objectArray[j] != null) {
-					GregorianCalendar calendar = new GregorianCalendar();
-					calendar.setTime((Date) objectArray[j]);
-					dataOutput.write(String.valueOf(calendar.get(Calendar.YEAR)).getBytes(StandardCharsets.US_ASCII));
-					dataOutput.write(DBFUtils.textPadding(String.valueOf(calendar.get(Calendar.MONTH) + 1),
-							StandardCharsets.US_ASCII, 2, DBFAlignment.RIGHT, (byte) '0'));
-					dataOutput.write(DBFUtils.textPadding(String.valueOf(calendar.get(Calendar.DAY_OF_MONTH)),
-							StandardCharsets.US_ASCII, 2, DBFAlignment.RIGHT, (byte) '0'));
-				} else {
-					dataOutput.write("        ".getBytes(StandardCharsets.US_ASCII));
-				}
-
-				break;
-			case NUMERIC:
-			case FLOATING_POINT:
-
-				if (objectArray[j] != null) {
-					dataOutput.write(DBFUtils.doubleFormating((Number) objectArray[j], getCharset(),
-							this.header.fieldArray[j].getLength(), this.header.fieldArray[j].getDecimalCount()));
-				} else {
-					dataOutput.write(DBFUtils.textPadding(" ", getCharset(), this.header.fieldArray[j].getLength(), DBFAlignment.RIGHT, (byte) ' '));
-				}
-
-				break;
-
-			case LOGICAL:
-
-				if (objectArray[j] instanceof Boolean) {
-					if ((Boolean) objectArray[j]) {
-						dataOutput.write((byte) 'T');
-					} else {
-						dataOutput.write((byte) 'F');
-					}
-				} else {
-					dataOutput.write((byte) '?');
-				}
-
-				break;
+		dataOutput.write(getEncoder().encode(objectArray));
+	}
 
-			default:
-				throw new DBFException("Unknown field type " + this.header.fieldArray[j].getType());
-			}
+	private DBFRecordEncoder getEncoder() {
+		if (this.encoder == null) {
+			this.encoder = new DBFRecordEncoder(this.header.fieldArray, getCharset());
 		}
+		return this.encoder;
 	}
 
 	/**
@@ -439,4 +643,51 @@ public class DBFWriter extends DBFBase implements java.io.Closeable {
 		this.close();
 	}
 
+	/**
+	 * Encoded records kept until the header can be written: in memory up to
+	 * SPOOL_MEMORY_SIZE bytes and in a temporary file when they don't fit
+	 */
+	private static final class RecordSpool extends OutputStream {
+		private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+		private File file = null;
+		private OutputStream fileOutput = null;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (this.fileOutput == null && this.memory.size() + len > SPOOL_MEMORY_SIZE) {
+				this.file = File.createTempFile("javadbf", ".spool");
+				this.fileOutput = new BufferedOutputStream(new FileOutputStream(this.file), STREAM_BUFFER_SIZE);
+				this.memory.writeTo(this.fileOutput);
+				this.memory = null;
+			}
+			if (this.fileOutput != null) {
+				this.fileOutput.write(b, off, len);
+			}
+			else {
+				this.memory.write(b, off, len);
+			}
+		}
+
+		void copyTo(OutputStream out) throws IOException {
+			if (this.fileOutput == null) {
+				this.memory.writeTo(out);
+				return;
+			}
+			this.fileOutput.flush();
+			Files.copy(this.file.toPath(), out);
+		}
+
+		@Override
+		public void close() {
+			DBFUtils.close(this.fileOutput);
+			if (this.file != null) {
+				this.file.delete();
+			}
+		}
+	}
 }
@@ -0,0 +1,198 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFAggregationTest {
+
+	private static final File DBASE_31 = new File("src/test/resources/fixtures/dbase_31.dbf");
+	private static final File DBASE_03 = new File("src/test/resources/fixtures/dbase_03.dbf");
+
+	public DBFAggregationTest() {
+		super();
+	}
+
+	private static DBFAggregation productsByDiscontinued() {
+		return new DBFAggregation()
+			.groupBy("discontinu")
+			.count()
+			.sum("UNITPRICE")
+			.avg("UNITPRICE")
+			.min("UNITPRICE")
+			.max("UNITSINSTO");
+	}
+
+	@Test
+	public void testSameAsDecodedValues() {
+		Map<Boolean, double[]> expected = new LinkedHashMap<Boolean, double[]>();
+		DBFReader reader = new DBFReader(DBASE_31);
+		try {
+			DBFRow row = null;
+			while ((row = reader.nextRow()) != null) {
+				Boolean key = row.getBoolean("DISCONTINU");
+				double price = row.getBigDecimal("UNITPRICE").doubleValue();
+				double stock = row.getInt("UNITSINSTO");
+				double[] values = expected.get(key);
+				if (values == null) {
+					values = new double[] {0, 0, price, stock};
+					expected.put(key, values);
+				}
+				values[0]++;
+				values[1] += price;
+				values[2] = Math.min(values[2], price);
+				values[3] = Math.max(values[3], stock);
+			}
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+
+		List<DBFAggregateRow> rows = aggregate(productsByDiscontinued(), DBASE_31);
+		Assert.assertEquals(expected.size(), rows.size());
+		int i = 0;
+		for (Map.Entry<Boolean, double[]> entry : expected.entrySet()) {
+			DBFAggregateRow row = rows.get(i++);
+			double[] values = entry.getValue();
+			Assert.assertEquals(6, row.getColumnCount());
+			Assert.assertEquals("DISCONTINU", row.getColumnName(0));
+			Assert.assertEquals("SUM(UNITPRICE)", row.getColumnName(2));
+			Assert.assertEquals(entry.getKey(), row.getObject("DISCONTINU"));
+			Assert.assertEquals(Long.valueOf((long) values[0]), row.getObject("count"));
+			Assert.assertEquals(values[1], row.getDouble("SUM(UNITPRICE)"), 1e-9);
+			Assert.assertEquals(values[1] / values[0], row.getDouble("AVG(UNITPRICE)"), 1e-9);
+			Assert.assertEquals(values[2], row.getDouble("MIN(UNITPRICE)"), 0.0);
+			Assert.assertEquals(values[3], row.getDouble("MAX(UNITSINSTO)"), 0.0);
+		}
+	}
+
+	@Test
+	public void testParallelAndRandomAccess() {
+		List<DBFAggregateRow> expected = aggregate(productsByDiscontinued(), DBASE_31);
+
+		DBFParallelScan scan = new DBFParallelScan(DBASE_31);
+		scan.setPartitionSize(7);
+		assertSameRows(expected, scan.aggregate(productsByDiscontinued()));
+
+		DBFRandomAccess randomAccess = new DBFRandomAccess(DBASE_31);
+		try {
+			assertSameRows(expected, randomAccess.aggregate(productsByDiscontinued()));
+		}
+		finally {
+			DBFUtils.close(randomAccess);
+		}
+	}
+
+	@Test
+	public void testGroupByMonthAndText() {
+		DBFAggregation aggregation = new DBFAggregation()
+			.groupByMonth("GPS_Date")
+			.groupBy("Type")
+			.count()
+			.sum("Max_PDOP")
+			.max("Std_Dev");
+		List<DBFAggregateRow> rows = aggregate(aggregation, DBASE_03);
+
+		Map<String, double[]> expected = new LinkedHashMap<String, double[]>();
+		DBFReader reader = new DBFReader(DBASE_03);
+		try {
+			reader.setDateMode(DBFDateMode.JAVA_TIME);
+			DBFRow row = null;
+			while ((row = reader.nextRow()) != null) {
+				LocalDate date = (LocalDate) row.getObject("GPS_Date");
+				String key = YearMonth.from(date) + "|" + row.getString("Type");
+				double[] values = expected.get(key);
+				if (values == null) {
+					values = new double[] {0, 0, Double.NaN};
+					expected.put(key, values);
+				}
+				values[0]++;
+				values[1] += row.getBigDecimal("Max_PDOP").doubleValue();
+				BigDecimal deviation = row.getBigDecimal("Std_Dev");
+				if (deviation != null) {
+					values[2] = Double.isNaN(values[2]) ? deviation.doubleValue() : Math.max(values[2], deviation.doubleValue());
+				}
+			}
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+
+		Assert.assertEquals(expected.size(), rows.size());
+		int i = 0;
+		for (Map.Entry<String, double[]> entry : expected.entrySet()) {
+			DBFAggregateRow row = rows.get(i++);
+			Assert.assertTrue(row.getObject("GPS_Date") instanceof YearMonth);
+			Assert.assertEquals(entry.getKey(), row.getObject("GPS_Date") + "|" + row.getString("Type"));
+			Assert.assertEquals((long) entry.getValue()[0], row.getLong("COUNT"));
+			Assert.assertEquals(entry.getValue()[1], row.getDouble("SUM(Max_PDOP)"), 1e-9);
+			if (Double.isNaN(entry.getValue()[2])) {
+				Assert.assertNull(row.getObject("MAX(Std_Dev)"));
+			}
+			else {
+				Assert.assertEquals(entry.getValue()[2], row.getDouble("MAX(Std_Dev)"), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testFilterWithoutGroups() {
+		DBFAggregation aggregation = new DBFAggregation()
+			.count()
+			.sum("PRODUCTID")
+			.filter(DBFFilter.between("PRODUCTID", 1, 10));
+		List<DBFAggregateRow> rows = aggregate(aggregation, DBASE_31);
+		Assert.assertEquals(1, rows.size());
+		Assert.assertEquals(10, rows.get(0).getInt("COUNT"));
+		Assert.assertEquals(55.0, rows.get(0).getDouble("SUM(PRODUCTID)"), 0.0);
+
+		aggregation.filter(DBFFilter.greaterOrEqual("PRODUCTID", 1000));
+		Assert.assertTrue(aggregate(aggregation, DBASE_31).isEmpty());
+	}
+
+	@Test(expected = DBFException.class)
+	public void testSumOfText() {
+		aggregate(new DBFAggregation().sum("PRODUCTNAM"), DBASE_31);
+	}
+
+	@Test(expected = DBFFieldNotFoundException.class)
+	public void testUnknownField() {
+		aggregate(new DBFAggregation().groupBy("NOT_A_FIELD").count(), DBASE_31);
+	}
+
+	private static List<DBFAggregateRow> aggregate(DBFAggregation aggregation, File file) {
+		DBFReader reader = new DBFReader(file);
+		try {
+			return aggregation.aggregate(reader);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static void assertSameRows(List<DBFAggregateRow> expected, List<DBFAggregateRow> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			DBFAggregateRow expectedRow = expected.get(i);
+			DBFAggregateRow actualRow = actual.get(i);
+			Assert.assertEquals(expectedRow.getColumnCount(), actualRow.getColumnCount());
+			for (int j = 0; j < expectedRow.getColumnCount(); j++) {
+				Object value = expectedRow.getObject(j);
+				if (value instanceof Double) {
+					// partial sums are added in a different order
+					Assert.assertEquals((Double) value, (Double) actualRow.getObject(j), 1e-9);
+				}
+				else {
+					Assert.assertEquals(value, actualRow.getObject(j));
+				}
+			}
+		}
+	}
+}
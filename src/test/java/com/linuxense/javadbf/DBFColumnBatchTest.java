@@ -0,0 +1,144 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFColumnBatchTest {
+
+	private static final String[] FIXTURES = {
+		"src/test/resources/fixtures/dbase_03.dbf",
+		"src/test/resources/fixtures/dbase_30.dbf",
+		"src/test/resources/fixtures/dbase_31.dbf",
+		"src/test/resources/fixtures/foxprodb/types.dbf",
+		"src/test/resources/test_delete.dbf"
+	};
+
+	public DBFColumnBatchTest() {
+		super();
+	}
+
+	@Test
+	public void testSameValuesAsRecords() {
+		for (String fixture : FIXTURES) {
+			List<Object[]> expected = readRecords(fixture);
+			DBFReader reader = new DBFReader(new File(fixture), null, true);
+			try {
+				DBFColumnBatch batch = reader.createBatch(5);
+				int row = 0;
+				while (reader.nextBatch(batch)) {
+					Assert.assertTrue(batch.getRowCount() <= 5);
+					for (int i = 0; i < batch.getRowCount(); i++) {
+						for (int column = 0; column < batch.getColumnCount(); column++) {
+							assertValue(fixture + " " + row + " " + column, expected.get(row)[column], batch.getColumn(column), i);
+						}
+						row++;
+					}
+				}
+				Assert.assertEquals(fixture, expected.size(), row);
+				Assert.assertFalse(reader.nextBatch(batch));
+				Assert.assertEquals(0, batch.getRowCount());
+			}
+			finally {
+				DBFUtils.close(reader);
+			}
+		}
+	}
+
+	@Test
+	public void testProjectionAndFilter() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/fixtures/dbase_31.dbf"));
+		try {
+			reader.setProjection("UNITPRICE", "PRODUCTNAM", "DISCONTINU");
+			reader.setFilter(DBFFilter.equalTo("DISCONTINU", Boolean.TRUE));
+			DBFColumnBatch batch = reader.createBatch(65536);
+			Assert.assertTrue(reader.nextBatch(batch));
+			Assert.assertEquals(3, batch.getColumnCount());
+			Assert.assertEquals(DBFColumnType.DOUBLE, batch.getColumn("unitprice").getType());
+			Assert.assertEquals(DBFColumnType.BYTES, batch.getColumn(1).getType());
+			Assert.assertTrue(batch.getRowCount() > 0);
+			for (int i = 0; i < batch.getRowCount(); i++) {
+				Assert.assertTrue(batch.getColumn(2).getBoolean(i));
+				Assert.assertNotNull(batch.getColumn(1).getString(i));
+			}
+			Assert.assertFalse(reader.nextBatch(batch));
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(expected = DBFException.class)
+	public void testWrongType() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/fixtures/dbase_31.dbf"));
+		try {
+			reader.createBatch(10).getColumn("PRODUCTID").getDoubles();
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchOfOtherProjection() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/fixtures/dbase_31.dbf"));
+		try {
+			DBFColumnBatch batch = reader.createBatch(10);
+			reader.setProjection("PRODUCTID");
+			reader.nextBatch(batch);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static void assertValue(String message, Object expected, DBFColumnVector vector, int row) {
+		if (vector.getType() == DBFColumnType.OBJECT) {
+			Assert.assertEquals(message, expected, vector.getObjects()[row]);
+			return;
+		}
+		if (expected == null) {
+			Assert.assertTrue(message, vector.isNull(row));
+			return;
+		}
+		Assert.assertFalse(message, vector.isNull(row));
+		switch (vector.getType()) {
+		case INT:
+		case EPOCH_DAY:
+			Assert.assertEquals(message, ((Number) expected).intValue(), vector.getInts()[row]);
+			break;
+		case LONG:
+		case EPOCH_MILLIS:
+			Assert.assertEquals(message, ((Number) expected).longValue(), vector.getLongs()[row]);
+			break;
+		case DOUBLE:
+			Assert.assertEquals(message, ((Number) expected).doubleValue(), vector.getDoubles()[row], 1e-9);
+			break;
+		case BOOLEAN:
+			Assert.assertEquals(message, expected, vector.getBoolean(row));
+			break;
+		default:
+			Assert.assertEquals(message, expected, vector.getString(row));
+			break;
+		}
+	}
+
+	private static List<Object[]> readRecords(String fixture) {
+		List<Object[]> records = new ArrayList<Object[]>();
+		DBFReader reader = new DBFReader(new File(fixture), null, true);
+		try {
+			reader.setDateMode(DBFDateMode.EPOCH);
+			Object[] record = null;
+			while ((record = reader.nextRecord()) != null) {
+				records.add(record);
+			}
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+		return records;
+	}
+}
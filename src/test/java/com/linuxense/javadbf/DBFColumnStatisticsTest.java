@@ -0,0 +1,127 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFColumnStatisticsTest {
+
+	public DBFColumnStatisticsTest() {
+		super();
+	}
+
+	@Test
+	public void testSameAsDecodedValues() {
+		for (String fileName : new String[] {"src/test/resources/fixtures/dbase_03.dbf", "src/test/resources/fixtures/dbase_31.dbf"}) {
+			File file = new File(fileName);
+			DBFParallelScan scan = new DBFParallelScan(file);
+			scan.setPartitionSize(3);
+			List<DBFColumnStatistics> statistics = scan.getStatistics();
+
+			DBFReader reader = new DBFReader(file);
+			try {
+				reader.setNumericMode(DBFNumericMode.PRIMITIVE);
+				reader.setDateMode(DBFDateMode.JAVA_TIME);
+				Assert.assertEquals(reader.getFieldCount(), statistics.size());
+				for (int i = 0; i < reader.getFieldCount(); i++) {
+					Assert.assertEquals(reader.getField(i).getName(), statistics.get(i).getField().getName());
+				}
+				Expected[] expected = new Expected[reader.getFieldCount()];
+				for (int i = 0; i < expected.length; i++) {
+					expected[i] = new Expected();
+				}
+				Object[] record = null;
+				while ((record = reader.nextRecord()) != null) {
+					for (int i = 0; i < record.length; i++) {
+						expected[i].add(record[i]);
+					}
+				}
+				for (int i = 0; i < expected.length; i++) {
+					expected[i].check(fileName + " " + reader.getField(i).getName(), statistics.get(i));
+				}
+			}
+			finally {
+				DBFUtils.close(reader);
+			}
+		}
+	}
+
+	@Test
+	public void testFilterAndProjection() {
+		DBFParallelScan scan = new DBFParallelScan(new File("src/test/resources/fixtures/dbase_31.dbf"));
+		scan.setProjection("PRODUCTID", "DISCONTINU");
+		scan.setFilter(DBFFilter.between("PRODUCTID", 1, 10));
+		List<DBFColumnStatistics> statistics = scan.getStatistics();
+		Assert.assertEquals(2, statistics.size());
+		Assert.assertEquals(10, statistics.get(0).getCount());
+		Assert.assertEquals(55.0, statistics.get(0).getSum(), 0.0);
+		Assert.assertEquals(1.0, statistics.get(0).getMin(), 0.0);
+		Assert.assertEquals(10.0, statistics.get(0).getMax(), 0.0);
+		Assert.assertEquals(10, statistics.get(0).getDistinctCount());
+		Assert.assertTrue(Double.isNaN(statistics.get(1).getMin()));
+		Assert.assertTrue(statistics.get(1).getDistinctCount() <= 2);
+	}
+
+	@Test
+	public void testDistinctEstimation() {
+		DBFHyperLogLog first = new DBFHyperLogLog();
+		DBFHyperLogLog second = new DBFHyperLogLog();
+		for (long i = 0; i < 200000; i++) {
+			(i % 2 == 0 ? first : second).add(DBFHyperLogLog.hash(i % 100000));
+		}
+		first.merge(second);
+		Assert.assertEquals(100000.0, first.estimate(), 5000.0);
+	}
+
+	private static class Expected {
+		private long count = 0;
+		private long nulls = 0;
+		private double min = Double.NaN;
+		private double max = Double.NaN;
+		private double sum = 0.0;
+		private LocalDate minDate = null;
+		private LocalDate maxDate = null;
+		private int maxLength = 0;
+		private final Set<Object> values = new HashSet<Object>();
+
+		void add(Object value) {
+			if (value == null || "".equals(value)) {
+				this.nulls++;
+				return;
+			}
+			this.count++;
+			this.values.add(value instanceof Number ? (Object) ((Number) value).doubleValue() : value);
+			if (value instanceof Number) {
+				double number = ((Number) value).doubleValue();
+				this.min = Double.isNaN(this.min) ? number : Math.min(this.min, number);
+				this.max = Double.isNaN(this.max) ? number : Math.max(this.max, number);
+				this.sum += number;
+			}
+			else if (value instanceof LocalDate) {
+				LocalDate date = (LocalDate) value;
+				this.minDate = this.minDate == null || date.isBefore(this.minDate) ? date : this.minDate;
+				this.maxDate = this.maxDate == null || date.isAfter(this.maxDate) ? date : this.maxDate;
+			}
+			else if (value instanceof String) {
+				this.maxLength = Math.max(this.maxLength, ((String) value).length());
+			}
+		}
+
+		void check(String message, DBFColumnStatistics statistics) {
+			Assert.assertEquals(message, this.count, statistics.getCount());
+			Assert.assertEquals(message, this.nulls, statistics.getNullCount());
+			Assert.assertEquals(message, this.min, statistics.getMin(), 1e-9);
+			Assert.assertEquals(message, this.max, statistics.getMax(), 1e-9);
+			Assert.assertEquals(message, this.sum, statistics.getSum(), 1e-6);
+			Assert.assertEquals(message, this.minDate, statistics.getMinDate());
+			Assert.assertEquals(message, this.maxDate, statistics.getMaxDate());
+			Assert.assertEquals(message, this.maxLength, statistics.getMaxLength());
+			Assert.assertEquals(message, this.values.size(), statistics.getDistinctCount(), Math.max(2.0, this.values.size() * 0.03));
+		}
+	}
+}
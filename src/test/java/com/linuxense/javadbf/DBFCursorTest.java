@@ -0,0 +1,134 @@
+package com.linuxense.javadbf;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFCursorTest {
+
+	private static final String[] FILES = {
+		"src/test/resources/books.dbf",
+		"src/test/resources/provincias_es.dbf",
+		"src/test/resources/test_delete.dbf",
+		"src/test/resources/fixtures/dbase_03.dbf",
+		"src/test/resources/fixtures/dbase_30.dbf",
+		"src/test/resources/fixtures/dbase_31.dbf",
+		"src/test/resources/fixtures/dbase_83.dbf",
+		"src/test/resources/fixtures/dbase_8b.dbf",
+		"src/test/resources/fixtures/dbase_f5.dbf",
+		"src/test/resources/fixtures/cp1251.dbf"
+	};
+
+	public DBFCursorTest() {
+		super();
+	}
+
+	@Test
+	public void testSameValuesAsNextRecord() throws IOException {
+		for (String fileName : FILES) {
+			List<Object[]> expected = readRecords(fileName, true);
+			DBFReader reader = new DBFReader(new File(fileName), null, true);
+			try {
+				DBFCursor cursor = reader.createCursor();
+				int row = 0;
+				while (cursor.next()) {
+					Object[] record = expected.get(row);
+					Assert.assertEquals(record.length, cursor.getFieldCount());
+					for (int i = 0; i < record.length; i++) {
+						String message = fileName + " row " + row + " column " + i;
+						Object value = cursor.getObject(i);
+						Assert.assertTrue(message, Arrays.deepEquals(new Object[] {record[i]}, new Object[] {value}));
+						Assert.assertEquals(message, record[i] == null, cursor.isNull(i));
+						if (record[i] instanceof Number) {
+							Assert.assertEquals(message, ((Number) record[i]).longValue(), cursor.getLong(i));
+							Assert.assertEquals(message, ((Number) record[i]).doubleValue(), cursor.getDouble(i), 0.0);
+						}
+						if (record[i] instanceof Boolean) {
+							Assert.assertEquals(message, record[i], cursor.getBoolean(i));
+						}
+						if (record[i] instanceof String) {
+							Assert.assertEquals(message, record[i], cursor.getString(i));
+						}
+					}
+					Assert.assertEquals(record[0], cursor.isDeleted());
+					row++;
+				}
+				Assert.assertEquals(fileName, expected.size(), row);
+			}
+			finally {
+				DBFUtils.close(reader);
+			}
+		}
+	}
+
+	@Test
+	public void testByName() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/fixtures/dbase_31.dbf"));
+		try {
+			DBFCursor cursor = reader.createCursor();
+			int idColumn = cursor.getColumnIndex("productid");
+			int priceColumn = cursor.getColumnIndex("UNITPRICE");
+			Assert.assertTrue(cursor.next());
+			Assert.assertEquals(1, cursor.getInt(idColumn));
+			Assert.assertEquals(18.0, cursor.getDouble(priceColumn), 0.0);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNoCurrentRecord() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/books.dbf"));
+		try {
+			reader.createCursor().getInt(0);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test
+	public void testParseNumbers() {
+		byte[] data = "  -12.50 ".getBytes();
+		Assert.assertEquals(-12, DBFUtils.parseLong(data, 0, data.length));
+		Assert.assertEquals(-12.5, DBFUtils.parseDouble(data, 0, data.length), 0.0);
+		Assert.assertFalse(DBFUtils.isNumericNull(data, 0, data.length));
+
+		data = "        ".getBytes();
+		Assert.assertEquals(0, DBFUtils.parseLong(data, 0, data.length));
+		Assert.assertTrue(DBFUtils.isNumericNull(data, 0, data.length));
+
+		data = "  ******".getBytes();
+		Assert.assertTrue(DBFUtils.isNumericNull(data, 0, data.length));
+
+		data = "12345678901234567890.5".getBytes();
+		Assert.assertEquals(1.23456789012345678905E19, DBFUtils.parseDouble(data, 0, data.length), 0.0);
+
+		data = "0.1".getBytes();
+		Assert.assertEquals(0.1, DBFUtils.parseDouble(data, 0, data.length), 0.0);
+	}
+
+	private static List<Object[]> readRecords(String fileName, boolean showDeletedRows) throws IOException {
+		DBFReader reader = null;
+		try {
+			reader = new DBFReader(new BufferedInputStream(new FileInputStream(fileName)), null, showDeletedRows);
+			List<Object[]> records = new ArrayList<Object[]>();
+			Object[] record = null;
+			while ((record = reader.nextRecord()) != null) {
+				records.add(record);
+			}
+			return records;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+}
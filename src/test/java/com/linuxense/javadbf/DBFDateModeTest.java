@@ -0,0 +1,220 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFDateModeTest {
+
+	private static final String[] FILES = {
+		"src/test/resources/fixtures/dbase_03.dbf",
+		"src/test/resources/fixtures/dbase_30.dbf",
+		"src/test/resources/fixtures/dbase_8b.dbf",
+		"src/test/resources/fixtures/dbase_f5.dbf"
+	};
+
+	public DBFDateModeTest() {
+		super();
+	}
+
+	@Test
+	public void testSameDates() {
+		int dates = 0;
+		int timestamps = 0;
+		for (String fileName : FILES) {
+			File file = new File(fileName);
+			List<Object[]> expected = readRecords(file, DBFDateMode.DATE);
+			List<Object[]> epoch = readRecords(file, DBFDateMode.EPOCH);
+			List<Object[]> javaTime = readRecords(file, DBFDateMode.JAVA_TIME);
+			DBFReader reader = new DBFReader(file);
+			try {
+				for (int row = 0; row < expected.size(); row++) {
+					for (int i = 0; i < reader.getFieldCount(); i++) {
+						DBFDataType type = reader.getField(i).getType();
+						Object value = expected.get(row)[i];
+						String message = fileName + " row " + row + " column " + i;
+						if (type == DBFDataType.DATE && value != null) {
+							LocalDate date = LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault()).toLocalDate();
+							if (date.getYear() < 1583) {
+								// java.util.Date uses the julian calendar before 1582
+								continue;
+							}
+							Assert.assertEquals(message, date, javaTime.get(row)[i]);
+							Assert.assertEquals(message, (int) date.toEpochDay(), epoch.get(row)[i]);
+							dates++;
+						}
+						else if (type == DBFDataType.TIMESTAMP && value != null) {
+							LocalDateTime dateTime = LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault());
+							Assert.assertEquals(message, dateTime, javaTime.get(row)[i]);
+							Assert.assertEquals(message, dateTime.toInstant(ZoneOffset.UTC).toEpochMilli(), epoch.get(row)[i]);
+							timestamps++;
+						}
+						else {
+							Assert.assertEquals(message, value == null, javaTime.get(row)[i] == null);
+							Assert.assertEquals(message, value == null, epoch.get(row)[i] == null);
+						}
+					}
+				}
+			}
+			finally {
+				DBFUtils.close(reader);
+			}
+		}
+		Assert.assertTrue(dates > 0);
+		Assert.assertTrue(timestamps > 0);
+	}
+
+	@Test
+	public void testEpochDay() {
+		assertEpochDay(LocalDate.of(1970, 1, 1), "19700101");
+		assertEpochDay(LocalDate.of(2000, 2, 29), "20000229");
+		assertEpochDay(LocalDate.of(1900, 3, 1), "19000229");
+		assertEpochDay(LocalDate.of(2001, 1, 31), "20001331");
+		assertEpochDay(LocalDate.of(1969, 12, 31), "19691231");
+		assertEpochDay(LocalDate.of(2024, 12, 31), "20241231");
+		Assert.assertEquals(DBFUtils.NOT_A_DATE, DBFUtils.toEpochDay("        ".getBytes(), 0));
+		Assert.assertEquals(DBFUtils.NOT_A_DATE, DBFUtils.toEpochDay("2024-1-1".getBytes(), 0));
+	}
+
+	@Test
+	public void testCursor() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/fixtures/dbase_03.dbf"));
+		try {
+			DBFCursor cursor = reader.createCursor();
+			int column = cursor.getColumnIndex("Date_Visit");
+			Assert.assertTrue(cursor.next());
+			Assert.assertEquals(LocalDate.of(2005, 7, 12).toEpochDay(), cursor.getEpochDay(column));
+			Assert.assertEquals(LocalDate.of(2005, 7, 12).toEpochDay() * 86400000L, cursor.getEpochMillis(column));
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test
+	public void testRandomAccess() throws IOException {
+		File file = File.createTempFile("javadbf-date", ".dbf");
+		DBFRandomAccess dbf = null;
+		try {
+			Files.copy(new File("src/test/resources/fixtures/dbase_03.dbf").toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			dbf = new DBFRandomAccess(file);
+			dbf.setDateMode(DBFDateMode.JAVA_TIME);
+			Assert.assertEquals(LocalDate.of(2005, 7, 12), dbf.getRecord(0).getObject("Date_Visit"));
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testFilterJavaTime() {
+		int values = 0;
+		for (String fileName : FILES) {
+			File file = new File(fileName);
+			List<Object[]> records = readRecords(file, DBFDateMode.JAVA_TIME);
+			DBFField[] fields = readFields(file);
+			for (int i = 0; i < fields.length; i++) {
+				if (fields[i].getType() != DBFDataType.DATE && fields[i].getType() != DBFDataType.TIMESTAMP) {
+					continue;
+				}
+				for (Object[] record : records) {
+					if (record[i] == null) {
+						continue;
+					}
+					int expected = 0;
+					for (Object[] other : records) {
+						if (record[i].equals(other[i])) {
+							expected++;
+						}
+					}
+					String message = fileName + " " + fields[i].getName() + " " + record[i];
+					Assert.assertEquals(message, expected, countRecords(file, DBFFilter.equalTo(fields[i].getName(), record[i])));
+					Assert.assertEquals(message, expected, countRecords(file, DBFFilter.between(fields[i].getName(), record[i], record[i])));
+					values++;
+				}
+			}
+		}
+		Assert.assertTrue(values > 0);
+	}
+
+	@Test
+	public void testIndexJavaTime() throws IOException {
+		File file = File.createTempFile("javadbf-date", ".dbf");
+		DBFRandomAccess dbf = null;
+		try {
+			Files.copy(new File("src/test/resources/fixtures/dbase_03.dbf").toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			dbf = new DBFRandomAccess(file);
+			dbf.setDateMode(DBFDateMode.JAVA_TIME);
+			dbf.createIndex("visit", "Date_Visit");
+			Object date = dbf.getRecord(0).getObject("Date_Visit");
+			Assert.assertEquals(date, dbf.getRecord("visit", date).getObject("Date_Visit"));
+			Assert.assertArrayEquals(dbf.findRecords(DBFFilter.equalTo("Date_Visit", date)), dbf.findRecords("visit", date));
+			Assert.assertEquals(0, dbf.findRecords("visit", LocalDate.of(2005, 7, 11)).length);
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+		}
+	}
+
+	private static void assertEpochDay(LocalDate expected, String text) {
+		Assert.assertEquals(text, expected.toEpochDay(), DBFUtils.toEpochDay(text.getBytes(), 0));
+	}
+
+	private static DBFField[] readFields(File file) {
+		DBFReader reader = new DBFReader(file);
+		try {
+			DBFField[] fields = new DBFField[reader.getFieldCount()];
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = reader.getField(i);
+			}
+			return fields;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static int countRecords(File file, DBFFilter filter) {
+		DBFReader reader = new DBFReader(file);
+		try {
+			reader.setFilter(filter);
+			int count = 0;
+			while (reader.nextRecord() != null) {
+				count++;
+			}
+			return count;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static List<Object[]> readRecords(File file, DBFDateMode mode) {
+		DBFReader reader = new DBFReader(file);
+		try {
+			reader.setDateMode(mode);
+			List<Object[]> records = new ArrayList<Object[]>();
+			Object[] record = null;
+			while ((record = reader.nextRecord()) != null) {
+				records.add(record);
+			}
+			return records;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+}
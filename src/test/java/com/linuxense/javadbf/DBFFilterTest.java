@@ -0,0 +1,224 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFFilterTest {
+
+	private static final File DBASE_31 = new File("src/test/resources/fixtures/dbase_31.dbf");
+	private static final File DBASE_03 = new File("src/test/resources/fixtures/dbase_03.dbf");
+
+	public DBFFilterTest() {
+		super();
+	}
+
+	@Test
+	public void testEqualTo() {
+		List<Integer> ids = readIds(DBFFilter.equalTo("productid", 7));
+		Assert.assertEquals(Arrays.asList(7), ids);
+	}
+
+	@Test
+	public void testIn() {
+		List<Integer> ids = readIds(DBFFilter.in("PRODUCTID", 3, 5, 1000, 40L));
+		Assert.assertEquals(Arrays.asList(3, 5, 40), ids);
+	}
+
+	@Test
+	public void testBetween() {
+		List<Integer> expected = new ArrayList<Integer>();
+		DBFReader reader = new DBFReader(DBASE_31);
+		try {
+			DBFRow row = null;
+			while ((row = reader.nextRow()) != null) {
+				BigDecimal price = row.getBigDecimal("unitprice");
+				if (price.compareTo(new BigDecimal("10")) >= 0 && price.compareTo(new BigDecimal("20.5")) <= 0) {
+					expected.add(row.getInt("productid"));
+				}
+			}
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, readIds(DBFFilter.between("UNITPRICE", 10, new BigDecimal("20.5"))));
+		Assert.assertEquals(expected, readIds(DBFFilter.and(
+			DBFFilter.greaterOrEqual("UNITPRICE", 10.0),
+			DBFFilter.lessOrEqual("UNITPRICE", 20.5))));
+	}
+
+	@Test
+	public void testStartsWith() {
+		List<Integer> expected = new ArrayList<Integer>();
+		DBFReader reader = new DBFReader(DBASE_31);
+		try {
+			DBFRow row = null;
+			while ((row = reader.nextRow()) != null) {
+				String name = row.getString("productnam");
+				if (name.startsWith("Ch") || row.getBoolean("discontinu")) {
+					expected.add(row.getInt("productid"));
+				}
+			}
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, readIds(DBFFilter.or(
+			DBFFilter.startsWith("productnam", "Ch"),
+			DBFFilter.equalTo("discontinu", Boolean.TRUE))));
+	}
+
+	@Test
+	public void testNot() {
+		List<Integer> ids = readIds(DBFFilter.not(DBFFilter.between("productid", 2, 77)));
+		Assert.assertEquals(Arrays.asList(1), ids);
+	}
+
+	@Test
+	public void testTextAndDate() {
+		DBFReader reader = new DBFReader(DBASE_03);
+		try {
+			reader.setFilter(DBFFilter.and(
+				DBFFilter.equalTo("Type", "CMP"),
+				DBFFilter.between("Date_Visit", new GregorianCalendar(2005, 6, 12).getTime(), new GregorianCalendar(2005, 6, 12).getTime()),
+				DBFFilter.greaterOrEqual("Max_PDOP", 4.4),
+				DBFFilter.not(DBFFilter.isNull("Max_PDOP"))));
+			DBFRow row = null;
+			int rows = 0;
+			while ((row = reader.nextRow()) != null) {
+				Assert.assertEquals("CMP", row.getString("Type"));
+				Assert.assertTrue(row.getDouble("Max_PDOP") >= 4.4);
+				rows++;
+			}
+			Assert.assertEquals(6, rows);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+		Assert.assertEquals(0, countRecords(DBASE_03, DBFFilter.between("Date_Visit", null, new GregorianCalendar(2005, 6, 11).getTime())));
+		Assert.assertEquals(0, countRecords(DBASE_03, DBFFilter.startsWith("Type", "CMPX")));
+		Assert.assertEquals(14, countRecords(DBASE_03, DBFFilter.startsWith("Type", "CM")));
+	}
+
+	@Test
+	public void testCodePage() {
+		File file = new File("src/test/resources/fixtures/cp1251.dbf");
+		Charset charset = Charset.forName("windows-1251");
+		List<String> names = new ArrayList<String>();
+		DBFReader reader = new DBFReader(file, charset);
+		try {
+			DBFRow row = null;
+			while ((row = reader.nextRow()) != null) {
+				names.add(row.getString("NAME"));
+			}
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+		Assert.assertEquals(4, names.size());
+		Assert.assertEquals(Arrays.asList(2), readRns(file, charset, DBFFilter.equalTo("NAME", names.get(1))));
+		Assert.assertEquals(Arrays.asList(1, 3), readRns(file, charset, DBFFilter.in("NAME", names.get(2), names.get(0), "X")));
+		Assert.assertEquals(Arrays.asList(1, 2, 4), readRns(file, charset, DBFFilter.greaterOrEqual("NAME", names.get(0).substring(0, 1))));
+		// Can't be encoded, must not match the '?' replacement
+		Assert.assertEquals(0, readRns(file, charset, DBFFilter.equalTo("NAME", "\u65e5")).size());
+	}
+
+	@Test
+	public void testRandomAccess() throws IOException {
+		File file = File.createTempFile("javadbf-filter", ".dbf");
+		DBFRandomAccess dbf = null;
+		try {
+			Files.copy(DBASE_31.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			dbf = new DBFRandomAccess(file);
+			int[] records = dbf.findRecords(DBFFilter.in("productid", 1, 10, 77));
+			Assert.assertArrayEquals(new int[] {0, 9, 76}, records);
+			Assert.assertEquals(0, dbf.findRecords(DBFFilter.isNull("productid")).length);
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+		}
+	}
+
+	@Test(expected = DBFFieldNotFoundException.class)
+	public void testUnknownField() {
+		DBFReader reader = new DBFReader(DBASE_31);
+		try {
+			reader.setFilter(DBFFilter.isNull("nonexistent"));
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(expected = DBFException.class)
+	public void testPrefixOnNumber() {
+		DBFReader reader = new DBFReader(DBASE_31);
+		try {
+			reader.setFilter(DBFFilter.startsWith("productid", "1"));
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static int countRecords(File file, DBFFilter filter) {
+		DBFReader reader = new DBFReader(file);
+		try {
+			reader.setFilter(filter);
+			int count = 0;
+			while (reader.nextRecord() != null) {
+				count++;
+			}
+			return count;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static List<Integer> readRns(File file, Charset charset, DBFFilter filter) {
+		DBFReader reader = new DBFReader(file, charset);
+		try {
+			reader.setFilter(filter);
+			List<Integer> rns = new ArrayList<Integer>();
+			DBFRow row = null;
+			while ((row = reader.nextRow()) != null) {
+				rns.add(row.getInt("RN"));
+			}
+			return rns;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static List<Integer> readIds(DBFFilter filter) {
+		DBFReader reader = new DBFReader(DBASE_31);
+		try {
+			reader.setFilter(filter);
+			reader.setProjection("productid");
+			List<Integer> ids = new ArrayList<Integer>();
+			DBFCursor cursor = reader.createCursor();
+			while (cursor.next()) {
+				ids.add(cursor.getInt(0));
+			}
+			return ids;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.GregorianCalendar;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFHashIndexTest {
+
+	private static final File DBASE_31 = new File("src/test/resources/fixtures/dbase_31.dbf");
+
+	public DBFHashIndexTest() {
+		super();
+	}
+
+	@Test
+	public void testSameAsFilter() throws IOException {
+		File file = File.createTempFile("javadbf-index", ".dbf");
+		DBFRandomAccess dbf = null;
+		try {
+			Files.copy(DBASE_31.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			dbf = new DBFRandomAccess(file);
+			dbf.createIndex("id", "productid");
+			dbf.createIndex("NAME", "PRODUCTNAM");
+			dbf.createIndex("category", "SUPPLIERID", "CATEGORYID");
+
+			Assert.assertEquals("Konbu", dbf.getRecord("ID", 13).getString("PRODUCTNAM"));
+			Assert.assertEquals(13, dbf.getRecord("name", "Konbu").getInt("PRODUCTID"));
+			Assert.assertEquals(13, dbf.getRecord("name", "Konbu  ").getInt("PRODUCTID"));
+			Assert.assertNull(dbf.getRecord("id", 1000));
+			Assert.assertNull(dbf.getRecord("name", "Kon"));
+			Assert.assertArrayEquals(new int[] {12}, dbf.findRecords("id", new BigDecimal("13.00")));
+
+			for (int supplier = 1; supplier <= 30; supplier++) {
+				for (int category = 1; category <= 8; category++) {
+					int[] expected = dbf.findRecords(DBFFilter.and(
+						DBFFilter.equalTo("SUPPLIERID", supplier), DBFFilter.equalTo("CATEGORYID", category)));
+					Assert.assertArrayEquals(expected, dbf.findRecords("category", supplier, category));
+				}
+			}
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testUpdatedByAddAndUpdate() throws IOException {
+		DBFField[] fields = new DBFField[3];
+		fields[0] = new DBFField("CODE", DBFDataType.CHARACTER, 10);
+		fields[1] = new DBFField("AMOUNT", DBFDataType.NUMERIC, 10, 2);
+		fields[2] = new DBFField("BORN", DBFDataType.DATE);
+		File file = File.createTempFile("javadbf-index", ".dbf");
+		DBFWriter writer = new DBFWriter(file);
+		writer.setFields(fields);
+		writer.close();
+
+		DBFRandomAccess dbf = new DBFRandomAccess(file);
+		try {
+			dbf.createIndex("code", "CODE");
+			dbf.createIndex("amount", "AMOUNT");
+			dbf.createIndex("born", "BORN");
+			for (int i = 0; i < 1000; i++) {
+				dbf.addRecord(new Object[] {"C" + i, i / 4.0, new GregorianCalendar(2000, 0, 1 + i % 10).getTime()});
+			}
+			Assert.assertArrayEquals(new int[] {123}, dbf.findRecords("code", "C123"));
+			Assert.assertArrayEquals(new int[] {10}, dbf.findRecords("amount", new BigDecimal("2.50")));
+			Assert.assertArrayEquals(new int[] {10}, dbf.findRecords("amount", 2.5));
+			Assert.assertEquals(100, dbf.findRecords("born", new GregorianCalendar(2000, 0, 3).getTime()).length);
+
+			dbf.updateRecord(123, "CODE", "X");
+			Assert.assertEquals(0, dbf.findRecords("code", "C123").length);
+			Assert.assertArrayEquals(new int[] {123}, dbf.findRecords("code", "X"));
+			Assert.assertArrayEquals(new int[] {10}, dbf.findRecords("amount", 2.5));
+
+			dbf.updateRecord(124, new Object[] {"X", 2.5, new GregorianCalendar(1999, 0, 1).getTime()});
+			Assert.assertArrayEquals(new int[] {123, 124}, dbf.findRecords("code", "X"));
+			Assert.assertArrayEquals(new int[] {10, 124}, dbf.findRecords("amount", 2.5));
+			Assert.assertEquals(99, dbf.findRecords("born", new GregorianCalendar(2000, 0, 5).getTime()).length);
+			Assert.assertEquals("C10", dbf.getRecord("amount", 2.5).getString("CODE"));
+
+			dbf.dropIndex("code");
+			try {
+				dbf.findRecords("code", "X");
+				Assert.fail("Index has been dropped");
+			}
+			catch (DBFException e) {
+				// expected
+			}
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testInvalidUpdate() throws IOException {
+		DBFField[] fields = new DBFField[2];
+		fields[0] = new DBFField("CODE", DBFDataType.CHARACTER, 10);
+		fields[1] = new DBFField("AMOUNT", DBFDataType.NUMERIC, 10, 2);
+		File file = File.createTempFile("javadbf-index", ".dbf");
+		DBFWriter writer = new DBFWriter(file);
+		writer.setFields(fields);
+		writer.close();
+
+		DBFRandomAccess dbf = new DBFRandomAccess(file);
+		try {
+			dbf.createIndex("code", "CODE");
+			dbf.addRecord(new Object[] {"A", 1.0});
+			for (Object amount : new Object[] {null, "not a number"}) {
+				try {
+					dbf.updateRecord(0, new Object[] {"B", amount});
+					Assert.fail("Invalid value");
+				}
+				catch (DBFException | ClassCastException e) {
+					// expected
+				}
+				// Nothing has been written
+				Assert.assertEquals("A", dbf.getRecord(0).getString("CODE"));
+				Assert.assertEquals("A", dbf.getRecord("code", "A").getString("CODE"));
+				Assert.assertNull(dbf.getRecord("code", "B"));
+			}
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+		}
+	}
+
+	@Test(expected = DBFException.class)
+	public void testDuplicatedIndex() throws IOException {
+		DBFRandomAccess dbf = new DBFRandomAccess(DBASE_31);
+		try {
+			dbf.createIndex("id", "PRODUCTID");
+			dbf.createIndex("ID", "PRODUCTNAM");
+		}
+		finally {
+			DBFUtils.close(dbf);
+		}
+	}
+
+	@Test(expected = DBFException.class)
+	public void testInvalidKey() throws IOException {
+		DBFRandomAccess dbf = new DBFRandomAccess(DBASE_31);
+		try {
+			dbf.createIndex("category", "SUPPLIERID", "CATEGORYID");
+			dbf.findRecords("category", 1);
+		}
+		finally {
+			DBFUtils.close(dbf);
+		}
+	}
+}
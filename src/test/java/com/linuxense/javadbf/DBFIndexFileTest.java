@@ -0,0 +1,245 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFIndexFileTest {
+
+	private static final String XSOURCE = "src/test/resources/fixtures/foxpro-xsource/";
+	private static final String FOXPRODB = "src/test/resources/fixtures/foxprodb/";
+
+	public DBFIndexFileTest() {
+		super();
+	}
+
+	@Test
+	public void testCompoundIndexTags() throws IOException {
+		DBFIndexFile index = new DBFIndexFile(new File(XSOURCE + "employees.cdx"));
+		try {
+			List<String> names = new ArrayList<String>();
+			for (DBFIndexTag tag : index.getTags()) {
+				names.add(tag.getName());
+			}
+			Assert.assertEquals(Arrays.asList("EMAILNAME", "LASTNAME", "POSTALCODE", "PRIMARYKEY"), names);
+			DBFIndexTag tag = index.getTag("primaryKey");
+			Assert.assertEquals("employeeid", tag.getKeyExpression());
+			Assert.assertNull(tag.getForExpression());
+			Assert.assertEquals(4, tag.getKeyLength());
+			Assert.assertFalse(tag.isDescending());
+			Assert.assertArrayEquals(new int[] {0, 1, 2, 3, 4}, tag.getRecordOrder());
+		}
+		finally {
+			DBFUtils.close(index);
+		}
+	}
+
+	@Test
+	public void testSameAsRecords() throws IOException {
+		checkAllKeys(XSOURCE + "foxref_ref", "UNIQUEID", "SETID", "REFID", "REFTYPE", "FILEID", "INACTIVE", "CHECKED");
+		checkAllKeys(XSOURCE + "employees", "LASTNAME", "EMAILNAME", "POSTALCODE", "EMPLOYEEID");
+		checkAllKeys(XSOURCE + "payments", "PAYMENTID", "PROJECTID", "PAYMENTMET");
+		checkAllKeys(FOXPRODB + "calls", "CALL_ID", "CONTACT_ID");
+		checkAllKeys(FOXPRODB + "contacts", "CONTACT_ID", "CONTACT_TY");
+		checkAllKeys(FOXPRODB + "setup", "KEY_NAME");
+	}
+
+	private static void checkAllKeys(String baseName, String... fieldNames) throws IOException {
+		DBFRandomAccess dbf = new DBFRandomAccess(new File(baseName + ".dbf"));
+		File indexFile = new File(baseName + ".cdx");
+		if (!indexFile.exists()) {
+			indexFile = new File(baseName + ".CDX");
+		}
+		DBFIndexFile index = dbf.openIndex(indexFile);
+		try {
+			for (DBFIndexTag tag : index.getTags()) {
+				DBFField field = index.findKeyField(tag.getKeyExpression());
+				Assert.assertNotNull(tag.getName(), field);
+				Assert.assertTrue(tag.getName(), Arrays.asList(fieldNames).contains(field.getName()));
+				int[] order = tag.getRecordOrder();
+				Assert.assertEquals(dbf.getRecordCount(), order.length);
+				for (int i = 0; i < dbf.getRecordCount(); i++) {
+					Object value = dbf.getRecord(i).getObject(field.getName());
+					if (value == null) {
+						continue;
+					}
+					int[] found = tag.find(value);
+					Assert.assertTrue(baseName + " " + tag.getName() + " " + value, contains(found, i));
+					for (int record : found) {
+						Assert.assertEquals(value, dbf.getRecord(record).getObject(field.getName()));
+					}
+				}
+			}
+		}
+		finally {
+			DBFUtils.close(index);
+			DBFUtils.close(dbf);
+		}
+	}
+
+	private static boolean contains(int[] records, int record) {
+		for (int r : records) {
+			if (r == record) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testFindAndRange() throws IOException {
+		DBFRandomAccess dbf = new DBFRandomAccess(new File(XSOURCE + "employees.dbf"));
+		DBFIndexFile index = dbf.openIndex(new File(XSOURCE + "employees.cdx"));
+		try {
+			DBFIndexTag lastName = index.getTag("LASTNAME");
+			int[] fuller = lastName.find("Fuller");
+			Assert.assertEquals(1, fuller.length);
+			Assert.assertEquals("Fuller", dbf.getRecord(fuller[0]).getString("LASTNAME"));
+			Assert.assertEquals(0, lastName.find("Full").length);
+			Assert.assertEquals(0, lastName.find("Zzz").length);
+
+			int[] all = lastName.getRecordOrder();
+			String previous = "";
+			for (int record : all) {
+				String name = dbf.getRecord(record).getString("LASTNAME");
+				Assert.assertTrue(previous.compareTo(name) <= 0);
+				previous = name;
+			}
+			Assert.assertArrayEquals(Arrays.copyOfRange(all, 1, 4), lastName.findRange("D", "Lz"));
+			Assert.assertArrayEquals(Arrays.copyOfRange(all, 0, 3), lastName.findRange(null, "Fuller"));
+			Assert.assertArrayEquals(Arrays.copyOfRange(all, 2, 5), lastName.findRange("Fuller", null));
+
+			DBFIndexTag primaryKey = index.getTag("PRIMARYKEY");
+			Assert.assertArrayEquals(new int[] {2}, primaryKey.find(3));
+			Assert.assertArrayEquals(new int[] {1, 2, 3}, primaryKey.findRange(2, 4));
+			Assert.assertEquals(0, primaryKey.find(-1).length);
+		}
+		finally {
+			DBFUtils.close(index);
+			DBFUtils.close(dbf);
+		}
+	}
+
+	@Test
+	public void testKeysFromValues() throws IOException {
+		DBFIndexFile index = new DBFIndexFile(new File(FOXPRODB + "setup.CDX"));
+		try {
+			Assert.assertArrayEquals(new int[] {1}, index.getTag("KEY_NAME").find("CONTACTS"));
+		}
+		finally {
+			DBFUtils.close(index);
+		}
+		index = new DBFIndexFile(new File(FOXPRODB + "contacts.CDX"));
+		try {
+			Assert.assertArrayEquals(new int[] {1, 3, 4}, index.getTag("TYPE_ID").find(1));
+		}
+		finally {
+			DBFUtils.close(index);
+		}
+	}
+
+	@Test
+	public void testNdx() throws IOException {
+		File file = File.createTempFile("javadbf-index", ".ndx");
+		try {
+			writeNdx(file, new String[] {"ANA", "BOB", "BOB", "EVA", "JOE", "LEO", "MAX", "ZOE"}, new int[] {4, 2, 7, 1, 8, 3, 6, 5});
+			DBFIndexFile index = new DBFIndexFile(file);
+			try {
+				DBFIndexTag tag = index.getTags().get(0);
+				Assert.assertEquals(file.getName().substring(0, file.getName().length() - 4), tag.getName());
+				Assert.assertEquals("NAME", tag.getKeyExpression());
+				Assert.assertArrayEquals(new int[] {3, 1, 6, 0, 7, 2, 5, 4}, tag.getRecordOrder());
+				Assert.assertArrayEquals(new int[] {1, 6}, tag.find("BOB"));
+				Assert.assertArrayEquals(new int[] {4}, tag.find("ZOE"));
+				Assert.assertEquals(0, tag.find("ZZZ").length);
+				Assert.assertArrayEquals(new int[] {0, 7, 2}, tag.findRange("C", "LEO"));
+				Assert.assertArrayEquals(new int[] {5, 4}, tag.findRange("MAX", null));
+			}
+			finally {
+				DBFUtils.close(index);
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Writes a dBase III index with character keys of 3 bytes, with 3 keys in every leaf
+	 */
+	private static void writeNdx(File file, String[] keys, int[] records) throws IOException {
+		int entryLength = 12;
+		int leafCount = (keys.length + 2) / 3;
+		byte[] data = new byte[512 * (leafCount + 2)];
+		int root = leafCount + 1;
+		writeInt(data, 0, root);
+		writeInt(data, 4, leafCount + 2);
+		data[12] = 3;
+		data[14] = 40;
+		data[18] = (byte) entryLength;
+		byte[] expression = "NAME".getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(expression, 0, data, 24, expression.length);
+		for (int leaf = 0; leaf < leafCount; leaf++) {
+			int page = 512 * (leaf + 1);
+			int count = Math.min(3, keys.length - leaf * 3);
+			writeInt(data, page, count);
+			for (int i = 0; i < count; i++) {
+				int entry = page + 4 + i * entryLength;
+				writeInt(data, entry + 4, records[leaf * 3 + i]);
+				System.arraycopy(keys[leaf * 3 + i].getBytes(StandardCharsets.US_ASCII), 0, data, entry + 8, 3);
+			}
+		}
+		int page = 512 * root;
+		writeInt(data, page, leafCount - 1);
+		for (int leaf = 0; leaf < leafCount; leaf++) {
+			int entry = page + 4 + leaf * entryLength;
+			writeInt(data, entry, leaf + 1);
+			if (leaf < leafCount - 1) {
+				System.arraycopy(keys[leaf * 3 + 2].getBytes(StandardCharsets.US_ASCII), 0, data, entry + 8, 3);
+			}
+		}
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static void writeInt(byte[] data, int offset, int value) {
+		data[offset] = (byte) value;
+		data[offset + 1] = (byte) (value >> 8);
+		data[offset + 2] = (byte) (value >> 16);
+		data[offset + 3] = (byte) (value >> 24);
+	}
+
+	@Test(expected = DBFException.class)
+	public void testUnsupportedFormat() throws IOException {
+		File file = File.createTempFile("javadbf-index", ".mdx");
+		try {
+			new DBFIndexFile(file);
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = DBFException.class)
+	public void testUnknownTag() throws IOException {
+		DBFIndexFile index = new DBFIndexFile(new File(FOXPRODB + "types.CDX"));
+		try {
+			index.getTag("NOT_A_TAG");
+		}
+		finally {
+			DBFUtils.close(index);
+		}
+	}
+}
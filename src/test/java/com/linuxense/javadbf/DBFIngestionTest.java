@@ -0,0 +1,137 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFIngestionTest {
+
+	private static final String[] FIXTURES = {
+		"src/test/resources/books.dbf",
+		"src/test/resources/fixtures/dbase_03.dbf",
+		"src/test/resources/fixtures/dbase_31.dbf",
+		"src/test/resources/fixtures/dbase_8b.dbf"
+	};
+
+	public DBFIngestionTest() {
+		super();
+	}
+
+	@Test
+	public void testIngestDirectory() throws IOException {
+		File directory = Files.createTempDirectory("javadbf-ingestion").toFile();
+		try {
+			for (int i = 0; i < FIXTURES.length; i++) {
+				String name = i % 2 == 0 ? "file" + i + ".dbf" : "FILE" + i + ".DBF";
+				Files.copy(new File(FIXTURES[i]).toPath(), new File(directory, name).toPath());
+			}
+			Files.write(new File(directory, "readme.txt").toPath(), "not a dbf".getBytes());
+
+			DBFIngestion ingestion = new DBFIngestion(directory);
+			ingestion.setMaxOpenFiles(2);
+			Assert.assertEquals(FIXTURES.length, ingestion.getFiles().size());
+			final Map<File, AtomicInteger> counts = new ConcurrentHashMap<File, AtomicInteger>();
+			long rows = ingestion.ingest(new DBFRowSink() {
+				@Override
+				public void accept(File source, DBFRow row) {
+					Assert.assertNotNull(row);
+					AtomicInteger count = counts.get(source);
+					if (count == null) {
+						counts.putIfAbsent(source, new AtomicInteger());
+						count = counts.get(source);
+					}
+					count.incrementAndGet();
+				}
+			});
+
+			long expectedRows = 0;
+			for (File file : ingestion.getFiles()) {
+				int expected = countRecords(file);
+				Assert.assertEquals(file.getName(), expected, counts.get(file).get());
+				expectedRows += expected;
+			}
+			Assert.assertEquals(expectedRows, rows);
+		}
+		finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testProjectionAndExecutor() {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			File file = new File("src/test/resources/fixtures/dbase_31.dbf");
+			DBFIngestion ingestion = new DBFIngestion(Arrays.asList(file, file, file));
+			ingestion.setExecutor(executor);
+			ingestion.setProjection("PRODUCTID");
+			ingestion.setFilter(DBFFilter.lessOrEqual("PRODUCTID", 10));
+			final AtomicInteger sum = new AtomicInteger();
+			long rows = ingestion.ingest(new DBFRowSink() {
+				@Override
+				public void accept(File source, DBFRow row) {
+					sum.addAndGet(row.getInt("productid"));
+				}
+			});
+			Assert.assertEquals(30, rows);
+			Assert.assertEquals(3 * 55, sum.get());
+			Assert.assertFalse(executor.isShutdown());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testInvalidFile() throws IOException {
+		File file = File.createTempFile("javadbf-ingestion", ".dbf");
+		try {
+			Files.write(file.toPath(), new byte[] {3, 1});
+			DBFIngestion ingestion = new DBFIngestion(Arrays.asList(new File(FIXTURES[0]), file));
+			ingestion.ingest(new DBFRowSink() {
+				@Override
+				public void accept(File source, DBFRow row) {
+					// ignore
+				}
+			});
+			Assert.fail("Exception not thrown");
+		}
+		catch (DBFException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains(file.getName()));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = DBFException.class)
+	public void testNotADirectory() {
+		new DBFIngestion(new File("src/test/resources/books.dbf"));
+	}
+
+	private static int countRecords(File file) {
+		DBFReader reader = new DBFReader(file);
+		try {
+			int count = 0;
+			while (reader.nextRecord() != null) {
+				count++;
+			}
+			return count;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFLazyRowTest {
+
+	private static final String[] FILES = {
+		"src/test/resources/books.dbf",
+		"src/test/resources/test_delete.dbf",
+		"src/test/resources/fixtures/dbase_03.dbf",
+		"src/test/resources/fixtures/dbase_30.dbf",
+		"src/test/resources/fixtures/dbase_31.dbf",
+		"src/test/resources/fixtures/dbase_8b.dbf"
+	};
+
+	public DBFLazyRowTest() {
+		super();
+	}
+
+	@Test
+	public void testSameValues() {
+		for (String fileName : FILES) {
+			DBFReader eager = new DBFReader(new File(fileName), null, true);
+			DBFReader lazy = new DBFReader(new File(fileName), null, true);
+			try {
+				lazy.setLazyDecoding(true);
+				Assert.assertTrue(lazy.isLazyDecoding());
+				DBFRow expected = null;
+				while ((expected = eager.nextRow()) != null) {
+					DBFRow row = lazy.nextRow();
+					Assert.assertEquals(expected.isDeleted(), row.isDeleted());
+					for (int i = eager.getFieldCount() - 1; i >= 0; i--) {
+						Assert.assertTrue(fileName, Arrays.deepEquals(new Object[] {expected.getObject(i)}, new Object[] {row.getObject(i)}));
+					}
+				}
+				Assert.assertNull(lazy.nextRow());
+			}
+			finally {
+				DBFUtils.close(eager);
+				DBFUtils.close(lazy);
+			}
+		}
+	}
+
+	@Test
+	public void testDecodedOnce() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/fixtures/dbase_31.dbf"));
+		try {
+			reader.setLazyDecoding(true);
+			DBFRow first = reader.nextRow();
+			DBFRow second = reader.nextRow();
+			Assert.assertEquals(2, second.getInt("ProductID"));
+			Assert.assertEquals(1, first.getInt("PRODUCTID"));
+			String name = first.getString("productnam");
+			Assert.assertSame(name, first.getString("ProductNam"));
+			Assert.assertFalse(name.equals(second.getString("productnam")));
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(expected = DBFFieldNotFoundException.class)
+	public void testUnknownField() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/fixtures/dbase_31.dbf"));
+		try {
+			reader.setLazyDecoding(true);
+			reader.nextRow().getString("unknown");
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.linuxense.javadbf;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFNumericFormatterTest {
+
+	private static final int[][] SIZES = {
+		{1, 0}, {3, 0}, {10, 0}, {20, 0}, {3, 2}, {4, 2}, {5, 3}, {6, 3}, {8, 5}, {10, 2}, {12, 4}, {19, 8}, {20, 15}, {32, 16}, {32, 20}
+	};
+
+	public DBFNumericFormatterTest() {
+		super();
+	}
+
+	@Test
+	public void testSameBytesAsDecimalFormat() {
+		List<Number> values = new ArrayList<Number>();
+		Number[] special = {0, -0.0, 0.0, -0.001, 0.001, 5.0E-4, -5.0E-4, 5.0E-5, -5.0E-5, 5.0E-6, 0.05, 0.0015, 0.125, 0.375, -0.125, 1.005, 2.675, 0.15, 0.5, 1.5, 2.5, -2.5,
+			1234.5, -1234.5678, 99999.995, 1e15, 4.5e15, 1e16, 1e20, 1.2345678901234567e25, -1e-20, Double.MAX_VALUE,
+			Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 12.5f, -0.1f,
+			Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE, (short) -7, (byte) 3,
+			new BigDecimal("0.005"), new BigDecimal("-0.005"), new BigDecimal("-0.0001"), new BigDecimal("123456789.123456789"),
+			new BigDecimal("1E+5"), new BigDecimal("-9.999999999999999999999"), new BigDecimal("12345678901234567890123"),
+			new BigInteger("123"), new BigInteger("-98765432109876543210")};
+		for (Number value : special) {
+			values.add(value);
+		}
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			double scale = Math.pow(10, random.nextInt(20) - 6);
+			double d = (random.nextDouble() - 0.3) * scale;
+			values.add(d);
+			values.add(Math.round(d * 1000) / 1000.0);
+			values.add(random.nextLong() >> random.nextInt(64));
+			values.add(new BigDecimal(random.nextLong() >> random.nextInt(64)).movePointLeft(random.nextInt(12)));
+		}
+
+		for (Charset charset : new Charset[] {StandardCharsets.ISO_8859_1, StandardCharsets.UTF_8, StandardCharsets.UTF_16LE}) {
+			for (int[] size : SIZES) {
+				DBFNumericFormatter formatter = new DBFNumericFormatter(size[0], size[1], charset);
+				byte[] record = new byte[size[0] + 2];
+				for (Number value : values) {
+					formatter.format(value, record, 1);
+					byte[] expected = DBFUtils.doubleFormating(value, charset, size[0], size[1]);
+					byte[] actual = new byte[size[0]];
+					System.arraycopy(record, 1, actual, 0, size[0]);
+					Assert.assertArrayEquals(charset + " N(" + size[0] + "," + size[1] + ") " + value, expected, actual);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFNumericModeTest {
+
+	private static final File DBASE_03 = new File("src/test/resources/fixtures/dbase_03.dbf");
+
+	public DBFNumericModeTest() {
+		super();
+	}
+
+	@Test
+	public void testModes() {
+		List<Object[]> expected = readRecords(DBFNumericMode.BIG_DECIMAL);
+		List<Object[]> primitive = readRecords(DBFNumericMode.PRIMITIVE);
+		List<Object[]> scaled = readRecords(DBFNumericMode.SCALED_LONG);
+		DBFReader reader = new DBFReader(DBASE_03);
+		int numbers = 0;
+		try {
+			for (int row = 0; row < expected.size(); row++) {
+				for (int i = 0; i < reader.getFieldCount(); i++) {
+					DBFField field = reader.getField(i);
+					Object value = expected.get(row)[i];
+					if (field.getType() != DBFDataType.NUMERIC || value == null) {
+						Assert.assertEquals(value, primitive.get(row)[i]);
+						continue;
+					}
+					BigDecimal decimal = (BigDecimal) value;
+					if (field.getDecimalCount() == 0) {
+						Assert.assertEquals(Long.valueOf(decimal.longValue()), primitive.get(row)[i]);
+					}
+					else {
+						Assert.assertEquals(Double.valueOf(decimal.doubleValue()), primitive.get(row)[i]);
+					}
+					Assert.assertEquals(Long.valueOf(decimal.movePointRight(field.getDecimalCount()).longValueExact()), scaled.get(row)[i]);
+					numbers++;
+				}
+			}
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+		Assert.assertTrue(numbers > 100);
+	}
+
+	@Test
+	public void testToNumeric() {
+		assertNumeric(new BigDecimal("12.50"), 1250L, 12.5, "  12.50 ", 2);
+		assertNumeric(new BigDecimal("-3"), -300L, -3L, "-3", 2);
+		assertNumeric(new BigDecimal("1.235"), 124L, 1.235, "1.235", 2);
+		assertNumeric(new BigDecimal("-1.235"), -124L, -1.235, "-1.235", 2);
+		assertNumeric(new BigDecimal("7.5"), 8L, 7L, "7,5", 0);
+		assertNumeric(null, null, null, "      ", 2);
+		assertNumeric(null, null, null, "******", 2);
+		assertNumeric(BigDecimal.ZERO, 0L, 0.0, ".", 1);
+	}
+
+	@Test
+	public void testBigNumbers() {
+		byte[] data = "12345678901234567890".getBytes();
+		Assert.assertEquals(new BigDecimal("12345678901234567890"),
+				DBFUtils.toNumeric(data, 0, data.length, 0, DBFNumericMode.PRIMITIVE));
+		data = "1234567890123456.789".getBytes();
+		Assert.assertEquals(1234567890123456789L, DBFUtils.toNumeric(data, 0, data.length, 3, DBFNumericMode.SCALED_LONG));
+		Assert.assertEquals(1234567890123456L, DBFUtils.toNumeric(data, 0, data.length, 0, DBFNumericMode.PRIMITIVE));
+	}
+
+	@Test(expected = DBFException.class)
+	public void testScaledOverflow() {
+		byte[] data = "12345678901234567890".getBytes();
+		DBFUtils.toNumeric(data, 0, data.length, 0, DBFNumericMode.SCALED_LONG);
+	}
+
+	private static void assertNumeric(BigDecimal decimal, Long scaled, Object primitive, String text, int decimalCount) {
+		byte[] data = ("#" + text + "#").getBytes();
+		int length = text.length();
+		Assert.assertEquals(decimal, DBFUtils.toNumeric(data, 1, length, decimalCount, DBFNumericMode.BIG_DECIMAL));
+		Assert.assertEquals(scaled, DBFUtils.toNumeric(data, 1, length, decimalCount, DBFNumericMode.SCALED_LONG));
+		Object expected = primitive;
+		if (primitive instanceof Long && decimalCount != 0) {
+			expected = ((Long) primitive).doubleValue();
+		}
+		Assert.assertEquals(expected, DBFUtils.toNumeric(data, 1, length, decimalCount, DBFNumericMode.PRIMITIVE));
+	}
+
+	private static List<Object[]> readRecords(DBFNumericMode mode) {
+		DBFReader reader = new DBFReader(DBASE_03);
+		try {
+			reader.setNumericMode(mode);
+			List<Object[]> records = new ArrayList<Object[]>();
+			Object[] record = null;
+			while ((record = reader.nextRecord()) != null) {
+				records.add(record);
+			}
+			return records;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+}
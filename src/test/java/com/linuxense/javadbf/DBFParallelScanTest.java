@@ -0,0 +1,144 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFParallelScanTest {
+
+	private static final File DBASE_31 = new File("src/test/resources/fixtures/dbase_31.dbf");
+
+	private static final DBFPartitionTask<List<Object[]>> READ_ALL = new DBFPartitionTask<List<Object[]>>() {
+		@Override
+		public List<Object[]> process(DBFPartition partition, DBFReader reader) {
+			List<Object[]> records = new ArrayList<Object[]>();
+			Object[] record = null;
+			while ((record = reader.nextRecord()) != null) {
+				records.add(record);
+			}
+			return records;
+		}
+	};
+
+	public DBFParallelScanTest() {
+		super();
+	}
+
+	@Test
+	public void testPartitions() {
+		DBFParallelScan scan = new DBFParallelScan(DBASE_31);
+		scan.setPartitionSize(10);
+		List<DBFPartition> partitions = scan.getPartitions();
+		Assert.assertEquals(77, scan.getRecordCount());
+		Assert.assertEquals(8, partitions.size());
+		Assert.assertEquals(0, partitions.get(0).getFirstRecord());
+		Assert.assertEquals(70, partitions.get(7).getFirstRecord());
+		Assert.assertEquals(77, partitions.get(7).getEndRecord());
+		Assert.assertEquals(7, partitions.get(7).getRecordCount());
+
+		scan.setPartitionSize(0);
+		scan.setParallelism(2);
+		Assert.assertEquals(8, scan.getPartitions().size());
+	}
+
+	@Test
+	public void testOrderedResults() {
+		List<Object[]> expected = readAll(DBASE_31);
+		DBFParallelScan scan = new DBFParallelScan(DBASE_31);
+		scan.setParallelism(3);
+		scan.setPartitionSize(7);
+		List<List<Object[]>> results = scan.scan(READ_ALL);
+		Assert.assertEquals(11, results.size());
+		assertMerged(expected, results);
+	}
+
+	@Test
+	public void testForkJoinPool() {
+		List<Object[]> expected = readAll(new File("src/test/resources/test_delete.dbf"));
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			DBFParallelScan scan = new DBFParallelScan(new File("src/test/resources/test_delete.dbf"));
+			scan.setExecutor(pool);
+			scan.setPartitionSize(1);
+			assertMerged(expected, scan.scan(READ_ALL));
+			Assert.assertFalse(pool.isShutdown());
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testProjectionAndFilter() {
+		DBFParallelScan scan = new DBFParallelScan(DBASE_31);
+		scan.setPartitionSize(5);
+		scan.setProjection("productid");
+		scan.setFilter(DBFFilter.in("productid", 2, 30, 77));
+		List<List<Object[]>> results = scan.scan(READ_ALL);
+		List<Object> ids = new ArrayList<Object>();
+		for (List<Object[]> partition : results) {
+			for (Object[] record : partition) {
+				Assert.assertEquals(1, record.length);
+				ids.add(record[0]);
+			}
+		}
+		Assert.assertEquals(Arrays.<Object>asList(2, 30, 77), ids);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testTaskFailure() {
+		DBFParallelScan scan = new DBFParallelScan(DBASE_31);
+		scan.setPartitionSize(10);
+		scan.scan(new DBFPartitionTask<Void>() {
+			@Override
+			public Void process(DBFPartition partition, DBFReader reader) {
+				if (partition.getIndex() == 3) {
+					throw new IllegalStateException("failed");
+				}
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void testRecordRange() throws Exception {
+		List<Object[]> expected = readAll(DBASE_31);
+		DBFReader reader = new DBFReader(DBASE_31);
+		try {
+			reader.setRecordRange(20, 25);
+			for (int i = 20; i < 25; i++) {
+				Assert.assertArrayEquals(expected.get(i), reader.nextRecord());
+			}
+			Assert.assertNull(reader.nextRecord());
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static void assertMerged(List<Object[]> expected, List<List<Object[]>> results) {
+		int row = 0;
+		for (List<Object[]> partition : results) {
+			for (Object[] record : partition) {
+				Assert.assertArrayEquals("row " + row, expected.get(row), record);
+				row++;
+			}
+		}
+		Assert.assertEquals(expected.size(), row);
+	}
+
+	private static List<Object[]> readAll(File file) {
+		DBFReader reader = new DBFReader(file);
+		try {
+			return READ_ALL.process(null, reader);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package com.linuxense.javadbf;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFReadAheadTest {
+
+	private static final String[] FILES = {
+		"src/test/resources/books.dbf",
+		"src/test/resources/test_delete.dbf",
+		"src/test/resources/fixtures/dbase_03.dbf",
+		"src/test/resources/fixtures/dbase_31.dbf",
+		"src/test/resources/fixtures/dbase_8b.dbf"
+	};
+
+	public DBFReadAheadTest() {
+		super();
+	}
+
+	@Test
+	public void testSameRecords() throws IOException {
+		for (String fileName : FILES) {
+			List<Object[]> expected = readRecords(new DBFReader(new File(fileName), null, true), 0, 0);
+			for (int depth : new int[] {1, 3}) {
+				for (int blockSize : new int[] {0, 1, 7}) {
+					InputStream in = new SlowInputStream(new FileInputStream(fileName));
+					List<Object[]> records = readRecords(new DBFReader(in, null, true), blockSize, depth);
+					Assert.assertEquals(fileName, expected.size(), records.size());
+					for (int i = 0; i < expected.size(); i++) {
+						Assert.assertTrue(fileName + " row " + i, Arrays.deepEquals(expected.get(i), records.get(i)));
+					}
+				}
+			}
+		}
+		Assert.assertFalse(isReadAheadRunning());
+	}
+
+	@Test
+	public void testCloseBeforeEnd() throws IOException {
+		DBFReader reader = new DBFReader(new SlowInputStream(new FileInputStream("src/test/resources/fixtures/dbase_31.dbf")));
+		reader.setBlockSize(1);
+		reader.setReadAhead(2);
+		Assert.assertEquals(2, reader.getReadAhead());
+		Assert.assertNotNull(reader.nextRecord());
+		reader.close();
+		Assert.assertFalse(isReadAheadRunning());
+	}
+
+	@Test(expected = DBFException.class)
+	public void testTruncatedRecord() throws IOException {
+		byte[] data = Files.readAllBytes(new File("src/test/resources/fixtures/dbase_31.dbf").toPath());
+		readRecords(new DBFReader(new ByteArrayInputStream(Arrays.copyOf(data, data.length - 50))), 3, 2);
+	}
+
+	@Test
+	public void testReadError() throws IOException {
+		byte[] data = Files.readAllBytes(new File("src/test/resources/fixtures/dbase_31.dbf").toPath());
+		InputStream in = new FailingInputStream(new ByteArrayInputStream(data, 0, data.length / 2));
+		DBFReader reader = new DBFReader(in);
+		reader.setBlockSize(2);
+		reader.setReadAhead(1);
+		int records = 0;
+		try {
+			while (reader.nextRecord() != null) {
+				records++;
+			}
+			Assert.fail("Error not thrown");
+		}
+		catch (DBFException e) {
+			Assert.assertTrue(records > 0);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testUncheckedReadError() throws IOException {
+		byte[] data = Files.readAllBytes(new File("src/test/resources/fixtures/dbase_31.dbf").toPath());
+		InputStream in = new FailingInputStream(new ByteArrayInputStream(data, 0, data.length / 2), true);
+		DBFReader reader = new DBFReader(in);
+		reader.setBlockSize(2);
+		reader.setReadAhead(1);
+		try {
+			while (reader.nextRecord() != null) {
+				// read until the error
+			}
+			Assert.fail("Error not thrown");
+		}
+		catch (DBFException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+			Assert.assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testCloseWhileReadBlocked() throws IOException {
+		byte[] data = Files.readAllBytes(new File("src/test/resources/fixtures/dbase_31.dbf").toPath());
+		// The header and part of the first record
+		int headerLength = (data[8] & 0xff) | ((data[9] & 0xff) << 8);
+		BlockingInputStream in = new BlockingInputStream(new ByteArrayInputStream(data, 0, headerLength + 10));
+		DBFReader reader = new DBFReader(in);
+		reader.setBlockSize(1);
+		reader.setReadAhead(1);
+		in.waitBlocked();
+		reader.close();
+		Assert.assertFalse(isReadAheadRunning());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidDepth() throws IOException {
+		DBFReader reader = new DBFReader(new FileInputStream("src/test/resources/books.dbf"));
+		try {
+			reader.setReadAhead(0);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static List<Object[]> readRecords(DBFReader reader, int blockSize, int depth) {
+		try {
+			reader.setBlockSize(blockSize);
+			if (depth > 0) {
+				reader.setReadAhead(depth);
+			}
+			List<Object[]> records = new ArrayList<Object[]>();
+			Object[] record = null;
+			while ((record = reader.nextRecord()) != null) {
+				records.add(record);
+			}
+			return records;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static boolean isReadAheadRunning() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if ("javadbf-read-ahead".equals(thread.getName()) && thread.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class SlowInputStream extends FilterInputStream {
+		SlowInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			Thread.yield();
+			return super.read(b, off, Math.min(13, len));
+		}
+	}
+
+	private static class FailingInputStream extends FilterInputStream {
+		private final boolean unchecked;
+
+		FailingInputStream(InputStream in) {
+			this(in, false);
+		}
+
+		FailingInputStream(InputStream in, boolean unchecked) {
+			super(in);
+			this.unchecked = unchecked;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read < 0) {
+				if (this.unchecked) {
+					throw new IllegalStateException("Connection lost");
+				}
+				throw new IOException("Connection lost");
+			}
+			return read;
+		}
+	}
+
+	/**
+	 * Blocks at the end of the data until it is closed, as a stalled network read
+	 */
+	private static class BlockingInputStream extends FilterInputStream {
+		private final CountDownLatch blocked = new CountDownLatch(1);
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		BlockingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read < 0) {
+				this.blocked.countDown();
+				// Interrupts are ignored, as a plain InputStream does
+				while (true) {
+					try {
+						this.closed.await();
+						throw new IOException("Stream closed");
+					}
+					catch (InterruptedException e) {
+						// ignored
+					}
+				}
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.closed.countDown();
+			super.close();
+		}
+
+		void waitBlocked() throws IOException {
+			try {
+				this.blocked.await();
+			}
+			catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.linuxense.javadbf;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFReaderBlockTest {
+
+	private static final String[] FILES = {
+		"src/test/resources/books.dbf",
+		"src/test/resources/test_delete.dbf",
+		"src/test/resources/fixtures/dbase_03.dbf",
+		"src/test/resources/fixtures/dbase_30.dbf",
+		"src/test/resources/fixtures/dbase_31.dbf",
+		"src/test/resources/fixtures/dbase_8b.dbf"
+	};
+
+	public DBFReaderBlockTest() {
+		super();
+	}
+
+	@Test
+	public void testBlockSizes() throws IOException {
+		for (String fileName : FILES) {
+			List<Object[]> expected = readRecords(new DBFReader(new File(fileName), null, true), 0);
+			for (int blockSize : new int[] {0, 1, 2, 3, 1000}) {
+				InputStream in = new FileInputStream(fileName);
+				List<Object[]> records = readRecords(new DBFReader(in, null, true), blockSize);
+				assertSameRecords(fileName + " block " + blockSize, expected, records);
+			}
+		}
+	}
+
+	@Test
+	public void testPartialReads() throws IOException {
+		for (String fileName : FILES) {
+			List<Object[]> expected = readRecords(new DBFReader(new File(fileName), null, false), 0);
+			InputStream in = new OneByteInputStream(new FileInputStream(fileName));
+			List<Object[]> records = readRecords(new DBFReader(in, null, false), 5);
+			assertSameRecords(fileName, expected, records);
+		}
+	}
+
+	@Test
+	public void testCursorInBlock() throws IOException {
+		DBFReader reader = new DBFReader(new FileInputStream("src/test/resources/fixtures/dbase_31.dbf"));
+		try {
+			reader.setBlockSize(10);
+			DBFCursor cursor = reader.createCursor();
+			int id = 0;
+			while (cursor.next()) {
+				id++;
+				Assert.assertEquals(id, cursor.getInt(0));
+				Assert.assertFalse(cursor.isDeleted());
+			}
+			Assert.assertEquals(77, id);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(expected = DBFException.class)
+	public void testTruncatedRecord() throws IOException {
+		byte[] data = Files.readAllBytes(new File("src/test/resources/fixtures/dbase_31.dbf").toPath());
+		DBFReader reader = new DBFReader(new ByteArrayInputStream(Arrays.copyOf(data, data.length - 50)));
+		try {
+			while (reader.nextRecord() != null) {
+				// read all
+			}
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBlockSize() throws IOException {
+		DBFReader reader = new DBFReader(new FileInputStream("src/test/resources/books.dbf"));
+		try {
+			reader.setBlockSize(-1);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static List<Object[]> readRecords(DBFReader reader, int blockSize) {
+		try {
+			reader.setBlockSize(blockSize);
+			List<Object[]> records = new ArrayList<Object[]>();
+			Object[] record = null;
+			while ((record = reader.nextRecord()) != null) {
+				records.add(record);
+			}
+			return records;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static void assertSameRecords(String message, List<Object[]> expected, List<Object[]> records) {
+		Assert.assertEquals(message, expected.size(), records.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertTrue(message + " row " + i, Arrays.deepEquals(expected.get(i), records.get(i)));
+		}
+	}
+
+	private static class OneByteInputStream extends FilterInputStream {
+		OneByteInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(1, len));
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.linuxense.javadbf;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFReaderFileTest {
+
+	private static final String[] FILES = {
+		"src/test/resources/books.dbf",
+		"src/test/resources/provincias_es.dbf",
+		"src/test/resources/test_delete.dbf",
+		"src/test/resources/countries.dbf",
+		"src/test/resources/fixtures/dbase_03.dbf",
+		"src/test/resources/fixtures/dbase_30.dbf",
+		"src/test/resources/fixtures/dbase_31.dbf",
+		"src/test/resources/fixtures/dbase_83.dbf",
+		"src/test/resources/fixtures/dbase_8b.dbf",
+		"src/test/resources/fixtures/dbase_f5.dbf",
+		"src/test/resources/fixtures/dbase_7.dbf",
+		"src/test/resources/fixtures/cp1251.dbf"
+	};
+
+	public DBFReaderFileTest() {
+		super();
+	}
+
+	@Test
+	public void testSameDataAsStream() throws IOException {
+		for (String fileName : FILES) {
+			File file = new File(fileName);
+			assertSameRecords(fileName, readFromStream(file, false), readFromFile(file, false));
+			assertSameRecords(fileName, readFromStream(file, true), readFromFile(file, true));
+		}
+	}
+
+	@Test
+	public void testNextRow() {
+		DBFReader reader = null;
+		try {
+			reader = new DBFReader(new File("src/test/resources/provincias_es.dbf"));
+			DBFRow row = null;
+			int rows = 0;
+			while ((row = reader.nextRow()) != null) {
+				rows++;
+				Assert.assertNotNull(row.getString("texto"));
+			}
+			Assert.assertEquals(52, rows);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test
+	public void testSmallWindows() throws IOException {
+		File file = new File("src/test/resources/countries.dbf");
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			DBFHeader header = new DBFHeader();
+			header.read(raf, null, false);
+			DBFMappedFile mapped = new DBFMappedFile(raf.getChannel(), header.headerLength, header.recordLength,
+					header.recordLength * 10L + 3);
+			Assert.assertEquals(header.numberOfRecords, mapped.getRecordCount());
+
+			byte[] expected = new byte[header.recordLength];
+			byte[] actual = new byte[header.recordLength];
+			for (int i = mapped.getRecordCount() - 1; i >= 0; i--) {
+				raf.seek(header.headerLength + (long) header.recordLength * i);
+				raf.readFully(expected);
+				mapped.readRecord(i, actual, 0);
+				Assert.assertArrayEquals("record " + i, expected, actual);
+			}
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	@Test(expected = DBFException.class)
+	public void testFileNotFound() {
+		new DBFReader(new File("/this/file/doesnont/exists"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadAfterClose() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/books.dbf"));
+		reader.close();
+		reader.nextRecord();
+	}
+
+	private static void assertSameRecords(String fileName, List<Object[]> expected, List<Object[]> actual) {
+		Assert.assertEquals(fileName, expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertTrue(fileName + " record " + i, Arrays.deepEquals(expected.get(i), actual.get(i)));
+		}
+	}
+
+	private static List<Object[]> readFromStream(File file, boolean showDeletedRows) throws IOException {
+		DBFReader reader = null;
+		try {
+			reader = new DBFReader(new BufferedInputStream(new FileInputStream(file)), null, showDeletedRows);
+			return readAll(reader);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static List<Object[]> readFromFile(File file, boolean showDeletedRows) {
+		DBFReader reader = null;
+		try {
+			reader = new DBFReader(file, null, showDeletedRows);
+			return readAll(reader);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static List<Object[]> readAll(DBFReader reader) {
+		List<Object[]> records = new ArrayList<Object[]>();
+		Object[] record = null;
+		while ((record = reader.nextRecord()) != null) {
+			records.add(record);
+		}
+		return records;
+	}
+}
@@ -0,0 +1,115 @@
+package com.linuxense.javadbf;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFReaderProjectionTest {
+
+	public DBFReaderProjectionTest() {
+		super();
+	}
+
+	@Test
+	public void testProjectionByName() throws IOException {
+		File file = new File("src/test/resources/fixtures/dbase_31.dbf");
+		DBFReader full = new DBFReader(file);
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		DBFReader projected = new DBFReader(in);
+		try {
+			projected.setProjection("UNITPRICE", "productid");
+			Assert.assertEquals(2, projected.getFieldCount());
+			Assert.assertEquals("UNITPRICE", projected.getField(0).getName());
+			Assert.assertEquals("PRODUCTID", projected.getField(1).getName());
+
+			int priceColumn = findColumn(full, "UNITPRICE");
+			int idColumn = findColumn(full, "PRODUCTID");
+			Object[] expected = null;
+			int rows = 0;
+			while ((expected = full.nextRecord()) != null) {
+				DBFRow row = projected.nextRow();
+				Assert.assertEquals(expected[priceColumn], row.getBigDecimal("unitprice"));
+				Assert.assertEquals(((Number) expected[idColumn]).intValue(), row.getInt("ProductId"));
+				Assert.assertEquals(expected[priceColumn], row.getObject(0));
+				rows++;
+			}
+			Assert.assertNull(projected.nextRow());
+			Assert.assertEquals(77, rows);
+		}
+		finally {
+			DBFUtils.close(full);
+			DBFUtils.close(projected);
+		}
+	}
+
+	@Test
+	public void testProjectionByIndex() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/test_delete.dbf"), null, true);
+		try {
+			reader.setProjection(1, 0);
+			Object[] record = reader.nextRecord();
+			Assert.assertEquals(2, record.length);
+			Assert.assertEquals(Boolean.FALSE, record[1]);
+			Assert.assertEquals("deleted", reader.getField(1).getName());
+
+			reader.clearProjection();
+			Assert.assertEquals(2, reader.getFieldCount());
+			DBFRow row = reader.nextRow();
+			Assert.assertTrue(row.isDeleted());
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test
+	public void testCursorWithProjection() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/fixtures/dbase_31.dbf"));
+		try {
+			reader.setProjection("productid");
+			DBFCursor cursor = reader.createCursor();
+			Assert.assertEquals(1, cursor.getFieldCount());
+			Assert.assertTrue(cursor.next());
+			Assert.assertEquals(1, cursor.getInt(0));
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(expected = DBFFieldNotFoundException.class)
+	public void testUnknownField() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/books.dbf"));
+		try {
+			reader.setProjection("nonexistent");
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidIndex() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/books.dbf"));
+		try {
+			reader.setProjection(100);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static int findColumn(DBFReader reader, String name) {
+		for (int i = 0; i < reader.getFieldCount(); i++) {
+			if (reader.getField(i).getName().equals(name)) {
+				return i;
+			}
+		}
+		throw new AssertionError(name);
+	}
+}
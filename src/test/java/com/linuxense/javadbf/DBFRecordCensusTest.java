@@ -0,0 +1,88 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFRecordCensusTest {
+
+	private static final String[] FILES = {
+		"src/test/resources/books.dbf",
+		"src/test/resources/test_delete.dbf",
+		"src/test/resources/fixtures/dbase_03.dbf",
+		"src/test/resources/fixtures/dbase_31.dbf"
+	};
+
+	public DBFRecordCensusTest() {
+		super();
+	}
+
+	@Test
+	public void testSameAsReadingRecords() throws IOException {
+		for (String fileName : FILES) {
+			BitSet expected = new BitSet();
+			int records = 0;
+			DBFReader reader = new DBFReader(new File(fileName), null, true);
+			try {
+				DBFRow row = null;
+				while ((row = reader.nextRow()) != null) {
+					expected.set(records, row.isDeleted());
+					records++;
+				}
+				// the census doesn't depend on the records already read
+				assertCensus(fileName, records, expected, reader.getRecordCensus(true));
+			}
+			finally {
+				DBFUtils.close(reader);
+			}
+
+			File copy = File.createTempFile("javadbf-census", ".dbf");
+			Files.copy(new File(fileName).toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			DBFRandomAccess randomAccess = new DBFRandomAccess(copy);
+			try {
+				assertCensus(fileName, records, expected, randomAccess.getRecordCensus(true));
+			}
+			finally {
+				DBFUtils.close(randomAccess);
+				copy.delete();
+			}
+		}
+	}
+
+	@Test
+	public void testDeletedRecordsNotRequested() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/test_delete.dbf"));
+		try {
+			DBFRecordCensus census = reader.getRecordCensus(false);
+			Assert.assertNull(census.getDeletedRecords());
+			Assert.assertTrue(census.getDeletedCount() > 0);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test(expected = DBFException.class)
+	public void testStreamNotSupported() throws IOException {
+		DBFReader reader = new DBFReader(new FileInputStream("src/test/resources/test_delete.dbf"));
+		try {
+			reader.getRecordCensus(false);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static void assertCensus(String message, int records, BitSet expected, DBFRecordCensus census) {
+		Assert.assertEquals(message, records, census.getRecordCount());
+		Assert.assertEquals(message, expected.cardinality(), census.getDeletedCount());
+		Assert.assertEquals(message, records - expected.cardinality(), census.getLiveCount());
+		Assert.assertEquals(message, expected, census.getDeletedRecords());
+	}
+}
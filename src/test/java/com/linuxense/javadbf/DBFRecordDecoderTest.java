@@ -0,0 +1,98 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFRecordDecoderTest {
+
+	private static final String[] FIXTURES = {
+		"src/test/resources/fixtures/dbase_03.dbf",
+		"src/test/resources/fixtures/dbase_30.dbf",
+		"src/test/resources/fixtures/dbase_31.dbf",
+		"src/test/resources/fixtures/dbase_8b.dbf",
+		"src/test/resources/fixtures/foxprodb/types.dbf",
+		"src/test/resources/fixtures/foxpro-xsource/employees.dbf"
+	};
+
+	public DBFRecordDecoderTest() {
+		super();
+	}
+
+	@Test
+	public void testSameValuesAsFieldValue() {
+		for (String fixture : FIXTURES) {
+			DBFReader reader = new DBFReader(new File(fixture), null, true);
+			try {
+				DBFRecordLayout layout = reader.getLayout();
+				int rows = 0;
+				Object[] record = null;
+				while ((record = reader.nextRecord()) != null) {
+					Assert.assertArrayEquals(fixture + " record " + rows,
+						decode(reader, layout, reader.getRecordData(), reader.getRecordOffset()), record);
+					rows++;
+				}
+				Assert.assertEquals(fixture, reader.getRecordCount(), rows);
+			}
+			finally {
+				DBFUtils.close(reader);
+			}
+		}
+	}
+
+	@Test
+	public void testOptionsChangedWhileReading() {
+		DBFReader reader = new DBFReader(new File("src/test/resources/fixtures/dbase_03.dbf"));
+		try {
+			reader.setProjection("Type", "GPS_Height");
+			Object[] record = reader.nextRecord();
+			Assert.assertTrue(record[1] instanceof java.math.BigDecimal);
+			reader.setNumericMode(DBFNumericMode.PRIMITIVE);
+			reader.setTrimRightSpaces(false);
+			record = reader.nextRecord();
+			Assert.assertTrue(record[1] instanceof Double);
+			Assert.assertEquals(reader.getField(0).getLength(), ((String) record[0]).length());
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test
+	public void testRandomAccessSameValuesAsReader() throws IOException {
+		File file = File.createTempFile("javadbf-decoder", ".dbf");
+		Files.copy(new File("src/test/resources/fixtures/dbase_31.dbf").toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		DBFReader reader = new DBFReader(file);
+		DBFRandomAccess randomAccess = new DBFRandomAccess(file);
+		try {
+			for (int i = 0; i < randomAccess.getRecordCount(); i++) {
+				Object[] expected = reader.nextRecord();
+				Object[] record = randomAccess.getRecordOjects(i);
+				Assert.assertArrayEquals(expected, record);
+			}
+			Assert.assertNull(reader.nextRecord());
+		}
+		finally {
+			DBFUtils.close(reader);
+			DBFUtils.close(randomAccess);
+			file.delete();
+		}
+	}
+
+	private static Object[] decode(DBFReader reader, DBFRecordLayout layout, byte[] data, int recordOffset) {
+		Object[] values = new Object[layout.fields.length];
+		for (int i = 0; i < values.length; i++) {
+			if (layout.isDeletedColumn(i)) {
+				values[i] = data[recordOffset] == '*';
+			}
+			else if (!layout.isNullFlagSet(data, recordOffset, i)) {
+				values[i] = reader.getFieldValue(layout.fields[i], data, recordOffset + layout.offsets[i]);
+			}
+		}
+		return values;
+	}
+}
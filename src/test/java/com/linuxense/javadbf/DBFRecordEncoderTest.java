@@ -0,0 +1,67 @@
+package com.linuxense.javadbf;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFRecordEncoderTest {
+
+	public DBFRecordEncoderTest() {
+		super();
+	}
+
+	@Test
+	public void testSameBytesAsPadding() {
+		String[] texts = {"", "a", "Neo", "Morfeo y Trinity", "añoñe", "ñññññ", "€uro", "日本語のテキスト"};
+		for (Charset charset : new Charset[] {StandardCharsets.ISO_8859_1, StandardCharsets.UTF_8, Charset.forName("Cp1252")}) {
+			DBFRecordEncoder encoder = new DBFRecordEncoder(new DBFField[] {new DBFField("TEXT", DBFDataType.CHARACTER, 5)}, charset);
+			for (String text : texts) {
+				byte[] expected = DBFUtils.textPadding(text, charset, 5, DBFAlignment.LEFT, (byte) ' ');
+				Assert.assertArrayEquals(charset + " " + text, expected,
+					Arrays.copyOfRange(encoder.encode(new Object[] {text}), 1, 6));
+			}
+		}
+	}
+
+	@Test
+	public void testTruncateMultiByte() {
+		DBFRecordEncoder encoder = new DBFRecordEncoder(new DBFField[] {new DBFField("TEXT", DBFDataType.CHARACTER, 5)}, StandardCharsets.UTF_8);
+		Assert.assertEquals(" a\u00f1o ", new String(encoder.encode(new Object[] {"a\u00f1o\u00f1e"}), StandardCharsets.UTF_8));
+		Assert.assertEquals(" \u00f1\u00f1 ", new String(encoder.encode(new Object[] {"\u00f1\u00f1\u00f1"}), StandardCharsets.UTF_8));
+		Assert.assertEquals(" \u65e5  ", new String(encoder.encode(new Object[] {"\u65e5\u672c"}), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testAllTypes() {
+		DBFField[] fields = {
+			new DBFField("NAME", DBFDataType.CHARACTER, 10),
+			new DBFField("BORN", DBFDataType.DATE),
+			new DBFField("SALARY", DBFDataType.NUMERIC, 10, 2),
+			new DBFField("RATE", DBFDataType.FLOATING_POINT, 8, 3),
+			new DBFField("ACTIVE", DBFDataType.LOGICAL)
+		};
+		DBFRecordEncoder encoder = new DBFRecordEncoder(fields, StandardCharsets.ISO_8859_1);
+		Assert.assertEquals(38, encoder.getRecordLength());
+
+		byte[] record = encoder.encode(new Object[] {"Smith", new GregorianCalendar(2017, 2, 5).getTime(), 1234.5, -0.25, true});
+		Assert.assertEquals(" Smith     20170305   1234.50  -0.250T", new String(record, StandardCharsets.ISO_8859_1));
+		record = encoder.encode(new Object[] {null, null, null, null, null});
+		Assert.assertEquals(" " + repeat(' ', 36) + "?", new String(record, StandardCharsets.ISO_8859_1));
+		record = encoder.encode(new Object[] {"Too long for the field", new GregorianCalendar(987, 11, 31).getTime(), 7, 12345678, false});
+		Assert.assertEquals(" Too long f09871231      7.0012345678F", new String(record, StandardCharsets.ISO_8859_1));
+
+		record = encoder.encodeField(2, 99);
+		Assert.assertEquals(19, encoder.getOffset(2));
+		Assert.assertEquals("     99.00", new String(record, 19, 10, StandardCharsets.ISO_8859_1));
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,83 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFRowSpliteratorTest {
+
+	private static final File DBASE_31 = new File("src/test/resources/fixtures/dbase_31.dbf");
+
+	public DBFRowSpliteratorTest() {
+		super();
+	}
+
+	@Test
+	public void testSplit() {
+		DBFParallelScan scan = new DBFParallelScan(DBASE_31, null, true);
+		scan.setPartitionSize(10);
+		try (Stream<DBFRow> stream = scan.stream()) {
+			Spliterator<DBFRow> suffix = stream.spliterator();
+			Assert.assertTrue(suffix.hasCharacteristics(Spliterator.SIZED));
+			Assert.assertTrue(suffix.hasCharacteristics(Spliterator.SUBSIZED));
+			Assert.assertEquals(77, suffix.getExactSizeIfKnown());
+			Spliterator<DBFRow> prefix = suffix.trySplit();
+			Assert.assertEquals(38, prefix.getExactSizeIfKnown());
+			Assert.assertEquals(39, suffix.getExactSizeIfKnown());
+			Assert.assertTrue(prefix.tryAdvance(row -> Assert.assertEquals(1, row.getInt("productid"))));
+			Assert.assertNull(prefix.trySplit());
+			Assert.assertEquals(37, prefix.getExactSizeIfKnown());
+			Assert.assertTrue(suffix.tryAdvance(row -> Assert.assertEquals(39, row.getInt("productid"))));
+		}
+	}
+
+	@Test
+	public void testParallelStream() {
+		List<Integer> expected = new ArrayList<Integer>();
+		DBFReader reader = new DBFReader(DBASE_31);
+		try {
+			DBFRow row = null;
+			while ((row = reader.nextRow()) != null) {
+				expected.add(row.getInt("productid"));
+			}
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+
+		DBFParallelScan scan = new DBFParallelScan(DBASE_31);
+		scan.setPartitionSize(4);
+		try (Stream<DBFRow> stream = scan.stream().parallel()) {
+			List<Integer> ids = stream.map(row -> row.getInt("productid")).collect(Collectors.toList());
+			Assert.assertEquals(expected, ids);
+		}
+	}
+
+	@Test
+	public void testFilteredStreamNotSized() {
+		DBFParallelScan scan = new DBFParallelScan(DBASE_31);
+		scan.setFilter(DBFFilter.between("productid", 10, 19));
+		try (Stream<DBFRow> stream = scan.stream()) {
+			Spliterator<DBFRow> spliterator = stream.spliterator();
+			Assert.assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+			Assert.assertEquals(77, spliterator.estimateSize());
+		}
+		try (Stream<DBFRow> stream = scan.stream().parallel()) {
+			Assert.assertEquals(10, stream.count());
+		}
+	}
+
+	@Test
+	public void testShortCircuit() {
+		DBFParallelScan scan = new DBFParallelScan(DBASE_31);
+		try (Stream<DBFRow> stream = scan.stream()) {
+			Assert.assertEquals(5, stream.filter(row -> row.getInt("productid") == 5).findFirst().get().getInt("productid"));
+		}
+	}
+}
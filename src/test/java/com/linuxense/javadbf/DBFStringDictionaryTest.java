@@ -0,0 +1,129 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFStringDictionaryTest {
+
+	private static final File DBASE_03 = new File("src/test/resources/fixtures/dbase_03.dbf");
+
+	public DBFStringDictionaryTest() {
+		super();
+	}
+
+	@Test
+	public void testSameInstance() {
+		List<Object[]> expected = readRecords(false);
+		List<Object[]> records = readRecords(true);
+		Assert.assertEquals(expected.size(), records.size());
+		DBFReader reader = new DBFReader(DBASE_03);
+		int column = 0;
+		try {
+			column = reader.getMapFieldNames().get("type");
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertArrayEquals(expected.get(i), records.get(i));
+			Assert.assertSame(records.get(0)[column], records.get(i)[column]);
+		}
+		Assert.assertNotSame(expected.get(0)[column], expected.get(1)[column]);
+	}
+
+	@Test
+	public void testCursorAndProjection() {
+		DBFReader reader = new DBFReader(DBASE_03);
+		try {
+			reader.setProjection("Shape", "Type");
+			reader.setStringDictionary("type", 16);
+			DBFCursor cursor = reader.createCursor();
+			Assert.assertTrue(cursor.next());
+			String first = cursor.getString(1);
+			Assert.assertEquals("CMP", first);
+			Assert.assertTrue(cursor.next());
+			Assert.assertSame(first, cursor.getString(1));
+			Assert.assertSame(first, cursor.getObject(1));
+			Assert.assertNotSame(cursor.getString(0), cursor.getString(0));
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	@Test
+	public void testEviction() {
+		DBFStringDictionary dictionary = new DBFStringDictionary(4, StandardCharsets.US_ASCII);
+		byte[] data = "ABCDEFGHIJ".getBytes(StandardCharsets.US_ASCII);
+		String a = dictionary.get(data, 0, 1);
+		Assert.assertSame(a, dictionary.get(data, 0, 1));
+		for (int i = 1; i < data.length; i++) {
+			Assert.assertEquals(String.valueOf((char) data[i]), dictionary.get(data, i, 1));
+		}
+		Assert.assertEquals("AB", dictionary.get(data, 0, 2));
+		Assert.assertEquals("A", dictionary.get(data, 0, 1));
+	}
+
+	@Test
+	public void testMaxEntries() {
+		byte[] data = new byte[4];
+		for (int maxEntries : new int[] {1, 3, 100, 1000}) {
+			DBFStringDictionary dictionary = new DBFStringDictionary(maxEntries, StandardCharsets.US_ASCII);
+			List<String> values = new ArrayList<String>();
+			for (int i = 0; i < maxEntries; i++) {
+				values.add(dictionary.get(toBytes(i, data), 0, data.length));
+			}
+			// As many values as entries are all kept
+			for (int i = 0; i < maxEntries; i++) {
+				Assert.assertSame(values.get(i), dictionary.get(toBytes(i, data), 0, data.length));
+			}
+			for (int i = maxEntries; i < maxEntries * 3 + 10; i++) {
+				dictionary.get(toBytes(i, data), 0, data.length);
+				Assert.assertTrue(dictionary.size() <= maxEntries);
+			}
+			Assert.assertEquals(maxEntries, dictionary.size());
+		}
+	}
+
+	private static byte[] toBytes(int value, byte[] data) {
+		for (int i = data.length - 1; i >= 0; i--) {
+			data[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return data;
+	}
+
+	@Test(expected = DBFException.class)
+	public void testNotCharacter() {
+		DBFReader reader = new DBFReader(DBASE_03);
+		try {
+			reader.setStringDictionary("Max_PDOP", 10);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
+	private static List<Object[]> readRecords(boolean dictionary) {
+		DBFReader reader = new DBFReader(DBASE_03);
+		try {
+			if (dictionary) {
+				reader.setStringDictionary("TYPE", 100);
+			}
+			List<Object[]> records = new ArrayList<Object[]>();
+			Object[] record = null;
+			while ((record = reader.nextRecord()) != null) {
+				records.add(record);
+			}
+			return records;
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package com.linuxense.javadbf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DBFTreeIndexTest {
+
+	private static final File DBASE_31 = new File("src/test/resources/fixtures/dbase_31.dbf");
+
+	public DBFTreeIndexTest() {
+		super();
+	}
+
+	@Test
+	public void testSameAsFilter() throws IOException {
+		File file = File.createTempFile("javadbf-tree", ".dbf");
+		File indexFile = File.createTempFile("javadbf-tree", ".jdx");
+		DBFRandomAccess dbf = null;
+		try {
+			Files.copy(DBASE_31.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			dbf = new DBFRandomAccess(file, null, true);
+			DBFTreeIndex index = dbf.createTreeIndex(indexFile, "SUPPLIERID", "PRODUCTNAM");
+			Assert.assertArrayEquals(new String[] {"SUPPLIERID", "PRODUCTNAM"}, index.getFieldNames());
+
+			for (int supplier = 0; supplier <= 30; supplier++) {
+				int[] expected = dbf.findRecords(DBFFilter.equalTo("SUPPLIERID", supplier));
+				int[] found = index.find(supplier);
+				Arrays.sort(found);
+				Assert.assertArrayEquals(expected, found);
+			}
+			int[] expected = dbf.findRecords(DBFFilter.and(
+				DBFFilter.greaterOrEqual("SUPPLIERID", 5), DBFFilter.lessOrEqual("SUPPLIERID", 12)));
+			int[] found = index.findRange(new Object[] {5}, new Object[] {12});
+			Arrays.sort(found);
+			Assert.assertArrayEquals(expected, found);
+			Assert.assertEquals(dbf.getRecordCount(), index.findRange(null, null).length);
+
+			int konbu = index.find(6, "Konbu")[0];
+			Assert.assertEquals("Konbu", dbf.getRecord(konbu).getString("PRODUCTNAM"));
+			Assert.assertEquals(0, index.find(6, "Kon").length);
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+			indexFile.delete();
+		}
+	}
+
+	@Test
+	public void testUpdatedByAddAndUpdate() throws IOException {
+		File file = createFile();
+		File codeFile = File.createTempFile("javadbf-tree", ".jdx");
+		File amountFile = File.createTempFile("javadbf-tree", ".jdx");
+		DBFRandomAccess dbf = new DBFRandomAccess(file);
+		DBFTreeIndex reader = null;
+		try {
+			DBFTreeIndex code = dbf.createTreeIndex(codeFile, "CODE");
+			dbf.createTreeIndex(amountFile, "AMOUNT", "BORN");
+			reader = new DBFTreeIndex(amountFile);
+			for (int i = 0; i < 5000; i++) {
+				dbf.addRecord(new Object[] {"C" + (i * 7919 % 5000), (i % 100) / 4.0, new GregorianCalendar(2000, 0, 1 + i % 7).getTime()});
+			}
+			Assert.assertArrayEquals(new int[] {1}, code.find("C2919"));
+			Assert.assertEquals(5000, code.findRange(null, null).length);
+			int[] ordered = code.findRange(new Object[] {"C1"}, new Object[] {"C10"});
+			Assert.assertEquals(2, ordered.length);
+			Assert.assertEquals("C1", dbf.getRecord(ordered[0]).getString("CODE"));
+
+			// Another reader sees the changes
+			Assert.assertEquals(50, reader.find(2.5).length);
+			Assert.assertEquals(7, reader.find(2.5, new GregorianCalendar(2000, 0, 1).getTime()).length);
+			Assert.assertEquals(300, reader.findRange(new Object[] {0.5}, new Object[] {1.75}).length);
+
+			dbf.updateRecord(1, "CODE", "X");
+			Assert.assertEquals(0, code.find("C2919").length);
+			Assert.assertArrayEquals(new int[] {1}, code.find("X"));
+			dbf.updateRecord(1, new Object[] {"Y", 100.0, new GregorianCalendar(2010, 0, 1).getTime()});
+			Assert.assertArrayEquals(new int[] {1}, code.find("Y"));
+			Assert.assertArrayEquals(new int[] {1}, reader.find(100.0));
+			Assert.assertEquals(49, reader.find(0.25).length);
+		}
+		finally {
+			DBFUtils.close(reader);
+			DBFUtils.close(dbf);
+		}
+
+		try {
+			dbf = new DBFRandomAccess(file);
+			dbf.addRecord(new Object[] {"NEW", 1.0, null});
+			// The index doesn't have the last record, so it is built again
+			DBFTreeIndex code = dbf.openTreeIndex(codeFile);
+			Assert.assertArrayEquals(new int[] {5000}, code.find("NEW"));
+			Assert.assertArrayEquals(new int[] {1}, code.find("Y"));
+			DBFTreeIndex amount = dbf.openTreeIndex(amountFile);
+			Assert.assertArrayEquals(new int[] {5000}, amount.find(1.0, null));
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+			codeFile.delete();
+			amountFile.delete();
+		}
+	}
+
+	@Test
+	public void testUpdatedByWriter() throws IOException {
+		File file = createFile();
+		File indexFile = File.createTempFile("javadbf-tree", ".jdx");
+		DBFWriter writer = new DBFWriter(file);
+		DBFTreeIndex reader = null;
+		try {
+			writer.createTreeIndex(indexFile, "BORN");
+			for (int i = 0; i < 1000; i++) {
+				writer.addRecord(new Object[] {"C" + i, i, new GregorianCalendar(2000, 0, 1 + i % 10).getTime()});
+			}
+			reader = new DBFTreeIndex(indexFile);
+			Assert.assertEquals(100, reader.find(new GregorianCalendar(2000, 0, 3).getTime()).length);
+			Assert.assertEquals(300, reader.findRange(new Object[] {java.time.LocalDate.of(2000, 1, 8)}, null).length);
+		}
+		finally {
+			DBFUtils.close(reader);
+			DBFUtils.close(writer);
+		}
+		DBFRandomAccess dbf = new DBFRandomAccess(file);
+		try {
+			Assert.assertEquals(1000, dbf.getRecordCount());
+			int[] found = dbf.openTreeIndex(indexFile).find(new GregorianCalendar(2000, 0, 10).getTime());
+			Assert.assertEquals(100, found.length);
+			Assert.assertEquals("C9", dbf.getRecord(found[0]).getString("CODE"));
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+			indexFile.delete();
+		}
+	}
+
+	@Test
+	public void testExactNumericKeys() throws IOException {
+		File file = File.createTempFile("javadbf-tree", ".dbf");
+		File indexFile = File.createTempFile("javadbf-tree", ".jdx");
+		DBFWriter writer = new DBFWriter(file);
+		DBFRandomAccess dbf = null;
+		try {
+			writer.setFields(new DBFField[] {new DBFField("ID", DBFDataType.NUMERIC, 20, 0)});
+			writer.addRecord(new Object[] {new BigDecimal("1234567890123456789")});
+			writer.addRecord(new Object[] {new BigDecimal("1234567890123456788")});
+			writer.addRecord(new Object[] {new BigDecimal("-1234567890123456789")});
+			writer.addRecord(new Object[] {-7});
+			writer.addRecord(new Object[] {0});
+			writer.addRecord(new Object[] {2});
+			writer.addRecord(new Object[] {null});
+			writer.close();
+
+			dbf = new DBFRandomAccess(file);
+			DBFTreeIndex index = dbf.createTreeIndex(indexFile, "ID");
+			Assert.assertArrayEquals(new int[] {0}, index.find(new BigDecimal("1234567890123456789")));
+			Assert.assertArrayEquals(new int[] {1}, index.find(1234567890123456788L));
+			Assert.assertArrayEquals(new int[] {2}, index.find(new BigDecimal("-1234567890123456789")));
+			Assert.assertArrayEquals(new int[] {2, 3, 4, 5, 1, 0}, index.findRange(new Object[] {Long.MIN_VALUE}, null));
+			// Values that the field can't store
+			Assert.assertEquals(0, index.find(1.5).length);
+			Assert.assertEquals(0, index.find(new BigDecimal("1E+30")).length);
+			Assert.assertArrayEquals(new int[] {4, 5}, index.findRange(new Object[] {-0.5}, new Object[] {2.5}));
+			Assert.assertArrayEquals(new int[] {2, 3}, index.findRange(new Object[] {new BigDecimal("-1E+30")}, new Object[] {-6.5}));
+			Assert.assertArrayEquals(new int[] {1, 0}, index.findRange(new Object[] {1e18}, new Object[] {new BigDecimal("1E+30")}));
+		}
+		finally {
+			DBFUtils.close(writer);
+			DBFUtils.close(dbf);
+			file.delete();
+			indexFile.delete();
+		}
+	}
+
+	@Test
+	public void testUnfinishedJournal() throws IOException {
+		File file = createFile();
+		File indexFile = File.createTempFile("javadbf-tree", ".jdx");
+		File journalFile = new File(indexFile.getPath() + "-journal");
+		DBFRandomAccess dbf = new DBFRandomAccess(file);
+		try {
+			dbf.createTreeIndex(indexFile, "CODE").close();
+			try (FileOutputStream out = new FileOutputStream(journalFile)) {
+				out.write(new byte[] {'J', 'D', 'B', 'F', 'J', 'R', 'N', 'L', 0, 0});
+			}
+			DBFTreeIndex reader = new DBFTreeIndex(indexFile);
+			try {
+				reader.find("A");
+				Assert.fail("Index with a journal should not be read");
+			}
+			catch (DBFException e) {
+				// expected
+			}
+			finally {
+				DBFUtils.close(reader);
+			}
+			DBFTreeIndex index = dbf.openTreeIndex(indexFile);
+			Assert.assertFalse(journalFile.exists());
+			dbf.addRecord(new Object[] {"A", 1, null});
+			Assert.assertArrayEquals(new int[] {0}, index.find("A"));
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+			indexFile.delete();
+			journalFile.delete();
+		}
+	}
+
+	@Test
+	public void testUnfinishedUpdate() throws IOException {
+		File file = createFile();
+		File indexFile = File.createTempFile("javadbf-tree", ".jdx");
+		File journalFile = new File(indexFile.getPath() + "-journal");
+		DBFRandomAccess dbf = new DBFRandomAccess(file);
+		try {
+			dbf.createTreeIndex(indexFile, "CODE");
+			dbf.addRecord(new Object[] {"A", 1, null});
+			dbf.addRecord(new Object[] {"B", 2, null});
+			dbf.close();
+
+			// The process stopped after writing the record, before updating the index
+			dbf = new DBFRandomAccess(file);
+			dbf.updateRecord(1, 0, "C");
+			dbf.close();
+			try (FileOutputStream out = new FileOutputStream(journalFile)) {
+				out.write(new byte[] {'J', 'D', 'B', 'F', 'U', 'P', 'D', 'T'});
+			}
+
+			dbf = new DBFRandomAccess(file);
+			DBFTreeIndex index = dbf.openTreeIndex(indexFile);
+			Assert.assertFalse(journalFile.exists());
+			Assert.assertEquals(0, index.find("B").length);
+			Assert.assertArrayEquals(new int[] {1}, index.find("C"));
+			dbf.updateRecord(0, new Object[] {"D", 1, new GregorianCalendar(2000, 0, 1).getTime()});
+			Assert.assertFalse(journalFile.exists() && journalFile.length() > 0);
+			Assert.assertArrayEquals(new int[] {0}, index.find("D"));
+		}
+		finally {
+			DBFUtils.close(dbf);
+			file.delete();
+			indexFile.delete();
+			journalFile.delete();
+		}
+	}
+
+	private static File createFile() throws IOException {
+		DBFField[] fields = new DBFField[3];
+		fields[0] = new DBFField("CODE", DBFDataType.CHARACTER, 10);
+		fields[1] = new DBFField("AMOUNT", DBFDataType.NUMERIC, 10, 2);
+		fields[2] = new DBFField("BORN", DBFDataType.DATE);
+		File file = File.createTempFile("javadbf-tree", ".dbf");
+		DBFWriter writer = new DBFWriter(file);
+		writer.setFields(fields);
+		writer.close();
+		return file;
+	}
+}
@@ -19,6 +19,7 @@ License along with this library.  If not, see <http://www.gnu.org/licenses/>.
 package com.linuxense.javadbf;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -80,6 +81,40 @@ public class DBFWriterRandomAccesTest {
         Assert.assertEquals(259L, outputFile.length());
 	}
 	
+	@Test
+	public void testBufferedRecords() throws Exception {
+		DBFField[] fields = createFields();
+		File outputFile = File.createTempFile("example", ".dbf");
+		DBFWriter writer = new DBFWriter(outputFile);
+		DBFReader reader = null;
+		try {
+			writer.setFields(fields);
+			long headerLength = outputFile.length();
+			for (int i = 0; i < 10000; i++) {
+				writer.addRecord(new Object[] {Integer.toString(i), "John Smith " + i, i + 0.25});
+			}
+			writer.flush();
+			Assert.assertEquals(headerLength + 10000L * 43, outputFile.length());
+			writer.addRecord(new Object[] {"last", "John Smith", 1.0});
+			writer.close();
+			Assert.assertEquals(headerLength + 10001L * 43 + 1, outputFile.length());
+
+			reader = new DBFReader(new FileInputStream(outputFile));
+			Assert.assertEquals(10001, reader.getRecordCount());
+			for (int i = 0; i < 10000; i++) {
+				DBFRow row = reader.nextRow();
+				Assert.assertEquals(Integer.toString(i), row.getString("emp_code"));
+				Assert.assertEquals(i + 0.25, row.getDouble("salary"), 0.0);
+			}
+			Assert.assertEquals("last", reader.nextRow().getString("emp_code"));
+		}
+		finally {
+			DBFUtils.close(reader);
+			DBFUtils.close(writer);
+			outputFile.delete();
+		}
+	}
+
 	private DBFField[] createFields() {
 		DBFField[] fields = new DBFField[3];
 
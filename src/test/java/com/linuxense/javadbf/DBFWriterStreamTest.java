@@ -18,6 +18,11 @@ License along with this library.  If not, see <http://www.gnu.org/licenses/>.
 */
 package com.linuxense.javadbf;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Date;
 
@@ -153,6 +158,98 @@ public class DBFWriterStreamTest {
 		}
 	}
 
+	@Test
+	public void testSpooledRecords() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (DBFWriter writer = new DBFWriter(output)) {
+			writer.setFields(generateFields());
+			for (int i = 0; i < 20000; i++) {
+				writer.addRecord(new Object[] { i, "Employee " + i, 1000.0 + i, new Date(), i % 2 == 0 });
+			}
+		}
+		assertRecords(new DBFReader(new ByteArrayInputStream(output.toByteArray())), 20000);
+	}
+
+	@Test
+	public void testDeclaredRecordCount() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (DBFWriter writer = new DBFWriter(output)) {
+			writer.setFields(generateFields());
+			writer.setRecordCount(3);
+			for (int i = 0; i < 3; i++) {
+				writer.addRecord(new Object[] { i, "Employee " + i, 1000.0 + i, new Date(), i % 2 == 0 });
+			}
+		}
+		assertRecords(new DBFReader(new ByteArrayInputStream(output.toByteArray())), 3);
+	}
+
+	@Test(expected = DBFException.class)
+	public void testDeclaredRecordCountMustMatch() throws IOException {
+		NullOutputStream output = new NullOutputStream();
+		DBFWriter writer = new DBFWriter(output);
+		writer.setFields(generateFields());
+		writer.setRecordCount(3);
+		writer.addRecord(new Object[] { 1, "Neo", 10001.10, new Date(), true });
+		writer.close();
+	}
+
+	@Test
+	public void testFileOutputStreamHeaderUpdated() throws IOException {
+		File file = File.createTempFile("javadbf-stream", ".dbf");
+		try {
+			try (DBFWriter writer = new DBFWriter(new FileOutputStream(file))) {
+				writer.setFields(generateFields());
+				for (int i = 0; i < 1000; i++) {
+					writer.addRecord(new Object[] { i, "Employee " + i, 1000.0 + i, new Date(), i % 2 == 0 });
+				}
+			}
+			assertRecords(new DBFReader(new FileInputStream(file)), 1000);
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testFileOutputStreamAppendMode() throws IOException {
+		File file = File.createTempFile("javadbf-stream", ".dbf");
+		File expected = File.createTempFile("javadbf-stream", ".dbf");
+		try {
+			try (DBFWriter writer = new DBFWriter(new FileOutputStream(file, true));
+					DBFWriter expectedWriter = new DBFWriter(new FileOutputStream(expected))) {
+				writer.setFields(generateFields());
+				expectedWriter.setFields(generateFields());
+				for (int i = 0; i < 2; i++) {
+					writer.addRecord(new Object[] { i, "Employee " + i, 1000.0 + i, null, i % 2 == 0 });
+					expectedWriter.addRecord(new Object[] { i, "Employee " + i, 1000.0 + i, null, i % 2 == 0 });
+				}
+			}
+			Assert.assertEquals(expected.length(), file.length());
+			assertRecords(new DBFReader(new FileInputStream(file)), 2);
+		}
+		finally {
+			file.delete();
+			expected.delete();
+		}
+	}
+
+	private void assertRecords(DBFReader reader, int count) {
+		try {
+			Assert.assertEquals(count, reader.getRecordCount());
+			DBFRow row;
+			int i = 0;
+			while ((row = reader.nextRow()) != null) {
+				Assert.assertEquals(i, row.getInt("emp_code"));
+				Assert.assertEquals("Employee " + i, row.getString("emp_name"));
+				i++;
+			}
+			Assert.assertEquals(count, i);
+		}
+		finally {
+			DBFUtils.close(reader);
+		}
+	}
+
 	private DBFField[] generateFields() {
 		DBFField[] fields = new DBFField[5];
 